@@ -0,0 +1,89 @@
+package com.minh.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Generates the HTML pages the benchmarks run against. A page of size n has n rows, each with a div, a span and a
+ * named input, so the element looked for is somewhere in the middle of a DOM of about 3n elements. A scripted page
+ * carries a large inline script instead, and the style sheets have rules for such rows.
+ */
+public class Fixtures {
+	private Fixtures() {
+	}
+
+	/**
+	 * Writes a page with the given number of rows to a temporary file that is deleted when the JVM exits.
+	 *
+	 * @param rows
+	 *            The number of rows of the page.
+	 * @return The file url of the page.
+	 */
+	public static String page(int rows) throws IOException {
+		File file = File.createTempFile("fixture-" + rows + "-", ".html");
+		file.deleteOnExit();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write("<html><head><title>Fixture " + rows + "</title></head><body><form>\n");
+			for (int i = 0; i < rows; i++) {
+				writer.write(String.format("<div id=\"row-%1$d\" class=\"row row-%2$d\" style=\"display: block;\">"
+						+ "<span class=\"label\">Row %1$d</span><input type=\"text\" name=\"field-%1$d\"/></div>\n", i,
+						i % 10));
+			}
+			writer.write("</form></body></html>\n");
+		} finally {
+			writer.close();
+		}
+		return file.toURI().toString();
+	}
+
+	/**
+	 * Writes a page with an inline script of the given number of functions to a temporary file that is deleted when
+	 * the JVM exits, about what a single page application's bundle puts in every session.
+	 *
+	 * @param functions
+	 *            The number of functions of the script.
+	 * @return The file url of the page.
+	 */
+	public static String scriptedPage(int functions) throws IOException {
+		File file = File.createTempFile("fixture-script-" + functions + "-", ".html");
+		file.deleteOnExit();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write("<html><head><title>Script " + functions + "</title><script>\nvar app = {};\n");
+			for (int i = 0; i < functions; i++) {
+				writer.write(String.format("app.f%1$d = function(a, b) { var s = 'f%1$d' + a; "
+						+ "for (var i = 0; i < b; i++) { s += i %% 7; } return s.length + %1$d; };\n", i));
+			}
+			writer.write("</script></head><body><div id=\"app\"></div></body></html>\n");
+		} finally {
+			writer.close();
+		}
+		return file.toURI().toString();
+	}
+
+	/**
+	 * @param rules
+	 *            The number of rules of the sheet.
+	 * @return A style sheet with rules for the rows of a page, about what a site's main sheet holds.
+	 */
+	public static String styleSheet(int rules) {
+		StringBuilder css = new StringBuilder();
+		for (int i = 0; i < rules; i++) {
+			css.append(String.format("div.row-%1$d > span.label, #row-%1$d input[type=\"text\"] { color: #%2$06x; "
+					+ "margin: %3$dpx 0 %3$dpx 2em; font: bold 12px/1.5 Arial, sans-serif; }\n", i, i * 4099 % 0xffffff,
+					i % 20));
+		}
+		return css.toString();
+	}
+
+	/**
+	 * @return The index of the row the lookups look for.
+	 */
+	public static int middle(int rows) {
+		return rows / 2;
+	}
+}
@@ -0,0 +1,103 @@
+package com.minh.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import com.minh.helper.Browser;
+import com.minh.selector.Via;
+
+/**
+ * The cost of the Via selector strategies in HtmlUnit on pages of growing size. Each lookup finds the same element in
+ * the middle of the page so the strategies can be compared directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectorBenchmark {
+	@Param({ "100", "1000", "5000" })
+	int rows;
+
+	Browser browser;
+
+	WebDriver webDriver;
+
+	Via byId;
+
+	Via byCss;
+
+	Via byName;
+
+	Via byXpath;
+
+	Via allRows;
+
+	WebElement element;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		int middle = Fixtures.middle(rows);
+		byId = Via.id("row-" + middle);
+		byCss = Via.css("#row-" + middle);
+		byName = Via.name("field-" + middle);
+		byXpath = Via.xpath("//div[@id='row-" + middle + "']");
+		allRows = Via.css("div.row");
+		browser = new Browser(Browser.HEADLESS);
+		browser.get(Fixtures.page(rows));
+		webDriver = browser.getWebDriver();
+		element = webDriver.findElement(byId);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		browser.quit();
+	}
+
+	@Benchmark
+	public WebElement id() {
+		return webDriver.findElement(byId);
+	}
+
+	@Benchmark
+	public WebElement css() {
+		return webDriver.findElement(byCss);
+	}
+
+	@Benchmark
+	public WebElement name() {
+		return webDriver.findElement(byName);
+	}
+
+	@Benchmark
+	public WebElement xpath() {
+		return webDriver.findElement(byXpath);
+	}
+
+	@Benchmark
+	public List<WebElement> findAllRows() {
+		return webDriver.findElements(allRows);
+	}
+
+	@Benchmark
+	public String tagAsString() {
+		return browser.getTagAsString(element);
+	}
+}
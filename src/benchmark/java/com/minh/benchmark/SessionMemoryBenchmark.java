@@ -0,0 +1,94 @@
+package com.minh.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.minh.helper.HeadlessDriver;
+import com.minh.helper.HeadlessProfile;
+import com.minh.helper.SharedResources;
+
+/**
+ * The number of headless sessions that fit in a GB of heap with and without the shared resources. Each iteration opens
+ * the sessions on a page with a large script and measures the heap they hold after a full collection. The memory per
+ * session and the sessions per GB are printed after every iteration, the score is the time of opening all sessions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SessionMemoryBenchmark {
+	@Param({ "false", "true" })
+	boolean shared;
+
+	@Param({ "30" })
+	int sessions;
+
+	@Param({ "2000" })
+	int functions;
+
+	String url;
+
+	long perSession;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		url = Fixtures.scriptedPage(functions);
+	}
+
+	@Setup(Level.Iteration)
+	public void clear() {
+		SharedResources.clear();
+	}
+
+	@Benchmark
+	public int openSessions() {
+		long before = usedHeap();
+		List<HeadlessDriver> drivers = new ArrayList<HeadlessDriver>();
+		try {
+			for (int i = 0; i < sessions; i++) {
+				HeadlessDriver driver = new HeadlessDriver(new HeadlessProfile().setShared(shared));
+				drivers.add(driver);
+				driver.setJavascriptEnabled(true);
+				driver.get(url);
+			}
+			perSession = Math.max(1L, (usedHeap() - before) / sessions);
+			return drivers.size();
+		} finally {
+			for (HeadlessDriver driver : drivers) {
+				driver.quit();
+			}
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void report() {
+		System.out.printf("%n%d KB per session, %d sessions per GB%n", perSession / 1024, (1L << 30) / perSession);
+	}
+
+	private static long usedHeap() {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		for (int i = 0; i < 3; i++) {
+			memory.gc();
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
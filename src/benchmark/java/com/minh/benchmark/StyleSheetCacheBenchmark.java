@@ -0,0 +1,61 @@
+package com.minh.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.css.sac.InputSource;
+import org.w3c.dom.css.CSSStyleSheet;
+
+import com.minh.helper.HeadlessProfile;
+import com.steadystate.css.parser.CSSOMParser;
+import com.steadystate.css.parser.SACParserCSS21;
+
+/**
+ * A style sheet from the SharedCache, which hands out a sheet sharing the cached rules, against parsing the sheet again
+ * the way HtmlUnit does without a cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StyleSheetCacheBenchmark {
+	@Param({ "100", "1000" })
+	int rules;
+
+	String css;
+
+	HeadlessProfile.SharedCache cache;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		css = Fixtures.styleSheet(rules);
+		cache = new HeadlessProfile.SharedCache();
+		cache.cache(css, parse());
+	}
+
+	@Benchmark
+	public CSSStyleSheet cached() {
+		return cache.getCachedStyleSheet(css);
+	}
+
+	@Benchmark
+	public CSSStyleSheet parse() throws IOException {
+		CSSOMParser parser = new CSSOMParser(new SACParserCSS21());
+		return parser.parseStyleSheet(new InputSource(new StringReader(css)), null, null);
+	}
+}
@@ -0,0 +1,169 @@
+package com.minh.helper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openqa.selenium.WebElement;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.minh.selector.Via;
+
+/**
+ * A Browser driven without blocking the caller. Every command is queued and run on a thread of a shared pool, the
+ * commands of one browser one at a time in the order they were given. The results are futures that can be combined
+ * with Guava's Futures, e.g. Futures.allAsList over many browsers, so one thread can drive many sessions.
+ * 
+ * A command that waits, e.g. waitForElement, holds a pool thread while it waits. Size the pool for the number of
+ * browsers that wait at the same time rather than the number of browsers.
+ */
+public class AsyncBrowser {
+	/**
+	 * The system property with the number of threads of the shared pool.
+	 */
+	public static final String THREADS_PROPERTY = "gui.async.threads";
+
+	private static ExecutorService sharedExecutor = null;
+
+	private final Browser browser;
+
+	private final SerialExecutor serialExecutor;
+
+	/**
+	 * @param browserType
+	 *            The wanted browser type. One of the constants of Browser can be used.
+	 */
+	public AsyncBrowser(String browserType) {
+		this(new Browser(browserType), getSharedExecutor());
+	}
+
+	/**
+	 * @param browser
+	 *            The browser to drive. It must not be used directly while it is driven by this.
+	 * @param executor
+	 *            The threads to run the commands on.
+	 */
+	public AsyncBrowser(Browser browser, Executor executor) {
+		this.browser = browser;
+		this.serialExecutor = new SerialExecutor(executor);
+	}
+
+	/**
+	 * The pool shared by all async browsers that weren't given one. Its size is read from the gui.async.threads system
+	 * property, twice the number of processors if not set.
+	 */
+	static synchronized ExecutorService getSharedExecutor() {
+		if (sharedExecutor == null) {
+			final AtomicInteger count = new AtomicInteger();
+			int threads = Integer.getInteger(THREADS_PROPERTY, 2 * Runtime.getRuntime().availableProcessors());
+			sharedExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "gui-async-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sharedExecutor;
+	}
+
+	/**
+	 * Queues any command.
+	 * 
+	 * @param command
+	 *            The command, given the browser on the thread it may use it from.
+	 * @return The outcome of the command.
+	 */
+	public <T> ListenableFuture<T> submit(final Function<Browser, T> command) {
+		ListenableFutureTask<T> task = ListenableFutureTask.create(new Callable<T>() {
+			public T call() {
+				browser.claim();
+				try {
+					return command.apply(browser);
+				} finally {
+					browser.disown();
+				}
+			}
+		});
+		serialExecutor.execute(task);
+		return task;
+	}
+
+	public ListenableFuture<Browser> get(final String url) {
+		return submit(new Function<Browser, Browser>() {
+			public Browser apply(Browser browser) {
+				return browser.get(url);
+			}
+		});
+	}
+
+	public ListenableFuture<Browser> get(final String url, final Readiness readiness) {
+		return submit(new Function<Browser, Browser>() {
+			public Browser apply(Browser browser) {
+				return browser.get(url, readiness);
+			}
+		});
+	}
+
+	public ListenableFuture<String> getTitle() {
+		return submit(new Function<Browser, String>() {
+			public String apply(Browser browser) {
+				return browser.getTitle();
+			}
+		});
+	}
+
+	public ListenableFuture<Boolean> isVisible(final Via via) {
+		return submit(new Function<Browser, Boolean>() {
+			public Boolean apply(Browser browser) {
+				return browser.isVisible(via);
+			}
+		});
+	}
+
+	public ListenableFuture<WebElement> waitForElement(final Via via) {
+		return submit(new Function<Browser, WebElement>() {
+			public WebElement apply(Browser browser) {
+				return browser.waitForElement(via);
+			}
+		});
+	}
+
+	public ListenableFuture<Void> clickElement(final Via via) {
+		return submit(new Function<Browser, Void>() {
+			public Void apply(Browser browser) {
+				browser.clickElement(via);
+				return null;
+			}
+		});
+	}
+
+	public ListenableFuture<String> executeJavascript(final String javascript) {
+		return submit(new Function<Browser, String>() {
+			public String apply(Browser browser) {
+				return browser.executeJavascript(javascript);
+			}
+		});
+	}
+
+	public ListenableFuture<Void> quit() {
+		return submit(new Function<Browser, Void>() {
+			public Void apply(Browser browser) {
+				browser.quit();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * @return The driven browser. Only use it from commands.
+	 */
+	public Browser getBrowser() {
+		return browser;
+	}
+}
@@ -0,0 +1,22 @@
+package com.minh.helper;
+
+/**
+ * Sleep intervals that start short and grow by half each time up to a ceiling. Used by waits that have to poll, so
+ * that a condition that is met quickly is noticed quickly while a long wait doesn't flood the driver with commands.
+ */
+class Backoff {
+	static final long FIRST_MILLIS = 10L;
+
+	static final long MAX_MILLIS = 500L;
+
+	private long next = FIRST_MILLIS;
+
+	/**
+	 * @return The time to sleep before the next poll.
+	 */
+	long next() {
+		long current = next;
+		next = Math.min(MAX_MILLIS, next + next / 2);
+		return current;
+	}
+}
@@ -1,18 +1,22 @@
 package com.minh.helper;
 
+import java.io.UnsupportedEncodingException;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.openqa.selenium.Cookie;
 import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.NoSuchElementException;
-import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.minh.helper.User.UserData;
+import com.minh.metrics.Metrics;
 import com.minh.selector.Via;
 import com.minh.selector.ViaCss;
 import com.minh.selector.ViaId;
@@ -52,6 +56,12 @@ public class Browser {
 	 */
 	public static final String HEADLESS = "HtmlUnitDriver";
 
+	/**
+	 * The system property that overrides the browser type every browser is created with, e.g. HtmlUnitDriver to run
+	 * tests written for Firefox headless.
+	 */
+	public static final String BROWSER_PROPERTY = "gui.browser";
+
 	/* Javascript snippets to change the visibility of an object JQuery style. */
 	/**
 	 * This is a String.format javascript that needs the actual selector of the element to be altered in JQuery style.
@@ -62,14 +72,76 @@ public class Browser {
 	 */
 	public static final String HIDE_ELEMENT_JAVASCRIPT = "$('%1$s').hide().css('opacity','0').css('display','none');";
 
+	/**
+	 * Reads everything getTagAsString needs from an element in one call. The className of an SVG element isn't a
+	 * string, so the class is read as an attribute there. Old IE only knows the class by its className.
+	 */
+	static final String TAG_JAVASCRIPT = "var e = arguments[0];"
+			+ "var c = typeof e.className == 'string' ? e.className : e.getAttribute('class');"
+			+ "return [e.tagName.toLowerCase(), e.id, c, e.getAttribute('style')];";
+
+	/**
+	 * The number of driver commands it takes to read a tag attribute by attribute.
+	 */
+	static final int TAG_COMMANDS = 4;
+
+	/**
+	 * The browser whose driver was started on the current thread. A worker thread in a parallel run gets its own.
+	 */
+	private static final ThreadLocal<Browser> current = new ThreadLocal<Browser>();
+
+	/**
+	 * The browser type that overrides the wanted one for browsers created on the thread and the threads it starts.
+	 */
+	private static final InheritableThreadLocal<String> threadBrowserType = new InheritableThreadLocal<String>();
+
+	/* The driver commands element descriptions saved, per thread like the commands of CommandTimer */
+	private static final ThreadLocal<long[]> threadLoggingCommandsSaved = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
 	private WebDriver webDriver = null;
 
+	/**
+	 * The thread the driver was started on. A browser is confined to that thread until it is quit. Volatile because
+	 * checkOwner reads it on the thread that wants to use the browser.
+	 */
+	private volatile Thread owner = null;
+
+	private ElementWaiter elementWaiter = null;
+
+	private PageLoader pageLoader = null;
+
+	/* When get considers a page loaded */
+	private Readiness readiness = Readiness.fromProperties();
+
+	private long loggingCommandsSaved = 0L;
+
+	/* The number of driver commands the last read of a tag took */
+	private int lastTagCommands = 0;
+
 	private String browserType = null;
 
 	private long defaultImplicitWait = 30000L;
 
+	/* The implicit wait lookups should use */
+	private long implicitWait = defaultImplicitWait;
+
+	/* The implicit wait the browser has, -1 when unknown */
+	private long appliedImplicitWait = -1L;
+
 	private String baseUrl = "";
 
+	private DriverPool driverPool = null;
+
+	/* The session to log in with before the first page, null when there is none or it is already in place */
+	private SessionCache sessionCache = null;
+
+	private UserData sessionUser = null;
+
 	/**
 	 * Creates a browser object from this class
 	 * 
@@ -77,7 +149,49 @@ public class Browser {
 	 *            The wanted browser type. One of the constants above can be used.
 	 */
 	public Browser(String browserType) {
-		this.browserType = browserType;
+		this.browserType = typeOf(browserType);
+	}
+
+	/**
+	 * Creates a browser object that leases its web driver from a pool instead of starting one of its own. The driver
+	 * is given back to the pool by quit.
+	 * 
+	 * @param browserType
+	 *            The wanted browser type. One of the constants above can be used.
+	 * @param driverPool
+	 *            The pool to lease the driver from, typically DriverPool.getDefault().
+	 */
+	public Browser(String browserType, DriverPool driverPool) {
+		this.browserType = typeOf(browserType);
+		this.driverPool = driverPool;
+	}
+
+	/**
+	 * Makes the browsers created on the current thread, and on threads it starts from now on, use the browser type
+	 * whatever type they are created with, e.g. HtmlUnitDriver for the virtual users of a load run. Takes precedence
+	 * over the gui.browser system property and leaves other threads alone.
+	 * 
+	 * @param browserType
+	 *            The browser type to use, null to use the wanted type again.
+	 */
+	public static void setThreadBrowserType(String browserType) {
+		if (browserType == null) {
+			threadBrowserType.remove();
+		} else {
+			threadBrowserType.set(browserType);
+		}
+	}
+
+	private static String typeOf(String wanted) {
+		String forced = threadBrowserType.get();
+		return forced != null ? forced : System.getProperty(BROWSER_PROPERTY, wanted);
+	}
+
+	/**
+	 * @return The browser started on the current thread or null if none is running.
+	 */
+	public static Browser current() {
+		return current.get();
 	}
 
 	/**
@@ -92,20 +206,92 @@ public class Browser {
 
 	/**
 	 * This is a lazy constructor for the web driver to make it possible to create the Browser object and set values
-	 * prior to the actual start up of the browser.
+	 * prior to the actual start up of the browser. The driver is handed out with the current implicit wait applied.
 	 * 
 	 * @return The handle to the webDriver.
 	 */
 	public WebDriver getWebDriver() {
+		WebDriver driver = driver();
+		syncImplicitWait();
+		return driver;
+	}
+
+	/**
+	 * The lazy constructor behind getWebDriver. Use this for commands that don't look up elements and so don't care
+	 * about the implicit wait. A driver that hung and was killed by its supervisor is replaced by a new one.
+	 * 
+	 * @return The handle to the webDriver.
+	 */
+	private WebDriver driver() {
+		checkOwner();
+		if (webDriver != null && DriverSupervisor.isKilled(webDriver)) {
+			log.warn("The {} driver hung and was killed, a new one is started.", browserType);
+			if (driverPool != null) {
+				driverPool.discard(browserType, CommandProxy.unwrap(webDriver, CommandTimer.class));
+			}
+			webDriver = null;
+			elementWaiter = null;
+			pageLoader = null;
+		}
 		if (webDriver == null) {
 			log.debug("A browser connection to {} is about to be created.", browserType);
-			webDriver = new CreateDriver().createWebDriver(browserType);
-			resetImplicitWait();
+			claim();
+			WebDriver started;
+			if (driverPool == null) {
+				started = new CreateDriver().createWebDriver(browserType);
+			} else {
+				started = driverPool.lease(browserType);
+			}
+			webDriver = CommandTimer.isEnabled() ? CommandProxy.wrap(started, CommandTimer.getInstance()) : started;
+			/* Whatever the driver was set to before, e.g. by the previous lease, is unknown */
+			appliedImplicitWait = -1L;
 			log.debug("A browser connection to {} is created.", browserType);
 		}
 		return webDriver;
 	}
 
+	/**
+	 * @return The waiter of the current driver.
+	 */
+	private ElementWaiter getElementWaiter() {
+		WebDriver driver = driver();
+		if (elementWaiter == null) {
+			elementWaiter = new ElementWaiter(driver) {
+				@Override
+				protected void beforeFind() {
+					syncImplicitWait();
+				}
+			};
+		}
+		return elementWaiter;
+	}
+
+	/**
+	 * @return The page loader of the current driver.
+	 */
+	private PageLoader getPageLoader() {
+		WebDriver driver = driver();
+		if (pageLoader == null) {
+			pageLoader = new PageLoader(driver);
+		}
+		return pageLoader;
+	}
+
+	/**
+	 * Sets when get considers a page ready. The default is the full load, or what the gui.readiness system property
+	 * says.
+	 * 
+	 * @param readiness
+	 *            E.g. Readiness.DOM_CONTENT_LOADED or Readiness.present(Via.id("main")).
+	 */
+	public void setReadiness(Readiness readiness) {
+		this.readiness = readiness;
+	}
+
+	public Readiness getReadiness() {
+		return readiness;
+	}
+
 	/**
 	 * This might be needed in some exceptional cases to reset the implicitWait parameter.
 	 */
@@ -115,19 +301,163 @@ public class Browser {
 
 	/**
 	 * This might be needed in some exceptional cases to set the implicitWait parameter to a lower value thus speeding
-	 * up unnecessary wait states.
+	 * up unnecessary wait states. The value is kept on the client side and only sent to the browser before the next
+	 * element lookup that needs it, so setting it back and forth without looking anything up costs nothing.
 	 */
 	public void setImplicitWait(long millis) {
-		getWebDriver().manage().timeouts().implicitlyWait(millis, TimeUnit.MILLISECONDS);
+		implicitWait = millis;
 		log.debug("Implicit wait is set to {} milliseconds.", millis);
 	}
 
 	/**
-	 * Exit the web browser.
+	 * @return The implicit wait in milliseconds that element lookups are done with.
+	 */
+	public long getImplicitWait() {
+		return implicitWait;
+	}
+
+	/**
+	 * Runs an action with a temporary implicit wait and restores the previous one afterwards. E.g. an existence check
+	 * with a 1 millisecond implicit wait. Nested and repeated actions with the same implicit wait don't send anything
+	 * extra to the browser.
+	 * 
+	 * @param millis
+	 *            The implicit wait to use during the action.
+	 * @param action
+	 *            The action to run.
+	 * @return What the action returned.
+	 */
+	public <T> T withImplicitWait(long millis, Action<T> action) {
+		long previous = implicitWait;
+		implicitWait = millis;
+		try {
+			return action.perform();
+		} finally {
+			implicitWait = previous;
+		}
+	}
+
+	/**
+	 * Sends the implicit wait to the browser if it differs from what the browser already has.
+	 */
+	private void syncImplicitWait() {
+		if (webDriver != null && appliedImplicitWait != implicitWait) {
+			webDriver.manage().timeouts().implicitlyWait(implicitWait, TimeUnit.MILLISECONDS);
+			appliedImplicitWait = implicitWait;
+			log.debug("Implicit wait of the browser is now {} milliseconds.", implicitWait);
+		}
+	}
+
+	/**
+	 * Exit the web browser. A pooled browser gives its driver back to the pool instead.
 	 */
 	public void quit() {
-		log.info("Quitting the web browser.");
-		getWebDriver().quit();
+		checkOwner();
+		if (webDriver == null) {
+			log.debug("The web browser was never started, nothing to quit.");
+			return;
+		}
+		if (driverPool == null) {
+			log.info("Quitting the web browser.");
+			webDriver.quit();
+		} else {
+			log.info("Returning the web browser to the pool.");
+			driverPool.release(browserType, CommandProxy.unwrap(webDriver, CommandTimer.class));
+		}
+		webDriver = null;
+		elementWaiter = null;
+		pageLoader = null;
+		if (current.get() == this) {
+			current.remove();
+		}
+		owner = null;
+	}
+
+	/**
+	 * Makes the current thread the owner of this browser. Browser keeps state (driver, implicit wait, base url) that
+	 * isn't safe to share so each browser is used by one thread at a time. Code that hands a browser over to another
+	 * thread on purpose calls this on the receiving thread.
+	 */
+	void claim() {
+		owner = Thread.currentThread();
+		current.set(this);
+	}
+
+	/**
+	 * Lets go of the current thread, the next thread to claim the browser may use it. Used by code that moves a
+	 * browser between threads, e.g. AsyncBrowser between commands.
+	 */
+	void disown() {
+		if (current.get() == this) {
+			current.remove();
+		}
+		owner = null;
+	}
+
+	/**
+	 * Fails fast when a browser is used from a thread other than the one it belongs to, instead of letting two tests
+	 * drive the same browser.
+	 */
+	private void checkOwner() {
+		Thread thread = owner;
+		if (thread != null && thread != Thread.currentThread()) {
+			throw new IllegalStateException("The " + browserType + " browser belongs to the thread " + thread.getName()
+					+ " and can't be used from " + Thread.currentThread().getName() + ".");
+		}
+	}
+
+	/**
+	 * Grabs the screenshot and page source of the current page for a failed test and hands them to the default
+	 * FailureCapture, which writes them in the background. Call it before the browser is quit, ParallelRunner does for
+	 * every failed test method.
+	 * 
+	 * @param test
+	 *            The name of the failed test.
+	 * @return true if the capture was queued.
+	 */
+	public boolean captureFailure(String test) {
+		return captureFailure(test, FailureCapture.getDefault());
+	}
+
+	/**
+	 * Grabs the screenshot and page source of the current page for a failed test and hands them to a failure capture.
+	 * Only the raw bytes are read on this thread, the time it takes is recorded in the histogram capture.grab. Never
+	 * throws, what the browser can't hand out any more is left out.
+	 * 
+	 * @param test
+	 *            The name of the failed test.
+	 * @param capture
+	 *            Where to write the capture, null to skip it.
+	 * @return true if the capture was queued, false if it was skipped or dropped or the browser was never started.
+	 */
+	public boolean captureFailure(String test, FailureCapture capture) {
+		if (capture == null || webDriver == null || DriverSupervisor.isKilled(webDriver)) {
+			return false;
+		}
+		checkOwner();
+		long start = System.nanoTime();
+		byte[] screenshot = null;
+		String url = null;
+		String title = null;
+		byte[] pageSource = null;
+		try {
+			if (webDriver instanceof TakesScreenshot) {
+				screenshot = ((TakesScreenshot) webDriver).getScreenshotAs(OutputType.BYTES);
+			}
+		} catch (RuntimeException e) {
+			log.debug("Couldn't take a screenshot for {}: {}", test, e.getMessage());
+		}
+		try {
+			url = webDriver.getCurrentUrl();
+			title = webDriver.getTitle();
+			pageSource = webDriver.getPageSource().getBytes("UTF-8");
+		} catch (RuntimeException e) {
+			log.debug("Couldn't read the page for {}: {}", test, e.getMessage());
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is missing from the JVM.", e);
+		}
+		Metrics.histogram("capture.grab").recordSince(start);
+		return capture.submit(test, url, title, screenshot, pageSource);
 	}
 
 	/**
@@ -139,19 +469,60 @@ public class Browser {
 	}
 
 	/**
-	 * This, often used, method fetches a page via the instantiated web browser.
+	 * This, often used, method fetches a page via the instantiated web browser. It returns when the page is ready in
+	 * the sense of the browser's readiness, see setReadiness.
 	 * 
 	 * @param urlAsString
 	 *            The url to the wanted page.
 	 * @return The Browser object to enable one liners.
 	 */
 	public Browser get(String urlAsString) {
-		if (urlAsString.indexOf("http") == -1) {
-			urlAsString = baseUrl + urlAsString;
+		return get(urlAsString, readiness);
+	}
+
+	/**
+	 * Logs this browser in as the user before the next page is fetched, with a session shared with other browsers
+	 * instead of a login through the UI where possible.
+	 * 
+	 * @param sessionCache
+	 *            The sessions of the site.
+	 * @param user
+	 *            The user to log in as.
+	 */
+	public void useSession(SessionCache sessionCache, UserData user) {
+		this.sessionCache = sessionCache;
+		this.sessionUser = user;
+	}
+
+	/**
+	 * Fetches a page and returns as soon as it is ready in the given sense, e.g. when an element is present instead of
+	 * when the last image is loaded. Use this instead of sleeping after get.
+	 * 
+	 * @param urlAsString
+	 *            The url to the wanted page.
+	 * @param readiness
+	 *            When the page counts as ready.
+	 * @return The Browser object to enable one liners.
+	 */
+	public Browser get(String urlAsString, Readiness readiness) {
+		long start = System.nanoTime();
+		boolean done = false;
+		try {
+			if (urlAsString.indexOf("http") == -1) {
+				urlAsString = baseUrl + urlAsString;
+			}
+			if (sessionCache != null) {
+				SessionCache sessions = sessionCache;
+				sessionCache = null;
+				sessions.restore(this, sessionUser);
+			}
+			log.info("The page {} is requested.", urlAsString);
+			getPageLoader().load(urlAsString, readiness, defaultImplicitWait);
+			done = true;
+			return this;
+		} finally {
+			operation("get", start, done);
 		}
-		log.info("The page {} is requested.", urlAsString);
-		getWebDriver().get(urlAsString);
-		return this;
 	}
 
 	/**
@@ -160,32 +531,48 @@ public class Browser {
 	 * @return The title of the current page.
 	 */
 	public String getTitle() {
-		return getWebDriver().getTitle();
+		long start = System.nanoTime();
+		boolean done = false;
+		try {
+			String title = driver().getTitle();
+			done = true;
+			return title;
+		} finally {
+			operation("getTitle", start, done);
+		}
 	}
 
 	/**
-	 * Helper method that returns true if the wanted element is visible in the browser or false otherwise.
+	 * Helper method that returns true if the wanted element is visible in the browser or false otherwise. The lookup
+	 * doesn't wait for the element to turn up.
 	 * 
 	 * @param via
 	 *            The selector of choice to find the wanted element.
 	 * @return true if element is visible or false otherwise.
 	 */
-	private boolean isVisible(Via via) {
+	public boolean isVisible(final Via via) {
 		log.debug("Verifying visibility of element {}.", via);
-		setImplicitWait(1L);
-		WebElement webElement = null;
+		long start = System.nanoTime();
+		boolean done = false;
 		try {
-			webElement = getWebDriver().findElement(via);
-		} catch (NoSuchElementException e) {
-			log.debug("No element found that match {}.", via);
-			resetImplicitWait();
-			return false;
+			List<WebElement> webElements = withImplicitWait(1L, new Action<List<WebElement>>() {
+				public List<WebElement> perform() {
+					return getWebDriver().findElements(via);
+				}
+			});
+			boolean displayed = false;
+			if (webElements.isEmpty()) {
+				log.debug("No element found that match {}.", via);
+			} else {
+				WebElement webElement = webElements.get(0);
+				displayed = webElement.isDisplayed();
+				log.debug("The element {} visibility is {}.", describe(webElement), displayed);
+			}
+			done = true;
+			return displayed;
 		} finally {
-			log.debug("The element {} visibility is {}.", webElement == null ? via : getTagAsString(webElement),
-					webElement == null ? false : webElement.isDisplayed());
-			resetImplicitWait();
+			operation("isVisible", start, done);
 		}
-		return webElement.isDisplayed();
 	}
 
 	/**
@@ -226,8 +613,7 @@ public class Browser {
 		if (via instanceof ViaCss) {
 			compoundJavascript = String.format(javascript, via.getValue());
 		}
-		String tag = getTagAsString(webElement);
-		log.debug("The javascript " + compoundJavascript + " is about to be executed on tag " + tag);
+		log.debug("The javascript {} is about to be executed on tag {}", compoundJavascript, describe(webElement));
 		executeJavascript(compoundJavascript);
 		return webElement;
 	}
@@ -239,8 +625,15 @@ public class Browser {
 	 *            the javascript to execute.
 	 */
 	public String executeJavascript(String javascript) {
-		Object object = ((JavascriptExecutor) webDriver).executeScript(javascript);
-		return object == null ? null : object.toString();
+		long start = System.nanoTime();
+		boolean done = false;
+		try {
+			Object object = ((JavascriptExecutor) driver()).executeScript(javascript);
+			done = true;
+			return object == null ? null : object.toString();
+		} finally {
+			operation("executeJavascript", start, done);
+		}
 	}
 
 	/**
@@ -253,7 +646,7 @@ public class Browser {
 	 */
 	private void sendKeysToElement(String keysToSend, Via via) {
 		WebElement webElement = waitForElement(via);
-		log.debug("About to write into element {}.", getTagAsString(webElement));
+		log.debug("About to write into element {}.", describe(webElement));
 		webElement.sendKeys(keysToSend);
 	}
 
@@ -264,14 +657,22 @@ public class Browser {
 	 *            The selector of choice to find the element.
 	 */
 	public void clickElement(Via via) {
-		WebElement webElement = waitForElement(via);
-		log.debug("About to click on element {}.", getTagAsString(webElement));
-		webElement.click();
+		long start = System.nanoTime();
+		boolean done = false;
+		try {
+			WebElement webElement = waitForElement(via);
+			log.debug("About to click on element {}.", describe(webElement));
+			webElement.click();
+			done = true;
+		} finally {
+			operation("clickElement", start, done);
+		}
 	}
 
 	/**
 	 * This method waits for a while (implicitWait milliseconds) if needed to find a particular element. This is needed
-	 * more often when transitions are used when displaying elements.
+	 * more often when transitions are used when displaying elements. The wait runs inside the page when the browser
+	 * supports it so it returns as soon as the element is shown.
 	 * 
 	 * @param via
 	 *            The selector of choice to find the element.
@@ -279,14 +680,18 @@ public class Browser {
 	 */
 	public WebElement waitForElement(Via via) {
 		log.debug("Waiting for element {} to appear.", via);
-		long endBy = System.currentTimeMillis() + defaultImplicitWait;
-		WebElement webElement = null;
-		while ((webElement = getWebDriver().findElement(via)).isDisplayed() == false
-				&& System.currentTimeMillis() < endBy) {
-			log.debug("Waiting for the element {} to appear.", getTagAsString(webElement));
-			sleep(100L);
+		long start = System.nanoTime();
+		boolean done = false;
+		try {
+			if (!getElementWaiter().awaitVisible(via, defaultImplicitWait)) {
+				log.debug("The element {} did not appear within {} milliseconds.", via, defaultImplicitWait);
+			}
+			WebElement webElement = getWebDriver().findElement(via);
+			done = true;
+			return webElement;
+		} finally {
+			operation("waitForElement", start, done);
 		}
-		return webElement;
 	}
 
 	/**
@@ -297,7 +702,7 @@ public class Browser {
 	 * @return A list of WebElements or empty List.
 	 */
 	public List<WebElement> waitForElements(Via via) {
-		return webDriver.findElements(via);
+		return getWebDriver().findElements(via);
 	}
 
 	/**
@@ -308,38 +713,17 @@ public class Browser {
 	 * @param via
 	 *            The selector of choice to find the element.
 	 */
-	public void waitForElementToDisappear(Via via) {
+	public void waitForElementToDisappear(final Via via) {
 		log.debug("Waiting for element {} to disappear.", via);
-		WebElement elementToWaitFor = null;
-		long endAt = System.currentTimeMillis() + defaultImplicitWait;
-		setImplicitWait(1L);
-		while (System.currentTimeMillis() < endAt) {
-			try {
-				elementToWaitFor = webDriver.findElement(via);
-				if (!elementToWaitFor.isDisplayed()) {
-					/* The element is not visible - break the loop */
-					resetImplicitWait();
-					return;
-				}
-				log.info("The element {} is still present!", via);
-				/* Come this far we found the element - wait! */
-				sleep(1000L);
-			} catch (NoSuchElementException e) {
-				/* No element found - break the loop */
-				log.debug("No element {} found!.", via);
-				resetImplicitWait();
-				return;
-			} catch (StaleElementReferenceException e) {
-				/* No element found - break the loop */
-				log.debug("The element that match {} is stale.", via);
-				// resetImplicitWait();
-				// return;
+		boolean gone = withImplicitWait(1L, new Action<Boolean>() {
+			public Boolean perform() {
+				return getElementWaiter().awaitGone(via, defaultImplicitWait);
 			}
-			return;
+		});
+		if (!gone) {
+			throw new RuntimeException("The element " + via + " did not go away before end of implicit wait ("
+					+ defaultImplicitWait + " millis).");
 		}
-		resetImplicitWait();
-		throw new RuntimeException("The element " + via + " did not go away before end of implicit wait ("
-				+ defaultImplicitWait + " millis).");
 	}
 
 	/**
@@ -351,13 +735,17 @@ public class Browser {
 	 *            The name of the cookie to watch.
 	 */
 	public void waitForCookieToDisappear(String cookieName) {
+		long start = System.nanoTime();
 		long endAt = System.currentTimeMillis() + defaultImplicitWait;
+		Backoff backoff = new Backoff();
 		Cookie cookie = null;
-		while ((cookie = getWebDriver().manage().getCookieNamed(cookieName)) != null
+		/* Cookie changes can't be observed in the page, poll with growing intervals instead */
+		while ((cookie = driver().manage().getCookieNamed(cookieName)) != null
 				&& System.currentTimeMillis() < endAt) {
 			log.debug("The cookie {} is still present.", cookieName);
-			sleep(100L);
+			sleep(backoff.next());
 		}
+		Metrics.histogram("wait.cookie").recordSince(start);
 		if (cookie != null) {
 			log.warn("The expected cookie {} did not disappear before end of implicit wait.", cookieName);
 		}
@@ -365,6 +753,7 @@ public class Browser {
 
 	/**
 	 * This convenient helper method is mainly used to improve the readability of the information logged to the logger.
+	 * The tag name and attributes are read with a single javascript call where the driver supports it.
 	 * 
 	 * @param webElement
 	 *            The web element to mimic the tag of.
@@ -374,34 +763,98 @@ public class Browser {
 		if (webElement == null) {
 			return "[The web element is null]";
 		}
+		String[] parts = readTagParts(webElement);
+		StringBuilder result = new StringBuilder("<");
+		result.append(parts[0]);
+		appendAttribute(result, "id", parts[1]);
+		appendAttribute(result, "class", parts[2]);
+		appendAttribute(result, "style", parts[3]);
+		result.append(" />");
+		return result.toString();
+	}
 
-		StringBuffer result = new StringBuffer("<");
-		result.append(webElement.getTagName());
+	/**
+	 * Wraps an element for logging. The tag is only read from the browser if the log statement is actually written,
+	 * i.e. when the log level is enabled.
+	 * 
+	 * @param webElement
+	 *            The web element to describe.
+	 * @return An object whose toString is the getTagAsString of the element.
+	 */
+	public Object describe(final WebElement webElement) {
+		saved(TAG_COMMANDS);
+		return new Object() {
+			private String tag = null;
+
+			@Override
+			public String toString() {
+				if (tag == null) {
+					tag = getTagAsString(webElement);
+					saved(-lastTagCommands);
+				}
+				return tag;
+			}
+		};
+	}
 
-		String id = webElement.getAttribute("id");
-		if (!"".equals(id)) {
-			result.append(" id=\"");
-			result.append(id);
-			result.append("\"");
-		}
+	/**
+	 * @return The number of driver commands that lazy and single call element descriptions have saved so far.
+	 */
+	public long getLoggingCommandsSaved() {
+		return loggingCommandsSaved;
+	}
 
-		String cls = webElement.getAttribute("class");
-		if (!"".equals(cls)) {
-			result.append(" class=\"");
-			result.append(cls);
-			result.append("\"");
-		}
+	/**
+	 * @return The number of driver commands that element descriptions have saved on the current thread so far, the
+	 *         StreamingReporter reports it per test.
+	 */
+	public static long getThreadLoggingCommandsSaved() {
+		return threadLoggingCommandsSaved.get()[0];
+	}
 
-		String attr = webElement.getAttribute("style");
-		if (!"".equals(attr)) {
-			result.append(" style=\"");
-			result.append(attr);
-			result.append("\"");
-		}
+	/**
+	 * Counts saved commands for the browser, the current thread and the run, the counter log.commands.saved of the
+	 * metrics report.
+	 */
+	private void saved(long commands) {
+		loggingCommandsSaved += commands;
+		threadLoggingCommandsSaved.get()[0] += commands;
+		Metrics.counter("log.commands.saved").addAndGet(commands);
+	}
 
-		result.append(" />");
+	/**
+	 * Reads the tag name and the id, class and style attributes of an element.
+	 * 
+	 * @return The four values, never null.
+	 */
+	private String[] readTagParts(WebElement webElement) {
+		WebDriver driver = driver();
+		if (driver instanceof JavascriptExecutor) {
+			try {
+				Object result = ((JavascriptExecutor) driver).executeScript(TAG_JAVASCRIPT, webElement);
+				if (result instanceof List) {
+					List<?> values = (List<?>) result;
+					String[] parts = new String[TAG_COMMANDS];
+					for (int i = 0; i < parts.length; i++) {
+						Object value = i < values.size() ? values.get(i) : null;
+						parts[i] = value == null ? "" : value.toString();
+					}
+					lastTagCommands = 1;
+					return parts;
+				}
+			} catch (WebDriverException e) {
+				log.debug("The tag could not be read with javascript: {}", e.getMessage());
+			}
+		}
+		lastTagCommands = TAG_COMMANDS;
+		return new String[] { webElement.getTagName(), webElement.getAttribute("id"),
+				webElement.getAttribute("class"), webElement.getAttribute("style") };
+	}
 
-		return result.toString();
+	private static void appendAttribute(StringBuilder result, String name, String value) {
+		if (value != null && !"".equals(value)) {
+			result.append(' ').append(name).append("=\"").append(value).append('"');
+		}
 	}
 
 	/**
@@ -411,12 +864,32 @@ public class Browser {
 	 * @param millis The time to sleep.
 	 */
 	public void sleep(long millis) {
+		long start = System.nanoTime();
 		try {
 			Thread.sleep(millis);
 		} catch (InterruptedException e) {
 			log.equals("The sleep on the thread was interrupted!");
 			e.printStackTrace();
 		}
+		Metrics.histogram("browser.sleep").recordSince(start);
+	}
+
+	/**
+	 * Records the time of a browser operation in the histogram browser.&lt;operation&gt; and counts a failed one in
+	 * browser.&lt;operation&gt;.errors.
+	 */
+	private static void operation(String name, long start, boolean done) {
+		Metrics.histogram("browser." + name).recordSince(start);
+		if (!done) {
+			Metrics.counter("browser." + name + ".errors").incrementAndGet();
+		}
+	}
+
+	/**
+	 * A piece of work run by withImplicitWait.
+	 */
+	public interface Action<T> {
+		T perform();
 	}
 
 }
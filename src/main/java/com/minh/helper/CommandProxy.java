@@ -0,0 +1,265 @@
+package com.minh.helper;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+/**
+ * Decorates a web driver so that every command sent through it, and through the elements, options, navigation and
+ * target locators it hands out, passes an interceptor. The decorated objects implement the same interfaces as the
+ * objects they wrap and are unwrapped again when passed back to the driver, e.g. as script arguments.
+ */
+public class CommandProxy implements InvocationHandler {
+	/**
+	 * Sees every command before it is sent. An interceptor must call proceed on the command to send it.
+	 */
+	public interface Interceptor {
+		Object intercept(Command command) throws Throwable;
+	}
+
+	/**
+	 * One method call on the driver or on something the driver handed out.
+	 */
+	public static class Command {
+		private final Object target;
+		private final Method method;
+		private final Object[] args;
+
+		Command(Object target, Method method, Object[] args) {
+			this.target = target;
+			this.method = method;
+			this.args = args;
+		}
+
+		/**
+		 * @return The name of the called method, e.g. findElement or click.
+		 */
+		public String getName() {
+			return method.getName();
+		}
+
+		/**
+		 * @return The selector of a lookup command or null for other commands.
+		 */
+		public By getSelector() {
+			if (args != null && args.length > 0 && args[0] instanceof By) {
+				return (By) args[0];
+			}
+			return null;
+		}
+
+		/**
+		 * @return true for calls like manage() and timeouts() that only hand out another part of the driver's API
+		 *         without talking to the browser.
+		 */
+		public boolean isAccessor() {
+			Class<?> type = method.getReturnType();
+			return method.getParameterTypes().length == 0 && type.isInterface()
+					&& type.getName().startsWith("org.openqa.selenium.") && type != WebElement.class
+					&& type != WebDriver.class;
+		}
+
+		/**
+		 * @return The arguments of the command, null if it has none.
+		 */
+		public Object[] getArguments() {
+			return args;
+		}
+
+		/**
+		 * @return The object the command is sent to.
+		 */
+		public Object getTarget() {
+			return target;
+		}
+
+		/**
+		 * Sends the command.
+		 *
+		 * @return What the command returned.
+		 */
+		public Object proceed() throws Throwable {
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return method.getDeclaringClass().getSimpleName() + "." + method.getName()
+					+ (args == null ? "()" : Arrays.asList(args).toString());
+		}
+	}
+
+	private final Object target;
+
+	private final Interceptor interceptor;
+
+	private CommandProxy(Object target, Interceptor interceptor) {
+		this.target = target;
+		this.interceptor = interceptor;
+	}
+
+	/**
+	 * @param webDriver
+	 *            The driver to decorate.
+	 * @param interceptor
+	 *            The interceptor every command passes.
+	 * @return A driver that implements the same interfaces as the given one.
+	 */
+	public static WebDriver wrap(WebDriver webDriver, Interceptor interceptor) {
+		return (WebDriver) proxy(webDriver, interceptor);
+	}
+
+	/**
+	 * @return The innermost object behind any number of decorations, or the object itself if it isn't decorated.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T unwrap(T object) {
+		Object current = object;
+		while (current != null && Proxy.isProxyClass(current.getClass())
+				&& Proxy.getInvocationHandler(current) instanceof CommandProxy) {
+			current = ((CommandProxy) Proxy.getInvocationHandler(current)).target;
+		}
+		return (T) current;
+	}
+
+	/**
+	 * @param object
+	 *            A decorated object.
+	 * @param types
+	 *            The interceptor types of the decorations to take off.
+	 * @return The object without the outer decorations whose interceptor is of one of the types. The decorations
+	 *         further in are kept.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T unwrap(T object, Class<?>... types) {
+		Object current = object;
+		while (current != null && Proxy.isProxyClass(current.getClass())
+				&& Proxy.getInvocationHandler(current) instanceof CommandProxy) {
+			CommandProxy handler = (CommandProxy) Proxy.getInvocationHandler(current);
+			if (!isAny(handler.interceptor, types)) {
+				break;
+			}
+			current = handler.target;
+		}
+		return (T) current;
+	}
+
+	/**
+	 * @return The interceptor of the outermost decoration of the given type or null if the object has none.
+	 */
+	public static <I extends Interceptor> I interceptorOf(Object object, Class<I> type) {
+		Object current = object;
+		while (current != null && Proxy.isProxyClass(current.getClass())
+				&& Proxy.getInvocationHandler(current) instanceof CommandProxy) {
+			CommandProxy handler = (CommandProxy) Proxy.getInvocationHandler(current);
+			if (type.isInstance(handler.interceptor)) {
+				return type.cast(handler.interceptor);
+			}
+			current = handler.target;
+		}
+		return null;
+	}
+
+	private static boolean isAny(Object object, Class<?>[] types) {
+		for (Class<?> type : types) {
+			if (type.isInstance(object)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			if ("equals".equals(method.getName())) {
+				return target.equals(unwrap(args[0]));
+			}
+			return method.invoke(target, args);
+		}
+		Object result = interceptor.intercept(new Command(target, method, unwrapAll(args)));
+		return decorate(result, method.getReturnType());
+	}
+
+	private Object decorate(Object result, Class<?> declaredType) {
+		if (result == null || isDecoratedBy(result, interceptor)) {
+			return result;
+		}
+		if (result instanceof WebElement) {
+			return proxy(result, interceptor);
+		}
+		if (result instanceof List) {
+			List<Object> decorated = new ArrayList<Object>();
+			for (Object item : (List<?>) result) {
+				decorated.add(item instanceof WebElement ? proxy(item, interceptor) : item);
+			}
+			return decorated;
+		}
+		if (declaredType.isInterface() && declaredType.getName().startsWith("org.openqa.selenium.")) {
+			return proxy(result, interceptor);
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if the object is already decorated with the interceptor. Objects handed out by a decoration further
+	 *         in are decorated again, so that every layer sees the commands sent to them.
+	 */
+	private static boolean isDecoratedBy(Object object, Interceptor interceptor) {
+		if (!Proxy.isProxyClass(object.getClass())) {
+			return false;
+		}
+		InvocationHandler handler = Proxy.getInvocationHandler(object);
+		return !(handler instanceof CommandProxy) || ((CommandProxy) handler).interceptor == interceptor;
+	}
+
+	private static Object[] unwrapAll(Object[] args) {
+		if (args == null) {
+			return null;
+		}
+		/* Keep the array type, varargs such as CharSequence... must stay what the method expects */
+		Object[] unwrapped = (Object[]) Array.newInstance(args.getClass().getComponentType(), args.length);
+		for (int i = 0; i < args.length; i++) {
+			Object arg = unwrap(args[i]);
+			if (arg instanceof Object[]) {
+				arg = unwrapAll((Object[]) arg);
+			} else if (arg instanceof List) {
+				List<Object> list = new ArrayList<Object>();
+				for (Object item : (List<?>) arg) {
+					list.add(unwrap(item));
+				}
+				arg = list;
+			}
+			unwrapped[i] = arg;
+		}
+		return unwrapped;
+	}
+
+	private static Object proxy(Object target, Interceptor interceptor) {
+		Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+		for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+			for (Class<?> implemented : type.getInterfaces()) {
+				if (Modifier.isPublic(implemented.getModifiers())) {
+					interfaces.add(implemented);
+				}
+			}
+		}
+		return Proxy.newProxyInstance(CommandProxy.class.getClassLoader(),
+				interfaces.toArray(new Class<?>[interfaces.size()]), new CommandProxy(target, interceptor));
+	}
+}
@@ -0,0 +1,63 @@
+package com.minh.helper;
+
+import org.openqa.selenium.By;
+
+import com.minh.helper.CommandProxy.Command;
+import com.minh.metrics.Metrics;
+
+/**
+ * Times every command sent to a decorated driver. The durations go to the histograms command.&lt;name&gt;, e.g.
+ * command.findElement, and for lookups also to selector.&lt;selector&gt;. Turned on with -Dgui.instrument=true.
+ */
+public class CommandTimer implements CommandProxy.Interceptor {
+	/**
+	 * The system property that turns the timing of driver commands on.
+	 */
+	public static final String ENABLED_PROPERTY = "gui.instrument";
+
+	private static final CommandTimer instance = new CommandTimer();
+
+	/* The number of commands sent by each thread */
+	private static final ThreadLocal<long[]> commandCount = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
+	public static CommandTimer getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @return true if drivers should be decorated with the timer.
+	 */
+	public static boolean isEnabled() {
+		return Boolean.getBoolean(ENABLED_PROPERTY);
+	}
+
+	/**
+	 * @return The number of timed commands the current thread has sent so far.
+	 */
+	public static long getCommandCount() {
+		return commandCount.get()[0];
+	}
+
+	public Object intercept(Command command) throws Throwable {
+		if (command.isAccessor()) {
+			return command.proceed();
+		}
+		long start = System.nanoTime();
+		try {
+			return command.proceed();
+		} finally {
+			long nanos = System.nanoTime() - start;
+			commandCount.get()[0]++;
+			Metrics.histogram("command." + command.getName()).record(nanos);
+			By selector = command.getSelector();
+			if (selector != null) {
+				Metrics.histogram("selector." + selector).record(nanos);
+			}
+		}
+	}
+}
@@ -4,6 +4,8 @@ import java.io.File;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
@@ -17,9 +19,14 @@ import org.openqa.selenium.remote.DesiredCapabilities;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.minh.metrics.Metrics;
+
 public class CreateDriver {
 	static final Logger log = LoggerFactory.getLogger(CreateDriver.class);
 
+	/* Held while a supervised driver starts, the new processes of the JVM are then the driver's */
+	private static final Object SUPERVISED_STARTS = new Object();
+
 	static final Map<String, String> profileDirs = new HashMap<String, String>();
 	static {
 		profileDirs.put("win7+", "%1$sC:/Users/%2$s/AppData/Local/Google/Chrome/User Data/%3$s");
@@ -39,14 +46,38 @@ public class CreateDriver {
 	}
 
 	/**
-	 * This is the createWebDriver main switch method.
+	 * This is the createWebDriver main switch method. The startup time of every driver is logged and recorded in the
+	 * histogram driver.start.&lt;driverName&gt;. Drivers that run outside the JVM are handed out supervised, see
+	 * DriverSupervisor, with the processes that were started along with them. Supervised drivers are started one at a
+	 * time, so the processes that turn up while one starts are its own and a hang never kills another driver.
 	 * 
 	 * @param driverName
 	 *            The name of the wanted driver.
 	 * @return An instantiated driver of your choice.
 	 */
 	public WebDriver createWebDriver(String driverName, String profile, String[] pathArray) {
+		if (!DriverSupervisor.isEnabled() || !DriverSupervisor.isSupervised(driverName)) {
+			return timedStart(driverName, profile, pathArray);
+		}
+		synchronized (SUPERVISED_STARTS) {
+			int self = ProcessTree.selfPid();
+			Set<Integer> before = ProcessTree.descendants(self);
+			WebDriver webDriver = timedStart(driverName, profile, pathArray);
+			Set<Integer> pids = ProcessTree.descendants(self);
+			pids.removeAll(before);
+			return DriverSupervisor.supervise(webDriver, driverName, pids);
+		}
+	}
+
+	private WebDriver timedStart(String driverName, String profile, String[] pathArray) {
+		long start = System.nanoTime();
+		WebDriver webDriver = startWebDriver(driverName, profile, pathArray);
+		long nanos = Metrics.histogram("driver.start." + driverName).recordSince(start);
+		log.info("The {} driver was started in {} ms.", driverName, TimeUnit.NANOSECONDS.toMillis(nanos));
+		return webDriver;
+	}
 
+	private WebDriver startWebDriver(String driverName, String profile, String[] pathArray) {
 		driverName = osSpecificDriverAdjustments(driverName);
 
 		if (driverName.equals(Browser.FIREFOX)) {
@@ -135,16 +166,20 @@ public class CreateDriver {
 	private WebDriver firefoxWebDriver(String profile, String[] pathArray) {
 		DesiredCapabilities capabilities = DesiredCapabilities.firefox();
 
-		ProfilesIni profilesIni = new ProfilesIni();
-
-		FirefoxProfile firefoxProfile = profilesIni.getProfile(profile.toLowerCase());
-		if (firefoxProfile != null) {
-			firefoxProfile.setAcceptUntrustedCertificates(true);
-			firefoxProfile.setAssumeUntrustedCertificateIssuer(false);
+		FirefoxProfile firefoxProfile;
+		if (FirefoxProfileTemplate.isEnabled()) {
+			/* Copying a prepared template is much cheaper than laying out the user's profile on every launch */
+			firefoxProfile = FirefoxProfileTemplate.newProfile(profile);
 		} else {
-			log.warn("Unable to find the " + profile + " Firefox profile, try to start Firefox manually to create the "
-					+ profile + " profile.");
-			log.info("You might be running Windows 7 or above that prevents this feature.");
+			firefoxProfile = new ProfilesIni().getProfile(profile.toLowerCase());
+			if (firefoxProfile != null) {
+				firefoxProfile.setAcceptUntrustedCertificates(true);
+				firefoxProfile.setAssumeUntrustedCertificateIssuer(false);
+			} else {
+				log.warn("Unable to find the " + profile
+						+ " Firefox profile, try to start Firefox manually to create the " + profile + " profile.");
+				log.info("You might be running Windows 7 or above that prevents this feature.");
+			}
 		}
 
 		WebDriver firefox;
@@ -153,7 +188,7 @@ public class CreateDriver {
 		} catch (Exception e) {
 			/* This hack is here to solve the problem that Selenium has to find the firefox executable. */
 			if (pathArray != null) {
-				File binaryFile = findExecutable(pathArray, "firefox.exe");
+				File binaryFile = new ExecutableFinder().find(pathArray, "firefox.exe");
 				if (binaryFile == null) {
 					throw new RuntimeException("The wanted file firefox.exe was not found within the paths in "
 							+ Arrays.toString(pathArray));
@@ -169,13 +204,14 @@ public class CreateDriver {
 	}
 
 	/**
-	 * This driver is by far the fastest but it isn't 100% accurate.
+	 * This driver is by far the fastest but it isn't 100% accurate. It keeps compiled xpath expressions between
+	 * lookups and is tuned by the system properties of HeadlessProfile, see HeadlessDriver.
 	 * 
 	 * @return The instantiated browser.
 	 */
 	private WebDriver headlessWebDriver() {
 		log.warn("The headless browser isn't fully working (as of 2012-10-17)");
-		HtmlUnitDriver htmlUnitDriver = new HtmlUnitDriver();
+		HtmlUnitDriver htmlUnitDriver = new HeadlessDriver();
 		htmlUnitDriver.setJavascriptEnabled(true);
 		return htmlUnitDriver;
 	}
@@ -197,50 +233,6 @@ public class CreateDriver {
 		return driverName;
 	}
 
-	/**
-	 * This helper method traverses through a folder hierarchy to find the wanted file.
-	 * 
-	 * @param pathArray
-	 *            One or more paths to start look from.
-	 * @param wanted
-	 *            The filename including the extension.
-	 * @return The file object pointing to the found file or null.
-	 */
-	private File findExecutable(String[] pathArray, String wanted) {
-		for (String path : pathArray) {
-			File file = new File(path);
-			return findFile(file, wanted);
-		}
-		return null;
-	}
-
-	/**
-	 * Helper method that using recursion traverses down a folder hierarchy to find a specific file.
-	 * 
-	 * @param file
-	 * @param wanted
-	 * @return
-	 */
-	private File findFile(File file, String wanted) {
-		if (file.isDirectory()) {
-			log.info("Looking into directory " + file.getAbsolutePath() + " for the " + wanted + " file.");
-			File[] fileArray = file.listFiles();
-			for (File childFile : fileArray) {
-				File returnedFile = findFile(childFile, wanted);
-				if (returnedFile != null) {
-					return returnedFile;
-				}
-			}
-		}
-		if (file.isFile()) {
-			String found = file.getName();
-			if (found.equals(wanted)) {
-				return file;
-			}
-		}
-		return null;
-	}
-
 	/**
 	 * This helper function returns the users name
 	 * 
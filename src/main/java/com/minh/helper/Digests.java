@@ -0,0 +1,29 @@
+package com.minh.helper;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content hashes for keeping things by what they hold rather than where they came from, e.g. shared response bodies
+ * and the files of failure captures.
+ */
+final class Digests {
+	private Digests() {
+	}
+
+	/**
+	 * @return The SHA-1 of the bytes in lower case hex.
+	 */
+	static String sha1(byte[] bytes) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+			StringBuilder result = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return result.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is missing from the JVM.", e);
+		}
+	}
+}
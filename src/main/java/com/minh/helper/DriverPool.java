@@ -0,0 +1,435 @@
+package com.minh.helper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of started web drivers. Starting a browser is by far the most expensive part of a test so instead of
+ * quitting the driver after each test it is returned to this pool, reset and handed out again to the next test that
+ * asks for the same browser type.
+ *
+ * At most size drivers are started per browser type. When all of them are leased the caller waits until one is
+ * returned.
+ *
+ * With a DriverWatchdog the pool retires drivers that have degraded when they are returned, the next lease starts a
+ * fresh one in its place.
+ */
+public class DriverPool {
+	static final Logger log = LoggerFactory.getLogger(DriverPool.class);
+
+	/**
+	 * The system property that sets the size of the default pool.
+	 */
+	public static final String SIZE_PROPERTY = "gui.pool.size";
+
+	/**
+	 * The number of drivers per browser type the default pool keeps if nothing else is said.
+	 */
+	public static final int DEFAULT_SIZE = 2;
+
+	/**
+	 * Clears the web storage of the current page. Wrapped in try since some browsers throw on about:blank and file
+	 * urls.
+	 */
+	static final String CLEAR_STORAGE_JAVASCRIPT = "try { window.localStorage.clear(); } catch (e) {} "
+			+ "try { window.sessionStorage.clear(); } catch (e) {}";
+
+	/**
+	 * How often a waiting lease checks if a discarded driver has freed up room for a new one.
+	 */
+	private static final long LEASE_POLL_MILLIS = 100L;
+
+	private static DriverPool defaultPool = null;
+
+	private final CreateDriver createDriver;
+
+	private final int size;
+
+	private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+
+	private volatile DriverWatchdog watchdog = null;
+
+	/**
+	 * Creates a pool that keeps up to size drivers per browser type.
+	 *
+	 * @param size
+	 *            The maximum number of started drivers per browser type.
+	 */
+	public DriverPool(int size) {
+		this(size, new CreateDriver());
+	}
+
+	/**
+	 * Creates a pool that uses the given factory to start new drivers.
+	 *
+	 * @param size
+	 *            The maximum number of started drivers per browser type.
+	 * @param createDriver
+	 *            The factory of the drivers.
+	 */
+	public DriverPool(int size, CreateDriver createDriver) {
+		if (size < 1) {
+			throw new IllegalArgumentException("The pool size must be at least 1 but was " + size);
+		}
+		this.size = size;
+		this.createDriver = createDriver;
+	}
+
+	/**
+	 * The pool usually given to Browser(String, DriverPool). Its size is read from the gui.pool.size system property
+	 * and its watchdog from the gui.recycle properties. The idle drivers are quit when the JVM exits.
+	 *
+	 * @return The shared pool.
+	 */
+	public static synchronized DriverPool getDefault() {
+		if (defaultPool == null) {
+			final DriverPool pool = new DriverPool(Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE));
+			pool.setWatchdog(DriverWatchdog.fromProperties());
+			Runtime.getRuntime().addShutdownHook(new Thread("driver-pool-shutdown") {
+				@Override
+				public void run() {
+					pool.logStatistics();
+					pool.shutdown();
+				}
+			});
+			defaultPool = pool;
+		}
+		return defaultPool;
+	}
+
+	/**
+	 * @param watchdog
+	 *            The watchdog that tells when a driver should be retired, null to keep drivers until shutdown.
+	 */
+	public void setWatchdog(DriverWatchdog watchdog) {
+		this.watchdog = watchdog;
+	}
+
+	public DriverWatchdog getWatchdog() {
+		return watchdog;
+	}
+
+	/**
+	 * Starts drivers of the given type in parallel until the pool is full for that type. Use this in a suite setup to
+	 * move the start up cost out of the first tests.
+	 *
+	 * @param browserType
+	 *            One of the browser constants in Browser.
+	 */
+	public void warm(final String browserType) {
+		final Slot slot = slot(browserType);
+		List<Callable<WebDriver>> starters = new ArrayList<Callable<WebDriver>>();
+		while (slot.reserve()) {
+			starters.add(new Callable<WebDriver>() {
+				public WebDriver call() {
+					return start(slot, browserType);
+				}
+			});
+		}
+		if (starters.isEmpty()) {
+			return;
+		}
+		log.info("Warming the pool with {} {} drivers.", starters.size(), browserType);
+		ExecutorService executor = Executors.newFixedThreadPool(starters.size());
+		try {
+			for (Future<WebDriver> future : executor.invokeAll(starters)) {
+				try {
+					slot.idle.offer(future.get());
+				} catch (Exception e) {
+					log.warn("A {} driver could not be started while warming the pool.", browserType, e);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Hands out a started driver of the wanted type. An idle driver is reused if there is one, otherwise a new one is
+	 * started if the pool has room for it. If not the call waits until another driver is returned.
+	 *
+	 * @param browserType
+	 *            One of the browser constants in Browser.
+	 * @return A started driver that must be given back with release.
+	 */
+	public WebDriver lease(String browserType) {
+		Slot slot = slot(browserType);
+		slot.leases.incrementAndGet();
+		WebDriver webDriver = slot.idle.poll();
+		if (webDriver != null) {
+			slot.hits.incrementAndGet();
+			log.debug("Leased an idle {} driver from the pool.", browserType);
+			return handOut(webDriver);
+		}
+		/* Only the time spent waiting for a returned driver counts, not starting one */
+		long waited = 0L;
+		try {
+			while (true) {
+				if (slot.reserve()) {
+					return handOut(start(slot, browserType));
+				}
+				long start = System.nanoTime();
+				try {
+					webDriver = slot.idle.poll(LEASE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+				} finally {
+					waited += System.nanoTime() - start;
+				}
+				if (webDriver != null) {
+					slot.hits.incrementAndGet();
+					return handOut(webDriver);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for a " + browserType + " driver.", e);
+		} finally {
+			if (waited > 0L) {
+				slot.waitNanos.addAndGet(waited);
+				log.debug("Waited {} ms for a {} driver.", TimeUnit.NANOSECONDS.toMillis(waited), browserType);
+			}
+		}
+	}
+
+	/**
+	 * Gives a leased driver back to the pool. The driver is reset before it is made available again and thrown away
+	 * if that fails or if the watchdog says it should be retired.
+	 *
+	 * @param browserType
+	 *            The browser type the driver was leased as.
+	 * @param webDriver
+	 *            The leased driver.
+	 */
+	public void release(String browserType, WebDriver webDriver) {
+		Slot slot = slot(browserType);
+		webDriver = CommandProxy.unwrap(webDriver, CommandTimer.class, DriverWatchdog.Health.class);
+		DriverWatchdog current = watchdog;
+		String reason = current == null ? null : current.check(webDriver);
+		if (reason != null) {
+			log.info("The {} driver is recycled since {}.", browserType, reason);
+			slot.recycled.incrementAndGet();
+			discard(browserType, webDriver);
+			return;
+		}
+		try {
+			reset(webDriver);
+		} catch (WebDriverException e) {
+			log.warn("The {} driver could not be reset and is discarded.", browserType, e);
+			discard(browserType, webDriver);
+			return;
+		}
+		slot.idle.offer(webDriver);
+	}
+
+	/**
+	 * Quits a leased driver and frees its place in the pool. Use this instead of release when the driver is known to
+	 * be broken.
+	 *
+	 * @param browserType
+	 *            The browser type the driver was leased as.
+	 * @param webDriver
+	 *            The leased driver.
+	 */
+	public void discard(String browserType, WebDriver webDriver) {
+		Slot slot = slot(browserType);
+		slot.created.decrementAndGet();
+		webDriver = CommandProxy.unwrap(webDriver, CommandTimer.class, DriverWatchdog.Health.class);
+		DriverWatchdog current = watchdog;
+		if (current != null) {
+			current.forget(webDriver);
+		}
+		try {
+			webDriver.quit();
+		} catch (WebDriverException e) {
+			log.debug("Quitting a discarded {} driver failed.", browserType, e);
+		}
+	}
+
+	/**
+	 * Brings a driver back to a blank state: a single window, no cookies, no web storage and about:blank loaded.
+	 * Cookies and storage are cleared before leaving the page since they can only be reached from their own origin.
+	 *
+	 * @param webDriver
+	 *            The driver to reset.
+	 */
+	protected void reset(WebDriver webDriver) {
+		Set<String> handles = webDriver.getWindowHandles();
+		if (handles.size() > 1) {
+			String keep = handles.iterator().next();
+			for (String handle : handles) {
+				if (!handle.equals(keep)) {
+					webDriver.switchTo().window(handle).close();
+				}
+			}
+			webDriver.switchTo().window(keep);
+		}
+		webDriver.manage().deleteAllCookies();
+		if (webDriver instanceof JavascriptExecutor) {
+			try {
+				((JavascriptExecutor) webDriver).executeScript(CLEAR_STORAGE_JAVASCRIPT);
+			} catch (WebDriverException e) {
+				/* HtmlUnit refuses scripts before the first page is loaded, there is no storage to clear then */
+				log.debug("The web storage could not be cleared: {}", e.getMessage());
+			}
+		}
+		webDriver.get("about:blank");
+	}
+
+	/**
+	 * Quits all idle drivers. Leased drivers are quit when they are released or discarded by their owners.
+	 */
+	public void shutdown() {
+		for (Map.Entry<String, Slot> entry : slots.entrySet()) {
+			WebDriver webDriver;
+			while ((webDriver = entry.getValue().idle.poll()) != null) {
+				discard(entry.getKey(), webDriver);
+			}
+		}
+	}
+
+	/**
+	 * @return The share of the leases, over all browser types, that got an already started driver, also after waiting
+	 *         for it to be returned.
+	 */
+	public double getHitRate() {
+		long leases = 0;
+		long hits = 0;
+		for (Slot slot : slots.values()) {
+			leases += slot.leases.get();
+			hits += slot.hits.get();
+		}
+		return leases == 0 ? 0.0 : (double) hits / leases;
+	}
+
+	/**
+	 * @return The total time, over all browser types, callers have spent waiting for a driver to be returned. Starting
+	 *         a driver isn't waiting.
+	 */
+	public long getWaitMillis() {
+		long waitNanos = 0;
+		for (Slot slot : slots.values()) {
+			waitNanos += slot.waitNanos.get();
+		}
+		return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+	}
+
+	/**
+	 * Logs the hit rate, wait time and recycled drivers per browser type.
+	 */
+	public void logStatistics() {
+		for (Map.Entry<String, Slot> entry : slots.entrySet()) {
+			Slot slot = entry.getValue();
+			long leases = slot.leases.get();
+			log.info("Driver pool {}: {} leases, {} hits ({}%), {} ms waiting, {} drivers started, {} recycled.",
+					new Object[] { entry.getKey(), leases, slot.hits.get(),
+							leases == 0 ? 0 : 100 * slot.hits.get() / leases,
+							TimeUnit.NANOSECONDS.toMillis(slot.waitNanos.get()), slot.started.get(),
+							slot.recycled.get() });
+		}
+		DriverWatchdog current = watchdog;
+		if (current != null) {
+			current.logStatistics();
+		}
+	}
+
+	private WebDriver start(Slot slot, String browserType) {
+		try {
+			DriverWatchdog current = watchdog;
+			/* Supervised drivers come with their processes */
+			boolean tracked = current != null && current.isTrackingProcesses()
+					&& DriverSupervisor.isSupervised(browserType) && !DriverSupervisor.isEnabled();
+			int self = ProcessTree.selfPid();
+			Set<Integer> before = tracked ? ProcessTree.descendants(self) : Collections.<Integer> emptySet();
+			WebDriver webDriver = createDriver.createWebDriver(browserType);
+			slot.started.incrementAndGet();
+			if (current != null) {
+				/* Drivers started at the same time by warm may get each other's processes, which is good enough */
+				Set<Integer> pids = new HashSet<Integer>(DriverSupervisor.pidsOf(webDriver));
+				if (tracked) {
+					pids.addAll(ProcessTree.descendants(self));
+					pids.removeAll(before);
+				}
+				current.register(webDriver, pids);
+			}
+			return webDriver;
+		} catch (RuntimeException e) {
+			slot.created.decrementAndGet();
+			throw e;
+		}
+	}
+
+	private Slot slot(String browserType) {
+		Slot slot = slots.get(browserType);
+		if (slot == null) {
+			Slot created = new Slot(size);
+			slot = slots.putIfAbsent(browserType, created);
+			if (slot == null) {
+				slot = created;
+			}
+		}
+		return slot;
+	}
+
+	/**
+	 * @return The driver as handed out to a caller, watched if there is a watchdog.
+	 */
+	private WebDriver handOut(WebDriver webDriver) {
+		DriverWatchdog current = watchdog;
+		return current == null ? webDriver : current.watch(webDriver);
+	}
+
+	/**
+	 * The idle drivers and counters of one browser type.
+	 */
+	private static class Slot {
+		final BlockingQueue<WebDriver> idle = new LinkedBlockingQueue<WebDriver>();
+		final int size;
+		/* Drivers started or being started that have not been discarded */
+		final AtomicInteger created = new AtomicInteger();
+		final AtomicLong started = new AtomicLong();
+		final AtomicLong leases = new AtomicLong();
+		final AtomicLong hits = new AtomicLong();
+		final AtomicLong waitNanos = new AtomicLong();
+		final AtomicLong recycled = new AtomicLong();
+
+		Slot(int size) {
+			this.size = size;
+		}
+
+		/**
+		 * Claims room for one more driver if the pool isn't full.
+		 */
+		boolean reserve() {
+			int current;
+			do {
+				current = created.get();
+				if (current >= size) {
+					return false;
+				}
+			} while (!created.compareAndSet(current, current + 1));
+			return true;
+		}
+	}
+}
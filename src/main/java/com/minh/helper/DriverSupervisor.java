@@ -0,0 +1,317 @@
+package com.minh.helper;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.minh.helper.CommandProxy.Command;
+import com.minh.metrics.Metrics;
+
+/**
+ * Puts a deadline on every command sent to a native driver. A command that gets no answer in time means the browser
+ * or driver server hangs: the processes of the driver are killed, which makes the command fail, and every later
+ * command fails at once. Browser starts a new driver in place of a killed one, so only the test that ran into the hang
+ * fails.
+ *
+ * The deadline of a command is the supervisor timeout plus what the driver itself may take: the implicit wait for
+ * lookups, the script timeout for asynchronous scripts and the page load timeout for navigation. Processes of quit
+ * drivers that are still running a while later, and of all drivers when the JVM exits, are killed as orphans. A
+ * process is only killed while its start time is the one it had when the driver started, never another process that
+ * got its id later.
+ *
+ * Set gui.supervisor=false to turn supervision off and gui.supervisor.timeout to the timeout in milliseconds, 60000 by
+ * default.
+ */
+public class DriverSupervisor implements CommandProxy.Interceptor {
+	static final Logger log = LoggerFactory.getLogger(DriverSupervisor.class);
+
+	public static final String ENABLED_PROPERTY = "gui.supervisor";
+
+	public static final String TIMEOUT_PROPERTY = "gui.supervisor.timeout";
+
+	static final long DEFAULT_TIMEOUT_MILLIS = 60000L;
+
+	/**
+	 * How often the commands in flight are checked against their deadlines.
+	 */
+	static final long CHECK_INTERVAL_MILLIS = 250L;
+
+	/**
+	 * How long a quit driver's processes may take to exit before they count as orphans.
+	 */
+	static final long ORPHAN_GRACE_MILLIS = 5000L;
+
+	static final Set<String> LOOKUP_COMMANDS = new HashSet<String>(Arrays.asList("findElement", "findElements"));
+
+	static final Set<String> NAVIGATION_COMMANDS = new HashSet<String>(Arrays.asList("get", "to", "back", "forward",
+			"refresh", "click", "submit"));
+
+	private static final Set<DriverSupervisor> active = Collections.synchronizedSet(new HashSet<DriverSupervisor>());
+
+	/* The processes of all drivers started in this JVM that may still run, with their identities */
+	private static final Map<Integer, String> started = Collections
+			.synchronizedMap(new LinkedHashMap<Integer, String>());
+
+	private static ScheduledExecutorService checker = null;
+
+	private final String name;
+
+	private final Map<Integer, String> pids;
+
+	private final long timeoutMillis;
+
+	private volatile long implicitWaitMillis = 0L;
+
+	private volatile long scriptTimeoutMillis = 0L;
+
+	private volatile long pageLoadTimeoutMillis = 0L;
+
+	/* The command in flight and when it has to be answered by, 0 when idle */
+	private volatile String command = null;
+
+	private volatile long deadline = 0L;
+
+	private volatile boolean killed = false;
+
+	private DriverSupervisor(String name, Map<Integer, String> pids, long timeoutMillis) {
+		this.name = name;
+		this.pids = pids;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * @return true unless supervision is turned off by the system property.
+	 */
+	public static boolean isEnabled() {
+		return !"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY));
+	}
+
+	/**
+	 * @return true for drivers that run outside the JVM and so can hang and be killed.
+	 */
+	public static boolean isSupervised(String browserType) {
+		return !Browser.HEADLESS.equals(browserType) && !Browser.MOCK.equals(browserType);
+	}
+
+	/**
+	 * Decorates a new driver with a supervisor that uses the timeout of the system property.
+	 */
+	public static WebDriver supervise(WebDriver webDriver, String name, Set<Integer> pids) {
+		return supervise(webDriver, name, pids, Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT_MILLIS));
+	}
+
+	/**
+	 * Decorates a new driver with a supervisor.
+	 * 
+	 * @param webDriver
+	 *            The driver as it was created.
+	 * @param name
+	 *            The name of the driver in log messages, e.g. the browser type.
+	 * @param pids
+	 *            The processes started with the driver, killed if it hangs.
+	 * @param timeoutMillis
+	 *            The time a command may take on top of the driver's own timeouts.
+	 * @return The supervised driver.
+	 */
+	public static WebDriver supervise(WebDriver webDriver, String name, Set<Integer> pids, long timeoutMillis) {
+		/* Identified right away, only these processes are ever killed and not others that later get their ids */
+		Map<Integer, String> identities = ProcessTree.identities(pids);
+		DriverSupervisor supervisor = new DriverSupervisor(name, identities, timeoutMillis);
+		started.putAll(identities);
+		active.add(supervisor);
+		startChecker();
+		log.debug("The {} driver is supervised with the processes {}.", name, pids);
+		return CommandProxy.wrap(webDriver, supervisor);
+	}
+
+	/**
+	 * @return true if the driver hung and was killed, any command sent to it fails.
+	 */
+	public static boolean isKilled(WebDriver webDriver) {
+		DriverSupervisor supervisor = CommandProxy.interceptorOf(webDriver, DriverSupervisor.class);
+		return supervisor != null && supervisor.killed;
+	}
+
+	/**
+	 * @return The processes of a supervised driver, empty for other drivers.
+	 */
+	public static Set<Integer> pidsOf(WebDriver webDriver) {
+		DriverSupervisor supervisor = CommandProxy.interceptorOf(webDriver, DriverSupervisor.class);
+		if (supervisor == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(supervisor.pids.keySet());
+	}
+
+	/**
+	 * @return true if the process belongs to a driver that was neither killed nor reaped after quit.
+	 */
+	static boolean isStarted(int pid) {
+		return started.containsKey(pid);
+	}
+
+	public Object intercept(Command command) throws Throwable {
+		String commandName = command.getName();
+		boolean quit = "quit".equals(commandName);
+		if (killed) {
+			if (quit || "close".equals(commandName)) {
+				return null;
+			}
+			throw new TimeoutException("The " + name + " driver was killed after it hung, " + commandName
+					+ " can't be sent to it.");
+		}
+		if (command.isAccessor()) {
+			return command.proceed();
+		}
+		long allowed = timeoutMillis + driverTimeoutOf(commandName);
+		this.command = commandName;
+		deadline = System.currentTimeMillis() + allowed;
+		try {
+			Object result = command.proceed();
+			remember(command);
+			return result;
+		} catch (Throwable e) {
+			if (killed) {
+				throw new TimeoutException("The " + commandName + " command got no answer from the " + name
+						+ " driver within " + allowed + " ms, the driver was killed.", e);
+			}
+			throw e;
+		} finally {
+			deadline = 0L;
+			this.command = null;
+			if (quit) {
+				active.remove(this);
+				watchForOrphans();
+			}
+		}
+	}
+
+	/**
+	 * @return The time the driver itself may take for a command.
+	 */
+	private long driverTimeoutOf(String commandName) {
+		if (LOOKUP_COMMANDS.contains(commandName)) {
+			return implicitWaitMillis;
+		}
+		if ("executeAsyncScript".equals(commandName)) {
+			return scriptTimeoutMillis;
+		}
+		if (NAVIGATION_COMMANDS.contains(commandName)) {
+			return pageLoadTimeoutMillis;
+		}
+		return 0L;
+	}
+
+	/**
+	 * Keeps track of the timeouts set on the driver.
+	 */
+	private void remember(Command command) {
+		Object[] args = command.getArguments();
+		if (args == null || args.length != 2 || !(args[0] instanceof Long) || !(args[1] instanceof TimeUnit)) {
+			return;
+		}
+		long millis = ((TimeUnit) args[1]).toMillis((Long) args[0]);
+		String commandName = command.getName();
+		if ("implicitlyWait".equals(commandName)) {
+			implicitWaitMillis = millis;
+		} else if ("setScriptTimeout".equals(commandName)) {
+			scriptTimeoutMillis = millis;
+		} else if ("pageLoadTimeout".equals(commandName)) {
+			pageLoadTimeoutMillis = millis;
+		}
+	}
+
+	/**
+	 * Kills the driver if its command in flight is past its deadline.
+	 */
+	private void check(long now) {
+		long due = deadline;
+		if (due == 0L || now < due || killed) {
+			return;
+		}
+		killed = true;
+		active.remove(this);
+		Metrics.counter("driver.hung").incrementAndGet();
+		log.error("The {} command got no answer from the {} driver in time, killing its processes {}.", new Object[] {
+				command, name, pids.keySet() });
+		started.keySet().removeAll(pids.keySet());
+		ProcessTree.kill(ProcessTree.unchanged(pids));
+	}
+
+	/**
+	 * Kills what is left of the driver's processes once they had time to exit.
+	 */
+	private void watchForOrphans() {
+		if (pids.isEmpty()) {
+			return;
+		}
+		checker.schedule(new Runnable() {
+			public void run() {
+				Set<Integer> orphans = ProcessTree.unchanged(pids);
+				if (!orphans.isEmpty()) {
+					log.warn("The processes {} of the quit {} driver are still running and are killed.", orphans, name);
+					Metrics.counter("driver.orphans").addAndGet(ProcessTree.kill(orphans));
+				}
+				started.keySet().removeAll(pids.keySet());
+			}
+		}, ORPHAN_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts the deadline checks and registers the reaper of orphans at JVM exit, once.
+	 */
+	private static synchronized void startChecker() {
+		if (checker != null) {
+			return;
+		}
+		checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "gui-supervisor");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		checker.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				long now = System.currentTimeMillis();
+				DriverSupervisor[] supervisors;
+				synchronized (active) {
+					supervisors = active.toArray(new DriverSupervisor[active.size()]);
+				}
+				for (DriverSupervisor supervisor : supervisors) {
+					try {
+						supervisor.check(now);
+					} catch (RuntimeException e) {
+						log.warn("The {} driver could not be checked.", supervisor.name, e);
+					}
+				}
+			}
+		}, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		Runtime.getRuntime().addShutdownHook(new Thread("driver-reaper") {
+			@Override
+			public void run() {
+				Map<Integer, String> identities;
+				synchronized (started) {
+					identities = new LinkedHashMap<Integer, String>(started);
+				}
+				Set<Integer> orphans = ProcessTree.unchanged(identities);
+				if (!orphans.isEmpty()) {
+					log.warn("Killing the driver processes {} left at exit.", orphans);
+					ProcessTree.kill(orphans);
+				}
+			}
+		});
+	}
+}
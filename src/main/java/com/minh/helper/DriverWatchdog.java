@@ -0,0 +1,387 @@
+package com.minh.helper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.minh.helper.CommandProxy.Command;
+import com.minh.metrics.Metrics;
+
+/**
+ * Watches the health of pooled drivers and tells the pool when one should be retired. Long lived drivers degrade:
+ * HtmlUnit piles up windows and script objects, real browsers grow and slow down. A driver is recycled when it has
+ * loaded too many pages, when its commands have become too slow compared to its first ones, when the heap after the
+ * last collection is too full (headless drivers live in the JVM) or when its processes use too much memory (native
+ * drivers, read from /proc).
+ *
+ * The thresholds are read from system properties, 0 turns a check off:
+ * <ul>
+ * <li>gui.recycle - false to turn the watchdog off, default true</li>
+ * <li>gui.recycle.pages - the pages a driver may load, default 500</li>
+ * <li>gui.recycle.latency - how many times slower than at first a command may get, default 3</li>
+ * <li>gui.recycle.heap - the share of the heap in use after a collection, default 0.85</li>
+ * <li>gui.recycle.heap.interval - the milliseconds between two drivers recycled for the heap, default 30000</li>
+ * <li>gui.recycle.rss - the megabytes the processes of a native driver may use, default 0</li>
+ * </ul>
+ */
+public class DriverWatchdog {
+	static final Logger log = LoggerFactory.getLogger(DriverWatchdog.class);
+
+	public static final String ENABLED_PROPERTY = "gui.recycle";
+
+	public static final String PAGES_PROPERTY = "gui.recycle.pages";
+
+	public static final String LATENCY_PROPERTY = "gui.recycle.latency";
+
+	public static final String HEAP_PROPERTY = "gui.recycle.heap";
+
+	public static final String HEAP_INTERVAL_PROPERTY = "gui.recycle.heap.interval";
+
+	public static final String RSS_PROPERTY = "gui.recycle.rss";
+
+	/**
+	 * The number of the first calls of a command whose mean is its baseline.
+	 */
+	static final int BASELINE_COMMANDS = 20;
+
+	/**
+	 * The weight of the latest call in the running mean of a command.
+	 */
+	static final double TREND_WEIGHT = 0.05;
+
+	/**
+	 * Baselines below this are raised to it, so that a command going from 0.1 to 0.4 ms isn't a trend.
+	 */
+	static final long MIN_BASELINE_NANOS = 1000000L;
+
+	/**
+	 * The commands whose time says something about the driver rather than the page or the test, e.g. not get or
+	 * executeAsyncScript. Lookups are left out too, they include the implicit wait and a single absence check would
+	 * look like a driver that got thousands of times slower.
+	 */
+	static final Set<String> TRENDED_COMMANDS = new HashSet<String>(Arrays.asList("isDisplayed", "getText",
+			"getAttribute", "getTagName", "getTitle", "getCurrentUrl", "getWindowHandle", "getWindowHandles"));
+
+	private long maxPages = 500L;
+
+	private double maxLatencyGrowth = 3.0;
+
+	private double maxHeapFraction = 0.85;
+
+	private long maxRssMegabytes = 0L;
+
+	private long heapIntervalMillis = 30000L;
+
+	/* When a driver was last recycled for the heap, the heap is shared so one recycle has to show before the next */
+	private final AtomicLong lastHeapRecycle = new AtomicLong(Long.MIN_VALUE / 2);
+
+	private final Map<WebDriver, Health> drivers = Collections
+			.synchronizedMap(new IdentityHashMap<WebDriver, Health>());
+
+	private final SortedMap<String, AtomicLong> recycled = Collections
+			.synchronizedSortedMap(new TreeMap<String, AtomicLong>());
+
+	/**
+	 * @return A watchdog set up from the system properties above or null if it is turned off.
+	 */
+	public static DriverWatchdog fromProperties() {
+		if ("false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY))) {
+			return null;
+		}
+		DriverWatchdog watchdog = new DriverWatchdog();
+		watchdog.setMaxPages(Long.getLong(PAGES_PROPERTY, watchdog.maxPages));
+		watchdog.setMaxLatencyGrowth(Double.parseDouble(System.getProperty(LATENCY_PROPERTY, "3")));
+		watchdog.setMaxHeapFraction(Double.parseDouble(System.getProperty(HEAP_PROPERTY, "0.85")));
+		watchdog.setHeapIntervalMillis(Long.getLong(HEAP_INTERVAL_PROPERTY, watchdog.heapIntervalMillis));
+		watchdog.setMaxRssMegabytes(Long.getLong(RSS_PROPERTY, 0L));
+		return watchdog;
+	}
+
+	public DriverWatchdog setMaxPages(long maxPages) {
+		this.maxPages = maxPages;
+		return this;
+	}
+
+	public DriverWatchdog setMaxLatencyGrowth(double maxLatencyGrowth) {
+		this.maxLatencyGrowth = maxLatencyGrowth;
+		return this;
+	}
+
+	public DriverWatchdog setMaxHeapFraction(double maxHeapFraction) {
+		this.maxHeapFraction = maxHeapFraction;
+		return this;
+	}
+
+	/**
+	 * @param heapIntervalMillis
+	 *            The shortest time between two drivers recycled for the heap. The heap is measured for the whole JVM
+	 *            and its usage after collection only drops after the next collection, without a pause every release
+	 *            of a full heap would recycle a driver.
+	 */
+	public DriverWatchdog setHeapIntervalMillis(long heapIntervalMillis) {
+		this.heapIntervalMillis = heapIntervalMillis;
+		return this;
+	}
+
+	public DriverWatchdog setMaxRssMegabytes(long maxRssMegabytes) {
+		this.maxRssMegabytes = maxRssMegabytes;
+		return this;
+	}
+
+	/**
+	 * @return true if the processes of new drivers have to be found, which costs a read of /proc per start.
+	 */
+	boolean isTrackingProcesses() {
+		return maxRssMegabytes > 0 && ProcessTree.isSupported();
+	}
+
+	/**
+	 * Starts watching a new driver.
+	 * 
+	 * @param webDriver
+	 *            The driver as it was created.
+	 * @param pids
+	 *            The processes started with the driver, empty if unknown.
+	 */
+	void register(WebDriver webDriver, Set<Integer> pids) {
+		drivers.put(webDriver, new Health(webDriver, pids));
+	}
+
+	/**
+	 * @param webDriver
+	 *            A registered driver.
+	 * @return The driver decorated so that its pages and command times are counted, the same object every time.
+	 */
+	WebDriver watch(WebDriver webDriver) {
+		Health health = drivers.get(webDriver);
+		if (health == null) {
+			health = new Health(webDriver, Collections.<Integer> emptySet());
+			drivers.put(webDriver, health);
+		}
+		return health.watched;
+	}
+
+	/**
+	 * Tells if a driver should be retired.
+	 * 
+	 * @param webDriver
+	 *            The driver as it was created.
+	 * @return Why the driver should be retired or null if it is fine.
+	 */
+	String check(WebDriver webDriver) {
+		Health health = drivers.get(webDriver);
+		if (health == null) {
+			return null;
+		}
+		long pages = health.pages.get();
+		if (maxPages > 0 && pages >= maxPages) {
+			return recycle("pages", String.format("it loaded %d pages", pages));
+		}
+		if (maxLatencyGrowth > 0) {
+			String slow = health.slowestTrend(maxLatencyGrowth);
+			if (slow != null) {
+				return recycle("latency", slow);
+			}
+		}
+		if (maxHeapFraction > 0 && webDriver instanceof HtmlUnitDriver && pages > 0) {
+			double fraction = heapFraction();
+			long now = System.currentTimeMillis();
+			long last = lastHeapRecycle.get();
+			if (fraction >= maxHeapFraction && now - last >= heapIntervalMillis
+					&& lastHeapRecycle.compareAndSet(last, now)) {
+				return recycle("heap", String.format("the heap is %.0f%% full after collection", fraction * 100));
+			}
+		}
+		if (maxRssMegabytes > 0 && !health.pids.isEmpty()) {
+			long rss = health.rssKilobytes() / 1024;
+			if (rss >= maxRssMegabytes) {
+				return recycle("rss", String.format("its processes use %d MB", rss));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stops watching a driver that is quit.
+	 */
+	void forget(WebDriver webDriver) {
+		drivers.remove(webDriver);
+	}
+
+	/**
+	 * @return The number of drivers recycled so far, for all reasons.
+	 */
+	public long getRecycled() {
+		long total = 0;
+		synchronized (recycled) {
+			for (AtomicLong count : recycled.values()) {
+				total += count.get();
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Logs how many drivers were recycled for each reason.
+	 */
+	public void logStatistics() {
+		synchronized (recycled) {
+			for (Map.Entry<String, AtomicLong> entry : recycled.entrySet()) {
+				log.info("Drivers recycled for {}: {}", entry.getKey(), entry.getValue().get());
+			}
+		}
+	}
+
+	private String recycle(String reason, String detail) {
+		synchronized (recycled) {
+			AtomicLong count = recycled.get(reason);
+			if (count == null) {
+				count = new AtomicLong();
+				recycled.put(reason, count);
+			}
+			count.incrementAndGet();
+		}
+		Metrics.counter("driver.recycled." + reason).incrementAndGet();
+		return detail;
+	}
+
+	/**
+	 * @return The share of the old generation, or of the heap if there is none, in use after the last collection.
+	 */
+	static double heapFraction() {
+		MemoryUsage largest = null;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			MemoryUsage usage = pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() ? pool
+					.getCollectionUsage() : null;
+			if (usage != null && usage.getMax() > 0 && (largest == null || usage.getMax() > largest.getMax())) {
+				largest = usage;
+			}
+		}
+		if (largest == null) {
+			MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+			return heap.getMax() > 0 ? heap.getUsed() / (double) heap.getMax() : 0.0;
+		}
+		return largest.getUsed() / (double) largest.getMax();
+	}
+
+	/**
+	 * The signals of one driver.
+	 */
+	static class Health implements CommandProxy.Interceptor {
+		final WebDriver watched;
+
+		final Set<Integer> pids;
+
+		final AtomicLong pages = new AtomicLong();
+
+		private final Map<String, Trend> trends = new HashMap<String, Trend>();
+
+		Health(WebDriver webDriver, Set<Integer> pids) {
+			this.pids = pids;
+			this.watched = CommandProxy.wrap(webDriver, this);
+		}
+
+		public Object intercept(Command command) throws Throwable {
+			String name = command.getName();
+			if (("get".equals(name) && command.getTarget() instanceof WebDriver) || "to".equals(name)) {
+				pages.incrementAndGet();
+			}
+			if (!TRENDED_COMMANDS.contains(name)) {
+				return command.proceed();
+			}
+			long start = System.nanoTime();
+			try {
+				return command.proceed();
+			} finally {
+				long nanos = System.nanoTime() - start;
+				synchronized (trends) {
+					Trend trend = trends.get(name);
+					if (trend == null) {
+						trend = new Trend();
+						trends.put(name, trend);
+					}
+					trend.add(nanos);
+				}
+			}
+		}
+
+		/**
+		 * @return A description of the command that slowed down the most beyond the limit or null if none did.
+		 */
+		String slowestTrend(double limit) {
+			String result = null;
+			double worst = limit;
+			synchronized (trends) {
+				for (Map.Entry<String, Trend> entry : trends.entrySet()) {
+					double growth = entry.getValue().growth();
+					if (growth >= worst) {
+						worst = growth;
+						result = String.format("%s takes %.1f times as long as its first %d calls", entry.getKey(),
+								growth, BASELINE_COMMANDS);
+					}
+				}
+			}
+			return result;
+		}
+
+		long rssKilobytes() {
+			long total = 0;
+			for (int pid : pids) {
+				total += ProcessTree.rssKilobytes(pid);
+			}
+			/* Browsers start helper processes of their own later on */
+			for (int pid : ProcessTree.descendants(pids)) {
+				total += ProcessTree.rssKilobytes(pid);
+			}
+			return total;
+		}
+	}
+
+	/**
+	 * The mean time of the first calls of a command and a running mean of the calls since.
+	 */
+	private static class Trend {
+		private long calls = 0;
+
+		private long baselineTotal = 0;
+
+		private double recent = 0.0;
+
+		void add(long nanos) {
+			calls++;
+			if (calls <= BASELINE_COMMANDS) {
+				baselineTotal += nanos;
+				recent = baselineTotal / (double) calls;
+			} else {
+				recent += TREND_WEIGHT * (nanos - recent);
+			}
+		}
+
+		/**
+		 * @return How many times slower the command is now than at first, 0 while the baseline is taken.
+		 */
+		double growth() {
+			if (calls < 2 * BASELINE_COMMANDS) {
+				return 0.0;
+			}
+			double baseline = Math.max(MIN_BASELINE_NANOS, baselineTotal / (double) BASELINE_COMMANDS);
+			return recent / baseline;
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package com.minh.helper;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.minh.metrics.Metrics;
+import com.minh.selector.Via;
+
+/**
+ * Waits for elements to appear or disappear. Where the browser supports it the wait runs inside the page: a
+ * MutationObserver checks the condition on every DOM change and the single asynchronous script call returns as soon as
+ * it holds. Drivers that can't do that, e.g. HtmlUnit, are polled with growing intervals instead. A page without
+ * MutationObserver is polled until the driver is on another url, a driver is only polled for good when it can't run
+ * asynchronous scripts at all or the wait failed a few times in a row.
+ *
+ * The time of every wait is recorded in the histograms wait.visible and wait.gone.
+ */
+public class ElementWaiter {
+	static final Logger log = LoggerFactory.getLogger(ElementWaiter.class);
+
+	/**
+	 * Returned by the wait script when the page has no MutationObserver.
+	 */
+	static final String UNSUPPORTED = "unsupported";
+
+	/**
+	 * The in page wait. Needs the element locator expression as %1$s and takes the timeout in milliseconds and
+	 * whether to wait for visible (true) or gone (false) as arguments.
+	 */
+	static final String WAIT_JAVASCRIPT = "var callback = arguments[arguments.length - 1];"
+			+ "var timeout = arguments[0], wantVisible = arguments[1], finished = false, observer, interval, timer;"
+			+ "function visible(e) {"
+			+ "  if (!e) { return false; }"
+			+ "  for (var n = e; n && n.nodeType == 1; n = n.parentNode) {"
+			+ "    var s = window.getComputedStyle ? window.getComputedStyle(n, null) : n.style;"
+			+ "    if (s.display == 'none' || s.opacity == '0' || (n == e && s.visibility == 'hidden')) { return false; }"
+			+ "  }"
+			+ "  return true;"
+			+ "}"
+			+ "function holds() {"
+			+ "  var e = null;"
+			+ "  try { e = %1$s; } catch (ignore) {}"
+			+ "  return visible(e) == wantVisible;"
+			+ "}"
+			+ "function finish(result) {"
+			+ "  if (finished) { return; }"
+			+ "  finished = true;"
+			+ "  if (observer) { observer.disconnect(); }"
+			+ "  clearInterval(interval);"
+			+ "  clearTimeout(timer);"
+			+ "  callback(result);"
+			+ "}"
+			+ "function check() { if (holds()) { finish(true); } }"
+			+ "if (holds()) { callback(true); }"
+			+ "else if (typeof MutationObserver == 'undefined') { callback('" + UNSUPPORTED + "'); }"
+			+ "else {"
+			+ "  observer = new MutationObserver(check);"
+			+ "  observer.observe(document, { childList: true, subtree: true, attributes: true });"
+			/* Style changes from animations and loaded style sheets aren't mutations, check them now and then */
+			+ "  interval = setInterval(check, 250);"
+			+ "  timer = setTimeout(function() { finish(holds()); }, timeout);"
+			+ "}";
+
+	/**
+	 * The number of in page waits in a row that may fail before the driver is only polled.
+	 */
+	static final int MAX_FAILURES = 3;
+
+	/**
+	 * Extra time given to the script call on top of the wait itself before the driver gives up on it.
+	 */
+	private static final long SCRIPT_TIMEOUT_MARGIN_MILLIS = 5000L;
+
+	private final WebDriver webDriver;
+
+	private boolean inPageSupported;
+
+	private int failures = 0;
+
+	/* The url of the page that can't observe mutations, null if the current page may */
+	private String unsupportedUrl = null;
+
+	private long scriptTimeout = -1L;
+
+	public ElementWaiter(WebDriver webDriver) {
+		this.webDriver = webDriver;
+		this.inPageSupported = webDriver instanceof JavascriptExecutor;
+	}
+
+	/**
+	 * Waits until an element that match the selector is displayed. The driver's implicit wait applies while the
+	 * element is missing on drivers that have to be polled.
+	 *
+	 * @param via
+	 *            The selector of the element.
+	 * @param timeoutMillis
+	 *            The longest time to wait.
+	 * @return true if the element was displayed in time.
+	 */
+	public boolean awaitVisible(Via via, long timeoutMillis) {
+		long start = System.nanoTime();
+		Boolean result = awaitInPage(via, true, timeoutMillis);
+		if (result == null) {
+			result = pollVisible(via, timeoutMillis);
+		}
+		long nanos = Metrics.histogram("wait.visible").recordSince(start);
+		log.debug("Waited {} ms for {} to appear.", TimeUnit.NANOSECONDS.toMillis(nanos), via);
+		return result;
+	}
+
+	/**
+	 * Waits until no displayed element match the selector. Set a short implicit wait in beforeFind, otherwise every
+	 * poll on drivers that have to be polled waits the implicit wait for the element to turn up.
+	 *
+	 * @param via
+	 *            The selector of the element.
+	 * @param timeoutMillis
+	 *            The longest time to wait.
+	 * @return true if the element was gone in time.
+	 */
+	public boolean awaitGone(Via via, long timeoutMillis) {
+		long start = System.nanoTime();
+		Boolean result = awaitInPage(via, false, timeoutMillis);
+		if (result == null) {
+			result = pollGone(via, timeoutMillis);
+		}
+		long nanos = Metrics.histogram("wait.gone").recordSince(start);
+		log.debug("Waited {} ms for {} to disappear.", TimeUnit.NANOSECONDS.toMillis(nanos), via);
+		return result;
+	}
+
+	/**
+	 * Runs the wait inside the page.
+	 *
+	 * @return The outcome of the wait or null if the driver or page can't wait in page.
+	 */
+	private Boolean awaitInPage(Via via, boolean wantVisible, long timeoutMillis) {
+		if (!inPageSupported) {
+			return null;
+		}
+		if (unsupportedUrl != null) {
+			if (unsupportedUrl.equals(webDriver.getCurrentUrl())) {
+				return null;
+			}
+			unsupportedUrl = null;
+		}
+		try {
+			if (scriptTimeout < timeoutMillis + SCRIPT_TIMEOUT_MARGIN_MILLIS) {
+				scriptTimeout = timeoutMillis + SCRIPT_TIMEOUT_MARGIN_MILLIS;
+				webDriver.manage().timeouts().setScriptTimeout(scriptTimeout, TimeUnit.MILLISECONDS);
+			}
+			Object result = ((JavascriptExecutor) webDriver).executeAsyncScript(
+					String.format(WAIT_JAVASCRIPT, via.toJavascript()), timeoutMillis, wantVisible);
+			failures = 0;
+			if (result instanceof Boolean) {
+				return (Boolean) result;
+			}
+			log.debug("The page can't observe mutations, polling it instead.");
+			unsupportedUrl = webDriver.getCurrentUrl();
+		} catch (UnsupportedCommandException e) {
+			log.debug("The driver can't run asynchronous scripts, polling instead: {}", e.getMessage());
+			inPageSupported = false;
+		} catch (UnsupportedOperationException e) {
+			log.debug("The driver can't run asynchronous scripts, polling instead: {}", e.getMessage());
+			inPageSupported = false;
+		} catch (WebDriverException e) {
+			if (++failures < MAX_FAILURES) {
+				log.debug("The wait failed in page, polling this time: {}", e.getMessage());
+			} else {
+				log.debug("The wait failed in page {} times in a row, polling from now on: {}", failures,
+						e.getMessage());
+				inPageSupported = false;
+			}
+		}
+		return null;
+	}
+
+	private boolean pollVisible(Via via, long timeoutMillis) {
+		long endBy = System.currentTimeMillis() + timeoutMillis;
+		Backoff backoff = new Backoff();
+		while (true) {
+			try {
+				beforeFind();
+				if (webDriver.findElement(via).isDisplayed()) {
+					return true;
+				}
+			} catch (StaleElementReferenceException e) {
+				log.debug("The element that match {} went stale, looking it up again.", via);
+			}
+			if (System.currentTimeMillis() >= endBy) {
+				return false;
+			}
+			sleep(backoff.next());
+		}
+	}
+
+	private boolean pollGone(Via via, long timeoutMillis) {
+		long endBy = System.currentTimeMillis() + timeoutMillis;
+		Backoff backoff = new Backoff();
+		while (true) {
+			try {
+				beforeFind();
+				if (!anyDisplayed(webDriver.findElements(via))) {
+					return true;
+				}
+			} catch (StaleElementReferenceException e) {
+				log.debug("The element that match {} went stale, looking it up again.", via);
+			}
+			if (System.currentTimeMillis() >= endBy) {
+				return false;
+			}
+			sleep(backoff.next());
+		}
+	}
+
+	/**
+	 * Called before every element lookup while polling. Lets the owner bring the driver's implicit wait up to date.
+	 */
+	protected void beforeFind() {
+	}
+
+	private static boolean anyDisplayed(List<WebElement> webElements) {
+		for (WebElement webElement : webElements) {
+			if (webElement.isDisplayed()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting.", e);
+		}
+	}
+}
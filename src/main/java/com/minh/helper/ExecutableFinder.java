@@ -0,0 +1,208 @@
+package com.minh.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds a file, typically a browser binary, below one or more root directories. The roots are searched in parallel
+ * and the search stops as soon as one of them has the file. Found files are remembered in a properties file keyed by
+ * the file name, the root and the modification time of the root, so later launches skip the walk until something is
+ * installed or removed in the root.
+ */
+public class ExecutableFinder {
+	static final Logger log = LoggerFactory.getLogger(ExecutableFinder.class);
+
+	/**
+	 * The system property with the location of the cache file.
+	 */
+	public static final String CACHE_PROPERTY = "gui.executables.cache";
+
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	private final File cacheFile;
+
+	public ExecutableFinder() {
+		this(new File(System.getProperty(CACHE_PROPERTY, System.getProperty("user.home")
+				+ "/.gui-testrunner/executables.properties")));
+	}
+
+	/**
+	 * @param cacheFile
+	 *            Where to remember found files.
+	 */
+	public ExecutableFinder(File cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+
+	/**
+	 * @param roots
+	 *            One or more paths to start looking from.
+	 * @param wanted
+	 *            The filename including the extension.
+	 * @return The first file found with the wanted name or null.
+	 */
+	public File find(String[] roots, final String wanted) {
+		Properties cache = loadCache();
+		for (String root : roots) {
+			String cached = cache.getProperty(keyOf(root, wanted));
+			if (cached != null && new File(cached).isFile()) {
+				log.debug("The {} file is known to be {}.", wanted, cached);
+				return new File(cached);
+			}
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, roots.length), new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "executable-finder-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final AtomicBoolean stop = new AtomicBoolean();
+		try {
+			CompletionService<Found> searches = new ExecutorCompletionService<Found>(executor);
+			for (final String root : roots) {
+				searches.submit(new Callable<Found>() {
+					public Found call() {
+						return new Found(root, walk(new File(root), wanted, stop));
+					}
+				});
+			}
+			for (int i = 0; i < roots.length; i++) {
+				Found found = searches.take().get();
+				if (found.file != null) {
+					stop.set(true);
+					log.info("Found {} below {}.", found.file.getAbsolutePath(), found.root);
+					cache.setProperty(keyOf(found.root, wanted), found.file.getAbsolutePath());
+					saveCache(cache);
+					return found.file;
+				}
+			}
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while looking for " + wanted, e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Could not look for " + wanted, e.getCause());
+		} finally {
+			stop.set(true);
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Walks a directory tree breadth first, so a file close to the root is found without descending into every deep
+	 * branch first. Every directory is looked into once, however many symbolic links lead to it, so link cycles end.
+	 */
+	static File walk(File root, String wanted, AtomicBoolean stop) {
+		Deque<File> directories = new ArrayDeque<File>();
+		Set<String> visited = new HashSet<String>();
+		directories.add(root);
+		while (!directories.isEmpty() && !stop.get()) {
+			File directory = directories.poll();
+			if (!visited.add(canonicalPathOf(directory))) {
+				continue;
+			}
+			if (directory.isFile()) {
+				if (directory.getName().equals(wanted)) {
+					return directory;
+				}
+				continue;
+			}
+			log.debug("Looking into directory {} for the {} file.", directory.getAbsolutePath(), wanted);
+			File[] children = directory.listFiles();
+			if (children == null) {
+				/* Not a directory or not readable */
+				continue;
+			}
+			for (File child : children) {
+				if (child.getName().equals(wanted) && child.isFile()) {
+					return child;
+				}
+				if (child.isDirectory()) {
+					directories.add(child);
+				}
+			}
+		}
+		return null;
+	}
+
+	private static String canonicalPathOf(File file) {
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException e) {
+			return file.getAbsolutePath();
+		}
+	}
+
+	/**
+	 * The modification time of a directory changes when an entry is added or removed, e.g. a browser is installed.
+	 */
+	static String keyOf(String root, String wanted) {
+		File file = new File(root);
+		return wanted + "|" + file.getAbsolutePath() + "|" + file.lastModified();
+	}
+
+	private synchronized Properties loadCache() {
+		Properties cache = new Properties();
+		if (cacheFile.isFile()) {
+			InputStream in = null;
+			try {
+				in = new FileInputStream(cacheFile);
+				cache.load(in);
+			} catch (IOException e) {
+				log.warn("The executable cache {} could not be read: {}", cacheFile, e.getMessage());
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+		}
+		return cache;
+	}
+
+	private synchronized void saveCache(Properties cache) {
+		OutputStream out = null;
+		try {
+			if (cacheFile.getParentFile() != null) {
+				cacheFile.getParentFile().mkdirs();
+			}
+			out = new FileOutputStream(cacheFile);
+			cache.store(out, "Files found by " + ExecutableFinder.class.getName());
+		} catch (IOException e) {
+			log.warn("The executable cache {} could not be written: {}", cacheFile, e.getMessage());
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	private static class Found {
+		final String root;
+
+		final File file;
+
+		Found(String root, File file) {
+			this.root = root;
+			this.file = file;
+		}
+	}
+}
@@ -0,0 +1,408 @@
+package com.minh.helper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.minh.metrics.Metrics;
+
+/**
+ * Writes the screenshots and page sources of failed tests in the background. The test thread only grabs the raw bytes
+ * from the browser, see Browser.captureFailure, and queues them. A writer thread then stores each screenshot and page
+ * source once under its SHA-1, so the many failures that show the same error page share the files, and appends a line
+ * per failure to index.log: time, test, url, title, screenshot file and page source file.
+ *
+ * The queue is bounded by its size in bytes. When it is full a capture waits for room, at most gui.capture.wait
+ * milliseconds, and is dropped after that so that a slow disk can't hold up the tests. Screenshots are stored as the
+ * PNG the browser sent, which is compressed already, page sources are gzipped.
+ *
+ * The time of the writes is recorded in the histogram capture.write and the time captures wait for room in
+ * capture.backpressure. The counter capture.queued is the number of captures waiting, capture.written,
+ * capture.deduplicated and capture.dropped count the outcomes.
+ */
+public class FailureCapture {
+	static final Logger log = LoggerFactory.getLogger(FailureCapture.class);
+
+	/**
+	 * The system property that turns failure capture off when set to false.
+	 */
+	public static final String CAPTURE_PROPERTY = "gui.capture";
+
+	/**
+	 * The system property with the directory to write to, target/failures by default.
+	 */
+	public static final String DIRECTORY_PROPERTY = "gui.capture.dir";
+
+	/**
+	 * The system property with the most bytes the queue holds, 64 MB by default.
+	 */
+	public static final String QUEUE_PROPERTY = "gui.capture.queue";
+
+	/**
+	 * The system property with the longest time in milliseconds a capture waits for room in the queue, 5000 by default.
+	 */
+	public static final String WAIT_PROPERTY = "gui.capture.wait";
+
+	/**
+	 * The name of the file that lists the failures.
+	 */
+	public static final String INDEX = "index.log";
+
+	/**
+	 * How long the shutdown hook waits for the queue to be written.
+	 */
+	private static final long SHUTDOWN_MILLIS = 30000L;
+
+	/**
+	 * What the browser showed when a test failed.
+	 */
+	static class Capture {
+		private final long time = System.currentTimeMillis();
+		private final String test;
+		private final String url;
+		private final String title;
+		private final byte[] screenshot;
+		private final byte[] pageSource;
+
+		Capture(String test, String url, String title, byte[] screenshot, byte[] pageSource) {
+			this.test = test;
+			this.url = url;
+			this.title = title;
+			this.screenshot = screenshot;
+			this.pageSource = pageSource;
+		}
+
+		long size() {
+			return (screenshot == null ? 0 : screenshot.length) + (pageSource == null ? 0 : pageSource.length);
+		}
+	}
+
+	private static FailureCapture defaultCapture;
+
+	private static boolean defaultResolved;
+
+	private final File directory;
+
+	private final long maxQueuedBytes;
+
+	private final long maxWaitMillis;
+
+	private final LinkedList<Capture> queue = new LinkedList<Capture>();
+
+	private long queuedBytes;
+
+	/* True while the writer works on a capture it took off the queue */
+	private boolean writing;
+
+	private boolean closed;
+
+	private Thread writer;
+
+	/* The files written or found on disk, so a file is looked up at most once */
+	private final Set<String> stored = Collections.synchronizedSet(new HashSet<String>());
+
+	private final AtomicLong written = new AtomicLong();
+
+	private final AtomicLong deduplicated = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * @param directory
+	 *            Where to write the files and the index.
+	 * @param maxQueuedBytes
+	 *            The most bytes of screenshots and page sources to hold in memory. A single capture larger than that is
+	 *            taken when the queue is empty.
+	 * @param maxWaitMillis
+	 *            The longest time a capture waits for room before it is dropped.
+	 */
+	public FailureCapture(File directory, long maxQueuedBytes, long maxWaitMillis) {
+		this.directory = directory;
+		this.maxQueuedBytes = maxQueuedBytes;
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	/**
+	 * @return The capture set up by the gui.capture.* system properties, shared by all browsers, or null if
+	 *         gui.capture is false.
+	 */
+	public static synchronized FailureCapture getDefault() {
+		if (!defaultResolved) {
+			defaultResolved = true;
+			if (!"false".equalsIgnoreCase(System.getProperty(CAPTURE_PROPERTY))) {
+				final FailureCapture created = new FailureCapture(new File(System.getProperty(DIRECTORY_PROPERTY,
+						"target/failures")), Long.getLong(QUEUE_PROPERTY, 64L << 20), Long.getLong(WAIT_PROPERTY,
+						5000L));
+				Runtime.getRuntime().addShutdownHook(new Thread("failure-capture-shutdown") {
+					@Override
+					public void run() {
+						created.close(SHUTDOWN_MILLIS);
+					}
+				});
+				defaultCapture = created;
+			}
+		}
+		return defaultCapture;
+	}
+
+	/**
+	 * Queues what the browser showed when a test failed. Waits while the queue is full, at most the configured time.
+	 *
+	 * @param test
+	 *            The name of the failed test.
+	 * @param url
+	 *            The url of the page, null if unknown.
+	 * @param title
+	 *            The title of the page, null if unknown.
+	 * @param screenshot
+	 *            The PNG screenshot, null if the browser can't take one.
+	 * @param pageSource
+	 *            The page source in UTF-8, null if unknown.
+	 * @return false if the capture was dropped because the queue stayed full or the capture is closed.
+	 */
+	public boolean submit(String test, String url, String title, byte[] screenshot, byte[] pageSource) {
+		Capture capture = new Capture(test, url, title, screenshot, pageSource);
+		long start = System.nanoTime();
+		synchronized (this) {
+			startWriter();
+			long deadline = System.currentTimeMillis() + maxWaitMillis;
+			try {
+				while (!closed && !queue.isEmpty() && queuedBytes + capture.size() > maxQueuedBytes) {
+					long left = deadline - System.currentTimeMillis();
+					if (left <= 0) {
+						break;
+					}
+					wait(left);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			Metrics.histogram("capture.backpressure").recordSince(start);
+			if (closed || (!queue.isEmpty() && queuedBytes + capture.size() > maxQueuedBytes)) {
+				dropped.incrementAndGet();
+				Metrics.counter("capture.dropped").incrementAndGet();
+				log.warn("Dropped the failure capture of {}, {} bytes are still waiting to be written.", test,
+						queuedBytes);
+				return false;
+			}
+			queue.add(capture);
+			queuedBytes += capture.size();
+			Metrics.counter("capture.queued").incrementAndGet();
+			startWriter();
+			notifyAll();
+		}
+		return true;
+	}
+
+	/**
+	 * Starts a writer if there are captures to write and none is running, e.g. after the last one was interrupted.
+	 * Call while holding the lock.
+	 */
+	private void startWriter() {
+		if (writer != null || queue.isEmpty()) {
+			return;
+		}
+		writer = new Thread(new Runnable() {
+			public void run() {
+				try {
+					drain();
+				} finally {
+					synchronized (FailureCapture.this) {
+						writer = null;
+						FailureCapture.this.notifyAll();
+					}
+				}
+			}
+		}, "gui-capture");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Waits until everything queued so far is written.
+	 *
+	 * @return false if the time ran out first.
+	 */
+	public synchronized boolean flush(long timeoutMillis) {
+		startWriter();
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		try {
+			while (!queue.isEmpty() || writing) {
+				long left = deadline - System.currentTimeMillis();
+				if (left <= 0) {
+					return false;
+				}
+				wait(left);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Writes what is queued, waiting at most the given time, and stops taking captures.
+	 */
+	public void close(long timeoutMillis) {
+		if (!flush(timeoutMillis)) {
+			log.warn("{} failure captures weren't written in time.", getQueueDepth());
+		}
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		log.info("Failure captures: {} written to {}, {} files deduplicated, {} dropped.", new Object[] {
+				written.get(), directory, deduplicated.get(), dropped.get() });
+	}
+
+	/**
+	 * @return The number of captures waiting to be written.
+	 */
+	public synchronized int getQueueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * @return The bytes of the captures waiting to be written.
+	 */
+	public synchronized long getQueuedBytes() {
+		return queuedBytes;
+	}
+
+	/**
+	 * @return The number of captures written.
+	 */
+	public long getWritten() {
+		return written.get();
+	}
+
+	/**
+	 * @return The number of screenshots and page sources that were already on disk.
+	 */
+	public long getDeduplicated() {
+		return deduplicated.get();
+	}
+
+	/**
+	 * @return The number of captures dropped because the queue was full.
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	private void drain() {
+		while (true) {
+			Capture capture;
+			synchronized (this) {
+				while (queue.isEmpty() && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						log.warn("The failure capture writer was interrupted, {} captures wait for the next one.",
+								queue.size());
+						return;
+					}
+				}
+				if (queue.isEmpty()) {
+					return;
+				}
+				capture = queue.peek();
+				writing = true;
+			}
+			long start = System.nanoTime();
+			try {
+				write(capture);
+				written.incrementAndGet();
+				Metrics.counter("capture.written").incrementAndGet();
+			} catch (IOException e) {
+				log.warn("Couldn't write the failure capture of {}: {}", capture.test, e.getMessage());
+			} catch (RuntimeException e) {
+				log.warn("Couldn't write the failure capture of {}.", capture.test, e);
+			} finally {
+				Metrics.histogram("capture.write").recordSince(start);
+				synchronized (this) {
+					/* Only now is the memory free, until then the capture counts against the queue */
+					queue.poll();
+					queuedBytes -= capture.size();
+					writing = false;
+					Metrics.counter("capture.queued").decrementAndGet();
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stores the screenshot and the page source and adds the failure to the index.
+	 */
+	void write(Capture capture) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Couldn't create " + directory);
+		}
+		String screenshot = capture.screenshot == null ? "" : store(capture.screenshot, ".png", false);
+		String pageSource = capture.pageSource == null ? "" : store(capture.pageSource, ".html.gz", true);
+		String line = String.format("%tFT%<tT\t%s\t%s\t%s\t%s\t%s%n", capture.time, clean(capture.test),
+				clean(capture.url), clean(capture.title), screenshot, pageSource);
+		synchronized (stored) {
+			OutputStream index = new FileOutputStream(new File(directory, INDEX), true);
+			try {
+				index.write(line.getBytes("UTF-8"));
+			} finally {
+				index.close();
+			}
+		}
+	}
+
+	/**
+	 * @return The name of the file with the content, written unless it already exists.
+	 */
+	private String store(byte[] content, String extension, boolean compress) throws IOException {
+		String name = Digests.sha1(content) + extension;
+		File file = new File(directory, name);
+		if (stored.contains(name) || file.isFile()) {
+			stored.add(name);
+			deduplicated.incrementAndGet();
+			Metrics.counter("capture.deduplicated").incrementAndGet();
+			return name;
+		}
+		/* Written under another name first, so a file that exists is always complete */
+		File partial = new File(directory, name + ".part");
+		OutputStream out = new FileOutputStream(partial);
+		try {
+			if (compress) {
+				out = new GZIPOutputStream(out, 8192);
+			}
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		if (!partial.renameTo(file)) {
+			/* Another JVM may have stored the same content meanwhile */
+			partial.delete();
+			if (!file.isFile()) {
+				throw new IOException("Couldn't rename " + partial + " to " + file);
+			}
+		}
+		stored.add(name);
+		return name;
+	}
+
+	private static String clean(String field) {
+		return field == null ? "" : field.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+	}
+}
@@ -0,0 +1,150 @@
+package com.minh.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.openqa.selenium.firefox.FirefoxProfile;
+import org.openqa.selenium.firefox.internal.ProfilesIni;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Firefox profile laid out on disk once per run, with the certificate settings, preferences and the WebDriver
+ * extension in place and the caches of the user's profile left out. Every launch starts from a copy of the template
+ * instead of copying the user's whole profile and unpacking the extension again. On Linux the copy is a copy on write
+ * clone where the file system supports it.
+ */
+public class FirefoxProfileTemplate {
+	static final Logger log = LoggerFactory.getLogger(FirefoxProfileTemplate.class);
+
+	/**
+	 * The system property that turns the template off when set to false.
+	 */
+	public static final String TEMPLATE_PROPERTY = "gui.firefox.template";
+
+	/* What a profile can do without, caches and crash data */
+	static final String[] SKIPPED = { "cache2", "Cache", "OfflineCache", "startupCache", "thumbnails", "crashes",
+			"minidumps", "safebrowsing", "sessionstore.js", "sessionstore-backups" };
+
+	private static final Map<String, File> templates = new HashMap<String, File>();
+
+	private FirefoxProfileTemplate() {
+	}
+
+	public static boolean isEnabled() {
+		return !"false".equalsIgnoreCase(System.getProperty(TEMPLATE_PROPERTY));
+	}
+
+	/**
+	 * @param profileName
+	 *            The name of the user's Firefox profile to base the template on, the profile Selenium makes up if
+	 *            there is no such profile.
+	 * @return A new profile to launch Firefox with, copied from the template of the named profile.
+	 */
+	public static FirefoxProfile newProfile(String profileName) {
+		FirefoxProfile profile = new TemplateProfile(templateOf(profileName));
+		trustCertificates(profile);
+		return profile;
+	}
+
+	/**
+	 * @return The template directory of the named profile, prepared on first use.
+	 */
+	static synchronized File templateOf(String profileName) {
+		String key = profileName == null ? "" : profileName.toLowerCase();
+		File template = templates.get(key);
+		if (template == null) {
+			long start = System.nanoTime();
+			FirefoxProfile base = profileName == null ? null : new ProfilesIni().getProfile(key);
+			if (base == null) {
+				log.warn("Unable to find the " + profileName + " Firefox profile, the template is a new profile.");
+				base = new FirefoxProfile();
+			}
+			trustCertificates(base);
+			/* Selenium adds its extension at launch, the template needs it in place already */
+			File laidOut = base.layoutOnDisk();
+			template = new ExtensionInstaller(laidOut).layoutOnDisk();
+			FileUtils.deleteQuietly(laidOut);
+			for (String skipped : SKIPPED) {
+				FileUtils.deleteQuietly(new File(template, skipped));
+			}
+			final File created = template;
+			Runtime.getRuntime().addShutdownHook(new Thread("firefox-template-cleanup") {
+				@Override
+				public void run() {
+					FileUtils.deleteQuietly(created);
+				}
+			});
+			templates.put(key, template);
+			log.info("The Firefox profile template {} was prepared in {} ms.", template,
+					(System.nanoTime() - start) / 1000000L);
+		}
+		return template;
+	}
+
+	private static void trustCertificates(FirefoxProfile profile) {
+		profile.setAcceptUntrustedCertificates(true);
+		profile.setAssumeUntrustedCertificateIssuer(false);
+	}
+
+	/**
+	 * A profile whose model is a template. The WebDriver extension is already unpacked in the template so it isn't
+	 * installed again.
+	 */
+	static class TemplateProfile extends FirefoxProfile {
+		TemplateProfile(File template) {
+			super(template);
+		}
+
+		@Override
+		protected void copyModel(File sourceDir, File profileDir) throws IOException {
+			if (sourceDir != null && cloneDirectory(sourceDir, profileDir)) {
+				return;
+			}
+			super.copyModel(sourceDir, profileDir);
+		}
+
+		@Override
+		protected void installExtensions(File profileDir) throws IOException {
+			/* The template has them */
+		}
+	}
+
+	/**
+	 * Lays out a profile with the WebDriver extension installed.
+	 */
+	private static class ExtensionInstaller extends FirefoxProfile {
+		ExtensionInstaller(File profileDir) {
+			super(profileDir);
+			addWebDriverExtensionIfNeeded();
+		}
+	}
+
+	/**
+	 * Clones a directory with cp, which shares the blocks of the files on copy on write file systems and copies them
+	 * elsewhere.
+	 * 
+	 * @return false if cp isn't available, the caller copies the directory itself then.
+	 */
+	static boolean cloneDirectory(File source, File target) {
+		if (!System.getProperty("os.name").toLowerCase().contains("linux")) {
+			return false;
+		}
+		try {
+			target.mkdirs();
+			Process process = new ProcessBuilder("cp", "-a", "--reflink=auto", source.getAbsolutePath() + "/.",
+					target.getAbsolutePath()).redirectErrorStream(true).start();
+			process.getInputStream().close();
+			return process.waitFor() == 0;
+		} catch (IOException e) {
+			log.debug("The profile could not be cloned with cp: {}", e.getMessage());
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package com.minh.helper;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.transform.ErrorListener;
+import javax.xml.transform.SourceLocator;
+
+import org.apache.xml.utils.PrefixResolver;
+import org.apache.xpath.XPathContext;
+import org.apache.xpath.objects.XObject;
+import org.openqa.selenium.InvalidSelectorException;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.html.HtmlElement;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+/**
+ * The HtmlUnit driver tuned by a HeadlessProfile and with compiled xpath expressions kept across lookups and pages. HtmlUnit compiles the expression
+ * with Xalan on every lookup, which is most of the time of an xpath lookup and is repeated up to 300 times in a single
+ * wait. The compiled expression only depends on the text and on whether tag names are case sensitive.
+ *
+ * HtmlUnit's compiler class isn't public, it is reached by reflection. If that fails, e.g. with another version of
+ * HtmlUnit, every lookup is left to the ordinary driver.
+ */
+public class HeadlessDriver extends HtmlUnitDriver {
+	static final Logger log = LoggerFactory.getLogger(HeadlessDriver.class);
+
+	static final int MAX_COMPILED = 1024;
+
+	private static final ConcurrentMap<String, Object> compiled = new ConcurrentHashMap<String, Object>();
+
+	private static final Constructor<?> adapterConstructor;
+
+	private static final Constructor<?> resolverConstructor;
+
+	private static final Method execute;
+
+	private static final ThreadLocal<Boolean> processingXPath;
+
+	private SharedResources.Account account = null;
+
+	static {
+		Constructor<?> adapter = null;
+		Constructor<?> resolver = null;
+		Method method = null;
+		ThreadLocal<Boolean> processing = null;
+		try {
+			String xpathPackage = "com.gargoylesoftware.htmlunit.html.xpath.";
+			Class<?> adapterClass = Class.forName(xpathPackage + "XPathAdapter");
+			adapter = adapterClass.getDeclaredConstructor(String.class, SourceLocator.class, PrefixResolver.class,
+					ErrorListener.class, boolean.class);
+			adapter.setAccessible(true);
+			method = adapterClass.getDeclaredMethod("execute", XPathContext.class, int.class, PrefixResolver.class);
+			method.setAccessible(true);
+			resolver = Class.forName(xpathPackage + "HtmlUnitPrefixResolver").getDeclaredConstructor(
+					org.w3c.dom.Node.class);
+			resolver.setAccessible(true);
+			Field field = Class.forName(xpathPackage + "XPathUtils").getDeclaredField("PROCESS_XPATH_");
+			field.setAccessible(true);
+			@SuppressWarnings("unchecked")
+			ThreadLocal<Boolean> threadLocal = (ThreadLocal<Boolean>) field.get(null);
+			processing = threadLocal;
+		} catch (Exception e) {
+			log.info("Compiled xpath expressions can't be kept with this HtmlUnit version: {}", e.toString());
+			adapter = null;
+		}
+		adapterConstructor = adapter;
+		resolverConstructor = resolver;
+		execute = method;
+		processingXPath = processing;
+	}
+
+	public HeadlessDriver() {
+		this(HeadlessProfile.fromProperties());
+	}
+
+	/**
+	 * @param profile
+	 *            The resource blocking, style sheet and cache settings of the driver.
+	 */
+	public HeadlessDriver(HeadlessProfile profile) {
+		super();
+		account = profile.apply(getWebClient());
+	}
+
+	/**
+	 * @return The memory account of the driver's resources or null if it doesn't share them.
+	 */
+	public SharedResources.Account getAccount() {
+		return account;
+	}
+
+	@Override
+	public void quit() {
+		if (account != null) {
+			log.debug("The headless driver used {}.", account);
+		}
+		super.quit();
+	}
+
+	@Override
+	public List<WebElement> findElementsByXPath(String selector) {
+		if (adapterConstructor == null || !(lastPage() instanceof HtmlPage)) {
+			return super.findElementsByXPath(selector);
+		}
+		List<Object> nodes;
+		try {
+			nodes = select((HtmlPage) lastPage(), selector);
+		} catch (RuntimeException e) {
+			throw new InvalidSelectorException(String.format(INVALIDXPATHERROR, selector), e);
+		}
+		List<WebElement> elements = new ArrayList<WebElement>(nodes.size());
+		for (Object node : nodes) {
+			if (!(node instanceof HtmlElement)) {
+				throw new InvalidSelectorException(String.format(
+						"The xpath expression '%s' selected an object of type '%s' instead of a WebElement", selector,
+						node.getClass()));
+			}
+			elements.add(newHtmlUnitWebElement((HtmlElement) node));
+		}
+		return elements;
+	}
+
+	@Override
+	public WebElement findElementByXPath(String selector) {
+		if (adapterConstructor == null || !(lastPage() instanceof HtmlPage)) {
+			return super.findElementByXPath(selector);
+		}
+		List<WebElement> elements = findElementsByXPath(selector);
+		if (elements.isEmpty()) {
+			throw new NoSuchElementException("Unable to locate a node using " + selector);
+		}
+		return elements.get(0);
+	}
+
+	/**
+	 * Does what HtmlUnit's XPathUtils.getByXPath does, but with the compiled expression kept.
+	 */
+	static List<Object> select(DomNode context, String xpath) {
+		processingXPath.set(Boolean.TRUE);
+		try {
+			org.w3c.dom.Node resolverNode = context instanceof HtmlPage ? ((HtmlPage) context).getDocumentElement()
+					: context;
+			PrefixResolver prefixResolver = (PrefixResolver) resolverConstructor.newInstance(resolverNode);
+			Object expression = compile(xpath, prefixResolver, context.getPage().hasCaseSensitiveTagNames());
+			XPathContext xpathContext = new XPathContext();
+			int contextNode = xpathContext.getDTMHandleFromNode(context);
+			XObject result = (XObject) execute.invoke(expression, xpathContext, contextNode, prefixResolver);
+			return toList(result);
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException("Could not evaluate the xpath " + xpath, e.getCause());
+		} catch (Exception e) {
+			throw new RuntimeException("Could not evaluate the xpath " + xpath, e);
+		} finally {
+			processingXPath.set(Boolean.FALSE);
+		}
+	}
+
+	private static Object compile(String xpath, PrefixResolver prefixResolver, boolean caseSensitive)
+			throws Exception {
+		String key = (caseSensitive ? "S" : "I") + xpath;
+		Object expression = compiled.get(key);
+		if (expression == null) {
+			expression = adapterConstructor.newInstance(xpath, null, prefixResolver, null, caseSensitive);
+			if (compiled.size() < MAX_COMPILED) {
+				compiled.putIfAbsent(key, expression);
+			}
+		}
+		return expression;
+	}
+
+	private static List<Object> toList(XObject result) throws Exception {
+		List<Object> list = new ArrayList<Object>();
+		switch (result.getType()) {
+		case XObject.CLASS_NODESET:
+			org.w3c.dom.NodeList nodes = result.nodelist();
+			for (int i = 0; i < nodes.getLength(); i++) {
+				list.add(nodes.item(i));
+			}
+			break;
+		case XObject.CLASS_NUMBER:
+			list.add(result.num());
+			break;
+		case XObject.CLASS_BOOLEAN:
+			list.add(result.bool());
+			break;
+		case XObject.CLASS_STRING:
+			list.add(result.str());
+			break;
+		default:
+			throw new RuntimeException("Unproccessed " + result.getClass().getName());
+		}
+		return list;
+	}
+
+	static int compiledCount() {
+		return compiled.size();
+	}
+}
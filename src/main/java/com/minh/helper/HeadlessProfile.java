@@ -0,0 +1,364 @@
+package com.minh.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.css.CSSRuleList;
+import org.w3c.dom.css.CSSStyleSheet;
+
+import com.gargoylesoftware.htmlunit.Cache;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+import com.steadystate.css.dom.CSSRuleListImpl;
+import com.steadystate.css.dom.CSSStyleSheetImpl;
+
+/**
+ * The tuning of the headless browser. Requests whose url match a block pattern, and no allow pattern, are answered
+ * with an empty response without going to the network, e.g. analytics, ads and fonts. Style sheets can be left out
+ * altogether. All headless drivers share one cache of responses, compiled scripts and parsed style sheets, so a
+ * script library is fetched and compiled once per run instead of once per driver. In the shared mode compiled scripts
+ * and response bodies are also shared by content, see SharedResources.
+ * 
+ * The default profile is read from system properties:
+ * <ul>
+ * <li>gui.headless.block - comma separated url regular expressions to block, e.g. .*google-analytics.*,.*\.woff</li>
+ * <li>gui.headless.allow - comma separated url regular expressions that are never blocked</li>
+ * <li>gui.headless.css - false to skip style sheets, default true</li>
+ * <li>gui.headless.cache - the number of entries in the shared cache, default 500</li>
+ * <li>gui.headless.shared - false to give each driver its own compiled scripts and response bodies, default true</li>
+ * <li>gui.replay - record or replay the HTTP traffic, see HttpReplay</li>
+ * </ul>
+ */
+public class HeadlessProfile {
+	static final Logger log = LoggerFactory.getLogger(HeadlessProfile.class);
+
+	public static final String BLOCK_PROPERTY = "gui.headless.block";
+
+	public static final String ALLOW_PROPERTY = "gui.headless.allow";
+
+	public static final String CSS_PROPERTY = "gui.headless.css";
+
+	public static final String CACHE_PROPERTY = "gui.headless.cache";
+
+	public static final String SHARED_PROPERTY = "gui.headless.shared";
+
+	static final int DEFAULT_CACHE_SIZE = 500;
+
+	private static final SharedCache sharedCache = new SharedCache();
+
+	private final List<Pattern> blocked = new ArrayList<Pattern>();
+
+	private final List<Pattern> allowed = new ArrayList<Pattern>();
+
+	private boolean cssEnabled = true;
+
+	private int cacheSize = DEFAULT_CACHE_SIZE;
+
+	private boolean shared = true;
+
+	private HttpReplay replay = null;
+
+	private final AtomicLong blockedCount = new AtomicLong();
+
+	/**
+	 * @return A profile set up from the system properties above.
+	 */
+	public static HeadlessProfile fromProperties() {
+		HeadlessProfile profile = new HeadlessProfile();
+		for (String regex : split(System.getProperty(BLOCK_PROPERTY))) {
+			profile.block(regex);
+		}
+		for (String regex : split(System.getProperty(ALLOW_PROPERTY))) {
+			profile.allow(regex);
+		}
+		profile.setCssEnabled(!"false".equalsIgnoreCase(System.getProperty(CSS_PROPERTY)));
+		profile.setCacheSize(Integer.getInteger(CACHE_PROPERTY, DEFAULT_CACHE_SIZE));
+		profile.setShared(!"false".equalsIgnoreCase(System.getProperty(SHARED_PROPERTY)));
+		profile.setReplay(HttpReplay.fromProperties());
+		return profile;
+	}
+
+	/**
+	 * @param regex
+	 *            A regular expression that has to match the whole url of a request to block.
+	 * @return This profile to enable one liners.
+	 */
+	public HeadlessProfile block(String regex) {
+		blocked.add(Pattern.compile(regex));
+		return this;
+	}
+
+	/**
+	 * @param regex
+	 *            A regular expression that has to match the whole url of a request that is never blocked.
+	 * @return This profile to enable one liners.
+	 */
+	public HeadlessProfile allow(String regex) {
+		allowed.add(Pattern.compile(regex));
+		return this;
+	}
+
+	public HeadlessProfile setCssEnabled(boolean cssEnabled) {
+		this.cssEnabled = cssEnabled;
+		return this;
+	}
+
+	/**
+	 * @param cacheSize
+	 *            The number of entries in the cache shared by all headless drivers. The least recently used entry is
+	 *            dropped when full. The largest size asked for by any profile applies, 0 gives each driver a cache
+	 *            of its own.
+	 * @return This profile to enable one liners.
+	 */
+	public HeadlessProfile setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+		return this;
+	}
+
+	/**
+	 * @param shared
+	 *            true to share compiled scripts and response bodies with the other headless drivers by content.
+	 * @return This profile to enable one liners.
+	 */
+	public HeadlessProfile setShared(boolean shared) {
+		this.shared = shared;
+		return this;
+	}
+
+	/**
+	 * @param replay
+	 *            The record or replay of the HTTP traffic, null to talk to the network.
+	 * @return This profile to enable one liners.
+	 */
+	public HeadlessProfile setReplay(HttpReplay replay) {
+		this.replay = replay;
+		return this;
+	}
+
+	/**
+	 * @return true if requests for the url are answered without going to the network.
+	 */
+	public boolean isBlocked(String url) {
+		return matches(blocked, url) && !matches(allowed, url);
+	}
+
+	/**
+	 * @return The number of requests blocked by this profile so far.
+	 */
+	public long getBlockedCount() {
+		return blockedCount.get();
+	}
+
+	/**
+	 * @return The cache shared by the headless drivers.
+	 */
+	public static SharedCache getSharedCache() {
+		return sharedCache;
+	}
+
+	/**
+	 * Applies the profile to a new web client.
+	 * 
+	 * @return The account of the client's shared resources or null if the profile doesn't share them.
+	 */
+	SharedResources.Account apply(WebClient webClient) {
+		webClient.getOptions().setCssEnabled(cssEnabled);
+		if (cacheSize > 0) {
+			synchronized (sharedCache) {
+				if (sharedCache.getMaxSize() < cacheSize) {
+					sharedCache.setMaxSize(cacheSize);
+				}
+			}
+			webClient.setCache(sharedCache);
+		}
+		/* Innermost, blocked requests are neither recorded nor looked up */
+		if (replay != null) {
+			replay.attach(webClient);
+		}
+		if (!blocked.isEmpty()) {
+			new BlockingConnection(webClient);
+		}
+		/* Outermost, so that replayed bodies are shared too */
+		return shared ? SharedResources.attach(webClient) : null;
+	}
+
+	private static boolean matches(List<Pattern> patterns, String url) {
+		for (Pattern pattern : patterns) {
+			if (pattern.matcher(url).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static List<String> split(String value) {
+		if (value == null || value.trim().length() == 0) {
+			return Collections.emptyList();
+		}
+		List<String> result = new ArrayList<String>();
+		for (String part : value.split(",")) {
+			if (part.trim().length() > 0) {
+				result.add(part.trim());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Answers blocked requests with an empty 204 response. Installs itself as the connection of the web client.
+	 */
+	private class BlockingConnection extends WebConnectionWrapper {
+		BlockingConnection(WebClient webClient) {
+			super(webClient);
+		}
+
+		@Override
+		public WebResponse getResponse(WebRequest request) throws IOException {
+			String url = request.getUrl().toExternalForm();
+			if (isBlocked(url)) {
+				blockedCount.incrementAndGet();
+				log.debug("The request for {} is blocked.", url);
+				WebResponseData data = new WebResponseData(new byte[0], 204, "No Content",
+						Collections.<NameValuePair> emptyList());
+				return new WebResponse(data, request, 0L);
+			}
+			return super.getResponse(request);
+		}
+	}
+
+	/**
+	 * HtmlUnit's cache, which is synchronized and drops the least recently used entry when full, with a count of hits
+	 * and misses. Responses and compiled scripts never change and are handed out as they are. Parsed style sheets are
+	 * live CSSOM objects that the scripts of a page may change. The cache keeps a copy of its own, as the driver that
+	 * parsed a sheet goes on using it, and a sheet that can't be copied isn't cached. Every other driver gets a
+	 * SharedStyleSheet, which shares the rules of the cached sheet until a rule is inserted or deleted.
+	 */
+	public static class SharedCache extends Cache {
+		private static final long serialVersionUID = 1L;
+
+		private final AtomicLong hits = new AtomicLong();
+
+		private final AtomicLong misses = new AtomicLong();
+
+		@Override
+		public Object getCachedObject(WebRequest request) {
+			Object cached = super.getCachedObject(request);
+			if (cached instanceof CSSStyleSheet) {
+				cached = new SharedStyleSheet((CSSStyleSheet) cached);
+			}
+			(cached == null ? misses : hits).incrementAndGet();
+			return cached;
+		}
+
+		@Override
+		public CSSStyleSheet getCachedStyleSheet(String css) {
+			CSSStyleSheet cached = super.getCachedStyleSheet(css);
+			return cached == null ? null : new SharedStyleSheet(cached);
+		}
+
+		@Override
+		public void cacheIfPossible(WebRequest request, WebResponse response, Object toCache) {
+			if (toCache instanceof CSSStyleSheet) {
+				toCache = copy((CSSStyleSheet) toCache);
+				if (toCache == null) {
+					return;
+				}
+			}
+			super.cacheIfPossible(request, response, toCache);
+		}
+
+		@Override
+		public void cache(String css, CSSStyleSheet styleSheet) {
+			CSSStyleSheet copy = copy(styleSheet);
+			if (copy != null) {
+				super.cache(css, copy);
+			}
+		}
+
+		public long getHits() {
+			return hits.get();
+		}
+
+		public long getMisses() {
+			return misses.get();
+		}
+
+		/**
+		 * @return A deep copy of the rules of the sheet without its owner, null if the sheet can't be serialized.
+		 */
+		static CSSStyleSheet copy(CSSStyleSheet styleSheet) {
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				ObjectOutputStream out = new ObjectOutputStream(bytes);
+				out.writeObject(styleSheet);
+				out.close();
+				ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+				return (CSSStyleSheet) in.readObject();
+			} catch (IOException e) {
+				log.debug("The style sheet {} can't be copied: {}", styleSheet.getHref(), e.getMessage());
+				return null;
+			} catch (ClassNotFoundException e) {
+				log.debug("The style sheet {} can't be copied: {}", styleSheet.getHref(), e.getMessage());
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * A cached style sheet handed out to a driver. It reads the rules of the cached sheet and takes a list of its own
+	 * before the first rule is inserted or deleted, which is all a copy would cost on every cache hit otherwise. The
+	 * rules themselves stay shared, a script that changes the declarations of a rule changes them for all drivers.
+	 */
+	static class SharedStyleSheet extends CSSStyleSheetImpl {
+		private static final long serialVersionUID = 1L;
+
+		private boolean ownRules = false;
+
+		SharedStyleSheet(CSSStyleSheet cached) {
+			setCssRules(cached.getCssRules());
+			setHref(cached.getHref());
+			setBaseUri(cached.getHref());
+			setTitle(cached.getTitle());
+			setMedia(cached.getMedia());
+		}
+
+		@Override
+		public int insertRule(String rule, int index) {
+			takeRules();
+			return super.insertRule(rule, index);
+		}
+
+		@Override
+		public void deleteRule(int index) {
+			takeRules();
+			super.deleteRule(index);
+		}
+
+		private void takeRules() {
+			if (ownRules) {
+				return;
+			}
+			CSSRuleList shared = getCssRules();
+			CSSRuleListImpl rules = new CSSRuleListImpl();
+			for (int i = 0; i < shared.getLength(); i++) {
+				rules.add(shared.item(i));
+			}
+			setCssRules(rules);
+			ownRules = true;
+		}
+	}
+}
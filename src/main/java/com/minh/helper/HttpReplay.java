@@ -0,0 +1,227 @@
+package com.minh.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+import com.minh.metrics.Metrics;
+
+/**
+ * Records the HTTP traffic of the headless browser to a ResponseArchive and replays it without network access, so a
+ * suite can run offline and without the latency of live sites. A request that wasn't recorded is answered with 404
+ * when replaying.
+ * 
+ * Turned on with -Dgui.replay=record or -Dgui.replay=replay, the archive is target/http-archive.bin unless
+ * gui.replay.archive says otherwise. All headless drivers of a run share the archive. Only the headless browser goes
+ * through the archive, the other drivers talk to the network themselves.
+ */
+public class HttpReplay {
+	static final Logger log = LoggerFactory.getLogger(HttpReplay.class);
+
+	public static final String MODE_PROPERTY = "gui.replay";
+
+	public static final String ARCHIVE_PROPERTY = "gui.replay.archive";
+
+	static final String DEFAULT_ARCHIVE = "target/http-archive.bin";
+
+	public enum Mode {
+		RECORD, REPLAY
+	}
+
+	private static final Map<String, HttpReplay> instances = new HashMap<String, HttpReplay>();
+
+	private final Mode mode;
+
+	private final ResponseArchive archive;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong recorded = new AtomicLong();
+
+	private final AtomicLong savedNanos = new AtomicLong();
+
+	private HttpReplay(Mode mode, File file) {
+		this.mode = mode;
+		this.archive = new ResponseArchive(file);
+	}
+
+	/**
+	 * @return The record or replay of the system properties, null if neither is asked for.
+	 */
+	public static HttpReplay fromProperties() {
+		String value = System.getProperty(MODE_PROPERTY);
+		if (value == null || value.trim().length() == 0) {
+			return null;
+		}
+		return forArchive(new File(System.getProperty(ARCHIVE_PROPERTY, DEFAULT_ARCHIVE)),
+				Mode.valueOf(value.trim().toUpperCase()));
+	}
+
+	/**
+	 * @param file
+	 *            The archive.
+	 * @param mode
+	 *            Whether to record to or replay from the archive.
+	 * @return The record or replay of the archive, shared by everyone asking for the same.
+	 */
+	public static synchronized HttpReplay forArchive(File file, Mode mode) {
+		String key = mode + ":" + file.getAbsolutePath();
+		HttpReplay replay = instances.get(key);
+		if (replay == null) {
+			final HttpReplay created = new HttpReplay(mode, file);
+			Runtime.getRuntime().addShutdownHook(new Thread("http-replay-shutdown") {
+				@Override
+				public void run() {
+					created.logStatistics();
+					created.close();
+				}
+			});
+			replay = created;
+			instances.put(key, replay);
+			log.info("HTTP traffic is {} {}.", mode == Mode.RECORD ? "recorded to" : "replayed from",
+					file.getAbsolutePath());
+		}
+		return replay;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Routes the requests of a web client through the archive.
+	 */
+	public void attach(WebClient webClient) {
+		new ReplayConnection(webClient);
+	}
+
+	/**
+	 * @return The number of requests answered from the archive.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return The number of requests missing in the archive when replaying.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getRecorded() {
+		return recorded.get();
+	}
+
+	/**
+	 * @return The time the replayed requests took when recorded, less the time it took to replay them.
+	 */
+	public long getSavedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(savedNanos.get());
+	}
+
+	public void logStatistics() {
+		log.info("HTTP {}: {} recorded, {} hits, {} misses, {} ms saved against the live requests.", new Object[] {
+				mode, getRecorded(), getHits(), getMisses(), getSavedMillis() });
+	}
+
+	/**
+	 * Closes the archive after recording.
+	 */
+	public void close() {
+		try {
+			archive.close();
+		} catch (IOException e) {
+			log.warn("The response archive {} could not be closed: {}", archive.getFile(), e.getMessage());
+		}
+	}
+
+	static String keyOf(WebRequest request) {
+		StringBuilder key = new StringBuilder(request.getHttpMethod().name()).append(' ')
+				.append(request.getUrl().toExternalForm());
+		if (request.getRequestBody() != null) {
+			key.append(' ').append(request.getRequestBody());
+		} else if (!request.getRequestParameters().isEmpty()) {
+			key.append(' ').append(request.getRequestParameters());
+		}
+		return key.toString();
+	}
+
+	private WebResponse replay(WebRequest request) throws IOException {
+		long start = System.nanoTime();
+		ResponseArchive.Entry entry = archive.get(keyOf(request));
+		if (entry == null) {
+			misses.incrementAndGet();
+			log.warn("No response to {} {} is recorded, answering 404.", request.getHttpMethod(), request.getUrl());
+			return new WebResponse(new WebResponseData(new byte[0], 404, "Not Recorded",
+					Collections.<NameValuePair> emptyList()), request, 0L);
+		}
+		WebResponse response = new WebResponse(new WebResponseData(entry.body, entry.status, entry.message,
+				entry.headers), request, 0L);
+		hits.incrementAndGet();
+		long nanos = Metrics.histogram("http.replay").recordSince(start);
+		savedNanos.addAndGet(Math.max(0L, entry.nanos - nanos));
+		return response;
+	}
+
+	private void record(WebRequest request, WebResponse response, long nanos) throws IOException {
+		InputStream content = response.getContentAsStream();
+		byte[] body;
+		try {
+			body = content == null ? new byte[0] : IOUtils.toByteArray(content);
+		} finally {
+			IOUtils.closeQuietly(content);
+		}
+		List<NameValuePair> headers = new ArrayList<NameValuePair>();
+		for (NameValuePair header : response.getResponseHeaders()) {
+			/* The body is stored decoded, its length and encoding are what HtmlUnit made of it */
+			String name = header.getName();
+			if (!"Content-Encoding".equalsIgnoreCase(name) && !"Content-Length".equalsIgnoreCase(name)
+					&& !"Transfer-Encoding".equalsIgnoreCase(name)) {
+				headers.add(header);
+			}
+		}
+		archive.append(keyOf(request), new ResponseArchive.Entry(response.getStatusCode(),
+				response.getStatusMessage(), headers, body, nanos));
+		recorded.incrementAndGet();
+	}
+
+	/**
+	 * Installs itself as the connection of the web client.
+	 */
+	private class ReplayConnection extends WebConnectionWrapper {
+		ReplayConnection(WebClient webClient) {
+			super(webClient);
+		}
+
+		@Override
+		public WebResponse getResponse(WebRequest request) throws IOException {
+			if (mode == Mode.REPLAY) {
+				return replay(request);
+			}
+			long start = System.nanoTime();
+			WebResponse response = super.getResponse(request);
+			record(request, response, Metrics.histogram("http.live").recordSince(start));
+			return response;
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package com.minh.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.minh.metrics.Metrics;
+
+/**
+ * Loads pages and returns as soon as they are ready in the sense of a Readiness. The driver's own get blocks until
+ * the page is loaded in full, so for the earlier milestones the navigation is started from inside the current page
+ * instead and the new page is watched with a script until it is ready.
+ * 
+ * The times are recorded in the histograms page.ready.&lt;readiness&gt; (from the call until ready), and where the
+ * browser has navigation timing page.domContentLoaded and page.load (from the start of the navigation).
+ */
+class PageLoader {
+	static final Logger log = LoggerFactory.getLogger(PageLoader.class);
+
+	/**
+	 * Marks the current document and leaves it. The mark tells the old document from the new one while navigating.
+	 */
+	static final String NAVIGATE_JAVASCRIPT = "window.__guiToken = arguments[0]; window.location.href = arguments[1];";
+
+	/**
+	 * Checks the readiness. Needs the condition as %1$s and whether to track the network as %2$s, takes the mark and
+	 * the quiet time as arguments. Returns whether the page is ready and the navigation timing milestones in
+	 * milliseconds, -1 where unknown.
+	 */
+	static final String READY_JAVASCRIPT = "var token = arguments[0], quiet = arguments[1];"
+			+ "if (token && window.__guiToken === token) { return [false, -1, -1]; }"
+			/* HtmlUnit leaves readyState out in some browser versions, it has loaded the page once scripts run */
+			+ "var state = document.readyState || 'complete';"
+			+ "function now() { return new Date().getTime(); }"
+			+ "function track() {"
+			+ "  if (window.__guiNet) { return window.__guiNet; }"
+			+ "  var net = window.__guiNet = { pending: 0, last: now(), entries: -1 };"
+			+ "  function started() { net.pending++; net.last = now(); }"
+			+ "  function ended() { net.pending--; net.last = now(); }"
+			+ "  try {"
+			+ "    var send = XMLHttpRequest.prototype.send;"
+			+ "    XMLHttpRequest.prototype.send = function() {"
+			+ "      var xhr = this, done = false;"
+			+ "      started();"
+			+ "      xhr.addEventListener('readystatechange', function() {"
+			+ "        if (xhr.readyState == 4 && !done) { done = true; ended(); }"
+			+ "      }, false);"
+			+ "      return send.apply(xhr, arguments);"
+			+ "    };"
+			+ "  } catch (ignore) {}"
+			+ "  if (window.fetch) {"
+			+ "    var fetch = window.fetch;"
+			+ "    window.fetch = function() {"
+			+ "      started();"
+			+ "      return fetch.apply(this, arguments).then("
+			+ "        function(response) { ended(); return response; },"
+			+ "        function(error) { ended(); throw error; });"
+			+ "    };"
+			+ "  }"
+			+ "  return net;"
+			+ "}"
+			+ "function idle() {"
+			+ "  var net = track();"
+			/* Requests started before the tracking was in place only show up as resource timing entries */
+			+ "  if (window.performance && performance.getEntriesByType) {"
+			+ "    var entries = performance.getEntriesByType('resource').length;"
+			+ "    if (entries != net.entries) { net.entries = entries; net.last = now(); }"
+			+ "  }"
+			+ "  return net.pending <= 0 && now() - net.last >= quiet;"
+			+ "}"
+			+ "if (%2$s) { track(); }"
+			+ "var ready = false;"
+			+ "try { ready = %1$s; } catch (ignore) {}"
+			+ "var t = window.performance && performance.timing, dcl = -1, load = -1;"
+			+ "if (t && t.navigationStart) {"
+			+ "  if (t.domContentLoadedEventStart) { dcl = t.domContentLoadedEventStart - t.navigationStart; }"
+			+ "  if (t.loadEventStart) { load = t.loadEventStart - t.navigationStart; }"
+			+ "}"
+			+ "return [ready, dcl, load];";
+
+	private final WebDriver webDriver;
+
+	PageLoader(WebDriver webDriver) {
+		this.webDriver = webDriver;
+	}
+
+	/**
+	 * Loads a page.
+	 * 
+	 * @param url
+	 *            The url of the page.
+	 * @param readiness
+	 *            When the page counts as ready.
+	 * @param timeoutMillis
+	 *            The longest time to wait for the page to get ready.
+	 * @throws RuntimeException
+	 *             If the page isn't ready in time.
+	 */
+	void load(String url, Readiness readiness, long timeoutMillis) {
+		long start = System.nanoTime();
+		String token = null;
+		if (!readiness.isLoad()) {
+			token = navigateInPage(url);
+		}
+		if (token == null) {
+			webDriver.get(url);
+		}
+		List<?> state = awaitReady(token, readiness, timeoutMillis);
+		long nanos = Metrics.histogram("page.ready." + readiness.getName()).recordSince(start);
+		recordMilestone("page.domContentLoaded", state.get(1));
+		recordMilestone("page.load", state.get(2));
+		if (!Boolean.TRUE.equals(state.get(0))) {
+			throw new RuntimeException("The page " + url + " was not ready (" + readiness + ") within " + timeoutMillis
+					+ " millis.");
+		}
+		log.debug("The page {} was ready ({}) after {} ms.", new Object[] { url, readiness,
+				TimeUnit.NANOSECONDS.toMillis(nanos) });
+	}
+
+	/**
+	 * Starts the navigation from inside the current page so that the call returns at once.
+	 * 
+	 * @return The mark of the document that is left or null if the navigation has to go through the driver, e.g.
+	 *         before the first page, in drivers without javascript or when only the fragment changes.
+	 */
+	private String navigateInPage(String url) {
+		if (!(webDriver instanceof JavascriptExecutor) || isSameDocument(url)) {
+			return null;
+		}
+		String token = Long.toString(System.nanoTime(), 36);
+		try {
+			((JavascriptExecutor) webDriver).executeScript(NAVIGATE_JAVASCRIPT, token, url);
+			return token;
+		} catch (WebDriverException e) {
+			log.debug("The page can't navigate by itself, using the driver: {}", e.getMessage());
+			return null;
+		} catch (UnsupportedOperationException e) {
+			/* HtmlUnit runs no scripts in documents that aren't HTML, e.g. plain text */
+			log.debug("The page can't navigate by itself, using the driver: {}", e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the url only differs from the current one in the fragment, the browser then scrolls within the
+	 *         document and no new document would clear the mark.
+	 */
+	private boolean isSameDocument(String url) {
+		if (url.indexOf('#') < 0) {
+			return false;
+		}
+		String current;
+		try {
+			current = webDriver.getCurrentUrl();
+		} catch (WebDriverException e) {
+			return false;
+		}
+		return current != null && withoutFragment(current).equals(withoutFragment(url));
+	}
+
+	private static String withoutFragment(String url) {
+		int hash = url.indexOf('#');
+		return hash < 0 ? url : url.substring(0, hash);
+	}
+
+	/**
+	 * Polls the readiness script with growing intervals.
+	 * 
+	 * @return The last answer of the script, ready or not.
+	 */
+	private List<?> awaitReady(String token, Readiness readiness, long timeoutMillis) {
+		List<?> state = state(false);
+		if (!(webDriver instanceof JavascriptExecutor)) {
+			/* The driver's get has loaded the page, that is all there is to know */
+			return state(true);
+		}
+		String script = String.format(READY_JAVASCRIPT, readiness.getCondition(), readiness.isTrackingNetwork());
+		long endBy = System.currentTimeMillis() + timeoutMillis;
+		Backoff backoff = new Backoff();
+		while (true) {
+			try {
+				/* Null arguments aren't allowed by every driver */
+				Object result = ((JavascriptExecutor) webDriver).executeScript(script, token == null ? "" : token,
+						readiness.getQuietMillis());
+				if (result instanceof List && ((List<?>) result).size() == 3) {
+					state = (List<?>) result;
+					if (Boolean.TRUE.equals(state.get(0))) {
+						return state;
+					}
+				}
+			} catch (WebDriverException e) {
+				/* Scripts fail while one document is unloaded and the next isn't there yet */
+				log.debug("The page isn't there yet: {}", e.getMessage());
+			} catch (UnsupportedOperationException e) {
+				/*
+				 * HtmlUnit runs no scripts in documents that aren't HTML. Such a document is the new one, the old page
+				 * ran the navigation, and it has nothing to load once it is there.
+				 */
+				log.debug("The page has no DOM to check, taking it as ready: {}", e.getMessage());
+				return state(true);
+			}
+			if (System.currentTimeMillis() >= endBy) {
+				return state;
+			}
+			ElementWaiter.sleep(backoff.next());
+		}
+	}
+
+	/**
+	 * @return The answer of the readiness script when the navigation timing is unknown.
+	 */
+	private static List<Object> state(boolean ready) {
+		List<Object> state = new ArrayList<Object>(3);
+		state.add(Boolean.valueOf(ready));
+		state.add(Long.valueOf(-1L));
+		state.add(Long.valueOf(-1L));
+		return state;
+	}
+
+	private static void recordMilestone(String name, Object millis) {
+		if (millis instanceof Number && ((Number) millis).longValue() >= 0) {
+			Metrics.histogram(name).record(TimeUnit.MILLISECONDS.toNanos(((Number) millis).longValue()));
+		}
+	}
+}
@@ -0,0 +1,327 @@
+package com.minh.helper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The processes started from this JVM, read from /proc or on Windows from wmic. Driver servers and browsers are
+ * children or grandchildren of the JVM, so the processes that turn up while a driver starts belong to that driver. On
+ * other systems the tree is empty.
+ */
+public final class ProcessTree {
+	static final Logger log = LoggerFactory.getLogger(ProcessTree.class);
+
+	private static final File PROC = new File("/proc");
+
+	private static final boolean WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+
+	private ProcessTree() {
+	}
+
+	/**
+	 * @return true if processes can be read, i.e. on Linux and Windows.
+	 */
+	public static boolean isSupported() {
+		return WINDOWS || hasProc();
+	}
+
+	private static boolean hasProc() {
+		return new File(PROC, "self/stat").isFile();
+	}
+
+	/**
+	 * @return The process id of this JVM or -1 if it can't be told.
+	 */
+	public static int selfPid() {
+		String name = ManagementFactory.getRuntimeMXBean().getName();
+		int at = name.indexOf('@');
+		try {
+			return Integer.parseInt(at < 0 ? name : name.substring(0, at));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @param pid
+	 *            The process to start from.
+	 * @return The children of the process, their children and so on, parents before children.
+	 */
+	public static Set<Integer> descendants(int pid) {
+		return descendants(Collections.singleton(pid));
+	}
+
+	/**
+	 * @param pids
+	 *            The processes to start from.
+	 * @return The descendants of all the processes, not including the processes themselves.
+	 */
+	public static Set<Integer> descendants(Set<Integer> pids) {
+		Set<Integer> result = new LinkedHashSet<Integer>();
+		if (pids.isEmpty() || !isSupported()) {
+			return result;
+		}
+		Map<Integer, List<Integer>> children = children();
+		Deque<Integer> queue = new ArrayDeque<Integer>(pids);
+		while (!queue.isEmpty()) {
+			List<Integer> list = children.get(queue.poll());
+			if (list == null) {
+				continue;
+			}
+			for (Integer child : list) {
+				if (!pids.contains(child) && result.add(child)) {
+					queue.add(child);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return The resident set size of the process in kilobytes, 0 if it is gone or not on Linux.
+	 */
+	public static long rssKilobytes(int pid) {
+		for (String line : read(new File(PROC, pid + "/status"))) {
+			if (line.startsWith("VmRSS:")) {
+				String[] parts = line.substring("VmRSS:".length()).trim().split("\\s+");
+				try {
+					return Long.parseLong(parts[0]);
+				} catch (NumberFormatException e) {
+					return 0L;
+				}
+			}
+		}
+		return 0L;
+	}
+
+	/**
+	 * @return true if the process is running.
+	 */
+	public static boolean isAlive(int pid) {
+		if (hasProc()) {
+			return new File(PROC, Integer.toString(pid)).isDirectory();
+		}
+		return parents().containsKey(pid);
+	}
+
+	/**
+	 * Tells a process apart from a later one that got the same id: the start time on Linux, the creation date on
+	 * Windows.
+	 * 
+	 * @return The identity of the running process, null if it is gone or can't be told.
+	 */
+	public static String identity(int pid) {
+		if (hasProc()) {
+			List<String> lines = read(new File(PROC, pid + "/stat"));
+			if (lines.isEmpty()) {
+				return null;
+			}
+			/* starttime is the 22nd field, the 20th after comm */
+			String stat = lines.get(0);
+			String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+			return fields.length > 19 ? fields[19] : null;
+		}
+		return WINDOWS ? windowsCreationDate(pid) : null;
+	}
+
+	/**
+	 * @param pids
+	 *            The processes to identify.
+	 * @return The identity of every process that is running, by process id.
+	 */
+	public static Map<Integer, String> identities(Set<Integer> pids) {
+		Map<Integer, String> result = new LinkedHashMap<Integer, String>();
+		for (int pid : pids) {
+			String identity = identity(pid);
+			if (identity != null) {
+				result.put(pid, identity);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param identities
+	 *            Processes by id as identified earlier.
+	 * @return The processes that still run and are the same processes as then, i.e. safe to kill.
+	 */
+	public static Set<Integer> unchanged(Map<Integer, String> identities) {
+		Set<Integer> result = new LinkedHashSet<Integer>();
+		for (Map.Entry<Integer, String> entry : identities.entrySet()) {
+			if (entry.getValue().equals(identity(entry.getKey()))) {
+				result.add(entry.getKey());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Kills the processes and all their descendants at once, without giving them a chance to clean up.
+	 * 
+	 * @param pids
+	 *            The processes to kill.
+	 * @return The number of processes that were asked to die.
+	 */
+	public static int kill(Set<Integer> pids) {
+		if (pids.isEmpty()) {
+			return 0;
+		}
+		List<String> command = new ArrayList<String>();
+		Set<Integer> all = new LinkedHashSet<Integer>(pids);
+		if (WINDOWS) {
+			/* taskkill takes the tree itself */
+			command.addAll(Arrays.asList("taskkill", "/F", "/T"));
+			for (int pid : pids) {
+				command.add("/PID");
+				command.add(Integer.toString(pid));
+			}
+		} else {
+			/* Collected before any dies, orphans are adopted by init and can't be found afterwards */
+			all.addAll(descendants(pids));
+			command.addAll(Arrays.asList("kill", "-KILL"));
+			for (int pid : all) {
+				command.add(Integer.toString(pid));
+			}
+		}
+		try {
+			Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+			IOUtils.toString(process.getInputStream());
+			process.waitFor();
+		} catch (IOException e) {
+			log.warn("The processes {} could not be killed: {}", all, e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return all.size();
+	}
+
+	/**
+	 * @return The children of every process by parent process id.
+	 */
+	private static Map<Integer, List<Integer>> children() {
+		Map<Integer, List<Integer>> result = new HashMap<Integer, List<Integer>>();
+		for (Map.Entry<Integer, Integer> entry : parents().entrySet()) {
+			List<Integer> list = result.get(entry.getValue());
+			if (list == null) {
+				list = new ArrayList<Integer>();
+				result.put(entry.getValue(), list);
+			}
+			list.add(entry.getKey());
+		}
+		return result;
+	}
+
+	/**
+	 * @return The parent of every process by process id.
+	 */
+	private static Map<Integer, Integer> parents() {
+		Map<Integer, Integer> result = new HashMap<Integer, Integer>();
+		if (!hasProc()) {
+			return WINDOWS ? windowsParents() : result;
+		}
+		String[] names = PROC.list();
+		if (names == null) {
+			return result;
+		}
+		for (String name : names) {
+			if (name.isEmpty() || !Character.isDigit(name.charAt(0))) {
+				continue;
+			}
+			List<String> lines = read(new File(PROC, name + "/stat"));
+			if (lines.isEmpty()) {
+				continue;
+			}
+			/* pid (comm) state ppid ..., comm may hold spaces and parentheses */
+			String stat = lines.get(0);
+			String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+			try {
+				result.put(Integer.valueOf(name), Integer.valueOf(fields[1]));
+			} catch (RuntimeException e) {
+				/* Not a process after all */
+			}
+		}
+		return result;
+	}
+
+	private static Map<Integer, Integer> windowsParents() {
+		Map<Integer, Integer> result = new HashMap<Integer, Integer>();
+		try {
+			Process process = new ProcessBuilder("wmic", "process", "get", "ParentProcessId,ProcessId")
+					.redirectErrorStream(true).start();
+			process.getOutputStream().close();
+			String output = IOUtils.toString(process.getInputStream());
+			process.waitFor();
+			for (String line : output.split("\\r?\\n")) {
+				String[] fields = line.trim().split("\\s+");
+				if (fields.length == 2 && Character.isDigit(fields[0].charAt(0))) {
+					result.put(Integer.valueOf(fields[1]), Integer.valueOf(fields[0]));
+				}
+			}
+		} catch (IOException e) {
+			log.debug("The processes could not be listed: {}", e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return result;
+	}
+
+	private static String windowsCreationDate(int pid) {
+		try {
+			Process process = new ProcessBuilder("wmic", "process", "where", "ProcessId=" + pid, "get", "CreationDate")
+					.redirectErrorStream(true).start();
+			process.getOutputStream().close();
+			String output = IOUtils.toString(process.getInputStream());
+			process.waitFor();
+			for (String line : output.split("\\r?\\n")) {
+				line = line.trim();
+				if (!line.isEmpty() && Character.isDigit(line.charAt(0))) {
+					return line;
+				}
+			}
+		} catch (IOException e) {
+			log.debug("The process {} could not be identified: {}", pid, e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return null;
+	}
+
+	/**
+	 * @return The lines of a /proc file or an empty list if the process is gone.
+	 */
+	private static List<String> read(File file) {
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			List<String> lines = new ArrayList<String>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+			return lines;
+		} catch (IOException e) {
+			return Collections.emptyList();
+		} finally {
+			IOUtils.closeQuietly(reader);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.minh.helper;
+
+import com.minh.selector.Via;
+
+/**
+ * When Browser.get considers a page ready. Each condition is a javascript expression checked in the page, with the
+ * document's ready state in the variable state.
+ */
+public final class Readiness {
+	/**
+	 * The system property with the default readiness of Browser.get: domContentLoaded, load or networkIdle.
+	 */
+	public static final String READINESS_PROPERTY = "gui.readiness";
+
+	/**
+	 * The quiet time of networkIdle when read from the system property.
+	 */
+	public static final long DEFAULT_QUIET_MILLIS = 500L;
+
+	/**
+	 * The document is parsed, style sheets, images and frames may still be loading.
+	 */
+	public static final Readiness DOM_CONTENT_LOADED = new Readiness("domContentLoaded", "state != 'loading'", 0L,
+			false);
+
+	/**
+	 * The document and everything it refers to are loaded. This is what the drivers wait for by default.
+	 */
+	public static final Readiness LOAD = new Readiness("load", "state == 'complete'", 0L, false);
+
+	private final String name;
+
+	private final String condition;
+
+	private final long quietMillis;
+
+	private final boolean trackingNetwork;
+
+	private Readiness(String name, String condition, long quietMillis, boolean trackingNetwork) {
+		this.name = name;
+		this.condition = condition;
+		this.quietMillis = quietMillis;
+		this.trackingNetwork = trackingNetwork;
+	}
+
+	/**
+	 * The page is loaded and no XMLHttpRequest, fetch or other resource request has started or ended for a while.
+	 * 
+	 * @param quietMillis
+	 *            The time without network activity, e.g. 500.
+	 */
+	public static Readiness networkIdle(long quietMillis) {
+		return new Readiness("networkIdle", "state == 'complete' && idle()", quietMillis, true);
+	}
+
+	/**
+	 * The document is parsed and an element that match the selector is in it, visible or not.
+	 * 
+	 * @param via
+	 *            The selector of the element.
+	 */
+	public static Readiness present(Via via) {
+		return new Readiness("present", "state != 'loading' && (" + via.toJavascript() + ") != null", 0L, false);
+	}
+
+	/**
+	 * @return The readiness named by the gui.readiness system property, load if it isn't set.
+	 */
+	public static Readiness fromProperties() {
+		String value = System.getProperty(READINESS_PROPERTY, LOAD.name);
+		if (DOM_CONTENT_LOADED.name.equalsIgnoreCase(value)) {
+			return DOM_CONTENT_LOADED;
+		}
+		if ("networkIdle".equalsIgnoreCase(value)) {
+			return networkIdle(DEFAULT_QUIET_MILLIS);
+		}
+		if (!LOAD.name.equalsIgnoreCase(value)) {
+			throw new IllegalArgumentException("Unknown readiness " + value + " in " + READINESS_PROPERTY);
+		}
+		return LOAD;
+	}
+
+	/**
+	 * @return The name used in log messages and metrics, e.g. networkIdle.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	String getCondition() {
+		return condition;
+	}
+
+	long getQuietMillis() {
+		return quietMillis;
+	}
+
+	boolean isTrackingNetwork() {
+		return trackingNetwork;
+	}
+
+	/**
+	 * @return true if the page has to be loaded in full before it is ready, which the driver's own get waits for.
+	 */
+	boolean isLoad() {
+		return this == LOAD;
+	}
+
+	@Override
+	public String toString() {
+		return quietMillis > 0 ? name + "(" + quietMillis + " ms)" : name;
+	}
+}
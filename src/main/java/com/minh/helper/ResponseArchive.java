@@ -0,0 +1,200 @@
+package com.minh.helper;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * A file of recorded HTTP responses. Responses are appended one after the other in a compact binary form: the request
+ * key, status, headers, body and the time the live request took. For replay the file is memory mapped and indexed
+ * once, a lookup then reads straight from the mapping. The last response recorded for a key wins. An archive cut off
+ * in the middle of a response, e.g. by a killed run, is read up to the last complete response.
+ */
+class ResponseArchive {
+	static final Logger log = LoggerFactory.getLogger(ResponseArchive.class);
+
+	private static final int MAGIC = 0x47554931;
+
+	private final File file;
+
+	private DataOutputStream out = null;
+
+	private MappedByteBuffer mapped = null;
+
+	private Map<String, Integer> index = null;
+
+	ResponseArchive(File file) {
+		this.file = file;
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * Appends a response. The first append of a run starts a new archive.
+	 */
+	synchronized void append(String key, Entry entry) throws IOException {
+		if (out == null) {
+			if (file.getParentFile() != null) {
+				file.getParentFile().mkdirs();
+			}
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, false)));
+			out.writeInt(MAGIC);
+		}
+		writeString(key);
+		out.writeInt(entry.status);
+		writeString(entry.message);
+		out.writeInt(entry.headers.size());
+		for (NameValuePair header : entry.headers) {
+			writeString(header.getName());
+			writeString(header.getValue());
+		}
+		out.writeInt(entry.body.length);
+		out.write(entry.body);
+		out.writeLong(entry.nanos);
+		/* Keep the archive usable even if the run is killed */
+		out.flush();
+	}
+
+	/**
+	 * @return The recorded response or null if there is none for the key.
+	 */
+	synchronized Entry get(String key) throws IOException {
+		if (index == null) {
+			open();
+		}
+		Integer position = index.get(key);
+		if (position == null) {
+			return null;
+		}
+		ByteBuffer buffer = mapped.duplicate();
+		buffer.position(position);
+		readString(buffer);
+		return readEntry(buffer);
+	}
+
+	synchronized int size() throws IOException {
+		if (index == null) {
+			open();
+		}
+		return index.size();
+	}
+
+	synchronized void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+
+	private void open() throws IOException {
+		index = new HashMap<String, Integer>();
+		if (!file.isFile()) {
+			throw new IOException("There is no response archive " + file.getAbsolutePath() + ", record one first.");
+		}
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			mapped = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+		} finally {
+			/* The mapping stays valid after the file is closed */
+			randomAccessFile.close();
+		}
+		if (mapped.remaining() < 4 || mapped.getInt() != MAGIC) {
+			throw new IOException("The file " + file.getAbsolutePath() + " isn't a response archive.");
+		}
+		ByteBuffer buffer = mapped.duplicate();
+		buffer.position(4);
+		while (buffer.hasRemaining()) {
+			int position = buffer.position();
+			try {
+				String key = readString(buffer);
+				readEntry(buffer);
+				index.put(key, position);
+			} catch (BufferUnderflowException e) {
+				log.warn("The response archive {} is cut off after {} bytes, the {} complete responses are replayed.",
+						new Object[] { file.getAbsolutePath(), position, index.size() });
+				break;
+			}
+		}
+	}
+
+	private void writeString(String value) throws IOException {
+		byte[] bytes = (value == null ? "" : value).getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) throws IOException {
+		byte[] bytes = new byte[readLength(buffer, 1)];
+		buffer.get(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static Entry readEntry(ByteBuffer buffer) throws IOException {
+		int status = buffer.getInt();
+		String message = readString(buffer);
+		/* A header takes at least the lengths of its name and value */
+		int headerCount = readLength(buffer, 8);
+		List<NameValuePair> headers = new ArrayList<NameValuePair>(headerCount);
+		for (int i = 0; i < headerCount; i++) {
+			headers.add(new NameValuePair(readString(buffer), readString(buffer)));
+		}
+		byte[] body = new byte[readLength(buffer, 1)];
+		buffer.get(body);
+		return new Entry(status, message, headers, body, buffer.getLong());
+	}
+
+	/**
+	 * @return The number of items that follow, each at least the given size.
+	 * @throws BufferUnderflowException
+	 *             if the items don't fit in what is left of the buffer, i.e. the archive is cut off.
+	 */
+	private static int readLength(ByteBuffer buffer, int itemSize) {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining() / itemSize) {
+			throw new BufferUnderflowException();
+		}
+		return length;
+	}
+
+	/**
+	 * One recorded response.
+	 */
+	static class Entry {
+		final int status;
+
+		final String message;
+
+		final List<NameValuePair> headers;
+
+		final byte[] body;
+
+		/* The time the live request took */
+		final long nanos;
+
+		Entry(int status, String message, List<NameValuePair> headers, byte[] body, long nanos) {
+			this.status = status;
+			this.message = message;
+			this.headers = headers;
+			this.body = body;
+			this.nanos = nanos;
+		}
+	}
+}
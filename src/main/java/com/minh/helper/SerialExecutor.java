@@ -0,0 +1,82 @@
+package com.minh.helper;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks one at a time in the order they were submitted, on the threads of another executor. Many serial
+ * executors can share a small pool of threads, each one only holds a thread while it has work.
+ */
+class SerialExecutor implements Executor {
+	static final Logger log = LoggerFactory.getLogger(SerialExecutor.class);
+
+	private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+
+	private final Executor executor;
+
+	private Runnable active = null;
+
+	SerialExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	public synchronized void execute(Runnable task) {
+		tasks.offer(task);
+		if (active == null) {
+			RejectedExecutionException rejected = scheduleNext();
+			if (rejected != null) {
+				throw rejected;
+			}
+		}
+	}
+
+	/**
+	 * Hands the next task to the other executor. When that rejects it, e.g. because it was shut down, the task and all
+	 * tasks queued behind it are cancelled if they are futures, so nobody waits for them forever, and no task is active
+	 * any more, so the next submitted task is handed to the executor again.
+	 *
+	 * @return The rejection, null if the task was taken or there was none.
+	 */
+	private synchronized RejectedExecutionException scheduleNext() {
+		final Runnable task = tasks.poll();
+		active = task;
+		if (task == null) {
+			return null;
+		}
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						task.run();
+					} finally {
+						RejectedExecutionException rejected = scheduleNext();
+						if (rejected != null) {
+							log.warn("The tasks left were cancelled, the executor rejected them: {}",
+									rejected.getMessage());
+						}
+					}
+				}
+			});
+			return null;
+		} catch (RejectedExecutionException e) {
+			active = null;
+			cancel(task);
+			for (Runnable queued = tasks.poll(); queued != null; queued = tasks.poll()) {
+				cancel(queued);
+			}
+			return e;
+		}
+	}
+
+	private static void cancel(Runnable task) {
+		if (task instanceof Future) {
+			((Future<?>) task).cancel(false);
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package com.minh.helper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.minh.helper.User.UserData;
+import com.minh.metrics.Metrics;
+
+/**
+ * Logs each user in through the UI once and hands the resulting session, the cookies and the localStorage of the
+ * site, to every browser that is to be logged in as the same user. A session is used until its first cookie expires,
+ * its time to live is up or the login check says it isn't valid anymore, then the user is logged in again.
+ * 
+ * Don't log out through the UI in tests that share a session, that ends the session for everyone.
+ */
+public class SessionCache {
+	static final Logger log = LoggerFactory.getLogger(SessionCache.class);
+
+	static final String READ_STORAGE_JAVASCRIPT = "var s = window.localStorage, r = [];"
+			+ "if (s) { for (var i = 0; i < s.length; i++) { var k = s.key(i); r.push(k, s.getItem(k)); } }"
+			+ "return r;";
+
+	static final String WRITE_STORAGE_JAVASCRIPT = "var s = window.localStorage, d = arguments[0];"
+			+ "if (s) { s.clear(); for (var i = 0; i + 1 < d.length; i += 2) { s.setItem(d[i], d[i + 1]); } }";
+
+	/**
+	 * How a user logs in and how to tell that a session is still valid.
+	 */
+	public interface Login {
+		/**
+		 * Logs the user in through the UI.
+		 */
+		void login(Browser browser, UserData user);
+
+		/**
+		 * Called after a session has been put into a browser. Check something cheap, e.g. a cookie or the page the
+		 * browser is on.
+		 * 
+		 * @return false to have the user logged in again.
+		 */
+		boolean isLoggedIn(Browser browser, UserData user);
+	}
+
+	private final String origin;
+
+	private final Login login;
+
+	private final long timeToLiveMillis;
+
+	private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+
+	/**
+	 * @param origin
+	 *            A cheap page on the site the session belongs to, cookies can only be set once the browser is on the
+	 *            site. E.g. http://viaplay.se/robots.txt
+	 * @param login
+	 *            The login of the site.
+	 * @param timeToLiveMillis
+	 *            The longest time a session is used, typically a bit shorter than the session timeout of the site.
+	 */
+	public SessionCache(String origin, Login login, long timeToLiveMillis) {
+		this.origin = origin;
+		this.login = login;
+		this.timeToLiveMillis = timeToLiveMillis;
+	}
+
+	/**
+	 * Logs the browser in as the user, with the cached session if there is a valid one and through the UI otherwise.
+	 * Only one browser at a time logs a user in, the others wait for its session. A valid session is put into the
+	 * browser without holding up other browsers of the same user.
+	 */
+	public void restore(Browser browser, UserData user) {
+		Session session = sessionOf(user);
+		Saved tried = null;
+		while (true) {
+			Saved saved = session.getValid();
+			if (saved != null && saved != tried) {
+				long start = System.nanoTime();
+				saved.applyTo(browser.getWebDriver(), origin);
+				if (login.isLoggedIn(browser, user)) {
+					Metrics.histogram("session.restore").recordSince(start);
+					log.debug("The session of {} is restored.", user.getUsername());
+					return;
+				}
+				log.info("The session of {} isn't valid anymore, logging in again.", user.getUsername());
+				tried = saved;
+			}
+			synchronized (session) {
+				saved = session.getValid();
+				if (saved != null && saved != tried) {
+					/* Another browser logged the user in while this one waited */
+					continue;
+				}
+				long start = System.nanoTime();
+				login.login(browser, user);
+				saved = Saved.capture(browser.getWebDriver(), timeToLiveMillis);
+				session.set(saved);
+				Metrics.histogram("session.login").recordSince(start);
+				log.info("{} is logged in, the session is kept until {}.", user.getUsername(), saved.getExpiry());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Forgets the session of a user, the next restore logs the user in again.
+	 */
+	public void invalidate(UserData user) {
+		sessionOf(user).clear();
+	}
+
+	private Session sessionOf(UserData user) {
+		Session session = sessions.get(user.getUsername());
+		if (session == null) {
+			Session created = new Session();
+			session = sessions.putIfAbsent(user.getUsername(), created);
+			if (session == null) {
+				session = created;
+			}
+		}
+		return session;
+	}
+
+	/**
+	 * The latest session of a user. Browsers log the user in while they hold its lock.
+	 */
+	static class Session {
+		private Saved saved = null;
+
+		/**
+		 * @return The saved session unless it has expired, null if there is none.
+		 */
+		synchronized Saved getValid() {
+			return saved != null && saved.getExpiry().after(new Date()) ? saved : null;
+		}
+
+		synchronized void set(Saved saved) {
+			this.saved = saved;
+		}
+
+		synchronized void clear() {
+			saved = null;
+		}
+	}
+
+	/**
+	 * The cookies and localStorage of a logged in user as they were right after the login. Never changed.
+	 */
+	static class Saved {
+		private final Set<Cookie> cookies;
+
+		private final List<Object> storage;
+
+		private final Date expiry;
+
+		private Saved(Set<Cookie> cookies, List<Object> storage, Date expiry) {
+			this.cookies = cookies;
+			this.storage = storage;
+			this.expiry = expiry;
+		}
+
+		Date getExpiry() {
+			return expiry;
+		}
+
+		static Saved capture(WebDriver webDriver, long timeToLiveMillis) {
+			Set<Cookie> cookies = Collections.unmodifiableSet(new HashSet<Cookie>(webDriver.manage().getCookies()));
+			List<Object> storage = new ArrayList<Object>();
+			if (webDriver instanceof JavascriptExecutor) {
+				try {
+					Object result = ((JavascriptExecutor) webDriver).executeScript(READ_STORAGE_JAVASCRIPT);
+					if (result instanceof List) {
+						storage.addAll((List<?>) result);
+					}
+				} catch (WebDriverException e) {
+					log.debug("The localStorage could not be read: {}", e.getMessage());
+				}
+			}
+			Date expiry = new Date(System.currentTimeMillis() + timeToLiveMillis);
+			for (Cookie cookie : cookies) {
+				if (cookie.getExpiry() != null && cookie.getExpiry().before(expiry)) {
+					expiry = cookie.getExpiry();
+				}
+			}
+			return new Saved(cookies, Collections.unmodifiableList(storage), expiry);
+		}
+
+		void applyTo(WebDriver webDriver, String origin) {
+			webDriver.get(origin);
+			WebDriver.Options options = webDriver.manage();
+			options.deleteAllCookies();
+			for (Cookie cookie : cookies) {
+				options.addCookie(cookie);
+			}
+			if (!storage.isEmpty() && webDriver instanceof JavascriptExecutor) {
+				try {
+					((JavascriptExecutor) webDriver).executeScript(WRITE_STORAGE_JAVASCRIPT, storage);
+				} catch (WebDriverException e) {
+					log.debug("The localStorage could not be written: {}", e.getMessage());
+				}
+			}
+		}
+	}
+}
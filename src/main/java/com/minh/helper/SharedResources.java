@@ -0,0 +1,363 @@
+package com.minh.helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sourceforge.htmlunit.corejs.javascript.Script;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.javascript.JavaScriptEngine;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+import com.minh.metrics.Metrics;
+
+/**
+ * The immutable artifacts that headless drivers share, so that a few hundred sessions in one JVM don't each hold a
+ * copy. Compiled scripts are kept by the SHA-1 of their source, including inline scripts and scripts whose response
+ * may not be cached, and response bodies with the same content share one byte array. Parsed style sheets and
+ * cacheable responses are shared through the HeadlessProfile's cache.
+ *
+ * A compiled script keeps the name of the url it came from for error messages, so the name is part of its key. Both
+ * stores are bounded and drop the least recently used entry when full, the bodies by their number and their total
+ * size. A body is only read and hashed once its url was loaded before, by this driver or another: a url loaded once
+ * has nothing to share it with.
+ *
+ * Every driver gets an Account of the bytes it loaded itself and the bytes it got from the shared stores.
+ */
+public final class SharedResources {
+	static final Logger log = LoggerFactory.getLogger(SharedResources.class);
+
+	static final int MAX_SCRIPTS = 2048;
+
+	static final int MAX_BODIES = 1024;
+
+	/**
+	 * The total size of the bodies kept.
+	 */
+	static final long MAX_BODIES_BYTES = 64L * 1024 * 1024;
+
+	/**
+	 * The number of urls remembered as loaded.
+	 */
+	static final int MAX_SEEN = 4096;
+
+	/**
+	 * Larger bodies are left to each driver, downloads rather than resources.
+	 */
+	static final int MAX_BODY_BYTES = 4 * 1024 * 1024;
+
+	private static final Map<String, Script> scripts = new LruMap<Script>(MAX_SCRIPTS);
+
+	private static final BodyMap bodies = new BodyMap(MAX_BODIES, MAX_BODIES_BYTES);
+
+	private static final Map<String, Boolean> seen = new LruMap<Boolean>(MAX_SEEN);
+
+	private SharedResources() {
+	}
+
+	/**
+	 * The memory a driver's resources take, roughly: the bytes of response bodies and script sources it loaded
+	 * itself and the bytes it got from the other drivers instead.
+	 */
+	public static class Account {
+		private final AtomicLong ownBytes = new AtomicLong();
+
+		private final AtomicLong sharedBytes = new AtomicLong();
+
+		private final AtomicLong scriptsCompiled = new AtomicLong();
+
+		private final AtomicLong scriptsShared = new AtomicLong();
+
+		public long getOwnBytes() {
+			return ownBytes.get();
+		}
+
+		public long getSharedBytes() {
+			return sharedBytes.get();
+		}
+
+		public long getScriptsCompiled() {
+			return scriptsCompiled.get();
+		}
+
+		public long getScriptsShared() {
+			return scriptsShared.get();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d KB own, %d KB shared, %d scripts compiled, %d shared", ownBytes.get() / 1024,
+					sharedBytes.get() / 1024, scriptsCompiled.get(), scriptsShared.get());
+		}
+	}
+
+	/**
+	 * Makes a new web client use the shared stores. Call before the client loads its first page.
+	 *
+	 * @return The account of the client's resources.
+	 */
+	static Account attach(WebClient webClient) {
+		Account account = new Account();
+		JavaScriptEngine engine = webClient.getJavaScriptEngine();
+		webClient.setJavaScriptEngine(new SharingEngine(webClient, account));
+		engine.shutdownJavaScriptExecutor();
+		new InterningConnection(webClient, account);
+		return account;
+	}
+
+	/**
+	 * @return The number of compiled scripts kept.
+	 */
+	public static int getScriptCount() {
+		synchronized (scripts) {
+			return scripts.size();
+		}
+	}
+
+	/**
+	 * @return The number of response bodies kept.
+	 */
+	public static int getBodyCount() {
+		synchronized (bodies) {
+			return bodies.size();
+		}
+	}
+
+	/**
+	 * @return The total size of the response bodies kept.
+	 */
+	public static long getBodyBytes() {
+		synchronized (bodies) {
+			return bodies.getBytes();
+		}
+	}
+
+	/**
+	 * Forgets all shared scripts and bodies. Drivers keep what they already have.
+	 */
+	public static void clear() {
+		synchronized (scripts) {
+			scripts.clear();
+		}
+		synchronized (bodies) {
+			bodies.clear();
+		}
+		synchronized (seen) {
+			seen.clear();
+		}
+	}
+
+	/**
+	 * HtmlUnit's engine with compiled scripts looked up by source before they are compiled. Rhino scripts can be run
+	 * in any scope and from several threads at once, HtmlUnit itself reuses them across the pages of one client.
+	 */
+	static class SharingEngine extends JavaScriptEngine {
+		private final Account account;
+
+		private final String browser;
+
+		SharingEngine(WebClient webClient, Account account) {
+			super(webClient);
+			this.account = account;
+			this.browser = webClient.getBrowserVersion().getNickname();
+		}
+
+		@Override
+		public Script compile(HtmlPage page, String sourceCode, String sourceName, int startLine) {
+			String key;
+			try {
+				key = browser + " " + sourceName + ":" + startLine + " " + Digests.sha1(sourceCode.getBytes("UTF-8"));
+			} catch (IOException e) {
+				throw new IllegalStateException("UTF-8 is missing from the JVM.", e);
+			}
+			long bytes = 2L * sourceCode.length();
+			Script script;
+			synchronized (scripts) {
+				script = scripts.get(key);
+			}
+			if (script != null) {
+				account.scriptsShared.incrementAndGet();
+				account.sharedBytes.addAndGet(bytes);
+				Metrics.counter("headless.scripts.shared").incrementAndGet();
+				return script;
+			}
+			script = super.compile(page, sourceCode, sourceName, startLine);
+			if (script != null) {
+				synchronized (scripts) {
+					scripts.put(key, script);
+				}
+				account.scriptsCompiled.incrementAndGet();
+				account.ownBytes.addAndGet(bytes);
+				Metrics.counter("headless.scripts.compiled").incrementAndGet();
+			}
+			return script;
+		}
+	}
+
+	/**
+	 * Hands out one byte array for all response bodies with the same content. Installs itself as the connection of
+	 * the web client.
+	 */
+	static class InterningConnection extends WebConnectionWrapper {
+		private final Account account;
+
+		InterningConnection(WebClient webClient, Account account) {
+			super(webClient);
+			this.account = account;
+		}
+
+		@Override
+		public WebResponse getResponse(WebRequest request) throws IOException {
+			WebResponse response = super.getResponse(request);
+			if (response.getStatusCode() != 200 || isLarge(response) || firstSeen(request)) {
+				return response;
+			}
+			/* Each call gives a new stream, reading a part of it leaves the response as it was */
+			InputStream in = response.getContentAsStream();
+			byte[] body;
+			try {
+				body = IOUtils.toByteArray(new BoundedInputStream(in, MAX_BODY_BYTES + 1L));
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+			if (body.length == 0 || body.length > MAX_BODY_BYTES) {
+				return response;
+			}
+			String key = Digests.sha1(body);
+			byte[] shared;
+			synchronized (bodies) {
+				shared = bodies.get(key);
+				if (shared == null) {
+					bodies.put(key, body);
+				}
+			}
+			if (shared == null) {
+				account.ownBytes.addAndGet(body.length);
+				shared = body;
+			} else {
+				account.sharedBytes.addAndGet(body.length);
+				Metrics.counter("headless.bytes.shared").addAndGet(body.length);
+			}
+			WebResponseData data = new WebResponseData(shared, response.getStatusCode(), response.getStatusMessage(),
+					decodedHeaders(response));
+			return new WebResponse(data, request, response.getLoadTime());
+		}
+
+		/**
+		 * @return The headers without those about the encoding on the wire. The shared body is already decoded, and
+		 *         WebResponseData would decode it again for a Content-Encoding, see HttpReplay.record.
+		 */
+		private static List<NameValuePair> decodedHeaders(WebResponse response) {
+			List<NameValuePair> headers = new ArrayList<NameValuePair>();
+			for (NameValuePair header : response.getResponseHeaders()) {
+				String name = header.getName();
+				if (!"Content-Encoding".equalsIgnoreCase(name) && !"Content-Length".equalsIgnoreCase(name)
+						&& !"Transfer-Encoding".equalsIgnoreCase(name)) {
+					headers.add(header);
+				}
+			}
+			return headers;
+		}
+
+		private static boolean isLarge(WebResponse response) {
+			String length = response.getResponseHeaderValue("Content-Length");
+			try {
+				return length != null && Long.parseLong(length.trim()) > MAX_BODY_BYTES;
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * @return true the first time the url is loaded.
+		 */
+		private static boolean firstSeen(WebRequest request) {
+			String url = request.getUrl().toExternalForm();
+			synchronized (seen) {
+				return seen.put(url, Boolean.TRUE) == null;
+			}
+		}
+	}
+
+	/**
+	 * A map that drops the least recently used entry when full. Not synchronized.
+	 */
+	static class LruMap<V> extends LinkedHashMap<String, V> {
+		private static final long serialVersionUID = 1L;
+
+		final int maxSize;
+
+		LruMap(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+			return size() > maxSize;
+		}
+	}
+
+	/**
+	 * The bodies by hash, dropping the least recently used ones while there are too many or they are too large
+	 * together. Not synchronized.
+	 */
+	static class BodyMap extends LruMap<byte[]> {
+		private static final long serialVersionUID = 1L;
+
+		private final long maxBytes;
+
+		private long bytes = 0L;
+
+		BodyMap(int maxSize, long maxBytes) {
+			super(maxSize);
+			this.maxBytes = maxBytes;
+		}
+
+		long getBytes() {
+			return bytes;
+		}
+
+		@Override
+		public byte[] put(String key, byte[] value) {
+			bytes += value.length;
+			byte[] old = super.put(key, value);
+			if (old != null) {
+				bytes -= old.length;
+			}
+			return old;
+		}
+
+		@Override
+		public void clear() {
+			super.clear();
+			bytes = 0L;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+			Iterator<byte[]> values = values().iterator();
+			/* The newest entry comes last and stays unless it alone is too large */
+			while ((size() > maxSize || bytes > maxBytes) && values.hasNext()) {
+				bytes -= values.next().length;
+				values.remove();
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,291 @@
+package com.minh.helper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.minh.helper.User.UserData;
+import com.minh.metrics.LatencyHistogram;
+import com.minh.metrics.Metrics;
+
+/**
+ * A pool of test accounts. Each account is leased to one test at a time, two browsers logged in as the same account
+ * tend to end each other's sessions. A released account can be held back for a cooldown before it is leased again,
+ * e.g. while the site still considers it logged in.
+ * 
+ * The accounts are read line by line from a file, either comma separated (username,password,firstName,lastName) or
+ * properties style (username=password,firstName,lastName). Empty lines and lines starting with # are skipped.
+ * 
+ * Leasing doesn't lock, the idle accounts are kept in a lock free queue. The time spent waiting for an account is
+ * recorded in the histogram users.wait and the number of empty or cooling polls is counted as contention. A pool
+ * that often waits is too small for the parallelism of the run.
+ */
+public class UserPool {
+	static final Logger log = LoggerFactory.getLogger(UserPool.class);
+
+	/**
+	 * The system property with the account file of the default pool.
+	 */
+	public static final String FILE_PROPERTY = "gui.users";
+
+	/**
+	 * The system property with the cooldown in milliseconds of the default pool.
+	 */
+	public static final String COOLDOWN_PROPERTY = "gui.users.cooldown";
+
+	private static UserPool defaultPool = null;
+
+	private final Queue<Account> idle = new ConcurrentLinkedQueue<Account>();
+
+	private final ConcurrentMap<String, Account> accounts = new ConcurrentHashMap<String, Account>();
+
+	private final long cooldownMillis;
+
+	private final AtomicLong leases = new AtomicLong();
+
+	private final AtomicLong contention = new AtomicLong();
+
+	private final AtomicInteger leased = new AtomicInteger();
+
+	private final AtomicInteger maxLeased = new AtomicInteger();
+
+	/**
+	 * @param cooldownMillis
+	 *            The time a released account rests before it is leased again.
+	 */
+	public UserPool(long cooldownMillis) {
+		this.cooldownMillis = cooldownMillis;
+	}
+
+	/**
+	 * The pool of the account file in the gui.users system property, or of User.JOB_TEST alone if it isn't set.
+	 * 
+	 * @return The shared pool.
+	 */
+	public static synchronized UserPool getDefault() {
+		if (defaultPool == null) {
+			UserPool pool = new UserPool(Long.getLong(COOLDOWN_PROPERTY, 0L));
+			String file = System.getProperty(FILE_PROPERTY);
+			if (file == null) {
+				pool.add(User.JOB_TEST);
+			} else {
+				pool.load(new File(file));
+			}
+			defaultPool = pool;
+		}
+		return defaultPool;
+	}
+
+	/**
+	 * Adds the accounts of a file.
+	 * 
+	 * @param file
+	 *            A .csv or .properties file.
+	 * @return The number of accounts added.
+	 */
+	public int load(File file) {
+		BufferedReader reader = null;
+		int count = 0;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				UserData user = parse(line.trim());
+				if (user != null) {
+					add(user);
+					count++;
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("The accounts in " + file.getAbsolutePath() + " could not be read.", e);
+		} finally {
+			IOUtils.closeQuietly(reader);
+		}
+		log.info("{} accounts were read from {}.", count, file.getName());
+		return count;
+	}
+
+	/**
+	 * @return The account of one line or null for empty lines, comments and a username header.
+	 */
+	static UserData parse(String line) {
+		if (line.length() == 0 || line.startsWith("#")) {
+			return null;
+		}
+		int equals = line.indexOf('=');
+		String[] fields;
+		if (equals > 0 && (line.indexOf(',') < 0 || equals < line.indexOf(','))) {
+			String[] rest = line.substring(equals + 1).split(",", -1);
+			fields = new String[rest.length + 1];
+			fields[0] = line.substring(0, equals);
+			System.arraycopy(rest, 0, fields, 1, rest.length);
+		} else {
+			fields = line.split(",", -1);
+		}
+		if (fields.length < 2 || "username".equalsIgnoreCase(fields[0].trim())) {
+			return null;
+		}
+		return new UserData(fields[0].trim(), fields[1].trim(), field(fields, 2), field(fields, 3));
+	}
+
+	private static String field(String[] fields, int index) {
+		return index < fields.length ? fields[index].trim() : "";
+	}
+
+	/**
+	 * Adds an account, unless there is one with the same username already.
+	 */
+	public void add(UserData user) {
+		Account account = new Account(user);
+		if (accounts.putIfAbsent(user.getUsername(), account) == null) {
+			idle.offer(account);
+		}
+	}
+
+	public int size() {
+		return accounts.size();
+	}
+
+	/**
+	 * Leases an account that no one else has and that isn't cooling down, waiting for one if needed.
+	 * 
+	 * @param timeoutMillis
+	 *            The longest time to wait.
+	 * @return The account, release it when done.
+	 * @throws IllegalStateException
+	 *             If no account was free in time.
+	 */
+	public UserData lease(long timeoutMillis) {
+		long start = System.nanoTime();
+		long endBy = System.currentTimeMillis() + timeoutMillis;
+		Backoff backoff = new Backoff();
+		while (true) {
+			Account account = pollReady();
+			if (account != null) {
+				if (!account.leased.compareAndSet(false, true)) {
+					throw new IllegalStateException("The idle account " + account.user.getUsername() + " is leased.");
+				}
+				leases.incrementAndGet();
+				int now = leased.incrementAndGet();
+				int max;
+				while (now > (max = maxLeased.get()) && !maxLeased.compareAndSet(max, now)) {
+					/* Another lease raised the max, try again */
+				}
+				Metrics.histogram("users.wait").recordSince(start);
+				return account.user;
+			}
+			contention.incrementAndGet();
+			if (System.currentTimeMillis() >= endBy) {
+				Metrics.histogram("users.wait").recordSince(start);
+				throw new IllegalStateException("No account of " + accounts.size() + " was free within "
+						+ timeoutMillis + " ms, " + leased.get() + " are leased.");
+			}
+			ElementWaiter.sleep(backoff.next());
+		}
+	}
+
+	/**
+	 * Takes the first idle account that has cooled down. Accounts still cooling go back to the end of the queue.
+	 */
+	private Account pollReady() {
+		long now = System.currentTimeMillis();
+		/* At most one round through the queue, other threads move accounts around meanwhile */
+		for (int i = accounts.size(); i > 0; i--) {
+			Account account = idle.poll();
+			if (account == null) {
+				return null;
+			}
+			if (account.availableAt <= now) {
+				return account;
+			}
+			idle.offer(account);
+		}
+		return null;
+	}
+
+	/**
+	 * Gives an account back after the pool's cooldown.
+	 */
+	public void release(UserData user) {
+		release(user, cooldownMillis);
+	}
+
+	/**
+	 * Gives an account back. An account that isn't leased is left alone, so releasing twice, e.g. in a finally block
+	 * and in an @After method, doesn't put it in the pool twice.
+	 * 
+	 * @param user
+	 *            The leased account.
+	 * @param cooldownMillis
+	 *            The time the account rests before it is leased again.
+	 */
+	public void release(UserData user, long cooldownMillis) {
+		Account account = accounts.get(user.getUsername());
+		if (account == null || account.user != user) {
+			throw new IllegalArgumentException("The account " + user.getUsername() + " isn't from this pool.");
+		}
+		if (!account.leased.compareAndSet(true, false)) {
+			log.warn("The account {} was released but isn't leased.", user.getUsername());
+			return;
+		}
+		account.availableAt = System.currentTimeMillis() + cooldownMillis;
+		leased.decrementAndGet();
+		idle.offer(account);
+	}
+
+	/**
+	 * @return The number of polls that found no free account.
+	 */
+	public long getContention() {
+		return contention.get();
+	}
+
+	/**
+	 * @return The number of accounts leased right now.
+	 */
+	public int getLeased() {
+		return leased.get();
+	}
+
+	/**
+	 * @return The most accounts leased at the same time, the least the pool needs for the run's parallelism.
+	 */
+	public int getMaxLeased() {
+		return maxLeased.get();
+	}
+
+	public void logStatistics() {
+		LatencyHistogram wait = Metrics.histogram("users.wait");
+		log.info("User pool: {} accounts, {} leases, at most {} at once, {} contended polls, p99 wait {} ms.",
+				new Object[] { accounts.size(), leases.get(), maxLeased.get(), contention.get(),
+						TimeUnit.NANOSECONDS.toMillis(wait.getPercentile(99)) });
+	}
+
+	private static class Account {
+		final UserData user;
+
+		/* Written by the releasing thread before the account is offered, read after it is polled */
+		volatile long availableAt = 0L;
+
+		/* Set from the lease until the release, guards against giving the account back twice */
+		final AtomicBoolean leased = new AtomicBoolean();
+
+		Account(UserData user) {
+			this.user = user;
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package com.minh.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size, lock free histogram of durations in nanoseconds. Values are counted in buckets of 16 per power of two
+ * (the HdrHistogram layout) so any percentile is within about 6% of the recorded value while the memory use stays
+ * constant no matter how many values are recorded.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/* Values below this are counted exactly, one bucket each */
+	private static final int LINEAR_LIMIT = SUB_BUCKETS << 1;
+
+	private static final int BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS);
+
+	private final String name;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong total = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	public LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Counts one duration.
+	 *
+	 * @param nanos
+	 *            The duration in nanoseconds. Negative values are counted as 0.
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0L, nanos);
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+			/* Another thread raised the max, try again */
+		}
+	}
+
+	/**
+	 * Counts the time passed since a System.nanoTime() start value.
+	 *
+	 * @param startNanos
+	 *            The value of System.nanoTime() when the measured operation started.
+	 * @return The recorded duration in nanoseconds.
+	 */
+	public long recordSince(long startNanos) {
+		long nanos = System.nanoTime() - startNanos;
+		record(nanos);
+		return nanos;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotal() {
+		return total.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public long getMean() {
+		long n = count.get();
+		return n == 0 ? 0L : total.get() / n;
+	}
+
+	/**
+	 * @param percentile
+	 *            A percentile between 0 and 100.
+	 * @return The highest value in the bucket holding the wanted percentile, in nanoseconds, or 0 if empty.
+	 */
+	public long getPercentile(double percentile) {
+		long n = count.get();
+		if (n == 0) {
+			return 0L;
+		}
+		long rank = Math.max(1L, (long) Math.ceil(n * Math.min(100.0, percentile) / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValueOf(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Adds all values recorded in another histogram to this one.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = other.counts.get(i);
+			if (c != 0) {
+				counts.addAndGet(i, c);
+			}
+		}
+		count.addAndGet(other.count.get());
+		total.addAndGet(other.total.get());
+		long otherMax = other.max.get();
+		long current;
+		while (otherMax > (current = max.get()) && !max.compareAndSet(current, otherMax)) {
+			/* Another thread raised the max, try again */
+		}
+	}
+
+	/**
+	 * @param earlier
+	 *            A copy of this histogram taken earlier.
+	 * @return The values recorded since the copy was taken. The max is the highest recorded value within about 6%.
+	 */
+	public LatencyHistogram since(LatencyHistogram earlier) {
+		LatencyHistogram difference = new LatencyHistogram(name);
+		int highest = -1;
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = counts.get(i) - earlier.counts.get(i);
+			if (c > 0) {
+				difference.counts.set(i, c);
+				highest = i;
+			}
+		}
+		difference.count.set(count.get() - earlier.count.get());
+		difference.total.set(total.get() - earlier.total.get());
+		difference.max.set(highest < 0 ? 0L : Math.min(highestValueOf(highest), max.get()));
+		return difference;
+	}
+
+	/**
+	 * @return A histogram with the values recorded so far.
+	 */
+	public LatencyHistogram copy() {
+		LatencyHistogram copy = new LatencyHistogram(name);
+		copy.add(this);
+		return copy;
+	}
+
+	static int indexOf(long value) {
+		if (value < LINEAR_LIMIT) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return SUB_BUCKETS * shift + (int) (value >>> shift);
+	}
+
+	static long highestValueOf(int index) {
+		if (index < LINEAR_LIMIT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long sub = SUB_BUCKETS + index % SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * @return A one line summary in milliseconds.
+	 */
+	@Override
+	public String toString() {
+		return String.format("%s: count=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms", name, getCount(),
+				millis(getMean()), millis(getPercentile(50)), millis(getPercentile(90)), millis(getPercentile(99)),
+				millis(getMax()));
+	}
+
+	static double millis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1L);
+	}
+}
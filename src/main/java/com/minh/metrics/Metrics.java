@@ -0,0 +1,90 @@
+package com.minh.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The registry of the named histograms and counters of a test run. Both are created on first use and live until reset.
+ */
+public final class Metrics {
+	private static final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	private static final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+	private Metrics() {
+	}
+
+	/**
+	 * @param name
+	 *            The name of the histogram, e.g. "wait.appear".
+	 * @return The histogram with the given name, created if needed.
+	 */
+	public static LatencyHistogram histogram(String name) {
+		LatencyHistogram histogram = histograms.get(name);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram(name);
+			histogram = histograms.putIfAbsent(name, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return All histograms sorted by name.
+	 */
+	public static List<LatencyHistogram> histograms() {
+		List<LatencyHistogram> result = new ArrayList<LatencyHistogram>(histograms.values());
+		Collections.sort(result, new Comparator<LatencyHistogram>() {
+			public int compare(LatencyHistogram a, LatencyHistogram b) {
+				return a.getName().compareTo(b.getName());
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * @param name
+	 *            The name of the counter, e.g. "browser.get.errors".
+	 * @return The counter with the given name, created if needed.
+	 */
+	public static AtomicLong counter(String name) {
+		AtomicLong counter = counters.get(name);
+		if (counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = counters.putIfAbsent(name, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * @return The current values of all counters sorted by name.
+	 */
+	public static SortedMap<String, Long> counters() {
+		SortedMap<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().get());
+		}
+		return result;
+	}
+
+	/**
+	 * Forgets all histograms and counters.
+	 */
+	public static void reset() {
+		histograms.clear();
+		counters.clear();
+	}
+}
@@ -0,0 +1,118 @@
+package com.minh.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the histograms and counters of the Metrics registry as JSON and summarizes the slowest ones in the log.
+ */
+public class MetricsReport {
+	static final Logger log = LoggerFactory.getLogger(MetricsReport.class);
+
+	/**
+	 * Writes all histograms to a JSON file, one object per histogram with durations in milliseconds, followed by the
+	 * counters.
+	 *
+	 * @param file
+	 *            The file to write, its directory is created if needed.
+	 */
+	public static void write(File file) throws IOException {
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("The directory " + dir + " could not be created.");
+		}
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write("{\"histograms\": [");
+			String separator = "\n";
+			for (LatencyHistogram histogram : Metrics.histograms()) {
+				writer.write(separator);
+				writer.write(toJson(histogram));
+				separator = ",\n";
+			}
+			writer.write("\n], \"counters\": {");
+			separator = "\n";
+			for (Map.Entry<String, Long> counter : Metrics.counters().entrySet()) {
+				writer.write(separator);
+				writer.write(quote(counter.getKey()) + ": " + counter.getValue());
+				separator = ",\n";
+			}
+			writer.write("\n}}\n");
+		} finally {
+			writer.close();
+		}
+		log.info("The metrics report is written to {}.", file);
+	}
+
+	/**
+	 * @param prefix
+	 *            The histograms to look at, e.g. "selector.".
+	 * @param n
+	 *            The number of histograms wanted.
+	 * @return The n histograms with the given prefix and the highest mean, slowest first.
+	 */
+	public static List<LatencyHistogram> slowest(String prefix, int n) {
+		List<LatencyHistogram> matching = new ArrayList<LatencyHistogram>();
+		for (LatencyHistogram histogram : Metrics.histograms()) {
+			if (histogram.getName().startsWith(prefix) && histogram.getCount() > 0) {
+				matching.add(histogram);
+			}
+		}
+		Collections.sort(matching, new Comparator<LatencyHistogram>() {
+			public int compare(LatencyHistogram a, LatencyHistogram b) {
+				return a.getMean() < b.getMean() ? 1 : a.getMean() > b.getMean() ? -1 : 0;
+			}
+		});
+		return matching.subList(0, Math.min(n, matching.size()));
+	}
+
+	/**
+	 * Logs the n slowest selectors.
+	 */
+	public static void logSlowestSelectors(int n) {
+		List<LatencyHistogram> slowest = slowest("selector.", n);
+		if (slowest.isEmpty()) {
+			return;
+		}
+		log.info("The {} slowest selectors:", slowest.size());
+		for (LatencyHistogram histogram : slowest) {
+			log.info("  {}", histogram);
+		}
+	}
+
+	static String toJson(LatencyHistogram histogram) {
+		return String.format(Locale.ROOT, "{\"name\": %s, \"count\": %d, \"totalMs\": %.3f, \"meanMs\": %.3f, "
+				+ "\"p50Ms\": %.3f, \"p90Ms\": %.3f, \"p99Ms\": %.3f, \"maxMs\": %.3f}", quote(histogram.getName()),
+				histogram.getCount(), LatencyHistogram.millis(histogram.getTotal()),
+				LatencyHistogram.millis(histogram.getMean()), LatencyHistogram.millis(histogram.getPercentile(50)),
+				LatencyHistogram.millis(histogram.getPercentile(90)),
+				LatencyHistogram.millis(histogram.getPercentile(99)), LatencyHistogram.millis(histogram.getMax()));
+	}
+
+	static String quote(String value) {
+		StringBuilder result = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				result.append('\\').append(c);
+			} else if (c < ' ') {
+				result.append(String.format("\\u%04x", (int) c));
+			} else {
+				result.append(c);
+			}
+		}
+		return result.append('"').toString();
+	}
+}
@@ -0,0 +1,38 @@
+package com.minh.metrics;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.runner.Result;
+import org.junit.runner.notification.RunListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A JUnit listener that writes the metrics report and logs the slowest selectors when the test run ends. It is
+ * registered with surefire in the pom. The report goes to target/gui-metrics.json unless -Dgui.metrics.report says
+ * otherwise.
+ */
+public class MetricsReporter extends RunListener {
+	static final Logger log = LoggerFactory.getLogger(MetricsReporter.class);
+
+	/**
+	 * The system property that sets where the report is written.
+	 */
+	public static final String REPORT_PROPERTY = "gui.metrics.report";
+
+	/**
+	 * The number of selectors listed in the summary.
+	 */
+	static final int TOP_SELECTORS = 10;
+
+	@Override
+	public void testRunFinished(Result result) {
+		try {
+			MetricsReport.write(new File(System.getProperty(REPORT_PROPERTY, "target/gui-metrics.json")));
+		} catch (IOException e) {
+			log.warn("The metrics report could not be written.", e);
+		}
+		MetricsReport.logSlowestSelectors(TOP_SELECTORS);
+	}
+}
@@ -0,0 +1,469 @@
+package com.minh.metrics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.minh.helper.Browser;
+import com.minh.helper.CommandTimer;
+
+/**
+ * A JUnit listener that appends every test event to a file as it happens, one JSON object per line, so that a long run
+ * can be followed with tail -f and analysed without the surefire XML. It is registered with surefire in the pom next
+ * to MetricsReporter. The file is target/gui-tests.jsonl unless -Dgui.stream.file says otherwise, -Dgui.stream=false
+ * turns it off.
+ *
+ * A line is written when a test starts, and one with the start, end, duration, number of driver commands sent and
+ * saved, outcome and failure when it finishes. Lines are buffered and flushed every gui.stream.flush milliseconds,
+ * also while a test hangs. Only the tests running right now, the last lines and a histogram of the durations are kept
+ * in memory, see getSummary and tail. summarize reads a written file back the same way.
+ *
+ * The driver commands are counted by CommandTimer per thread, so they are only known with -Dgui.instrument=true and
+ * when a test runs on the thread that fires its events, as with JUnit and ParallelRunner. The commands that lazy
+ * element descriptions in log messages saved, see Browser.describe, are counted per thread the same way.
+ */
+public class StreamingReporter extends RunListener {
+	static final Logger log = LoggerFactory.getLogger(StreamingReporter.class);
+
+	/**
+	 * The system property that turns the reporter off when set to false.
+	 */
+	public static final String STREAM_PROPERTY = "gui.stream";
+
+	/**
+	 * The system property that sets where the events are written.
+	 */
+	public static final String FILE_PROPERTY = "gui.stream.file";
+
+	/**
+	 * The system property with the time in milliseconds between flushes, 1000 by default.
+	 */
+	public static final String FLUSH_PROPERTY = "gui.stream.flush";
+
+	/**
+	 * The number of lines tail can return.
+	 */
+	static final int TAIL_LINES = 100;
+
+	/**
+	 * The most characters of a stack trace written, a line stays small even for deep traces.
+	 */
+	static final int MAX_TRACE = 8192;
+
+	private static final Pattern OUTCOME = Pattern.compile("\"outcome\": \"(\\w+)\"");
+
+	private static final Pattern DURATION = Pattern.compile("\"durationMs\": (\\d+)");
+
+	private static final Pattern COMMANDS = Pattern.compile("\"commands\": (\\d+)");
+
+	private static volatile StreamingReporter current;
+
+	/**
+	 * The outcomes of the tests so far and a histogram of their durations, in constant memory.
+	 */
+	public static class Summary {
+		private final LatencyHistogram durations = new LatencyHistogram("test");
+
+		private long passed;
+
+		private long failed;
+
+		private long skipped;
+
+		private long ignored;
+
+		private long commands;
+
+		synchronized void add(String outcome, long millis, long commands) {
+			if ("ignored".equals(outcome)) {
+				ignored++;
+				return;
+			}
+			if ("failed".equals(outcome)) {
+				failed++;
+			} else if ("skipped".equals(outcome)) {
+				skipped++;
+			} else {
+				passed++;
+			}
+			this.commands += commands;
+			durations.record(TimeUnit.MILLISECONDS.toNanos(millis));
+		}
+
+		/**
+		 * @return The durations of the finished tests, ignored tests aren't counted.
+		 */
+		public LatencyHistogram getDurations() {
+			return durations.copy();
+		}
+
+		/**
+		 * @param percentile
+		 *            A percentile between 0 and 100.
+		 * @return The duration in milliseconds within which the given share of the finished tests ran.
+		 */
+		public double getPercentileMillis(double percentile) {
+			return LatencyHistogram.millis(durations.getPercentile(percentile));
+		}
+
+		public synchronized long getPassed() {
+			return passed;
+		}
+
+		public synchronized long getFailed() {
+			return failed;
+		}
+
+		/**
+		 * @return The number of tests whose assumption failed.
+		 */
+		public synchronized long getSkipped() {
+			return skipped;
+		}
+
+		public synchronized long getIgnored() {
+			return ignored;
+		}
+
+		/**
+		 * @return The number of driver commands sent by the finished tests.
+		 */
+		public synchronized long getCommands() {
+			return commands;
+		}
+
+		@Override
+		public synchronized String toString() {
+			return String.format(Locale.ROOT, "%d passed, %d failed, %d skipped, %d ignored, %d commands, "
+					+ "p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms", passed, failed, skipped, ignored, commands,
+					getPercentileMillis(50), getPercentileMillis(90), getPercentileMillis(99),
+					LatencyHistogram.millis(durations.getMax()));
+		}
+	}
+
+	/**
+	 * A test that has started and not finished yet.
+	 */
+	private static class Running {
+		private final long start = System.currentTimeMillis();
+
+		private final long startNanos = System.nanoTime();
+
+		private final long startCommands = CommandTimer.getCommandCount();
+
+		private final long startCommandsSaved = Browser.getThreadLoggingCommandsSaved();
+
+		private String outcome = "passed";
+
+		private String failure;
+	}
+
+	private final File file;
+
+	private final long flushMillis;
+
+	private final Map<Description, Running> running = new ConcurrentHashMap<Description, Running>();
+
+	private final Summary summary = new Summary();
+
+	private final LinkedList<String> tail = new LinkedList<String>();
+
+	private Writer writer;
+
+	private Thread flusher;
+
+	private boolean dirty;
+
+	/* True when there is no file or it can't be written */
+	private boolean broken;
+
+	/**
+	 * Set up by the gui.stream.* system properties, as surefire creates it.
+	 */
+	public StreamingReporter() {
+		this("false".equalsIgnoreCase(System.getProperty(STREAM_PROPERTY)) ? null : new File(System.getProperty(
+				FILE_PROPERTY, "target/gui-tests.jsonl")), Long.getLong(FLUSH_PROPERTY, 1000L));
+	}
+
+	/**
+	 * @param file
+	 *            The file to append to, null to keep only the summary and the tail.
+	 * @param flushMillis
+	 *            The longest time a line stays in the buffer.
+	 */
+	public StreamingReporter(File file, long flushMillis) {
+		this.file = file;
+		this.flushMillis = flushMillis;
+	}
+
+	/**
+	 * @return The reporter that saw the latest event in this JVM, null if there was none.
+	 */
+	public static StreamingReporter current() {
+		return current;
+	}
+
+	@Override
+	public void testRunStarted(Description description) {
+		write(String.format(Locale.ROOT, "{\"event\": \"runStarted\", \"time\": %d}", System.currentTimeMillis()));
+	}
+
+	@Override
+	public void testStarted(Description description) {
+		Running test = new Running();
+		running.put(description, test);
+		write(String.format(Locale.ROOT, "{\"event\": \"started\", \"test\": %s, \"time\": %d}",
+				MetricsReport.quote(description.getDisplayName()), test.start));
+	}
+
+	@Override
+	public void testFailure(Failure failure) {
+		failed(failure, "failed");
+	}
+
+	@Override
+	public void testAssumptionFailure(Failure failure) {
+		failed(failure, "skipped");
+	}
+
+	@Override
+	public void testIgnored(Description description) {
+		summary.add("ignored", 0L, 0L);
+		write(String.format(Locale.ROOT, "{\"event\": \"finished\", \"test\": %s, \"time\": %d, "
+				+ "\"outcome\": \"ignored\"}", MetricsReport.quote(description.getDisplayName()),
+				System.currentTimeMillis()));
+	}
+
+	@Override
+	public void testFinished(Description description) {
+		Running test = running.remove(description);
+		if (test == null) {
+			return;
+		}
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - test.startNanos);
+		long commands = CommandTimer.getCommandCount() - test.startCommands;
+		long commandsSaved = Browser.getThreadLoggingCommandsSaved() - test.startCommandsSaved;
+		summary.add(test.outcome, millis, commands);
+		StringBuilder line = new StringBuilder(256);
+		line.append(String.format(Locale.ROOT, "{\"event\": \"finished\", \"test\": %s, \"start\": %d, \"end\": %d, "
+				+ "\"durationMs\": %d, \"commands\": %d, \"commandsSaved\": %d, \"outcome\": \"%s\"",
+				MetricsReport.quote(description.getDisplayName()), test.start, test.start + millis, millis, commands,
+				commandsSaved, test.outcome));
+		if (test.failure != null) {
+			line.append(", \"failure\": ").append(MetricsReport.quote(test.failure));
+		}
+		write(line.append('}').toString());
+	}
+
+	@Override
+	public void testRunFinished(Result result) {
+		write(String.format(Locale.ROOT, "{\"event\": \"runFinished\", \"time\": %d, \"runMs\": %d, \"tests\": %d, "
+				+ "\"failures\": %d, \"ignored\": %d}", System.currentTimeMillis(), result.getRunTime(),
+				result.getRunCount(), result.getFailureCount(), result.getIgnoreCount()));
+		synchronized (this) {
+			if (flusher != null) {
+				flusher.interrupt();
+				flusher = null;
+			}
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					log.warn("The test events could not be written to {}: {}", file, e.getMessage());
+				}
+				writer = null;
+				log.info("The test events are written to {}.", file);
+			}
+		}
+		log.info("Tests: {}", summary);
+	}
+
+	/**
+	 * @return The outcomes and durations of the tests finished so far.
+	 */
+	public Summary getSummary() {
+		return summary;
+	}
+
+	/**
+	 * @return The tests running right now with the milliseconds since each started, longest running first.
+	 */
+	public List<Map.Entry<String, Long>> getRunning() {
+		long now = System.nanoTime();
+		List<Map.Entry<String, Long>> result = new ArrayList<Map.Entry<String, Long>>();
+		for (Map.Entry<Description, Running> test : running.entrySet()) {
+			result.add(new AbstractMap.SimpleImmutableEntry<String, Long>(test.getKey().getDisplayName(),
+					TimeUnit.NANOSECONDS.toMillis(now - test.getValue().startNanos)));
+		}
+		Collections.sort(result, new Comparator<Map.Entry<String, Long>>() {
+			public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+				return b.getValue().compareTo(a.getValue());
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * @param n
+	 *            The number of lines wanted, at most 100 are kept.
+	 * @return The last n lines written, oldest first.
+	 */
+	public synchronized List<String> tail(int n) {
+		return new ArrayList<String>(tail.subList(Math.max(0, tail.size() - n), tail.size()));
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Reads a file written by the reporter one line at a time, the file can be any size.
+	 *
+	 * @return The outcomes and durations of the finished tests in the file.
+	 */
+	public static Summary summarize(File file) throws IOException {
+		Summary summary = new Summary();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.startsWith("{\"event\": \"finished\"")) {
+					continue;
+				}
+				Matcher outcome = OUTCOME.matcher(line);
+				if (!outcome.find()) {
+					/* A line cut off when the JVM died */
+					continue;
+				}
+				Matcher duration = DURATION.matcher(line);
+				Matcher commands = COMMANDS.matcher(line);
+				summary.add(outcome.group(1), duration.find() ? Long.parseLong(duration.group(1)) : 0L,
+						commands.find() ? Long.parseLong(commands.group(1)) : 0L);
+			}
+		} finally {
+			reader.close();
+		}
+		return summary;
+	}
+
+	private void failed(Failure failure, String outcome) {
+		Running test = running.get(failure.getDescription());
+		if (test == null) {
+			/* A class level failure, e.g. in @BeforeClass, there is no test to finish */
+			summary.add(outcome, 0L, 0L);
+			write(String.format(Locale.ROOT, "{\"event\": \"finished\", \"test\": %s, \"time\": %d, "
+					+ "\"outcome\": \"%s\", \"failure\": %s}", MetricsReport.quote(failure.getDescription()
+					.getDisplayName()), System.currentTimeMillis(), outcome, MetricsReport.quote(traceOf(failure))));
+			return;
+		}
+		if (test.failure == null) {
+			test.outcome = outcome;
+			test.failure = traceOf(failure);
+		}
+	}
+
+	private static String traceOf(Failure failure) {
+		String trace = failure.getTrace();
+		return trace.length() <= MAX_TRACE ? trace : trace.substring(0, MAX_TRACE) + "...";
+	}
+
+	private synchronized void write(String line) {
+		current = this;
+		tail.add(line);
+		if (tail.size() > TAIL_LINES) {
+			tail.removeFirst();
+		}
+		if (writer == null && !broken) {
+			open();
+		}
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.write(line);
+			writer.write('\n');
+			dirty = true;
+		} catch (IOException e) {
+			log.warn("The test events can't be written to {} any more: {}", file, e.getMessage());
+			writer = null;
+			broken = true;
+		}
+	}
+
+	/**
+	 * Opens the file on the first event. Surefire doesn't tell every listener that the run started.
+	 */
+	private void open() {
+		if (file == null) {
+			broken = true;
+			return;
+		}
+		try {
+			File dir = file.getAbsoluteFile().getParentFile();
+			if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("The directory " + dir + " could not be created.");
+			}
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"), 65536);
+		} catch (IOException e) {
+			log.warn("The test events can't be written to {}: {}", file, e.getMessage());
+			broken = true;
+			return;
+		}
+		flusher = new Thread("gui-stream-flush") {
+			@Override
+			public void run() {
+				flushPeriodically();
+			}
+		};
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	private void flushPeriodically() {
+		while (true) {
+			try {
+				Thread.sleep(flushMillis);
+			} catch (InterruptedException e) {
+				return;
+			}
+			synchronized (this) {
+				if (writer == null) {
+					return;
+				}
+				if (dirty) {
+					try {
+						writer.flush();
+						dirty = false;
+					} catch (IOException e) {
+						log.warn("The test events can't be flushed to {}: {}", file, e.getMessage());
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,837 @@
+package com.minh.runner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunNotifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs test classes on several worker JVMs on this machine. The coordinator starts the workers, hands out the classes
+ * longest first by the DurationHistory over a local socket and merges what the workers report into one MergedReport,
+ * see Protocol. Each worker has its own heap and its own drivers, so a worker stuck in garbage collection only slows
+ * down its own tests.
+ *
+ * Work is pulled: a worker asks for the next class when it finished the last one. When no class is left an idle
+ * worker takes over half of the tests another worker hasn't started yet. Workers can join at any time, also ones not
+ * started by the coordinator, and leave after any class. The tests of a worker that is lost are handed out again, the
+ * test it was running at most once and the tests it finished not at all.
+ *
+ * The gui.* system properties are passed on to the workers, except for the history: only the coordinator records
+ * durations.
+ */
+public class Coordinator {
+	static final Logger log = LoggerFactory.getLogger(Coordinator.class);
+
+	/**
+	 * The system property with the number of worker JVMs to start, half the processors by default.
+	 */
+	public static final String WORKERS_PROPERTY = "gui.coordinator.workers";
+
+	/**
+	 * The system property with the port to listen on, a free port by default.
+	 */
+	public static final String PORT_PROPERTY = "gui.coordinator.port";
+
+	/**
+	 * The system property with extra JVM arguments for the workers separated by spaces, e.g. -Xmx512m.
+	 */
+	public static final String JVM_ARGS_PROPERTY = "gui.coordinator.jvmargs";
+
+	/**
+	 * The system property with the class path of the workers, by default the class path this class was loaded from.
+	 */
+	public static final String CLASSPATH_PROPERTY = "gui.coordinator.classpath";
+
+	/**
+	 * The system property with the time in milliseconds to wait for a worker while none is connected and work is left.
+	 */
+	public static final String JOIN_TIMEOUT_PROPERTY = "gui.coordinator.join";
+
+	/**
+	 * How often a test is handed out in total when the workers running it are lost.
+	 */
+	static final int MAX_ATTEMPTS = 2;
+
+	/**
+	 * How long an idle worker waits before asking again while others are still busy.
+	 */
+	static final long WAIT_MILLIS = 200L;
+
+	private final List<String> classNames;
+
+	private int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+	private int port;
+
+	private long joinTimeoutMillis = 60000L;
+
+	private List<String> jvmArgs = new ArrayList<String>();
+
+	private DurationHistory history = DurationHistory.getDefault();
+
+	private RunNotifier notifier;
+
+	private final LinkedList<Unit> queue = new LinkedList<Unit>();
+
+	private final List<Connection> connections = new ArrayList<Connection>();
+
+	private final List<Process> processes = new ArrayList<Process>();
+
+	private final MergedReport report = new MergedReport();
+
+	private ServerSocket server;
+
+	private long start;
+
+	/**
+	 * @param classNames
+	 *            The names of the test classes to run.
+	 */
+	public Coordinator(List<String> classNames) {
+		this.classNames = new ArrayList<String>(classNames);
+	}
+
+	/**
+	 * @return A coordinator set up by the gui.coordinator.* system properties.
+	 */
+	public static Coordinator fromProperties(List<String> classNames) {
+		Coordinator coordinator = new Coordinator(classNames);
+		coordinator.setWorkers(Integer.getInteger(WORKERS_PROPERTY, coordinator.workers));
+		coordinator.setPort(Integer.getInteger(PORT_PROPERTY, 0));
+		coordinator.setJoinTimeoutMillis(Long.getLong(JOIN_TIMEOUT_PROPERTY, coordinator.joinTimeoutMillis));
+		String jvmArgs = System.getProperty(JVM_ARGS_PROPERTY, "").trim();
+		if (jvmArgs.length() > 0) {
+			coordinator.setJvmArgs(Arrays.asList(jvmArgs.split("\\s+")));
+		}
+		return coordinator;
+	}
+
+	/**
+	 * @param workers
+	 *            The number of worker JVMs to start, 0 to only take workers that join by themselves.
+	 */
+	public Coordinator setWorkers(int workers) {
+		this.workers = Math.max(0, workers);
+		return this;
+	}
+
+	/**
+	 * @param port
+	 *            The port to listen on, 0 for any free port.
+	 */
+	public Coordinator setPort(int port) {
+		this.port = port;
+		return this;
+	}
+
+	/**
+	 * @param joinTimeoutMillis
+	 *            How long to wait for a worker while none is connected and work is left before giving up on the
+	 *            remaining tests.
+	 */
+	public Coordinator setJoinTimeoutMillis(long joinTimeoutMillis) {
+		this.joinTimeoutMillis = joinTimeoutMillis;
+		return this;
+	}
+
+	/**
+	 * @param jvmArgs
+	 *            Extra JVM arguments for the workers.
+	 */
+	public Coordinator setJvmArgs(List<String> jvmArgs) {
+		this.jvmArgs = new ArrayList<String>(jvmArgs);
+		return this;
+	}
+
+	/**
+	 * @param history
+	 *            Where to keep the test durations and take the order of the classes from, null for the given order.
+	 */
+	public Coordinator setHistory(DurationHistory history) {
+		this.history = history;
+		return this;
+	}
+
+	/**
+	 * @param notifier
+	 *            Told about every test the workers run, e.g. to feed JUnit listeners. The failures carry the remote
+	 *            stack traces.
+	 */
+	public Coordinator setNotifier(RunNotifier notifier) {
+		this.notifier = notifier;
+		return this;
+	}
+
+	/**
+	 * @return The port workers connect to, known once started.
+	 */
+	public synchronized int getPort() {
+		return server == null ? port : server.getLocalPort();
+	}
+
+	/**
+	 * Starts the workers and waits for all tests to finish.
+	 *
+	 * @return The merged results of all workers.
+	 */
+	public MergedReport run() throws IOException, InterruptedException {
+		start();
+		return await();
+	}
+
+	/**
+	 * Listens for workers and starts the worker JVMs.
+	 */
+	public synchronized void start() throws IOException {
+		if (server != null) {
+			throw new IllegalStateException("The coordinator is already started.");
+		}
+		start = System.currentTimeMillis();
+		queue.addAll(plan());
+		server = new ServerSocket(port, 50, InetAddress.getByName("localhost"));
+		Thread acceptor = new Thread(new Runnable() {
+			public void run() {
+				accept();
+			}
+		}, "gui-coordinator");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		log.info("Coordinating {} test classes on port {}.", classNames.size(), server.getLocalPort());
+		for (int i = 1; i <= workers; i++) {
+			launch("worker-" + i);
+		}
+	}
+
+	/**
+	 * Waits until all tests finished or no worker is left to run them.
+	 *
+	 * @return The merged results of all workers.
+	 */
+	public synchronized MergedReport await() throws InterruptedException {
+		long idleSince = System.currentTimeMillis();
+		while (!isDone()) {
+			if (!connections.isEmpty() || anyAlive()) {
+				idleSince = System.currentTimeMillis();
+			} else if (System.currentTimeMillis() - idleSince > joinTimeoutMillis) {
+				log.error("No worker left to run the remaining {} units.", queue.size());
+				abandon();
+				break;
+			}
+			wait(250L);
+		}
+		try {
+			server.close();
+		} catch (IOException e) {
+			log.debug("Couldn't close the coordinator socket: {}", e.getMessage());
+		}
+		report.setElapsedMillis(System.currentTimeMillis() - start);
+		stopProcesses();
+		log.info("Run finished:\n{}", report);
+		return report;
+	}
+
+	/**
+	 * @return The units of the classes, the longest first. Classes missing in the history come first.
+	 */
+	private List<Unit> plan() {
+		List<Unit> units = new ArrayList<Unit>();
+		List<Long> millis = new ArrayList<Long>();
+		for (String className : classNames) {
+			units.add(new Unit(className, null, 0));
+			long total = 0L;
+			List<String> tests = history == null ? new ArrayList<String>() : history.testsOf(className);
+			for (String test : tests) {
+				total += history.estimate(test);
+			}
+			millis.add(tests.isEmpty() ? Long.MAX_VALUE : total);
+		}
+		if (history == null) {
+			return units;
+		}
+		List<Unit> ordered = new ArrayList<Unit>();
+		for (int i : ShardPlanner.longestFirst(millis)) {
+			ordered.add(units.get(i));
+		}
+		return ordered;
+	}
+
+	private void accept() {
+		while (true) {
+			Socket socket;
+			try {
+				socket = server.accept();
+			} catch (IOException e) {
+				log.debug("Stopped taking workers: {}", e.getMessage());
+				return;
+			}
+			try {
+				Connection connection = new Connection(socket);
+				Thread thread = new Thread(connection, "gui-coordinator-" + socket.getPort());
+				thread.setDaemon(true);
+				thread.start();
+			} catch (IOException e) {
+				log.warn("Couldn't talk to the new worker: {}", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Starts a worker JVM with the class path, JVM arguments and gui.* system properties of this one.
+	 */
+	private void launch(final String name) throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.addAll(jvmArgs);
+		for (String property : System.getProperties().stringPropertyNames()) {
+			if (property.startsWith("gui.") && !property.startsWith("gui.coordinator.")
+					&& !property.startsWith(DurationHistory.HISTORY_PROPERTY)
+					&& !property.equals(ShardPlanner.SHARD_PROPERTY)) {
+				command.add("-D" + property + "=" + System.getProperty(property));
+			}
+		}
+		command.add("-D" + DurationHistory.HISTORY_PROPERTY + "=false");
+		command.add("-cp");
+		command.add(classpath());
+		command.add(Worker.class.getName());
+		command.add("localhost");
+		command.add(String.valueOf(server.getLocalPort()));
+		command.add(name);
+		final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		processes.add(process);
+		/* Drain the output so the worker never blocks on a full pipe */
+		Thread pump = new Thread(new Runnable() {
+			public void run() {
+				try {
+					BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+					String line;
+					while ((line = output.readLine()) != null) {
+						log.info("[{}] {}", name, line);
+					}
+				} catch (IOException e) {
+					log.debug("Lost the output of {}: {}", name, e.getMessage());
+				}
+			}
+		}, "gui-coordinator-" + name);
+		pump.setDaemon(true);
+		pump.start();
+	}
+
+	/**
+	 * @return The configured class path or the class path this class was loaded from.
+	 */
+	static String classpath() {
+		String configured = System.getProperty(CLASSPATH_PROPERTY);
+		if (configured != null) {
+			return configured;
+		}
+		ClassLoader loader = Coordinator.class.getClassLoader();
+		if (!(loader instanceof URLClassLoader)) {
+			return System.getProperty("java.class.path");
+		}
+		/* Under surefire, or any other container, the class path of the JVM isn't the one of the tests */
+		StringBuilder classpath = new StringBuilder();
+		for (URL url : ((URLClassLoader) loader).getURLs()) {
+			if (!"file".equals(url.getProtocol())) {
+				continue;
+			}
+			try {
+				if (classpath.length() > 0) {
+					classpath.append(File.pathSeparator);
+				}
+				classpath.append(new File(url.toURI()).getPath());
+			} catch (URISyntaxException e) {
+				log.debug("Skipping the class path entry {}", url);
+			}
+		}
+		return classpath.length() == 0 ? System.getProperty("java.class.path") : classpath.toString();
+	}
+
+	/**
+	 * @return true when no work is queued and no worker has any.
+	 */
+	private synchronized boolean isDone() {
+		if (!queue.isEmpty()) {
+			return false;
+		}
+		for (Connection connection : connections) {
+			if (connection.unit != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private synchronized boolean anyAlive() {
+		for (Process process : processes) {
+			if (isAlive(process)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isAlive(Process process) {
+		try {
+			process.exitValue();
+			return false;
+		} catch (IllegalThreadStateException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Gives the workers that were told DONE some time to leave, then stops them.
+	 */
+	private void stopProcesses() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000L;
+		for (Process process : processes) {
+			while (isAlive(process) && System.currentTimeMillis() < deadline) {
+				wait(100L);
+			}
+			if (isAlive(process)) {
+				log.warn("A worker didn't leave in time, stopping it.");
+				process.destroy();
+			}
+		}
+	}
+
+	/**
+	 * @return The next unit for a worker that asks for work: the next queued unit, else tests taken over from the
+	 *         busiest worker, else null.
+	 */
+	private synchronized Unit next(Connection thief) {
+		Unit unit = queue.poll();
+		if (unit != null) {
+			return unit;
+		}
+		Connection victim = null;
+		long most = 0L;
+		for (Connection connection : connections) {
+			int count = connection.stealable();
+			long millis = 0L;
+			for (int i = 0; i < count; i++) {
+				String test = connection.unit.pending.get(connection.unit.pending.size() - 1 - i);
+				millis += history == null ? 1L : history.estimate(keyOf(connection.unit.className, test));
+			}
+			if (connection != thief && count > 0 && millis > most) {
+				victim = connection;
+				most = millis;
+			}
+		}
+		if (victim == null) {
+			return null;
+		}
+		LinkedList<String> tests = new LinkedList<String>();
+		for (int i = victim.stealable(); i > 0; i--) {
+			tests.addFirst(victim.unit.pending.removeLast());
+		}
+		report.stolen(tests.size());
+		log.debug("{} takes over {} from {}.", new Object[] { thief.name, tests, victim.name });
+		return new Unit(victim.unit.className, tests, 0);
+	}
+
+	/**
+	 * Hands out the work of a worker that went away without finishing it again.
+	 */
+	private synchronized void lost(Connection connection) {
+		Unit unit = connection.unit;
+		if (unit == null) {
+			return;
+		}
+		report.lost();
+		log.warn("Lost worker {} while it ran {}.", connection.name, unit);
+		if (unit.pending == null) {
+			Unit rest = unit.rest();
+			if (rest != null) {
+				retry(rest, connection.name);
+			}
+			return;
+		}
+		if (!unit.pending.isEmpty()) {
+			queue.addFirst(new Unit(unit.className, unit.pending, unit.attempts));
+			report.requeued();
+		}
+		if (connection.running != null) {
+			retry(new Unit(unit.className, Arrays.asList(connection.running), unit.attempts + 1), connection.name);
+		}
+		notifyAll();
+	}
+
+	private void retry(Unit unit, String worker) {
+		if (unit.attempts < MAX_ATTEMPTS) {
+			queue.addFirst(unit);
+			report.requeued();
+		} else {
+			fail(unit, "The worker " + worker + " running it was lost " + unit.attempts + " times.");
+		}
+	}
+
+	/**
+	 * Fails what is left when there are no workers.
+	 */
+	private void abandon() {
+		for (Unit unit : queue) {
+			fail(unit, "No worker was left to run it.");
+		}
+		queue.clear();
+	}
+
+	private void fail(Unit unit, String message) {
+		List<String> tests = unit.tests == null ? Arrays.asList(unit.className) : unit.tests;
+		for (String test : tests) {
+			String trace = RemoteFailure.class.getName() + ": " + message;
+			report.failed(test, "coordinator", trace);
+			if (notifier != null) {
+				synchronized (notifier) {
+					notifier.fireTestFailure(new Failure(Description.createSuiteDescription(test), new RemoteFailure(
+							trace)));
+				}
+			}
+		}
+	}
+
+	static String keyOf(String className, String displayName) {
+		String method = Description.createSuiteDescription(displayName).getMethodName();
+		return className + "#" + (method == null ? displayName : method);
+	}
+
+	/**
+	 * A test class or some of its tests handed out as one piece of work.
+	 */
+	private static class Unit {
+		private final String className;
+
+		/* Null for the whole class */
+		private final List<String> tests;
+
+		/* The tests of the whole class left out because they finished on a worker that was lost, null for none */
+		private final List<String> finishedBefore;
+
+		private final int attempts;
+
+		/* The tests not claimed yet once the worker listed them, null before or if the unit can't be split */
+		private LinkedList<String> pending;
+
+		/* The display names of the tests the worker finished */
+		private final List<String> finished = new ArrayList<String>();
+
+		Unit(String className, List<String> tests, int attempts) {
+			this(className, tests, null, attempts);
+		}
+
+		private Unit(String className, List<String> tests, List<String> finishedBefore, int attempts) {
+			this.className = className;
+			this.tests = tests == null ? null : new ArrayList<String>(tests);
+			this.finishedBefore = finishedBefore;
+			this.attempts = attempts;
+		}
+
+		/**
+		 * @return The unit again without the tests that finished, for another attempt after the worker was lost while
+		 *         running it as a whole, or null when all of it finished.
+		 */
+		Unit rest() {
+			if (tests != null) {
+				List<String> rest = new ArrayList<String>(tests);
+				rest.removeAll(finished);
+				return rest.isEmpty() ? null : new Unit(className, rest, attempts + 1);
+			}
+			if (finished.isEmpty()) {
+				return new Unit(className, null, finishedBefore, attempts + 1);
+			}
+			List<String> left = new ArrayList<String>(finished);
+			if (finishedBefore != null) {
+				left.addAll(finishedBefore);
+			}
+			return new Unit(className, null, left, attempts + 1);
+		}
+
+		@Override
+		public String toString() {
+			return className + (tests == null ? "" : " " + tests)
+					+ (finishedBefore == null ? "" : " without " + finishedBefore);
+		}
+	}
+
+	/**
+	 * The conversation with one worker.
+	 */
+	private class Connection implements Runnable {
+		private final Socket socket;
+
+		private final BufferedReader in;
+
+		private final Writer out;
+
+		private String name;
+
+		private Unit unit;
+
+		/* The claimed test that hasn't finished yet */
+		private String running;
+
+		private final Map<String, DurationHistory.Outcome> outcomes = new HashMap<String, DurationHistory.Outcome>();
+
+		Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.name = socket.getRemoteSocketAddress().toString();
+			in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+		}
+
+		public void run() {
+			boolean left = false;
+			try {
+				String line;
+				while (!left && (line = in.readLine()) != null) {
+					left = handle(Protocol.parse(line));
+				}
+			} catch (IOException e) {
+				log.debug("The connection to {} broke: {}", name, e.getMessage());
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					log.debug("Couldn't close the connection to {}: {}", name, e.getMessage());
+				}
+				synchronized (Coordinator.this) {
+					if (!left) {
+						lost(this);
+					}
+					connections.remove(this);
+					Coordinator.this.notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * @return true when the worker said goodbye.
+		 */
+		private boolean handle(String[] message) throws IOException {
+			String command = message[0];
+			if (Protocol.HELLO.equals(command)) {
+				name = message[1];
+				report.joined(name);
+				synchronized (Coordinator.this) {
+					connections.add(this);
+					Coordinator.this.notifyAll();
+				}
+				log.info("Worker {} joined.", name);
+			} else if (Protocol.NEXT.equals(command)) {
+				send(nextFor());
+			} else if (Protocol.TESTS.equals(command)) {
+				synchronized (Coordinator.this) {
+					if (message.length > 2) {
+						unit.pending = new LinkedList<String>(Arrays.asList(message).subList(2, message.length));
+					}
+				}
+			} else if (Protocol.CLAIM.equals(command)) {
+				synchronized (Coordinator.this) {
+					boolean claimed = unit.pending.remove(message[1]);
+					running = claimed ? message[1] : null;
+					send(Protocol.line(claimed ? Protocol.GO : Protocol.SKIP));
+				}
+			} else if (Protocol.STARTED.equals(command)) {
+				outcomes.put(testOf(message), DurationHistory.Outcome.PASSED);
+				if (notifier != null) {
+					synchronized (notifier) {
+						notifier.fireTestStarted(descriptionOf(message));
+					}
+				}
+			} else if (Protocol.FAILED.equals(command)) {
+				failed(message);
+			} else if (Protocol.IGNORED.equals(command)) {
+				report.ignored();
+				if (notifier != null) {
+					synchronized (notifier) {
+						notifier.fireTestIgnored(descriptionOf(message));
+					}
+				}
+			} else if (Protocol.FINISHED.equals(command)) {
+				finished(message);
+			} else if (Protocol.BYE.equals(command)) {
+				synchronized (Coordinator.this) {
+					unit = null;
+				}
+				log.info("Worker {} left.", name);
+				return true;
+			} else {
+				log.warn("Ignoring the unknown message {} from {}.", Arrays.asList(message), name);
+			}
+			return false;
+		}
+
+		private String nextFor() {
+			synchronized (Coordinator.this) {
+				unit = null;
+				running = null;
+				Unit next = next(this);
+				Coordinator.this.notifyAll();
+				if (next != null) {
+					unit = next;
+					List<Object> fields = new ArrayList<Object>();
+					fields.add(next.className);
+					if (next.finishedBefore != null) {
+						fields.addAll(next.finishedBefore);
+						return Protocol.line(Protocol.RERUN, fields.toArray());
+					}
+					if (next.tests != null) {
+						fields.addAll(next.tests);
+					}
+					return Protocol.line(Protocol.RUN, fields.toArray());
+				}
+				return isDone() ? Protocol.line(Protocol.DONE) : Protocol.line(Protocol.WAIT, WAIT_MILLIS);
+			}
+		}
+
+		/**
+		 * @return How many of the tests this worker hasn't started yet another one may take over: half of what is
+		 *         left of the unit, counting the running test.
+		 */
+		private int stealable() {
+			if (unit == null || unit.pending == null) {
+				return 0;
+			}
+			return Math.min(unit.pending.size(), (unit.pending.size() + (running == null ? 0 : 1)) / 2);
+		}
+
+		private void failed(String[] message) {
+			boolean assumption = Boolean.parseBoolean(message[3]);
+			Description description = descriptionOf(message);
+			outcomes.put(testOf(message), assumption ? DurationHistory.Outcome.SKIPPED
+					: DurationHistory.Outcome.FAILED);
+			if (assumption) {
+				report.assumptionFailed();
+			} else {
+				report.failed(description.getDisplayName(), name, message[4]);
+			}
+			if (notifier != null) {
+				Failure failure = new Failure(description, new RemoteFailure(message[4]));
+				synchronized (notifier) {
+					if (assumption) {
+						notifier.fireTestAssumptionFailed(failure);
+					} else {
+						notifier.fireTestFailure(failure);
+					}
+				}
+			}
+		}
+
+		private void finished(String[] message) {
+			report.finished(name);
+			synchronized (Coordinator.this) {
+				running = null;
+				if (unit != null) {
+					unit.finished.add(descriptionOf(message).getDisplayName());
+				}
+			}
+			DurationHistory.Outcome outcome = outcomes.remove(testOf(message));
+			if (history != null && outcome != null) {
+				history.record(testOf(message), Long.parseLong(message[3]), 0L, outcome);
+			}
+			if (notifier != null) {
+				synchronized (notifier) {
+					notifier.fireTestFinished(descriptionOf(message));
+				}
+			}
+		}
+
+		private String testOf(String[] message) {
+			return message[1] + "#" + message[2];
+		}
+
+		private Description descriptionOf(String[] message) {
+			if (message[2].length() == 0) {
+				return Description.createSuiteDescription(message[1]);
+			}
+			return Description.createSuiteDescription(String.format("%s(%s)", message[2], message[1]));
+		}
+
+		private void send(String line) throws IOException {
+			out.write(line);
+			out.write('\n');
+			out.flush();
+		}
+	}
+
+	/**
+	 * A failure on a worker. The message is the one of the remote exception and the stack trace is printed as the
+	 * worker printed it.
+	 */
+	static class RemoteFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private final String trace;
+
+		RemoteFailure(String trace) {
+			super(messageOf(trace));
+			this.trace = trace;
+		}
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+
+		@Override
+		public void printStackTrace(PrintWriter writer) {
+			writer.print(trace);
+		}
+
+		@Override
+		public void printStackTrace(PrintStream stream) {
+			stream.print(trace);
+		}
+
+		/**
+		 * @return The first line of the remote trace, the exception class and message.
+		 */
+		@Override
+		public String toString() {
+			int end = trace.indexOf('\n');
+			return (end < 0 ? trace : trace.substring(0, end)).trim();
+		}
+
+		private static String messageOf(String trace) {
+			int end = trace.indexOf('\n');
+			String first = (end < 0 ? trace : trace.substring(0, end)).trim();
+			int colon = first.indexOf(": ");
+			return colon < 0 ? null : first.substring(colon + 2);
+		}
+	}
+
+	/**
+	 * Runs the test classes given as arguments on the workers set by the gui.coordinator.* system properties.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length == 0) {
+			System.err.println("Usage: Coordinator <test class>...");
+			System.exit(2);
+		}
+		MergedReport report = fromProperties(Arrays.asList(args)).run();
+		System.out.print(report);
+		System.exit(report.wasSuccessful() ? 0 : 1);
+	}
+}
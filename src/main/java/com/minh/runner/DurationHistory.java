@@ -0,0 +1,443 @@
+package com.minh.runner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.runner.Description;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers how long every test method took across runs. Each finished test appends one line with its wall time, the
+ * time of its @Before methods and its outcome to a local file, and the file is read once when the history is first
+ * used. The durations of a test are smoothed so that one slow run doesn't throw the estimate off.
+ *
+ * Every line is appended with a single write so several JVMs can share the file. When the file has grown to many times
+ * the number of tests it is rewritten with one line per test while it is read.
+ *
+ * Runs are planned from the snapshot of the estimates taken when the file was read, see getSnapshot. The records of the
+ * run itself don't change it, so shards in other JVMs that only record their own tests still plan every later class the
+ * same way.
+ */
+public class DurationHistory {
+	static final Logger log = LoggerFactory.getLogger(DurationHistory.class);
+
+	/**
+	 * The system property that turns the history off when set to false.
+	 */
+	public static final String HISTORY_PROPERTY = "gui.history";
+
+	/**
+	 * The system property with the location of the history file.
+	 */
+	public static final String FILE_PROPERTY = "gui.history.file";
+
+	/**
+	 * The weight of the latest run in the estimated duration of a test.
+	 */
+	static final double SMOOTHING = 0.3;
+
+	/**
+	 * The duration assumed for a test that never ran when there is no history at all.
+	 */
+	static final long DEFAULT_MILLIS = 1000L;
+
+	/**
+	 * The file is rewritten when it has more lines than this many per test, plus COMPACT_SLACK.
+	 */
+	private static final int COMPACT_FACTOR = 4;
+
+	private static final int COMPACT_SLACK = 1000;
+
+	private static final String SEPARATOR = "\t";
+
+	public enum Outcome {
+		PASSED, FAILED, SKIPPED
+	}
+
+	/**
+	 * What the history knows about one test.
+	 */
+	public static class Entry {
+		private final String test;
+		private int runs;
+		private double wallMillis;
+		private double setupMillis;
+		private Outcome lastOutcome;
+
+		Entry(String test) {
+			this.test = test;
+		}
+
+		void add(long wall, long setup, Outcome outcome) {
+			lastOutcome = outcome;
+			if (outcome == Outcome.SKIPPED) {
+				/* A skipped test stops early, its time says nothing about a real run */
+				return;
+			}
+			if (runs == 0) {
+				wallMillis = wall;
+				setupMillis = setup;
+			} else {
+				wallMillis += SMOOTHING * (wall - wallMillis);
+				setupMillis += SMOOTHING * (setup - setupMillis);
+			}
+			runs++;
+		}
+
+		public String getTest() {
+			return test;
+		}
+
+		/**
+		 * @return The number of runs that went into the estimates, skipped runs not counted.
+		 */
+		public int getRuns() {
+			return runs;
+		}
+
+		/**
+		 * @return The estimated wall time of the test in milliseconds, @Before methods included.
+		 */
+		public long getWallMillis() {
+			return Math.round(wallMillis);
+		}
+
+		/**
+		 * @return The estimated time of the @Before methods of the test in milliseconds.
+		 */
+		public long getSetupMillis() {
+			return Math.round(setupMillis);
+		}
+
+		public Outcome getLastOutcome() {
+			return lastOutcome;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d ms (setup %d ms) over %d runs, last %s", test, getWallMillis(),
+					getSetupMillis(), runs, lastOutcome);
+		}
+	}
+
+	/**
+	 * The estimates of a history as they were when its file was read.
+	 */
+	public static class Snapshot {
+		private final Map<String, Long> millis;
+
+		private final long typicalMillis;
+
+		Snapshot(Map<String, Long> millis, long typicalMillis) {
+			this.millis = millis;
+			this.typicalMillis = typicalMillis;
+		}
+
+		/**
+		 * @return true if the test had run, not only been skipped, before the snapshot was taken.
+		 */
+		public boolean isKnown(String test) {
+			return millis.containsKey(test);
+		}
+
+		/**
+		 * @return The estimated wall time of a test in milliseconds, the median known test for an unknown one.
+		 */
+		public long estimate(String test) {
+			Long known = millis.get(test);
+			return known == null ? typicalMillis : known;
+		}
+
+		/**
+		 * @return The median estimated wall time of the known tests, or DEFAULT_MILLIS if there are none.
+		 */
+		public long getTypicalMillis() {
+			return typicalMillis;
+		}
+	}
+
+	private static DurationHistory defaultHistory;
+
+	private static boolean defaultResolved;
+
+	private final File file;
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	private OutputStream out;
+
+	private boolean failed;
+
+	private final Snapshot snapshot;
+
+	/**
+	 * @param file
+	 *            The history file. It is created on the first record if it doesn't exist.
+	 */
+	public DurationHistory(File file) {
+		this.file = file;
+		load();
+		Map<String, Long> known = new HashMap<String, Long>();
+		for (Entry entry : entries.values()) {
+			if (entry.getRuns() > 0) {
+				known.put(entry.getTest(), entry.getWallMillis());
+			}
+		}
+		snapshot = new Snapshot(Collections.unmodifiableMap(known), getTypicalMillis());
+	}
+
+	/**
+	 * @return The history in the file named by gui.history.file, shared by all test classes of the JVM, or null if
+	 *         gui.history is false.
+	 */
+	public static synchronized DurationHistory getDefault() {
+		if (!defaultResolved) {
+			defaultResolved = true;
+			if (!"false".equalsIgnoreCase(System.getProperty(HISTORY_PROPERTY))) {
+				final DurationHistory created = new DurationHistory(defaultFile());
+				Runtime.getRuntime().addShutdownHook(new Thread("duration-history-shutdown") {
+					@Override
+					public void run() {
+						created.close();
+					}
+				});
+				defaultHistory = created;
+			}
+		}
+		return defaultHistory;
+	}
+
+	/**
+	 * @return The file named by gui.history.file, by default ~/.gui-testrunner/durations.log.
+	 */
+	static File defaultFile() {
+		return new File(System.getProperty(FILE_PROPERTY, System.getProperty("user.home")
+				+ "/.gui-testrunner/durations.log"));
+	}
+
+	/**
+	 * @return The name a test is known by in the history, the class name and method name joined by #.
+	 */
+	public static String keyOf(Description description) {
+		return description.getClassName() + "#" + description.getMethodName();
+	}
+
+	/**
+	 * Adds one run of a test to the history and appends it to the file.
+	 *
+	 * @param test
+	 *            The name of the test, see keyOf.
+	 * @param wallMillis
+	 *            The wall time of the test, @Before methods included.
+	 * @param setupMillis
+	 *            The time of the @Before methods.
+	 * @param outcome
+	 *            How the test ended.
+	 */
+	public synchronized void record(String test, long wallMillis, long setupMillis, Outcome outcome) {
+		String name = test.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+		entryFor(name).add(wallMillis, setupMillis, outcome);
+		append(line(name, wallMillis, setupMillis, outcome));
+	}
+
+	/**
+	 * @return The estimates as they were when the file was read, for planning.
+	 */
+	public Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return What the history knows about a test, null if it never ran.
+	 */
+	public synchronized Entry get(String test) {
+		return entries.get(test);
+	}
+
+	/**
+	 * @return The estimated wall time of a test in milliseconds, this run's records included. A test that never ran, or
+	 *         only ever was skipped, is assumed to take as long as the median known test.
+	 */
+	public synchronized long estimate(String test) {
+		Entry entry = entries.get(test);
+		return entry != null && entry.getRuns() > 0 ? entry.getWallMillis() : getTypicalMillis();
+	}
+
+	/**
+	 * @return The median estimated wall time of all tests that ran, or DEFAULT_MILLIS if none did.
+	 */
+	public synchronized long getTypicalMillis() {
+		List<Long> known = new ArrayList<Long>();
+		for (Entry entry : entries.values()) {
+			if (entry.getRuns() > 0) {
+				known.add(entry.getWallMillis());
+			}
+		}
+		if (known.isEmpty()) {
+			return DEFAULT_MILLIS;
+		}
+		Collections.sort(known);
+		return known.get(known.size() / 2);
+	}
+
+	/**
+	 * @param className
+	 *            The name of a test class.
+	 * @return The names of the tests of the class in the history, sorted.
+	 */
+	public synchronized List<String> testsOf(String className) {
+		List<String> tests = new ArrayList<String>();
+		for (String test : entries.keySet()) {
+			if (test.startsWith(className + "#")) {
+				tests.add(test);
+			}
+		}
+		Collections.sort(tests);
+		return tests;
+	}
+
+	/**
+	 * @return The names of all tests in the history, sorted.
+	 */
+	public synchronized List<String> tests() {
+		List<String> tests = new ArrayList<String>(entries.keySet());
+		Collections.sort(tests);
+		return tests;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Closes the history file. A later record opens it again.
+	 */
+	public synchronized void close() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				log.debug("Couldn't close the history file {}: {}", file, e.getMessage());
+			}
+			out = null;
+		}
+	}
+
+	private Entry entryFor(String test) {
+		Entry entry = entries.get(test);
+		if (entry == null) {
+			entry = new Entry(test);
+			entries.put(test, entry);
+		}
+		return entry;
+	}
+
+	private void load() {
+		if (!file.isFile()) {
+			return;
+		}
+		int lines = 0;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					lines++;
+					parse(line);
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			log.warn("Couldn't read the history file {}: {}", file, e.getMessage());
+			return;
+		}
+		log.debug("Read {} runs of {} tests from {}.", lines, entries.size(), file);
+		if (lines > entries.size() * COMPACT_FACTOR + COMPACT_SLACK) {
+			compact();
+		}
+	}
+
+	private void parse(String line) {
+		String[] fields = line.split(SEPARATOR);
+		if (fields.length != 4) {
+			/* E.g. the torn last line of a killed run */
+			return;
+		}
+		try {
+			long wall = Long.parseLong(fields[1]);
+			long setup = Long.parseLong(fields[2]);
+			Outcome outcome = Outcome.valueOf(fields[3]);
+			entryFor(fields[0]).add(wall, setup, outcome);
+		} catch (IllegalArgumentException e) {
+			log.debug("Skipping the malformed history line {}", line);
+		}
+	}
+
+	/**
+	 * Replaces the file with one line per test that carries the current estimates.
+	 */
+	private void compact() {
+		File compacted = new File(file.getPath() + ".tmp");
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(compacted), "UTF-8");
+			try {
+				for (Entry entry : new TreeMap<String, Entry>(entries).values()) {
+					/* A skipped line carries no duration, so a test that ran keeps its estimate as a passed run */
+					Outcome outcome = entry.getRuns() == 0 ? Outcome.SKIPPED
+							: entry.getLastOutcome() == Outcome.SKIPPED ? Outcome.PASSED : entry.getLastOutcome();
+					writer.write(line(entry.getTest(), entry.getWallMillis(), entry.getSetupMillis(), outcome));
+				}
+			} finally {
+				writer.close();
+			}
+			if (!compacted.renameTo(file) && !(file.delete() && compacted.renameTo(file))) {
+				throw new IOException("Couldn't replace " + file + " with " + compacted);
+			}
+			log.info("Compacted the history file {} to {} tests.", file, entries.size());
+		} catch (IOException e) {
+			log.warn("Couldn't compact the history file {}: {}", file, e.getMessage());
+			compacted.delete();
+		}
+	}
+
+	private void append(String line) {
+		if (failed) {
+			return;
+		}
+		try {
+			if (out == null) {
+				File parent = file.getAbsoluteFile().getParentFile();
+				if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+					throw new IOException("Couldn't create " + parent);
+				}
+				out = new FileOutputStream(file, true);
+			}
+			/* One write per line, so lines from other JVMs appending to the same file don't interleave */
+			out.write(line.getBytes("UTF-8"));
+			out.flush();
+		} catch (IOException e) {
+			log.warn("Couldn't write the history file {}, durations of this run aren't kept: {}", file,
+					e.getMessage());
+			failed = true;
+		}
+	}
+
+	private static String line(String test, long wallMillis, long setupMillis, Outcome outcome) {
+		return test + SEPARATOR + wallMillis + SEPARATOR + setupMillis + SEPARATOR + outcome + "\n";
+	}
+}
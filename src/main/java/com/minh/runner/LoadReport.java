@@ -0,0 +1,203 @@
+package com.minh.runner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import com.minh.metrics.LatencyHistogram;
+import com.minh.metrics.Metrics;
+
+/**
+ * The outcome of a load run: the number of iterations and failed tests and, per browser operation and test method,
+ * the throughput, error rate and latency percentiles of the run alone.
+ */
+public class LoadReport {
+	/**
+	 * The prefixes of the histograms reported per operation.
+	 */
+	static final String[] PREFIXES = { "browser.", "test." };
+
+	/**
+	 * The figures of one operation, e.g. browser.get, during the run.
+	 */
+	public static class Operation {
+		private final LatencyHistogram histogram;
+
+		private final long errors;
+
+		private final long elapsedNanos;
+
+		Operation(LatencyHistogram histogram, long errors, long elapsedNanos) {
+			this.histogram = histogram;
+			this.errors = errors;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public String getName() {
+			return histogram.getName();
+		}
+
+		public long getCount() {
+			return histogram.getCount();
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		/**
+		 * @return The share of the operations that failed, between 0 and 1.
+		 */
+		public double getErrorRate() {
+			return getCount() == 0 ? 0.0 : errors / (double) getCount();
+		}
+
+		/**
+		 * @return The operations per second over the whole run.
+		 */
+		public double getThroughput() {
+			return elapsedNanos == 0 ? 0.0 : getCount() * 1e9 / elapsedNanos;
+		}
+
+		/**
+		 * @param percentile
+		 *            A percentile between 0 and 100.
+		 * @return The latency at the percentile in nanoseconds.
+		 */
+		public long getPercentile(double percentile) {
+			return histogram.getPercentile(percentile);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-32s %8d %6.2f%% %9.2f/s %9.1f %9.1f %9.1f", getName(), getCount(),
+					getErrorRate() * 100, getThroughput(), millis(getPercentile(50)), millis(getPercentile(90)),
+					millis(getPercentile(99)));
+		}
+	}
+
+	/**
+	 * The values of the Metrics registry at one point in time, to tell what a run added.
+	 */
+	static class Snapshot {
+		private final Map<String, LatencyHistogram> histograms = new HashMap<String, LatencyHistogram>();
+
+		private final SortedMap<String, Long> counters = Metrics.counters();
+
+		Snapshot() {
+			for (LatencyHistogram histogram : Metrics.histograms()) {
+				histograms.put(histogram.getName(), histogram.copy());
+			}
+		}
+	}
+
+	private final int users;
+
+	private final long iterations;
+
+	private final long failures;
+
+	private final long elapsedNanos;
+
+	private final List<Operation> operations = new ArrayList<Operation>();
+
+	LoadReport(int users, long iterations, long failures, long elapsedNanos, Snapshot before) {
+		this.users = users;
+		this.iterations = iterations;
+		this.failures = failures;
+		this.elapsedNanos = elapsedNanos;
+		SortedMap<String, Long> counters = Metrics.counters();
+		for (LatencyHistogram histogram : Metrics.histograms()) {
+			if (!isReported(histogram.getName())) {
+				continue;
+			}
+			LatencyHistogram earlier = before.histograms.get(histogram.getName());
+			LatencyHistogram run = earlier == null ? histogram.copy() : histogram.since(earlier);
+			if (run.getCount() > 0) {
+				String errors = histogram.getName() + ".errors";
+				operations.add(new Operation(run, value(counters, errors) - value(before.counters, errors),
+						elapsedNanos));
+			}
+		}
+	}
+
+	private static boolean isReported(String name) {
+		for (String prefix : PREFIXES) {
+			if (name.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static long value(SortedMap<String, Long> counters, String name) {
+		Long value = counters.get(name);
+		return value == null ? 0L : value;
+	}
+
+	public int getUsers() {
+		return users;
+	}
+
+	/**
+	 * @return The number of times a virtual user ran the whole test class.
+	 */
+	public long getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @return The number of failed test methods over all iterations.
+	 */
+	public long getFailures() {
+		return failures;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return The operations of the run sorted by name.
+	 */
+	public List<Operation> getOperations() {
+		return Collections.unmodifiableList(operations);
+	}
+
+	/**
+	 * @param name
+	 *            The name of the operation, e.g. browser.get.
+	 * @return The figures of the operation or null if it didn't run.
+	 */
+	public Operation getOperation(String name) {
+		for (Operation operation : operations) {
+			if (operation.getName().equals(name)) {
+				return operation;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return A table with one line per operation, latencies in milliseconds.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		result.append(String.format("%d users ran %d iterations in %.1f s with %d failed tests.%n", users, iterations,
+				elapsedNanos / 1e9, failures));
+		result.append(String.format("%-32s %8s %7s %11s %9s %9s %9s%n", "operation", "count", "errors", "throughput",
+				"p50", "p90", "p99"));
+		for (Operation operation : operations) {
+			result.append(operation).append(String.format("%n"));
+		}
+		return result.toString();
+	}
+
+	static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+}
@@ -0,0 +1,258 @@
+package com.minh.runner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.minh.helper.Browser;
+import com.minh.metrics.Metrics;
+
+/**
+ * Runs a test class as a load test: a number of virtual users each run the whole class over and over on the headless
+ * browser, or the browser type set, whatever browser the tests ask for. Only the browsers of the virtual users are
+ * affected, other tests in the same JVM get the browser they ask for. The users start spread over the ramp up time
+ * and pause for the think time between iterations until the duration has passed or each has run the wanted number of
+ * iterations.
+ *
+ * Every browser operation is timed in the histograms browser.&lt;operation&gt; and every test method in
+ * test.&lt;method&gt;, failures are counted in the matching .errors counters. The report holds what the run added to
+ * them, so a load run can share the Metrics registry with other tests.
+ *
+ * From the command line the class name is the only argument and the settings are read from the gui.load.* system
+ * properties.
+ */
+public class LoadRunner {
+	static final Logger log = LoggerFactory.getLogger(LoadRunner.class);
+
+	/**
+	 * The system property with the number of virtual users, 1 by default.
+	 */
+	public static final String USERS_PROPERTY = "gui.load.users";
+
+	/**
+	 * The system property with the time in milliseconds over which the users are started, 0 by default.
+	 */
+	public static final String RAMP_UP_PROPERTY = "gui.load.rampup";
+
+	/**
+	 * The system property with the pause in milliseconds between the iterations of a user, 0 by default.
+	 */
+	public static final String THINK_TIME_PROPERTY = "gui.load.think";
+
+	/**
+	 * The system property with the length of the run in milliseconds, 0 to run the iterations only.
+	 */
+	public static final String DURATION_PROPERTY = "gui.load.duration";
+
+	/**
+	 * The system property with the number of iterations per user, 0 to run for the duration only.
+	 */
+	public static final String ITERATIONS_PROPERTY = "gui.load.iterations";
+
+	private final Class<?> testClass;
+
+	private int users = 1;
+
+	private long rampUpMillis = 0L;
+
+	private long thinkTimeMillis = 0L;
+
+	private long durationMillis = 0L;
+
+	private long iterations = 0L;
+
+	private String browserType = Browser.HEADLESS;
+
+	private final AtomicLong iterationsRun = new AtomicLong();
+
+	private final AtomicLong failures = new AtomicLong();
+
+	/**
+	 * @param testClass
+	 *            The JUnit test class each virtual user runs.
+	 */
+	public LoadRunner(Class<?> testClass) {
+		this.testClass = testClass;
+	}
+
+	/**
+	 * @return A load runner set up from the gui.load.* system properties.
+	 */
+	public static LoadRunner fromProperties(Class<?> testClass) {
+		return new LoadRunner(testClass).setUsers(Integer.getInteger(USERS_PROPERTY, 1))
+				.setRampUpMillis(Long.getLong(RAMP_UP_PROPERTY, 0L))
+				.setThinkTimeMillis(Long.getLong(THINK_TIME_PROPERTY, 0L))
+				.setDurationMillis(Long.getLong(DURATION_PROPERTY, 0L))
+				.setIterations(Long.getLong(ITERATIONS_PROPERTY, 0L));
+	}
+
+	public LoadRunner setUsers(int users) {
+		if (users < 1) {
+			throw new IllegalArgumentException("A load run needs at least one user, not " + users + ".");
+		}
+		this.users = users;
+		return this;
+	}
+
+	public LoadRunner setRampUpMillis(long rampUpMillis) {
+		this.rampUpMillis = Math.max(0L, rampUpMillis);
+		return this;
+	}
+
+	public LoadRunner setThinkTimeMillis(long thinkTimeMillis) {
+		this.thinkTimeMillis = Math.max(0L, thinkTimeMillis);
+		return this;
+	}
+
+	public LoadRunner setDurationMillis(long durationMillis) {
+		this.durationMillis = Math.max(0L, durationMillis);
+		return this;
+	}
+
+	public LoadRunner setIterations(long iterations) {
+		this.iterations = Math.max(0L, iterations);
+		return this;
+	}
+
+	/**
+	 * @param browserType
+	 *            The browser type of the virtual users, HtmlUnitDriver by default.
+	 */
+	public LoadRunner setBrowserType(String browserType) {
+		this.browserType = browserType;
+		return this;
+	}
+
+	/**
+	 * Runs the load and waits for all users to finish.
+	 *
+	 * @return What the run measured.
+	 */
+	public LoadReport run() {
+		long perUser = iterations == 0 && durationMillis == 0 ? 1L : iterations;
+		LoadReport.Snapshot before = new LoadReport.Snapshot();
+		iterationsRun.set(0L);
+		failures.set(0L);
+		log.info("Running {} with {} users, {} ms ramp up and {} ms think time.", testClass.getSimpleName(), users,
+				rampUpMillis, thinkTimeMillis);
+		long start = System.nanoTime();
+		try {
+			long deadline = durationMillis == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + durationMillis;
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int i = 0; i < users; i++) {
+				Thread thread = new Thread(new VirtualUser(rampUpMillis * i / users, perUser, deadline), "gui-vu-"
+						+ (i + 1));
+				thread.setDaemon(true);
+				thread.start();
+				threads.add(thread);
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for the virtual users.", e);
+		}
+		LoadReport report = new LoadReport(users, iterationsRun.get(), failures.get(), System.nanoTime() - start,
+				before);
+		log.info("Load run of {} finished:\n{}", testClass.getSimpleName(), report);
+		return report;
+	}
+
+	/**
+	 * One user running the test class over and over on its own thread.
+	 */
+	private class VirtualUser implements Runnable {
+		private final long delayMillis;
+
+		private final long iterations;
+
+		private final long deadline;
+
+		VirtualUser(long delayMillis, long iterations, long deadline) {
+			this.delayMillis = delayMillis;
+			this.iterations = iterations;
+			this.deadline = deadline;
+		}
+
+		public void run() {
+			Browser.setThreadBrowserType(browserType);
+			JUnitCore core = new JUnitCore();
+			core.addListener(new TestTimer());
+			try {
+				Thread.sleep(delayMillis);
+				for (long i = 0; (iterations == 0 || i < iterations) && System.currentTimeMillis() < deadline; i++) {
+					if (i > 0 && thinkTimeMillis > 0) {
+						Thread.sleep(Math.min(thinkTimeMillis, Math.max(0L, deadline - System.currentTimeMillis())));
+						if (System.currentTimeMillis() >= deadline) {
+							break;
+						}
+					}
+					long start = System.nanoTime();
+					Result result = core.run(Request.aClass(testClass));
+					Metrics.histogram("load.iteration").recordSince(start);
+					iterationsRun.incrementAndGet();
+					failures.addAndGet(result.getFailureCount());
+				}
+			} catch (InterruptedException e) {
+				log.warn("The virtual user {} was interrupted.", Thread.currentThread().getName());
+			} finally {
+				Browser.setThreadBrowserType(null);
+			}
+		}
+	}
+
+	/**
+	 * Times the test methods into test.&lt;method&gt; and counts the failed ones.
+	 */
+	private static class TestTimer extends RunListener {
+		private final ConcurrentMap<Description, Long> starts = new ConcurrentHashMap<Description, Long>();
+
+		@Override
+		public void testStarted(Description description) {
+			starts.put(description, System.nanoTime());
+		}
+
+		@Override
+		public void testFailure(Failure failure) {
+			Metrics.counter(nameOf(failure.getDescription()) + ".errors").incrementAndGet();
+			log.debug("{} failed: {}", failure.getTestHeader(), failure.getMessage());
+		}
+
+		@Override
+		public void testFinished(Description description) {
+			Long start = starts.remove(description);
+			if (start != null) {
+				Metrics.histogram(nameOf(description)).recordSince(start);
+			}
+		}
+
+		private static String nameOf(Description description) {
+			return "test." + description.getMethodName();
+		}
+	}
+
+	/**
+	 * Runs the load test class given as the only argument with the settings of the gui.load.* system properties.
+	 */
+	public static void main(String[] args) throws ClassNotFoundException {
+		if (args.length != 1) {
+			System.err.println("Usage: LoadRunner <test class>");
+			System.exit(2);
+		}
+		LoadReport report = fromProperties(Class.forName(args[0])).run();
+		System.out.print(report);
+		System.exit(report.getFailures() == 0 ? 0 : 1);
+	}
+}
@@ -0,0 +1,195 @@
+package com.minh.runner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The outcome of a run spread over several worker JVMs: the tests run, failed and ignored across all workers, the
+ * failures with their remote stack traces and how the work was shared out.
+ */
+public class MergedReport {
+	/**
+	 * A test that failed on a worker.
+	 */
+	public static class TestFailure {
+		private final String test;
+
+		private final String worker;
+
+		private final String trace;
+
+		TestFailure(String test, String worker, String trace) {
+			this.test = test;
+			this.worker = worker;
+			this.trace = trace;
+		}
+
+		/**
+		 * @return The display name of the test, e.g. method(class), or the class name if the whole class failed.
+		 */
+		public String getTest() {
+			return test;
+		}
+
+		/**
+		 * @return The name of the worker the test failed on.
+		 */
+		public String getWorker() {
+			return worker;
+		}
+
+		/**
+		 * @return The stack trace as printed on the worker.
+		 */
+		public String getTrace() {
+			return trace;
+		}
+
+		@Override
+		public String toString() {
+			return test + " on " + worker;
+		}
+	}
+
+	private int runCount;
+
+	private int ignoredCount;
+
+	private int assumptionFailureCount;
+
+	private int steals;
+
+	private int requeues;
+
+	private int workersLost;
+
+	private long elapsedMillis;
+
+	private final List<TestFailure> failures = new ArrayList<TestFailure>();
+
+	private final SortedMap<String, Integer> testsPerWorker = new TreeMap<String, Integer>();
+
+	synchronized void joined(String worker) {
+		if (!testsPerWorker.containsKey(worker)) {
+			testsPerWorker.put(worker, 0);
+		}
+	}
+
+	synchronized void finished(String worker) {
+		runCount++;
+		Integer count = testsPerWorker.get(worker);
+		testsPerWorker.put(worker, count == null ? 1 : count + 1);
+	}
+
+	synchronized void failed(String test, String worker, String trace) {
+		failures.add(new TestFailure(test, worker, trace));
+	}
+
+	synchronized void assumptionFailed() {
+		assumptionFailureCount++;
+	}
+
+	synchronized void ignored() {
+		ignoredCount++;
+	}
+
+	synchronized void stolen(int tests) {
+		steals += tests;
+	}
+
+	synchronized void requeued() {
+		requeues++;
+	}
+
+	synchronized void lost() {
+		workersLost++;
+	}
+
+	synchronized void setElapsedMillis(long elapsedMillis) {
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * @return The number of tests that ran to the end on any worker.
+	 */
+	public synchronized int getRunCount() {
+		return runCount;
+	}
+
+	public synchronized int getFailureCount() {
+		return failures.size();
+	}
+
+	public synchronized int getIgnoredCount() {
+		return ignoredCount;
+	}
+
+	public synchronized int getAssumptionFailureCount() {
+		return assumptionFailureCount;
+	}
+
+	public synchronized List<TestFailure> getFailures() {
+		return Collections.unmodifiableList(new ArrayList<TestFailure>(failures));
+	}
+
+	/**
+	 * @return The number of tests each worker ran, by worker name. Workers that joined and ran nothing are listed with
+	 *         0.
+	 */
+	public synchronized SortedMap<String, Integer> getTestsPerWorker() {
+		return Collections.unmodifiableSortedMap(new TreeMap<String, Integer>(testsPerWorker));
+	}
+
+	/**
+	 * @return The number of tests an idle worker took over from another worker that hadn't started them yet.
+	 */
+	public synchronized int getSteals() {
+		return steals;
+	}
+
+	/**
+	 * @return The number of times work of a lost worker was handed out again.
+	 */
+	public synchronized int getRequeues() {
+		return requeues;
+	}
+
+	/**
+	 * @return The number of workers that went away without saying goodbye.
+	 */
+	public synchronized int getWorkersLost() {
+		return workersLost;
+	}
+
+	public synchronized long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public synchronized boolean wasSuccessful() {
+		return failures.isEmpty();
+	}
+
+	/**
+	 * @return A summary, the tests per worker and the failed tests.
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder result = new StringBuilder();
+		result.append(String.format("%d workers ran %d tests in %.1f s: %d failed, %d ignored, %d skipped.%n",
+				testsPerWorker.size(), runCount, elapsedMillis / 1e3, failures.size(), ignoredCount,
+				assumptionFailureCount));
+		result.append(String.format("%d tests taken over by idle workers, %d handed out again after %d lost workers.%n",
+				steals, requeues, workersLost));
+		for (Map.Entry<String, Integer> entry : testsPerWorker.entrySet()) {
+			result.append(String.format("  %-24s %6d tests%n", entry.getKey(), entry.getValue()));
+		}
+		for (TestFailure failure : failures) {
+			result.append(String.format("Failed: %s%n", failure));
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,27 @@
+package com.minh.runner;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.minh.helper.Browser;
+
+/**
+ * Optional settings for a test class run by the ParallelRunner. The worker count can be overridden per browser type
+ * with the system property gui.workers.&lt;browser&gt;, e.g. -Dgui.workers.firefox=4, or for all browser types with
+ * gui.workers.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Parallel {
+	/**
+	 * @return The browser type the test class drives. Used to pick the worker count for that browser type.
+	 */
+	String browser() default Browser.FIREFOX;
+
+	/**
+	 * @return The number of test methods to run at the same time. 0 means one per available processor.
+	 */
+	int workers() default 0;
+}
@@ -0,0 +1,272 @@
+package com.minh.runner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.internal.AssumptionViolatedException;
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import com.minh.helper.Browser;
+
+/**
+ * A JUnit runner that runs the test methods of a class in parallel. Use it with @RunWith(ParallelRunner.class) and
+ * optionally @Parallel to say which browser the class drives and how many workers it should use.
+ *
+ * JUnit creates a new instance of the test class for every test method so a Browser created in @Before belongs to the
+ * worker thread running that method. Browser refuses to be used from any other thread.
+ *
+ * The name of the running test is put in the slf4j MDC under the key "test" so that log lines from different workers
+ * can be told apart, e.g. with %X{test} in the log4j pattern.
+ *
+ * The wall time, setup time (constructor, rules and @Before methods) and outcome of every test method are kept in the
+ * DurationHistory, and the methods are queued longest first by their history so that a slow test doesn't start last
+ * and keep the run waiting. Methods missing in the history are queued first. With gui.shard set only the methods of
+ * this JVM's shard run, see ShardPlanner, without a history all methods count as equally long.
+ *
+ * When a test method fails, the screenshot and page source of the browser it started are captured before its @After
+ * methods run, see Browser.captureFailure.
+ */
+public class ParallelRunner extends BlockJUnit4ClassRunner {
+	static final Logger log = LoggerFactory.getLogger(ParallelRunner.class);
+
+	/**
+	 * The system property that sets the worker count for all browser types.
+	 */
+	public static final String WORKERS_PROPERTY = "gui.workers";
+
+	/**
+	 * The MDC key of the name of the running test.
+	 */
+	public static final String TEST_MDC_KEY = "test";
+
+	private final DurationHistory history;
+
+	private final ShardPlanner shards;
+
+	private final int workers;
+
+	private List<FrameworkMethod> children;
+
+	/* When the running test methods started, the method invoker can run on another thread with a timeout */
+	private final ConcurrentMap<FrameworkMethod, Long> startNanos = new ConcurrentHashMap<FrameworkMethod, Long>();
+
+	/* The time from the start of the running test methods until they were invoked */
+	private final ConcurrentMap<FrameworkMethod, Long> setupNanos = new ConcurrentHashMap<FrameworkMethod, Long>();
+
+	public ParallelRunner(Class<?> klass) throws InitializationError {
+		this(klass, DurationHistory.getDefault(), ShardPlanner.getDefault());
+	}
+
+	/**
+	 * @param history
+	 *            Where to keep the durations of the test methods, null to keep none and run them in declared order.
+	 * @param shards
+	 *            The planner of the shard to run, null to run all test methods.
+	 */
+	ParallelRunner(Class<?> klass, DurationHistory history, ShardPlanner shards) throws InitializationError {
+		super(klass);
+		this.history = history;
+		this.shards = shards;
+		Parallel parallel = klass.getAnnotation(Parallel.class);
+		String browserType = parallel == null ? Browser.FIREFOX : parallel.browser();
+		workers = workersFor(browserType, parallel == null ? 0 : parallel.workers());
+		log.info("Running {} with {} workers.", klass.getSimpleName(), workers);
+		setScheduler(new ParallelScheduler(workers));
+	}
+
+	/**
+	 * Resolves the number of workers for a browser type. The system properties win over the annotation so that the
+	 * count can be tuned per build agent.
+	 *
+	 * @param browserType
+	 *            The browser type the test class drives.
+	 * @param annotated
+	 *            The worker count of the @Parallel annotation or 0.
+	 * @return The number of workers to use, at least 1.
+	 */
+	static int workersFor(String browserType, int annotated) {
+		Integer workers = Integer.getInteger(WORKERS_PROPERTY + "." + browserType);
+		if (workers == null) {
+			workers = Integer.getInteger(WORKERS_PROPERTY);
+		}
+		if (workers == null && annotated > 0) {
+			workers = annotated;
+		}
+		if (workers == null) {
+			workers = Runtime.getRuntime().availableProcessors();
+		}
+		return Math.max(1, workers);
+	}
+
+	/**
+	 * @return The test methods of this runner's shard, the longest first by their history.
+	 */
+	@Override
+	protected synchronized List<FrameworkMethod> getChildren() {
+		if (children == null) {
+			children = plan(super.getChildren());
+		}
+		return children;
+	}
+
+	private List<FrameworkMethod> plan(List<FrameworkMethod> methods) {
+		/* Planned from the estimates as the JVM found them, the same in every shard whatever ran since */
+		DurationHistory.Snapshot snapshot = history == null ? null : history.getSnapshot();
+		if (shards != null) {
+			/* Planned once per runner, the planner adds every call to the shards' loads */
+			methods = shards.select(methods, estimatesOf(methods, snapshot));
+		}
+		if (snapshot == null) {
+			return methods;
+		}
+		List<Long> millis = estimatesOf(methods, snapshot);
+		List<Long> queued = new ArrayList<Long>();
+		for (int i = 0; i < methods.size(); i++) {
+			boolean known = snapshot.isKnown(DurationHistory.keyOf(describeChild(methods.get(i))));
+			queued.add(known ? millis.get(i) : Long.MAX_VALUE);
+		}
+		List<FrameworkMethod> ordered = new ArrayList<FrameworkMethod>();
+		List<Long> orderedMillis = new ArrayList<Long>();
+		for (int i : ShardPlanner.longestFirst(queued)) {
+			ordered.add(methods.get(i));
+			orderedMillis.add(millis.get(i));
+		}
+		log.debug("Expecting the {} test methods of {} to take {} ms on {} workers.", new Object[] { ordered.size(),
+				getTestClass().getJavaClass().getSimpleName(), ShardPlanner.simulate(orderedMillis, workers),
+				workers });
+		return Collections.unmodifiableList(ordered);
+	}
+
+	/**
+	 * @return The estimated durations of the methods, all alike without a history.
+	 */
+	private List<Long> estimatesOf(List<FrameworkMethod> methods, DurationHistory.Snapshot snapshot) {
+		List<Long> millis = new ArrayList<Long>();
+		for (FrameworkMethod method : methods) {
+			millis.add(snapshot == null ? DurationHistory.DEFAULT_MILLIS : snapshot.estimate(DurationHistory
+					.keyOf(describeChild(method))));
+		}
+		return millis;
+	}
+
+	@Override
+	protected void runChild(FrameworkMethod method, RunNotifier notifier) {
+		Description description = describeChild(method);
+		MDC.put(TEST_MDC_KEY, description.getDisplayName());
+		SerializedNotifier serialized = new SerializedNotifier(notifier);
+		long start = System.nanoTime();
+		startNanos.put(method, start);
+		try {
+			super.runChild(method, serialized);
+		} finally {
+			MDC.remove(TEST_MDC_KEY);
+			startNanos.remove(method);
+			long wall = System.nanoTime() - start;
+			Long setup = setupNanos.remove(method);
+			if (history != null && serialized.outcome != null) {
+				/* A test whose method never started spent all its time in setting up */
+				history.record(DurationHistory.keyOf(description), TimeUnit.NANOSECONDS.toMillis(wall),
+						TimeUnit.NANOSECONDS.toMillis(setup == null ? wall : setup), serialized.outcome);
+			}
+		}
+	}
+
+	/**
+	 * Invokes the test method like BlockJUnit4ClassRunner does and notes how long it took to get there, the time of the
+	 * test class's constructor, rules and @Before methods. Captures the browser of a failed test method before the
+	 * @After methods quit it, unless the method threw the exception it expects.
+	 */
+	@Override
+	protected Statement methodInvoker(final FrameworkMethod method, Object test) {
+		final Statement invoker = super.methodInvoker(method, test);
+		Test annotation = method.getAnnotation(Test.class);
+		final Class<? extends Throwable> expected = annotation == null ? Test.None.class : annotation.expected();
+		return new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				Long start = startNanos.get(method);
+				if (start != null) {
+					setupNanos.put(method, System.nanoTime() - start);
+				}
+				try {
+					invoker.evaluate();
+				} catch (AssumptionViolatedException e) {
+					throw e;
+				} catch (Throwable t) {
+					Browser browser = Browser.current();
+					if (browser != null && !expected.isInstance(t)) {
+						browser.captureFailure(DurationHistory.keyOf(describeChild(method)));
+					}
+					throw t;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Passes the events of one test on to the shared notifier one at a time. The listeners behind it, e.g. the
+	 * surefire reporter, are written for a single test at a time. Notes how the test ended on the way.
+	 */
+	private static class SerializedNotifier extends RunNotifier {
+		private final RunNotifier notifier;
+
+		/* Null until the test starts and for ignored tests */
+		private volatile DurationHistory.Outcome outcome;
+
+		SerializedNotifier(RunNotifier notifier) {
+			this.notifier = notifier;
+		}
+
+		@Override
+		public void fireTestStarted(Description description) {
+			outcome = DurationHistory.Outcome.PASSED;
+			synchronized (notifier) {
+				notifier.fireTestStarted(description);
+			}
+		}
+
+		@Override
+		public void fireTestFailure(Failure failure) {
+			outcome = DurationHistory.Outcome.FAILED;
+			synchronized (notifier) {
+				notifier.fireTestFailure(failure);
+			}
+		}
+
+		@Override
+		public void fireTestAssumptionFailed(Failure failure) {
+			outcome = DurationHistory.Outcome.SKIPPED;
+			synchronized (notifier) {
+				notifier.fireTestAssumptionFailed(failure);
+			}
+		}
+
+		@Override
+		public void fireTestIgnored(Description description) {
+			synchronized (notifier) {
+				notifier.fireTestIgnored(description);
+			}
+		}
+
+		@Override
+		public void fireTestFinished(Description description) {
+			synchronized (notifier) {
+				notifier.fireTestFinished(description);
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.minh.runner;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.runners.model.RunnerScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the children of a runner on a fixed number of worker threads and waits for all of them in finished.
+ */
+public class ParallelScheduler implements RunnerScheduler {
+	static final Logger log = LoggerFactory.getLogger(ParallelScheduler.class);
+
+	private static final AtomicInteger poolNumber = new AtomicInteger();
+
+	private final ExecutorService executor;
+
+	/**
+	 * @param workers
+	 *            The number of worker threads.
+	 */
+	public ParallelScheduler(int workers) {
+		final int pool = poolNumber.incrementAndGet();
+		executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger();
+
+			public Thread newThread(Runnable runnable) {
+				return new Thread(runnable, "gui-worker-" + pool + "-" + threadNumber.incrementAndGet());
+			}
+		});
+	}
+
+	public void schedule(Runnable childStatement) {
+		executor.execute(childStatement);
+	}
+
+	public void finished() {
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1L, TimeUnit.MINUTES)) {
+				log.debug("Still waiting for the parallel test methods to finish.");
+			}
+		} catch (InterruptedException e) {
+			log.warn("Interrupted while waiting for the parallel test methods, stopping them.");
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.minh.runner;
+
+/**
+ * The line protocol between the Coordinator and its Workers. Every message is one line of UTF-8 text: a command and its
+ * fields separated by tabs, with backslash, tab and line breaks in the fields escaped.
+ *
+ * A worker says HELLO with its name and then asks NEXT for work until it is told DONE, then says BYE. A worker may also
+ * say BYE after any unit to leave early. The coordinator answers NEXT with:
+ * <ul>
+ * <li>RUN class [test...]: run the class, or only the named tests of it.</li>
+ * <li>RERUN class test...: run the class without the named tests, which finished on a worker that was lost.</li>
+ * <li>WAIT millis: nothing to hand out now but other workers still have work, ask again later.</li>
+ * <li>DONE: all work is finished.</li>
+ * </ul>
+ * Before running a unit the worker lists its tests with TESTS class [test...], tests being the display names of the
+ * class runner's children, and then asks CLAIM test before each. The coordinator answers GO, or SKIP if an idle worker
+ * took the test over meanwhile. A unit listed without tests can't be split and isn't claimed. While running the worker
+ * reports STARTED class method, FAILED class method assumption trace, IGNORED class method and FINISHED class method
+ * millis.
+ */
+final class Protocol {
+	static final String HELLO = "HELLO";
+	static final String NEXT = "NEXT";
+	static final String RUN = "RUN";
+	static final String RERUN = "RERUN";
+	static final String WAIT = "WAIT";
+	static final String DONE = "DONE";
+	static final String BYE = "BYE";
+	static final String TESTS = "TESTS";
+	static final String CLAIM = "CLAIM";
+	static final String GO = "GO";
+	static final String SKIP = "SKIP";
+	static final String STARTED = "STARTED";
+	static final String FAILED = "FAILED";
+	static final String IGNORED = "IGNORED";
+	static final String FINISHED = "FINISHED";
+
+	private Protocol() {
+	}
+
+	/**
+	 * @return The message line, without the line break.
+	 */
+	static String line(String command, Object... fields) {
+		StringBuilder line = new StringBuilder(command);
+		for (Object field : fields) {
+			line.append('\t').append(escape(String.valueOf(field)));
+		}
+		return line.toString();
+	}
+
+	/**
+	 * @return The command and the unescaped fields of a message line.
+	 */
+	static String[] parse(String line) {
+		String[] parts = line.split("\t", -1);
+		for (int i = 1; i < parts.length; i++) {
+			parts[i] = unescape(parts[i]);
+		}
+		return parts;
+	}
+
+	static String escape(String field) {
+		StringBuilder escaped = new StringBuilder(field.length());
+		for (int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			switch (c) {
+			case '\\':
+				escaped.append("\\\\");
+				break;
+			case '\t':
+				escaped.append("\\t");
+				break;
+			case '\n':
+				escaped.append("\\n");
+				break;
+			case '\r':
+				escaped.append("\\r");
+				break;
+			default:
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+	static String unescape(String field) {
+		StringBuilder unescaped = new StringBuilder(field.length());
+		for (int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			if (c != '\\' || i + 1 == field.length()) {
+				unescaped.append(c);
+				continue;
+			}
+			char next = field.charAt(++i);
+			unescaped.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+		}
+		return unescaped.toString();
+	}
+}
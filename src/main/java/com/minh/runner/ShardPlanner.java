@@ -0,0 +1,224 @@
+package com.minh.runner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Packs tests into shards of about equal run time, e.g. one shard per build agent or JVM, and predicts how long a run
+ * takes. Tests are handed out longest first, each to the shard with the least work so far, which ends within a third of
+ * the best possible split.
+ *
+ * The shard of this JVM is set with gui.shard=index/count, e.g. 2/4 for the second of four, and then ParallelRunner
+ * only runs the test methods that fall to it. Shards are planned class by class in the order the classes run, so all
+ * shards have to run the same classes with the same history file, e.g. one restored from the build cache.
+ *
+ * Run main to simulate a run with the history file: ShardPlanner workers [class names].
+ */
+public class ShardPlanner {
+	static final Logger log = LoggerFactory.getLogger(ShardPlanner.class);
+
+	/**
+	 * The system property with the shard this JVM runs, index/count with the index starting at 1.
+	 */
+	public static final String SHARD_PROPERTY = "gui.shard";
+
+	private static ShardPlanner defaultPlanner;
+
+	private static boolean defaultResolved;
+
+	private final long[] loads;
+
+	private final int index;
+
+	/**
+	 * @param shards
+	 *            The number of shards.
+	 * @param index
+	 *            The shard select keeps tests for, starting at 0.
+	 */
+	public ShardPlanner(int shards, int index) {
+		if (shards < 1 || index < 0 || index >= shards) {
+			throw new IllegalArgumentException("No shard " + (index + 1) + " of " + shards);
+		}
+		this.loads = new long[shards];
+		this.index = index;
+	}
+
+	/**
+	 * @return The planner for the shard named by gui.shard, shared by all test classes of the JVM, or null if the
+	 *         property isn't set.
+	 */
+	public static synchronized ShardPlanner getDefault() {
+		if (!defaultResolved) {
+			defaultResolved = true;
+			String value = System.getProperty(SHARD_PROPERTY);
+			if (value != null && value.trim().length() > 0) {
+				String[] parts = value.trim().split("/");
+				if (parts.length != 2) {
+					throw new IllegalArgumentException(SHARD_PROPERTY + " must be index/count, not " + value);
+				}
+				int count = Integer.parseInt(parts[1].trim());
+				int shard = Integer.parseInt(parts[0].trim());
+				defaultPlanner = new ShardPlanner(count, shard - 1);
+				log.info("Running shard {} of {}.", shard, count);
+			}
+		}
+		return defaultPlanner;
+	}
+
+	/**
+	 * Plans the shards of some more tests on top of the tests planned before.
+	 *
+	 * @param tests
+	 *            The tests.
+	 * @param millis
+	 *            The estimated duration of each test, in the same order.
+	 * @return The tests that fall to this planner's shard, in the given order.
+	 */
+	public synchronized <T> List<T> select(List<T> tests, List<Long> millis) {
+		int[] shards = assign(millis);
+		List<T> selected = new ArrayList<T>();
+		for (int i = 0; i < shards.length; i++) {
+			if (shards[i] == index) {
+				selected.add(tests.get(i));
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Plans the shards of some more tests on top of the tests planned before.
+	 *
+	 * @param millis
+	 *            The estimated durations of the tests.
+	 * @return The shard of each test, in the given order.
+	 */
+	public synchronized int[] assign(List<Long> millis) {
+		int[] shards = new int[millis.size()];
+		for (int i : longestFirst(millis)) {
+			int least = 0;
+			for (int shard = 1; shard < loads.length; shard++) {
+				if (loads[shard] < loads[least]) {
+					least = shard;
+				}
+			}
+			shards[i] = least;
+			loads[least] += millis.get(i);
+		}
+		return shards;
+	}
+
+	/**
+	 * @return The planned run time of each shard so far.
+	 */
+	public synchronized long[] getLoads() {
+		return loads.clone();
+	}
+
+	/**
+	 * @return The planned run time of the longest shard so far.
+	 */
+	public synchronized long getMakespan() {
+		long makespan = 0L;
+		for (long load : loads) {
+			makespan = Math.max(makespan, load);
+		}
+		return makespan;
+	}
+
+	/**
+	 * @param millis
+	 *            The durations of some tests.
+	 * @return The positions of the tests, longest first. Tests of the same duration keep their order.
+	 */
+	public static List<Integer> longestFirst(final List<Long> millis) {
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < millis.size(); i++) {
+			order.add(i);
+		}
+		Collections.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				long first = millis.get(a);
+				long second = millis.get(b);
+				return first > second ? -1 : first < second ? 1 : 0;
+			}
+		});
+		return order;
+	}
+
+	/**
+	 * Predicts how long workers that each take the next test off a shared queue as soon as they are free take to run
+	 * all tests, as ParallelScheduler does.
+	 *
+	 * @param millis
+	 *            The durations of the tests in the order they are queued.
+	 * @param workers
+	 *            The number of workers.
+	 * @return The time until the last test ends in milliseconds.
+	 */
+	public static long simulate(List<Long> millis, int workers) {
+		PriorityQueue<Long> freeAt = new PriorityQueue<Long>();
+		for (int i = 0; i < Math.max(1, workers); i++) {
+			freeAt.add(0L);
+		}
+		long makespan = 0L;
+		for (long duration : millis) {
+			long end = freeAt.poll() + duration;
+			freeAt.add(end);
+			makespan = Math.max(makespan, end);
+		}
+		return makespan;
+	}
+
+	/**
+	 * @return The shortest any split of the tests on the workers can take: the longest test or the total divided
+	 *         evenly, whichever is longer.
+	 */
+	public static long lowerBound(List<Long> millis, int workers) {
+		long total = 0L;
+		long longest = 0L;
+		for (long duration : millis) {
+			total += duration;
+			longest = Math.max(longest, duration);
+		}
+		return Math.max(longest, (total + workers - 1) / Math.max(1, workers));
+	}
+
+	/**
+	 * Prints the predicted run time of the tests in the history, or of the named test classes, on the given number of
+	 * workers in name order and longest first.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: ShardPlanner workers [test class names]");
+			System.exit(2);
+		}
+		int workers = Integer.parseInt(args[0]);
+		DurationHistory history = new DurationHistory(DurationHistory.defaultFile());
+		List<String> tests = new ArrayList<String>();
+		if (args.length == 1) {
+			tests.addAll(history.tests());
+		}
+		for (int i = 1; i < args.length; i++) {
+			tests.addAll(history.testsOf(args[i]));
+		}
+		List<Long> millis = new ArrayList<Long>();
+		for (String test : tests) {
+			millis.add(history.estimate(test));
+		}
+		List<Long> sorted = new ArrayList<Long>();
+		for (int i : longestFirst(millis)) {
+			sorted.add(millis.get(i));
+		}
+		System.out.println(String.format("%d tests from %s on %d workers:", tests.size(), history.getFile(), workers));
+		System.out.println(String.format("  in name order:  %8d ms", simulate(millis, workers)));
+		System.out.println(String.format("  longest first:  %8d ms", simulate(sorted, workers)));
+		System.out.println(String.format("  lower bound:    %8d ms", lowerBound(millis, workers)));
+	}
+}
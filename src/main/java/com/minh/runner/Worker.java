@@ -0,0 +1,341 @@
+package com.minh.runner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.runner.Description;
+import org.junit.runner.Request;
+import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.ParentRunner;
+import org.junit.runners.model.RunnerScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the tests a Coordinator hands out and reports the results back, see Protocol. A worker can join a run at any
+ * time and leaves when the coordinator has no work left, after a number of units or when the connection is lost.
+ *
+ * The tests of a unit run one after the other and each is claimed from the coordinator just before it starts, so that
+ * an idle worker can take over the tests that haven't started yet. The worker JVM is what runs in parallel.
+ */
+public class Worker implements Runnable {
+	static final Logger log = LoggerFactory.getLogger(Worker.class);
+
+	/**
+	 * The system property with the number of units after which the worker leaves, 0 to stay to the end.
+	 */
+	public static final String UNITS_PROPERTY = "gui.worker.units";
+
+	private final String host;
+
+	private final int port;
+
+	private final String name;
+
+	private int maxUnits = Integer.getInteger(UNITS_PROPERTY, 0);
+
+	private BufferedReader in;
+
+	private Writer out;
+
+	/**
+	 * @param host
+	 *            The host of the coordinator.
+	 * @param port
+	 *            The port of the coordinator.
+	 * @param name
+	 *            The name of the worker in logs and reports.
+	 */
+	public Worker(String host, int port, String name) {
+		this.host = host;
+		this.port = port;
+		this.name = name;
+	}
+
+	/**
+	 * @param maxUnits
+	 *            The number of units after which the worker leaves, 0 to stay to the end.
+	 */
+	public Worker setMaxUnits(int maxUnits) {
+		this.maxUnits = maxUnits;
+		return this;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Connects to the coordinator and runs what it hands out until there is nothing left.
+	 */
+	public void run() {
+		try {
+			Socket socket = new Socket(host, port);
+			try {
+				in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+				out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+				work();
+			} finally {
+				socket.close();
+			}
+		} catch (IOException e) {
+			log.warn("Worker {} lost the coordinator at {}:{}: {}", new Object[] { name, host, port, e.getMessage() });
+		}
+	}
+
+	private void work() throws IOException {
+		send(Protocol.HELLO, name);
+		log.info("Worker {} joined the coordinator at {}:{}.", new Object[] { name, host, port });
+		for (int units = 0; maxUnits == 0 || units < maxUnits; units++) {
+			String[] reply = request(Protocol.NEXT);
+			if (Protocol.RUN.equals(reply[0])) {
+				List<String> tests = Arrays.asList(reply).subList(2, reply.length);
+				runUnit(reply[1], tests.isEmpty() ? null : new TestFilter(new HashSet<String>(tests), true));
+			} else if (Protocol.RERUN.equals(reply[0])) {
+				List<String> finished = Arrays.asList(reply).subList(2, reply.length);
+				runUnit(reply[1], new TestFilter(new HashSet<String>(finished), false));
+			} else if (Protocol.WAIT.equals(reply[0])) {
+				units--;
+				try {
+					Thread.sleep(Long.parseLong(reply[1]));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			} else if (Protocol.DONE.equals(reply[0])) {
+				break;
+			} else {
+				throw new IOException("Unexpected answer " + Arrays.asList(reply));
+			}
+		}
+		send(Protocol.BYE);
+		log.info("Worker {} left.", name);
+	}
+
+	/**
+	 * Runs a test class, or only the tests the filter keeps, and reports the results.
+	 */
+	private void runUnit(String className, TestFilter filter) throws IOException {
+		log.debug("Worker {} runs {} {}", new Object[] { name, className, filter == null ? "" : filter.describe() });
+		RunNotifier notifier = new RunNotifier();
+		notifier.addListener(new Reporter());
+		Runner runner;
+		try {
+			runner = Request.aClass(Class.forName(className)).getRunner();
+			if (filter != null) {
+				filter.apply(runner);
+			}
+		} catch (ClassNotFoundException e) {
+			send(Protocol.TESTS, className);
+			notifier.fireTestFailure(new Failure(Description.createSuiteDescription(className), e));
+			return;
+		} catch (NoTestsRemainException e) {
+			send(Protocol.TESTS, className);
+			/* Without named tests to keep, all tests of the class finished on a worker that was lost */
+			if (filter.keep) {
+				notifier.fireTestFailure(new Failure(Description.createSuiteDescription(className), e));
+			}
+			return;
+		}
+		List<Description> children = runner.getDescription().getChildren();
+		if (runner instanceof ParentRunner && allTests(children)) {
+			List<Object> fields = new ArrayList<Object>();
+			fields.add(className);
+			for (Description child : children) {
+				fields.add(child.getDisplayName());
+			}
+			send(Protocol.TESTS, fields.toArray());
+			ClaimingScheduler scheduler = new ClaimingScheduler(children);
+			((ParentRunner<?>) runner).setScheduler(scheduler);
+			runner.run(notifier);
+			if (scheduler.lost != null) {
+				throw scheduler.lost;
+			}
+		} else {
+			send(Protocol.TESTS, className);
+			runner.run(notifier);
+		}
+	}
+
+	private static boolean allTests(List<Description> children) {
+		for (Description child : children) {
+			if (!child.isTest()) {
+				return false;
+			}
+		}
+		return !children.isEmpty();
+	}
+
+	private void send(String command, Object... fields) throws IOException {
+		synchronized (this) {
+			out.write(Protocol.line(command, fields));
+			out.write('\n');
+			out.flush();
+		}
+	}
+
+	private String[] request(String command, Object... fields) throws IOException {
+		synchronized (this) {
+			send(command, fields);
+			String reply = in.readLine();
+			if (reply == null) {
+				throw new IOException("The coordinator closed the connection.");
+			}
+			return Protocol.parse(reply);
+		}
+	}
+
+	/**
+	 * Events can't throw, a lost connection shows on the next request.
+	 */
+	private void report(String command, Object... fields) {
+		try {
+			send(command, fields);
+		} catch (IOException e) {
+			log.debug("Couldn't report {}: {}", command, e.getMessage());
+		}
+	}
+
+	/**
+	 * Runs the children of a class runner in order, each only if the coordinator still has it for this worker. The
+	 * runner schedules its children in the order of its description.
+	 */
+	private class ClaimingScheduler implements RunnerScheduler {
+		private final Iterator<Description> children;
+
+		private IOException lost;
+
+		ClaimingScheduler(List<Description> children) {
+			this.children = children.iterator();
+		}
+
+		public void schedule(Runnable childStatement) {
+			String test = children.next().getDisplayName();
+			if (lost != null) {
+				return;
+			}
+			String[] reply;
+			try {
+				reply = request(Protocol.CLAIM, test);
+			} catch (IOException e) {
+				/* The rest of the unit is handed to another worker */
+				lost = e;
+				return;
+			}
+			if (Protocol.GO.equals(reply[0])) {
+				childStatement.run();
+			} else {
+				log.debug("{} was taken over by another worker.", test);
+			}
+		}
+
+		public void finished() {
+		}
+	}
+
+	/**
+	 * Keeps the tests with the given display names, or all other tests.
+	 */
+	private static class TestFilter extends Filter {
+		private final Set<String> tests;
+
+		private final boolean keep;
+
+		TestFilter(Set<String> tests, boolean keep) {
+			this.tests = tests;
+			this.keep = keep;
+		}
+
+		@Override
+		public boolean shouldRun(Description description) {
+			if (description.isTest()) {
+				return tests.contains(description.getDisplayName()) == keep;
+			}
+			for (Description child : description.getChildren()) {
+				if (shouldRun(child)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public String describe() {
+			return (keep ? "tests " : "all tests but ") + tests;
+		}
+	}
+
+	/**
+	 * Passes the test events on to the coordinator.
+	 */
+	private class Reporter extends RunListener {
+		private final ConcurrentMap<Description, Long> starts = new ConcurrentHashMap<Description, Long>();
+
+		@Override
+		public void testStarted(Description description) {
+			starts.put(description, System.nanoTime());
+			report(Protocol.STARTED, description.getClassName(), methodOf(description));
+		}
+
+		@Override
+		public void testFailure(Failure failure) {
+			Description description = failure.getDescription();
+			report(Protocol.FAILED, description.getClassName(), methodOf(description), false, failure.getTrace());
+		}
+
+		@Override
+		public void testAssumptionFailure(Failure failure) {
+			Description description = failure.getDescription();
+			report(Protocol.FAILED, description.getClassName(), methodOf(description), true, failure.getTrace());
+		}
+
+		@Override
+		public void testIgnored(Description description) {
+			report(Protocol.IGNORED, description.getClassName(), methodOf(description));
+		}
+
+		@Override
+		public void testFinished(Description description) {
+			Long start = starts.remove(description);
+			long millis = start == null ? 0L : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			report(Protocol.FINISHED, description.getClassName(), methodOf(description), millis);
+		}
+
+		private String methodOf(Description description) {
+			String method = description.getMethodName();
+			return method == null ? "" : method;
+		}
+	}
+
+	/**
+	 * Joins the coordinator given by host and port.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: Worker <host> <port> [name]");
+			System.exit(2);
+		}
+		String name = args.length > 2 ? args[2] : ManagementFactory.getRuntimeMXBean().getName();
+		new Worker(args[0], Integer.parseInt(args[1]), name).run();
+		System.exit(0);
+	}
+}
@@ -0,0 +1,77 @@
+package com.minh.selector;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns the selectors made by the Via factory methods, so a page object that builds the same selector on every
+ * call gets one shared instance with its lookup compiled once. Selectors are immutable, sharing them between threads
+ * is safe. The number of distinct selectors of a test suite is small, past MAX_SIZE new selectors are simply not kept.
+ */
+final class SelectorCache {
+    static final String ID = "id";
+
+    static final String NAME = "name";
+
+    static final String CSS = "css";
+
+    static final String XPATH = "xpath";
+
+    /* The strategies as written, rewritten to cheaper ones where possible */
+    static final String OPTIMIZED_CSS = "css+";
+
+    static final String OPTIMIZED_XPATH = "xpath+";
+
+    static final int MAX_SIZE = 4096;
+
+    private static final ConcurrentMap<String, Via> selectors = new ConcurrentHashMap<String, Via>();
+
+    private SelectorCache() {
+    }
+
+    /**
+     * @param strategy One of the strategies above.
+     * @param value The id, name or expression.
+     * @return The shared selector for the strategy and value, created if needed.
+     */
+    static Via intern(String strategy, String value) {
+        String key = strategy + ':' + value;
+        Via via = selectors.get(key);
+        if (via == null) {
+            via = create(strategy, value);
+            if (selectors.size() < MAX_SIZE) {
+                Via interned = selectors.putIfAbsent(key, via);
+                if (interned != null) {
+                    via = interned;
+                }
+            }
+        }
+        return via;
+    }
+
+    static int size() {
+        return selectors.size();
+    }
+
+    private static Via create(String strategy, String value) {
+        if (ID.equals(strategy)) {
+            return new ViaId(value);
+        }
+        if (NAME.equals(strategy)) {
+            return new ViaName(value);
+        }
+        if (CSS.equals(strategy)) {
+            return new ViaCss(value);
+        }
+        if (XPATH.equals(strategy)) {
+            return new ViaXpath(value);
+        }
+        if (OPTIMIZED_CSS.equals(strategy)) {
+            return ViaOptimizer.css(value);
+        }
+        if (OPTIMIZED_XPATH.equals(strategy)) {
+            return ViaOptimizer.xpath(value);
+        }
+        throw new IllegalArgumentException("Unknown selector strategy " + strategy);
+    }
+}
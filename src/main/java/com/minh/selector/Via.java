@@ -1,5 +1,7 @@
 package com.minh.selector;
 import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
 
 /**
  * Created with IntelliJ IDEA.
@@ -7,19 +9,46 @@ import org.openqa.selenium.By;
  * Date: 2013-06-10
  * Time: 22:30
  * To change this template use File | Settings | File Templates.
+ *
+ * A Via holds its compiled lookup and is immutable. The factory methods hand out one shared instance per strategy and
+ * value.
  */
-
-
 public abstract class Via extends By {
     protected static String TAG_FORMAT = "<%s %s=\"%s\"/>";
 
+    /**
+     * The system property that turns on the rewriting of selectors to cheaper equivalents.
+     */
+    public static final String OPTIMIZE_PROPERTY = "gui.via.optimize";
+
+    private static volatile boolean optimizing = Boolean.getBoolean(OPTIMIZE_PROPERTY);
+
+    /**
+     * The description of the selector this one was rewritten from, null if it wasn't rewritten.
+     */
+    private String original = null;
+
+    /**
+     * The xpath this selector was rewritten from, null if it wasn't rewritten from an xpath.
+     */
+    private Via originalXpath = null;
+
+    /**
+     * When turned on the factory methods below rewrite simple xpath and css expressions to the cheapest equivalent
+     * strategy, e.g. //*[@id='x'] to an id lookup. Also turned on by -Dgui.via.optimize=true.
+     * @param optimizing true to rewrite selectors.
+     */
+    public static void setOptimizing(boolean optimizing) {
+        Via.optimizing = optimizing;
+    }
+
     /**
      * This is the fasted way to address an element.
      * @param value The id of the element.
      * @return
      */
     public static Via id(String value) {
-        return new ViaId(value);
+        return SelectorCache.intern(SelectorCache.ID, value);
     }
 
     /**
@@ -28,7 +57,7 @@ public abstract class Via extends By {
      * @return
      */
     public static Via css(String value) {
-        return new ViaCss(value);
+        return SelectorCache.intern(optimizing ? SelectorCache.OPTIMIZED_CSS : SelectorCache.CSS, value);
     }
 
     /**
@@ -37,7 +66,7 @@ public abstract class Via extends By {
      * @return
      */
     public static Via name(String value) {
-        return new ViaName(value);
+        return SelectorCache.intern(SelectorCache.NAME, value);
     }
 
     /**
@@ -46,11 +75,79 @@ public abstract class Via extends By {
      * @return
      */
     public static Via xpath(String value) {
-        return new ViaXpath(value);
+        return SelectorCache.intern(optimizing ? SelectorCache.OPTIMIZED_XPATH : SelectorCache.XPATH, value);
     }
 
     public abstract String getValue();
 
-    public abstract String toString();
+    /**
+     * This is used by waits that run inside the page instead of polling over the wire.
+     * @return A javascript expression that evaluates to the first matching element of document or null.
+     */
+    public abstract String toJavascript();
+
+    /**
+     * @return A human readable form of the selector for log and error messages.
+     */
+    protected abstract String describe();
+
+    /**
+     * A rewritten selector is described as the selector it was written as, so log messages match the page objects.
+     */
+    @Override
+    public String toString() {
+        return original == null ? describe() : original;
+    }
+
+    /**
+     * Marks this selector as a rewrite of another.
+     * @param from The selector as it was written.
+     * @return This selector.
+     */
+    Via rewrittenFrom(Via from) {
+        this.original = from.toString();
+        if (from instanceof ViaXpath) {
+            this.originalXpath = from;
+        }
+        return this;
+    }
+
+    /**
+     * An xpath like //a[@id='x'] searches the whole document even when it is run on an element, while its rewrite
+     * only searches below the element. Searches within an element therefore use the xpath as it was written.
+     * @param context The driver or element to search.
+     * @param lookup The lookup of this selector.
+     * @return The lookup to search the context with.
+     */
+    protected By lookupFor(SearchContext context, By lookup) {
+        return originalXpath != null && context instanceof WebElement ? originalXpath : lookup;
+    }
+
+    /**
+     * Quotes a value as a javascript string literal.
+     * @param value The value to quote.
+     * @return The value within double quotes with quotes, backslashes and line breaks escaped.
+     */
+    protected static String quote(String value) {
+        StringBuilder result = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+            case '\\':
+                result.append('\\').append(c);
+                break;
+            case '\n':
+                result.append("\\n");
+                break;
+            case '\r':
+                result.append("\\r");
+                break;
+            default:
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
 
 }
@@ -2,14 +2,18 @@ package com.minh.selector;
 
 import java.util.List;
 
+import org.openqa.selenium.By;
 import org.openqa.selenium.SearchContext;
 import org.openqa.selenium.WebElement;
 
 public class ViaCss extends Via {
-    String value = "";
+    final String value;
+
+    private final By delegate;
 
     public ViaCss(String value) {
         this.value = value;
+        this.delegate = new ByCssSelector(value);
     }
 
     @Override
@@ -19,11 +23,21 @@ public class ViaCss extends Via {
 
     @Override
     public List<WebElement> findElements(SearchContext context) {
-        return new ByCssSelector(value).findElements(context);
+        return lookupFor(context, delegate).findElements(context);
+    }
+
+    @Override
+    public WebElement findElement(SearchContext context) {
+        return lookupFor(context, delegate).findElement(context);
+    }
+
+    @Override
+    public String toJavascript() {
+        return "document.querySelector(" + quote(value) + ")";
     }
 
     @Override
-    public String toString() {
+    protected String describe() {
         return String.format("that match css=\"%s\"", value);
     }
 
@@ -2,14 +2,18 @@ package com.minh.selector;
 
 import java.util.List;
 
+import org.openqa.selenium.By;
 import org.openqa.selenium.SearchContext;
 import org.openqa.selenium.WebElement;
 
 public class ViaId extends Via {
-    private String value = "";
+    private final String value;
+
+    private final By delegate;
 
     public ViaId(String value) {
         this.value = value;
+        this.delegate = new ById(value);
     }
 
     public String getValue() {
@@ -18,11 +22,21 @@ public class ViaId extends Via {
 
     @Override
     public List<WebElement> findElements(SearchContext context) {
-        return new ById(value).findElements(context);
+        return lookupFor(context, delegate).findElements(context);
+    }
+
+    @Override
+    public WebElement findElement(SearchContext context) {
+        return lookupFor(context, delegate).findElement(context);
+    }
+
+    @Override
+    public String toJavascript() {
+        return "document.getElementById(" + quote(value) + ")";
     }
 
     @Override
-    public String toString() {
+    protected String describe() {
         return String.format("<? id=\"%s\" />", value);
     }
 
@@ -2,14 +2,18 @@ package com.minh.selector;
 
 import java.util.List;
 
+import org.openqa.selenium.By;
 import org.openqa.selenium.SearchContext;
 import org.openqa.selenium.WebElement;
 
 public class ViaName extends Via {
-    String value = "";
+    final String value;
+
+    private final By delegate;
 
     public ViaName(String value) {
         this.value = value;
+        this.delegate = new ByName(value);
     }
 
     @Override
@@ -19,11 +23,21 @@ public class ViaName extends Via {
 
     @Override
     public List<WebElement> findElements(SearchContext context) {
-        return new ByName(value).findElements(context);
+        return lookupFor(context, delegate).findElements(context);
+    }
+
+    @Override
+    public WebElement findElement(SearchContext context) {
+        return lookupFor(context, delegate).findElement(context);
+    }
+
+    @Override
+    public String toJavascript() {
+        return "(document.getElementsByName(" + quote(value) + ")[0] || null)";
     }
 
     @Override
-    public String toString() {
+    protected String describe() {
         return String.format("<%s />", value);
     }
 
@@ -0,0 +1,98 @@
+package com.minh.selector;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rewrites simple xpath and css expressions to the cheapest strategy that finds the same elements. Id and name
+ * lookups are native in every driver, css comes next and xpath is the slowest, in IE by far. Anything that isn't
+ * recognized is left as it is. The outcome is interned by the SelectorCache so each expression is parsed once.
+ */
+class ViaOptimizer {
+    static final Logger log = LoggerFactory.getLogger(ViaOptimizer.class);
+
+    /* //tag[@attr='value'] or //*[@attr="value"] */
+    private static final Pattern XPATH_ATTRIBUTE = Pattern
+            .compile("^//(\\*|[a-zA-Z][\\w-]*)\\[@([a-zA-Z][\\w-]*)\\s*=\\s*(?:'([^']*)'|\"([^\"]*)\")\\]$");
+
+    /* //tag */
+    private static final Pattern XPATH_TAG = Pattern.compile("^//([a-zA-Z][\\w-]*)$");
+
+    /* #id */
+    private static final Pattern CSS_ID = Pattern.compile("^#(-?[a-zA-Z_][\\w-]*)$");
+
+    /* [id='value'] or *[name="value"] */
+    private static final Pattern CSS_ID_OR_NAME = Pattern
+            .compile("^\\*?\\[(id|name)\\s*=\\s*(?:'([^']*)'|\"([^\"]*)\")\\]$");
+
+    /* A value that can be written as a css identifier without escaping */
+    private static final Pattern CSS_IDENTIFIER = Pattern.compile("^-?[a-zA-Z_][\\w-]*$");
+
+    private ViaOptimizer() {
+    }
+
+    static Via xpath(String value) {
+        return rewrite(SelectorCache.XPATH, value);
+    }
+
+    static Via css(String value) {
+        return rewrite(SelectorCache.CSS, value);
+    }
+
+    private static Via rewrite(String strategy, String value) {
+        Via original = SelectorCache.intern(strategy, value);
+        Via rewritten = SelectorCache.XPATH.equals(strategy) ? parseXpath(value) : parseCss(value);
+        if (rewritten == null) {
+            return original;
+        }
+        log.info("The selector {} is rewritten to {}.", original, rewritten.describe());
+        return rewritten.rewrittenFrom(original);
+    }
+
+    static Via parseXpath(String xpath) {
+        String trimmed = xpath.trim();
+        Matcher matcher = XPATH_TAG.matcher(trimmed);
+        if (matcher.matches()) {
+            return new ViaCss(matcher.group(1));
+        }
+        matcher = XPATH_ATTRIBUTE.matcher(trimmed);
+        if (!matcher.matches()) {
+            return null;
+        }
+        String tag = matcher.group(1);
+        String attribute = matcher.group(2);
+        String value = matcher.group(3) != null ? matcher.group(3) : matcher.group(4);
+        boolean anyTag = "*".equals(tag);
+        if (anyTag && "id".equals(attribute)) {
+            return new ViaId(value);
+        }
+        if (anyTag && "name".equals(attribute)) {
+            return new ViaName(value);
+        }
+        if ("id".equals(attribute) && CSS_IDENTIFIER.matcher(value).matches()) {
+            return new ViaCss(tag + "#" + value);
+        }
+        return new ViaCss((anyTag ? "" : tag) + "[" + attribute + "=" + cssString(value) + "]");
+    }
+
+    static Via parseCss(String css) {
+        String trimmed = css.trim();
+        Matcher matcher = CSS_ID.matcher(trimmed);
+        if (matcher.matches()) {
+            return new ViaId(matcher.group(1));
+        }
+        matcher = CSS_ID_OR_NAME.matcher(trimmed);
+        if (matcher.matches()) {
+            String value = matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+            return "id".equals(matcher.group(1)) ? new ViaId(value) : new ViaName(value);
+        }
+        return null;
+    }
+
+    private static String cssString(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -1,5 +1,6 @@
 package com.minh.selector;
 
+import org.openqa.selenium.By;
 import org.openqa.selenium.SearchContext;
 import org.openqa.selenium.WebElement;
 
@@ -13,10 +14,13 @@ import java.util.List;
  * To change this template use File | Settings | File Templates.
  */
 public class ViaXpath extends Via {
-    private String value = "";
+    private final String value;
+
+    private final By delegate;
 
     public ViaXpath(String value) {
         this.value = value;
+        this.delegate = new ByXPath(value);
     }
 
     public String getValue() {
@@ -25,11 +29,21 @@ public class ViaXpath extends Via {
 
     @Override
     public List<WebElement> findElements(SearchContext context) {
-        return new ByXPath(value).findElements(context);
+        return delegate.findElements(context);
+    }
+
+    @Override
+    public WebElement findElement(SearchContext context) {
+        return delegate.findElement(context);
+    }
+
+    @Override
+    public String toJavascript() {
+        return "document.evaluate(" + quote(value) + ", document, null, 9, null).singleNodeValue";
     }
 
     @Override
-    public String toString() {
+    protected String describe() {
         return String.format("<? that match xpath=\"%s\" />", value);
     }
 
@@ -8,6 +8,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.minh.helper.Browser;
+import com.minh.helper.Readiness;
 import com.minh.selector.Via;
 
 public class LoginTest {
@@ -31,6 +32,7 @@ public class LoginTest {
     public void setUp() throws Exception {
         log.info("Setup of test run");
         browser = new Browser(Browser.FIREFOX);
+        browser.setReadiness(Readiness.networkIdle(500L));
     }
 
     /**
@@ -51,11 +53,8 @@ public class LoginTest {
     @Test
     public void testGotoPages() {
         browser.get("http://kth.se");
-        browser.sleep(1000);
         browser.get("http://di.se");
-        browser.sleep(1000);
         browser.get("http://dn.se");
-        browser.sleep(1000);
     }
 
 }
@@ -0,0 +1,81 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.minh.selector.Via;
+
+public class AsyncBrowserTest {
+	File page = null;
+
+	ExecutorService executor = null;
+
+	@Before
+	public void setUp() throws Exception {
+		page = PageLoaderTest.write("async", "<html><head><title>async</title></head>"
+				+ "<body><input id=\"q\"/></body></html>");
+		executor = Executors.newFixedThreadPool(2);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+		page.delete();
+	}
+
+	@Test
+	public void testManyBrowsersOnFewThreads() throws Exception {
+		List<AsyncBrowser> browsers = new ArrayList<AsyncBrowser>();
+		List<ListenableFuture<String>> titles = new ArrayList<ListenableFuture<String>>();
+		for (int i = 0; i < 4; i++) {
+			AsyncBrowser browser = new AsyncBrowser(new Browser(Browser.HEADLESS), executor);
+			browsers.add(browser);
+			browser.get(page.toURI().toString());
+			browser.waitForElement(Via.id("q"));
+			titles.add(browser.getTitle());
+		}
+		List<String> result = Futures.allAsList(titles).get(60, TimeUnit.SECONDS);
+		assertEquals(Collections.nCopies(4, "async"), result);
+		List<ListenableFuture<Void>> quits = new ArrayList<ListenableFuture<Void>>();
+		for (AsyncBrowser browser : browsers) {
+			quits.add(browser.quit());
+		}
+		Futures.allAsList(quits).get(60, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testCommandsToOneBrowserStayInOrder() throws Exception {
+		AsyncBrowser browser = new AsyncBrowser(new Browser(Browser.HEADLESS), executor);
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		ListenableFuture<Integer> last = null;
+		for (int i = 0; i < 50; i++) {
+			final int step = i;
+			last = browser.submit(new Function<Browser, Integer>() {
+				public Integer apply(Browser browser) {
+					assertSame(browser, Browser.current());
+					order.add(step);
+					return step;
+				}
+			});
+		}
+		assertEquals(Integer.valueOf(49), last.get(10, TimeUnit.SECONDS));
+		for (int i = 0; i < 50; i++) {
+			assertEquals(Integer.valueOf(i), order.get(i));
+		}
+		browser.quit().get(10, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,69 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.WebElement;
+
+import com.minh.metrics.Metrics;
+import com.minh.selector.Via;
+
+public class BrowserTest {
+	static final String PAGE = "<html><body>"
+			+ "<input id=\"q\" name=\"q\" class=\"search wide\" style=\"color: red;\"/>"
+			+ "</body></html>";
+
+	Browser browser = null;
+
+	File page = null;
+
+	@Before
+	public void setUp() throws Exception {
+		page = File.createTempFile("browser", ".html");
+		FileWriter writer = new FileWriter(page);
+		writer.write(PAGE);
+		writer.close();
+		browser = new Browser(Browser.HEADLESS);
+		browser.get(page.toURI().toString());
+	}
+
+	@After
+	public void tearDown() {
+		browser.quit();
+		page.delete();
+	}
+
+	@Test
+	public void testTagAsString() {
+		WebElement input = browser.getWebDriver().findElement(Via.id("q"));
+		assertEquals("<input id=\"q\" class=\"search wide\" style=\"color: red;\" />", browser.getTagAsString(input));
+	}
+
+	@Test
+	public void testDescribeIsLazy() {
+		WebElement input = browser.getWebDriver().findElement(Via.id("q"));
+		long threadSaved = Browser.getThreadLoggingCommandsSaved();
+		long runSaved = Metrics.counter("log.commands.saved").get();
+		Object description = browser.describe(input);
+		assertEquals(Browser.TAG_COMMANDS, browser.getLoggingCommandsSaved());
+		assertEquals(browser.getTagAsString(input), description.toString());
+		assertEquals(Browser.TAG_COMMANDS - 1, browser.getLoggingCommandsSaved());
+		assertEquals(Browser.TAG_COMMANDS - 1, Browser.getThreadLoggingCommandsSaved() - threadSaved);
+		assertEquals(Browser.TAG_COMMANDS - 1, Metrics.counter("log.commands.saved").get() - runSaved);
+	}
+
+	@Test
+	public void testIsVisibleRestoresImplicitWait() {
+		long implicitWait = browser.getImplicitWait();
+		long start = System.currentTimeMillis();
+		assertTrue(browser.isVisible(Via.id("q")));
+		assertFalse(browser.isVisible(Via.id("missing")));
+		assertTrue(System.currentTimeMillis() - start < implicitWait);
+		assertEquals(implicitWait, browser.getImplicitWait());
+	}
+}
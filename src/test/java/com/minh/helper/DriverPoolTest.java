@@ -0,0 +1,70 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openqa.selenium.WebDriver;
+
+public class DriverPoolTest {
+	DriverPool pool = new DriverPool(1);
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * A returned driver is handed out again instead of starting a new one. Starting the first one isn't waiting.
+	 */
+	@Test
+	public void testReleasedDriverIsReused() {
+		WebDriver first = pool.lease(Browser.HEADLESS);
+		pool.release(Browser.HEADLESS, first);
+		WebDriver second = pool.lease(Browser.HEADLESS);
+		assertSame(first, second);
+		assertEquals(0.5, pool.getHitRate(), 0.001);
+		assertEquals(0L, pool.getWaitMillis());
+		pool.release(Browser.HEADLESS, second);
+	}
+
+	/**
+	 * A full pool makes the next lease wait until a driver is returned, which is a hit.
+	 */
+	@Test
+	public void testLeaseWaitsWhenPoolIsFull() throws Exception {
+		final WebDriver leased = pool.lease(Browser.HEADLESS);
+		Thread releaser = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(300L);
+				} catch (InterruptedException e) {
+					return;
+				}
+				pool.release(Browser.HEADLESS, leased);
+			}
+		};
+		releaser.start();
+		WebDriver next = pool.lease(Browser.HEADLESS);
+		releaser.join();
+		assertSame(leased, next);
+		assertTrue(pool.getWaitMillis() >= 200L);
+		assertTrue(pool.getWaitMillis() < 1000L);
+		assertEquals(0.5, pool.getHitRate(), 0.001);
+		pool.release(Browser.HEADLESS, next);
+	}
+
+	/**
+	 * A pooled browser gives its driver back on quit.
+	 */
+	@Test
+	public void testPooledBrowserReturnsDriverOnQuit() {
+		Browser browser = new Browser(Browser.HEADLESS, pool);
+		WebDriver webDriver = CommandProxy.unwrap(browser.getWebDriver());
+		browser.quit();
+		WebDriver next = pool.lease(Browser.HEADLESS);
+		assertSame(webDriver, next);
+		pool.release(Browser.HEADLESS, next);
+	}
+}
@@ -0,0 +1,247 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+public class DriverSupervisorTest {
+	@Before
+	public void setUp() {
+		assumeTrue(ProcessTree.isSupported() && !System.getProperty("os.name").startsWith("Windows"));
+	}
+
+	/**
+	 * A command that hangs past its deadline kills the driver's process and fails, later commands fail at once.
+	 */
+	@Test
+	public void testHungDriverIsKilled() throws Exception {
+		ProcessDriver driver = new ProcessDriver(true);
+		WebDriver supervised = DriverSupervisor.supervise(driver, "process", driver.pids(), 300L);
+		assertTrue(DriverSupervisor.isStarted(driver.pid));
+		long start = System.currentTimeMillis();
+		try {
+			supervised.getTitle();
+			fail("The hung command returned.");
+		} catch (TimeoutException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("getTitle"));
+		}
+		assertTrue(System.currentTimeMillis() - start < 5000L);
+		assertTrue(DriverSupervisor.isKilled(supervised));
+		assertFalse(ProcessTree.isAlive(driver.pid));
+		assertFalse(DriverSupervisor.isStarted(driver.pid));
+		try {
+			supervised.getCurrentUrl();
+			fail("A killed driver took a command.");
+		} catch (TimeoutException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("killed"));
+		}
+		supervised.quit();
+	}
+
+	/**
+	 * The implicit wait set on the driver is added to the deadline of lookups.
+	 */
+	@Test
+	public void testImplicitWaitExtendsDeadline() throws Exception {
+		ProcessDriver driver = new ProcessDriver(false);
+		WebDriver supervised = DriverSupervisor.supervise(driver, "process", driver.pids(), 300L);
+		try {
+			supervised.manage().timeouts().implicitlyWait(2, TimeUnit.SECONDS);
+			driver.lookupMillis = 800L;
+			assertTrue(supervised.findElements(By.id("x")).isEmpty());
+			assertFalse(DriverSupervisor.isKilled(supervised));
+		} finally {
+			supervised.quit();
+		}
+	}
+
+	/**
+	 * A browser starts a new driver in place of one that was killed, only the command that hung fails.
+	 */
+	@Test
+	public void testBrowserReplacesKilledDriver() throws Exception {
+		final boolean[] hang = { true };
+		DriverPool pool = new DriverPool(1, new CreateDriver() {
+			@Override
+			public WebDriver createWebDriver(String driverName) {
+				try {
+					ProcessDriver driver = new ProcessDriver(hang[0]);
+					hang[0] = false;
+					return DriverSupervisor.supervise(driver, driverName, driver.pids(), 300L);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		Browser browser = new Browser(Browser.CHROME, pool);
+		try {
+			browser.getTitle();
+			fail("The hung command returned.");
+		} catch (TimeoutException e) {
+			/* Expected */
+		}
+		assertEquals("process", browser.getTitle());
+		browser.quit();
+		pool.shutdown();
+	}
+
+	/**
+	 * A driver whose only process is a child process that never answers when it is told to hang.
+	 */
+	static class ProcessDriver implements WebDriver {
+		final Process process;
+
+		final int pid;
+
+		final boolean hang;
+
+		volatile long lookupMillis = 0L;
+
+		ProcessDriver(boolean hang) throws IOException {
+			this.hang = hang;
+			int self = ProcessTree.selfPid();
+			Set<Integer> before = ProcessTree.descendants(self);
+			process = new ProcessBuilder("sleep", "600").start();
+			Set<Integer> after = ProcessTree.descendants(self);
+			after.removeAll(before);
+			pid = after.iterator().next();
+		}
+
+		Set<Integer> pids() {
+			return Collections.singleton(pid);
+		}
+
+		private void answer() {
+			if (hang) {
+				try {
+					/* Returns when the process is killed, like a socket to a killed driver */
+					process.getInputStream().read();
+				} catch (IOException e) {
+					/* Closed */
+				}
+				throw new IllegalStateException("The process is gone.");
+			}
+		}
+
+		public String getTitle() {
+			answer();
+			return "process";
+		}
+
+		public String getCurrentUrl() {
+			answer();
+			return "about:blank";
+		}
+
+		public List<WebElement> findElements(By by) {
+			answer();
+			try {
+				Thread.sleep(lookupMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return Collections.emptyList();
+		}
+
+		public WebElement findElement(By by) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void get(String url) {
+			answer();
+		}
+
+		public String getPageSource() {
+			answer();
+			return "";
+		}
+
+		public void close() {
+		}
+
+		public void quit() {
+			process.destroy();
+		}
+
+		public Set<String> getWindowHandles() {
+			return Collections.singleton(getWindowHandle());
+		}
+
+		public String getWindowHandle() {
+			answer();
+			return "window";
+		}
+
+		public TargetLocator switchTo() {
+			throw new UnsupportedOperationException();
+		}
+
+		public Navigation navigate() {
+			throw new UnsupportedOperationException();
+		}
+
+		public Options manage() {
+			return new Options() {
+				public void addCookie(org.openqa.selenium.Cookie cookie) {
+				}
+
+				public void deleteCookieNamed(String name) {
+				}
+
+				public void deleteCookie(org.openqa.selenium.Cookie cookie) {
+				}
+
+				public void deleteAllCookies() {
+				}
+
+				public Set<org.openqa.selenium.Cookie> getCookies() {
+					return Collections.emptySet();
+				}
+
+				public org.openqa.selenium.Cookie getCookieNamed(String name) {
+					return null;
+				}
+
+				public Timeouts timeouts() {
+					return new Timeouts() {
+						public Timeouts implicitlyWait(long time, TimeUnit unit) {
+							return this;
+						}
+
+						public Timeouts setScriptTimeout(long time, TimeUnit unit) {
+							return this;
+						}
+
+						public Timeouts pageLoadTimeout(long time, TimeUnit unit) {
+							return this;
+						}
+					};
+				}
+
+				public ImeHandler ime() {
+					throw new UnsupportedOperationException();
+				}
+
+				public Window window() {
+					throw new UnsupportedOperationException();
+				}
+
+				public org.openqa.selenium.logging.Logs logs() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebDriver;
+
+public class DriverWatchdogTest {
+	DriverPool pool = new DriverPool(1);
+
+	String url = null;
+
+	@Before
+	public void setUp() throws Exception {
+		url = PageLoaderTest.write("watchdog", "<html><head><title>watchdog</title></head></html>").toURI()
+				.toString();
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * A driver that loaded its share of pages is quit on release and the next lease gets a new one.
+	 */
+	@Test
+	public void testDriverIsRecycledAfterPages() {
+		DriverWatchdog watchdog = new DriverWatchdog().setMaxPages(2).setMaxLatencyGrowth(0).setMaxHeapFraction(0);
+		pool.setWatchdog(watchdog);
+		WebDriver first = pool.lease(Browser.HEADLESS);
+		first.get(url);
+		pool.release(Browser.HEADLESS, first);
+		WebDriver second = pool.lease(Browser.HEADLESS);
+		assertSame(first, second);
+		second.get(url);
+		pool.release(Browser.HEADLESS, second);
+		assertEquals(1L, watchdog.getRecycled());
+		WebDriver third = pool.lease(Browser.HEADLESS);
+		assertNotSame(CommandProxy.unwrap(first), CommandProxy.unwrap(third));
+		pool.release(Browser.HEADLESS, third);
+	}
+
+	/**
+	 * A headless driver is recycled when the heap is fuller than allowed.
+	 */
+	@Test
+	public void testHeadlessDriverIsRecycledOnHeap() {
+		DriverWatchdog watchdog = new DriverWatchdog().setMaxPages(0).setMaxLatencyGrowth(0).setMaxHeapFraction(
+				0.0000001);
+		pool.setWatchdog(watchdog);
+		System.gc();
+		WebDriver first = pool.lease(Browser.HEADLESS);
+		first.get(url);
+		pool.release(Browser.HEADLESS, first);
+		assertEquals(1L, watchdog.getRecycled());
+		/* The heap is still as full until the next collection, the next driver has to wait its turn */
+		WebDriver second = pool.lease(Browser.HEADLESS);
+		second.get(url);
+		pool.release(Browser.HEADLESS, second);
+		assertEquals(1L, watchdog.getRecycled());
+	}
+
+	/**
+	 * Lookups that wait for an element that isn't there don't make the driver look slow.
+	 */
+	@Test
+	public void testWaitingLookupsAreNoTrend() {
+		DriverWatchdog watchdog = new DriverWatchdog().setMaxPages(0).setMaxLatencyGrowth(3).setMaxHeapFraction(0);
+		pool.setWatchdog(watchdog);
+		WebDriver driver = pool.lease(Browser.HEADLESS);
+		driver.get(url);
+		for (int i = 0; i < 2 * DriverWatchdog.BASELINE_COMMANDS; i++) {
+			driver.findElement(By.tagName("title"));
+		}
+		driver.manage().timeouts().implicitlyWait(20, TimeUnit.MILLISECONDS);
+		for (int i = 0; i < 5; i++) {
+			try {
+				driver.findElement(By.id("missing"));
+				fail("There is no such element.");
+			} catch (NoSuchElementException expected) {
+			}
+		}
+		driver.manage().timeouts().implicitlyWait(0, TimeUnit.MILLISECONDS);
+		pool.release(Browser.HEADLESS, driver);
+		assertEquals(0L, watchdog.getRecycled());
+	}
+
+	/**
+	 * Drivers returned through a Browser are checked too.
+	 */
+	@Test
+	public void testPooledBrowserIsRecycled() {
+		DriverWatchdog watchdog = new DriverWatchdog().setMaxPages(1).setMaxLatencyGrowth(0).setMaxHeapFraction(0);
+		pool.setWatchdog(watchdog);
+		Browser browser = new Browser(Browser.HEADLESS, pool);
+		browser.get(url);
+		assertEquals("watchdog", browser.getTitle());
+		browser.quit();
+		assertEquals(1L, watchdog.getRecycled());
+	}
+}
@@ -0,0 +1,146 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import com.minh.metrics.Metrics;
+import com.minh.selector.Via;
+
+public class ElementWaiterTest {
+	static final String PAGE = "<html><body>"
+			+ "<div id=\"late\" style=\"display:none\">late</div><div id=\"going\">going</div>"
+			+ "<script>setTimeout(function() {"
+			+ "document.getElementById('late').style.display = 'block';"
+			+ "document.getElementById('going').style.display = 'none';"
+			+ "}, 300);</script></body></html>";
+
+	Browser browser = null;
+
+	File page = null;
+
+	@Before
+	public void setUp() throws Exception {
+		page = File.createTempFile("waiter", ".html");
+		FileWriter writer = new FileWriter(page);
+		writer.write(PAGE);
+		writer.close();
+		browser = new Browser(Browser.HEADLESS);
+		browser.get(page.toURI().toString());
+	}
+
+	@After
+	public void tearDown() {
+		browser.quit();
+		page.delete();
+	}
+
+	@Test
+	public void testWaitForElementReturnsOnceShown() {
+		long count = Metrics.histogram("wait.visible").getCount();
+		assertTrue(browser.waitForElement(Via.id("late")).isDisplayed());
+		assertEquals(count + 1, Metrics.histogram("wait.visible").getCount());
+	}
+
+	@Test
+	public void testWaitForElementToDisappear() {
+		long count = Metrics.histogram("wait.gone").getCount();
+		browser.waitForElementToDisappear(Via.id("going"));
+		assertFalse(browser.getWebDriver().findElement(Via.id("going")).isDisplayed());
+		assertEquals(count + 1, Metrics.histogram("wait.gone").getCount());
+	}
+
+	/**
+	 * A wait that failed in page is tried in page again, until it failed a few times in a row.
+	 */
+	@Test
+	public void testFailedWaitIsRetriedInPage() {
+		ScriptedDriver driver = new ScriptedDriver(new WebDriverException("navigated away"), Boolean.TRUE);
+		ElementWaiter waiter = new ElementWaiter(driver.create());
+		assertTrue(waiter.awaitGone(Via.id("x"), 0L));
+		assertTrue(waiter.awaitGone(Via.id("x"), 0L));
+		assertEquals(2, driver.scripts);
+		for (int i = 0; i < ElementWaiter.MAX_FAILURES; i++) {
+			driver.results.add(new WebDriverException("broken"));
+			waiter.awaitGone(Via.id("x"), 0L);
+		}
+		waiter.awaitGone(Via.id("x"), 0L);
+		assertEquals(2 + ElementWaiter.MAX_FAILURES, driver.scripts);
+	}
+
+	/**
+	 * A page without MutationObserver is polled, the next page is waited for in page again.
+	 */
+	@Test
+	public void testPageWithoutObserverIsPolledUntilNextPage() {
+		ScriptedDriver driver = new ScriptedDriver(ElementWaiter.UNSUPPORTED, Boolean.TRUE);
+		ElementWaiter waiter = new ElementWaiter(driver.create());
+		assertTrue(waiter.awaitGone(Via.id("x"), 0L));
+		assertTrue(waiter.awaitGone(Via.id("x"), 0L));
+		assertEquals(1, driver.scripts);
+		driver.url = "http://localhost/next";
+		assertTrue(waiter.awaitGone(Via.id("x"), 0L));
+		assertEquals(2, driver.scripts);
+	}
+
+	/**
+	 * A driver that answers the wait scripts with the given results in turn, throwing the exceptions among them, and
+	 * finds no elements.
+	 */
+	static class ScriptedDriver implements InvocationHandler {
+		final Deque<Object> results = new ArrayDeque<Object>();
+
+		int scripts = 0;
+
+		String url = "http://localhost/first";
+
+		private Object proxy = null;
+
+		ScriptedDriver(Object... results) {
+			this.results.addAll(Arrays.asList(results));
+		}
+
+		WebDriver create() {
+			proxy = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { WebDriver.class,
+					JavascriptExecutor.class, WebDriver.Options.class, WebDriver.Timeouts.class }, this);
+			return (WebDriver) proxy;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("executeAsyncScript")) {
+				scripts++;
+				Object result = results.poll();
+				if (result instanceof RuntimeException) {
+					throw (RuntimeException) result;
+				}
+				return result;
+			}
+			if (name.equals("getCurrentUrl")) {
+				return url;
+			}
+			if (name.equals("findElements")) {
+				return Collections.emptyList();
+			}
+			if (name.equals("manage") || name.equals("timeouts") || name.equals("setScriptTimeout")) {
+				return this.proxy;
+			}
+			throw new UnsupportedOperationException(name);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecutableFinderTest {
+	File base = null;
+
+	File cacheFile = null;
+
+	@Before
+	public void setUp() throws Exception {
+		base = File.createTempFile("finder", "");
+		base.delete();
+		new File(base, "first/a/b").mkdirs();
+		new File(base, "second/c/d").mkdirs();
+		FileUtils.touch(new File(base, "second/c/d/firefox.exe"));
+		cacheFile = new File(base, "cache.properties");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(base);
+	}
+
+	@Test
+	public void testFindsInAnyRootAndRemembers() throws Exception {
+		String[] roots = { new File(base, "first").getPath(), new File(base, "second").getPath(),
+				new File(base, "missing").getPath() };
+		File found = new ExecutableFinder(cacheFile).find(roots, "firefox.exe");
+		assertEquals(new File(base, "second/c/d/firefox.exe").getAbsoluteFile(), found);
+
+		Properties cache = new Properties();
+		FileInputStream in = new FileInputStream(cacheFile);
+		cache.load(in);
+		in.close();
+		assertEquals(found.getAbsolutePath(), cache.getProperty(ExecutableFinder.keyOf(roots[1], "firefox.exe")));
+		assertEquals(found, new ExecutableFinder(cacheFile).find(roots, "firefox.exe"));
+	}
+
+	@Test
+	public void testNothingFound() {
+		String[] roots = { new File(base, "first").getPath() };
+		assertNull(new ExecutableFinder(cacheFile).find(roots, "firefox.exe"));
+	}
+
+	/**
+	 * Symbolic links back up the tree are followed once, the walk ends and still finds files behind links. Two links
+	 * double the paths through the cycle with every turn, so the walk would not end before the link limit of the OS.
+	 */
+	@Test(timeout = 10000)
+	public void testLinkCycleEnds() throws Exception {
+		File first = new File(base, "first");
+		Assume.assumeTrue(link(first, new File(first, "a/b/up")));
+		Assume.assumeTrue(link(first, new File(first, "a/back")));
+		Assume.assumeTrue(link(new File(base, "second"), new File(first, "a/other")));
+		assertNull(ExecutableFinder.walk(first, "chrome.exe", new AtomicBoolean()));
+		assertEquals("firefox.exe", ExecutableFinder.walk(first, "firefox.exe", new AtomicBoolean()).getName());
+	}
+
+	private static boolean link(File target, File link) {
+		try {
+			Process process = new ProcessBuilder("ln", "-s", target.getAbsolutePath(), link.getAbsolutePath()).start();
+			return process.waitFor() == 0;
+		} catch (IOException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FailureCaptureTest {
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = File.createTempFile("failures", "");
+		directory.delete();
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	/**
+	 * Two failures on the same page share the screenshot and page source files, each failure gets an index line.
+	 */
+	@Test
+	public void testSamePageIsStoredOnce() throws IOException {
+		FailureCapture capture = new FailureCapture(directory, 1L << 20, 1000L);
+		byte[] png = { (byte) 0x89, 'P', 'N', 'G', 1, 2, 3 };
+		byte[] page = "<html><body>Service unavailable</body></html>".getBytes("UTF-8");
+		assertTrue(capture.submit("a.B#one", "http://site/", "Error", png, page));
+		assertTrue(capture.submit("a.B#two", "http://site/", "Error", png, page));
+		assertTrue(capture.flush(10000L));
+
+		assertEquals(2, capture.getWritten());
+		assertEquals(2, capture.getDeduplicated());
+		assertEquals(0, capture.getQueueDepth());
+		assertEquals(0L, capture.getQueuedBytes());
+		List<String> index = FileUtils.readLines(new File(directory, FailureCapture.INDEX), "UTF-8");
+		assertEquals(2, index.size());
+		String[] fields = index.get(1).split("\t");
+		assertEquals("a.B#two", fields[1]);
+		assertEquals("http://site/", fields[2]);
+		assertEquals("Error", fields[3]);
+		assertArrayEquals(png, FileUtils.readFileToByteArray(new File(directory, fields[4])));
+		GZIPInputStream in = new GZIPInputStream(new FileInputStream(new File(directory, fields[5])));
+		try {
+			assertArrayEquals(page, IOUtils.toByteArray(in));
+		} finally {
+			in.close();
+		}
+		/* index.log, the screenshot and the page source */
+		assertEquals(3, directory.list().length);
+		capture.close(1000L);
+	}
+
+	/**
+	 * While the queue is full a capture waits for room, one that gets none in time is dropped without holding up the
+	 * test any longer.
+	 */
+	@Test
+	public void testFullQueueDropsCapture() throws Exception {
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		FailureCapture capture = new FailureCapture(directory, 100L, 200L) {
+			@Override
+			void write(Capture capture) throws IOException {
+				writing.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IOException("Interrupted");
+				}
+				super.write(capture);
+			}
+		};
+		assertTrue(capture.submit("a.B#one", null, null, null, new byte[80]));
+		writing.await();
+		assertEquals(1, capture.getQueueDepth());
+		assertEquals(80L, capture.getQueuedBytes());
+
+		long start = System.currentTimeMillis();
+		assertFalse(capture.submit("a.B#two", null, null, null, new byte[80]));
+		long waited = System.currentTimeMillis() - start;
+		assertTrue("waited " + waited, waited >= 150L && waited < 5000L);
+		assertEquals(1, capture.getDropped());
+		assertTrue(capture.submit("a.B#three", null, null, null, new byte[10]));
+
+		release.countDown();
+		assertTrue(capture.flush(10000L));
+		assertEquals(2, capture.getWritten());
+		capture.close(1000L);
+		assertFalse(capture.submit("a.B#four", null, null, null, new byte[10]));
+	}
+
+	/**
+	 * A capture that can't be written doesn't stop the writer, nor does an interrupted writer stop later captures.
+	 */
+	@Test
+	public void testWriterSurvivesFailures() throws Exception {
+		final Thread[] writerThread = new Thread[1];
+		FailureCapture capture = new FailureCapture(directory, 1L << 20, 1000L) {
+			@Override
+			void write(Capture capture) throws IOException {
+				if (writerThread[0] == null) {
+					writerThread[0] = Thread.currentThread();
+					throw new IllegalStateException("broken");
+				}
+				super.write(capture);
+			}
+		};
+		assertTrue(capture.submit("broken", null, null, null, null));
+		assertTrue(capture.submit("first", null, null, null, null));
+		assertTrue(capture.flush(5000L));
+		assertEquals(1L, capture.getWritten());
+
+		writerThread[0].interrupt();
+		writerThread[0].join(5000L);
+		assertFalse(writerThread[0].isAlive());
+		assertTrue(capture.submit("second", null, null, null, null));
+		assertTrue(capture.flush(5000L));
+		assertEquals(2L, capture.getWritten());
+		capture.close(1000L);
+	}
+
+	/**
+	 * Once the capture is closed the writer ends without an exception.
+	 */
+	@Test
+	public void testWriterEndsOnClose() throws Exception {
+		final Thread[] writerThread = new Thread[1];
+		final List<Throwable> uncaught = new CopyOnWriteArrayList<Throwable>();
+		FailureCapture capture = new FailureCapture(directory, 1L << 20, 1000L) {
+			@Override
+			void write(Capture capture) throws IOException {
+				writerThread[0] = Thread.currentThread();
+				writerThread[0].setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+					public void uncaughtException(Thread thread, Throwable e) {
+						uncaught.add(e);
+					}
+				});
+				super.write(capture);
+			}
+		};
+		assertTrue(capture.submit("a.B#one", null, null, null, null));
+		capture.close(5000L);
+		writerThread[0].join(5000L);
+		assertFalse(writerThread[0].isAlive());
+		assertEquals(Collections.<Throwable> emptyList(), uncaught);
+	}
+
+	/**
+	 * The browser hands out the page, HtmlUnit has no screenshots.
+	 */
+	@Test
+	public void testBrowserCapturesPage() throws IOException {
+		File page = PageLoaderTest.write("capture", "<html><head><title>Broken</title></head>"
+				+ "<body><p>Something went wrong</p></body></html>");
+		FailureCapture capture = new FailureCapture(directory, 1L << 20, 1000L);
+		Browser browser = new Browser(Browser.HEADLESS);
+		try {
+			assertFalse(browser.captureFailure("a.B#notStarted", capture));
+			browser.get(page.toURI().toString());
+			assertTrue(browser.captureFailure("a.B#broken", capture));
+		} finally {
+			browser.quit();
+			page.delete();
+		}
+		assertTrue(capture.flush(10000L));
+		String[] fields = FileUtils.readLines(new File(directory, FailureCapture.INDEX), "UTF-8").get(0).split("\t",
+				-1);
+		assertEquals("a.B#broken", fields[1]);
+		assertEquals("Broken", fields[3]);
+		assertEquals("", fields[4]);
+		GZIPInputStream in = new GZIPInputStream(new FileInputStream(new File(directory, fields[5])));
+		try {
+			assertTrue(IOUtils.toString(in, "UTF-8").contains("Something went wrong"));
+		} finally {
+			in.close();
+		}
+		capture.close(1000L);
+	}
+}
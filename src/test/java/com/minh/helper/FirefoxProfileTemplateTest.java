@@ -0,0 +1,29 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.openqa.selenium.firefox.FirefoxProfile;
+
+public class FirefoxProfileTemplateTest {
+
+	@Test
+	public void testLaunchesCopyThePreparedTemplate() {
+		File template = FirefoxProfileTemplate.templateOf(null);
+		assertSame(template, FirefoxProfileTemplate.templateOf(null));
+		assertTrue(new File(template, "extensions/fxdriver@googlecode.com").isDirectory());
+
+		FirefoxProfile profile = FirefoxProfileTemplate.newProfile(null);
+		File launched = profile.layoutOnDisk();
+		try {
+			assertFalse(template.equals(launched));
+			assertTrue(new File(launched, "extensions/fxdriver@googlecode.com").isDirectory());
+			assertTrue(new File(launched, "user.js").isFile());
+		} finally {
+			FileUtils.deleteQuietly(launched);
+		}
+	}
+}
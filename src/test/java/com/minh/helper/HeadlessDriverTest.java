@@ -0,0 +1,63 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebElement;
+
+import com.minh.selector.Via;
+
+public class HeadlessDriverTest {
+	static final String PAGE = "<html><body><div id=\"a\"><span>1</span><span>2</span></div>"
+			+ "<INPUT name=\"q\"/></body></html>";
+
+	HeadlessDriver driver = null;
+
+	File page = null;
+
+	@Before
+	public void setUp() throws Exception {
+		page = File.createTempFile("headless", ".html");
+		FileWriter writer = new FileWriter(page);
+		writer.write(PAGE);
+		writer.close();
+		driver = new HeadlessDriver();
+		driver.get(page.toURI().toString());
+	}
+
+	@After
+	public void tearDown() {
+		driver.quit();
+		page.delete();
+	}
+
+	@Test
+	public void testXpathMatchesTheOrdinaryDriver() {
+		List<WebElement> spans = driver.findElements(Via.xpath("//div[@id='a']/span"));
+		assertEquals(2, spans.size());
+		assertEquals("2", spans.get(1).getText());
+		assertEquals("q", driver.findElement(Via.xpath("//input")).getAttribute("name"));
+		try {
+			driver.findElement(Via.xpath("//table"));
+			fail("Found a table that isn't there.");
+		} catch (NoSuchElementException expected) {
+		}
+	}
+
+	@Test
+	public void testCompiledExpressionIsKeptAcrossPages() {
+		driver.findElement(Via.xpath("//div[@id='a']/span[2]"));
+		int count = HeadlessDriver.compiledCount();
+		assertTrue(count > 0);
+		driver.get(page.toURI().toString());
+		assertEquals("2", driver.findElement(Via.xpath("//div[@id='a']/span[2]")).getText());
+		assertEquals(count, HeadlessDriver.compiledCount());
+	}
+}
@@ -0,0 +1,115 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.css.sac.InputSource;
+import org.w3c.dom.css.CSSStyleSheet;
+
+import com.steadystate.css.parser.CSSOMParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class HeadlessProfileTest {
+	static final String PAGE = "<html><head><title>profile</title>"
+			+ "<script src=\"/app.js\"></script><script src=\"/tracker.js\"></script>"
+			+ "</head><body></body></html>";
+
+	LocalServer server = null;
+
+	String baseUrl = null;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new LocalServer(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				String path = exchange.getRequestURI().getPath();
+				if (path.endsWith("app.js")) {
+					exchange.getResponseHeaders().add("Last-Modified", "Mon, 01 Jan 2001 00:00:00 GMT");
+					exchange.getResponseHeaders().add("Expires", "Fri, 01 Jan 2100 00:00:00 GMT");
+					LocalServer.respond(exchange, "application/javascript", "window.app = 'loaded';");
+				} else if (path.endsWith("tracker.js")) {
+					LocalServer.respond(exchange, "application/javascript", "window.tracked = true;");
+				} else {
+					LocalServer.respond(exchange, "text/html", PAGE);
+				}
+			}
+		});
+		baseUrl = server.getBaseUrl();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void testBlockAndAllow() {
+		HeadlessProfile profile = new HeadlessProfile().block(".*\\.js").allow(".*/app\\.js");
+		assertTrue(profile.isBlocked("http://x/tracker.js"));
+		assertFalse(profile.isBlocked("http://x/app.js"));
+		assertFalse(profile.isBlocked("http://x/page.html"));
+	}
+
+	@Test
+	public void testBlockedScriptsAreNotRun() {
+		HeadlessProfile profile = new HeadlessProfile().block(".*tracker.*").setCssEnabled(false);
+		HeadlessDriver driver = new HeadlessDriver(profile);
+		try {
+			driver.setJavascriptEnabled(true);
+			driver.get(baseUrl + "/page.html");
+			assertEquals("loaded", driver.executeScript("return window.app;"));
+			assertNull(driver.executeScript("return window.tracked;"));
+			assertEquals(1L, profile.getBlockedCount());
+		} finally {
+			driver.quit();
+		}
+	}
+
+	@Test
+	public void testCacheIsSharedBetweenDrivers() {
+		HeadlessProfile.SharedCache cache = HeadlessProfile.getSharedCache();
+		load(new HeadlessProfile());
+		long hits = cache.getHits();
+		load(new HeadlessProfile());
+		assertTrue(cache.getHits() > hits);
+	}
+
+	private void load(HeadlessProfile profile) {
+		HeadlessDriver driver = new HeadlessDriver(profile);
+		try {
+			driver.setJavascriptEnabled(true);
+			driver.get(baseUrl + "/page.html");
+			assertEquals("loaded", driver.executeScript("return window.app;"));
+		} finally {
+			driver.quit();
+		}
+	}
+
+	/**
+	 * A driver that inserts or deletes rules of a cached style sheet changes its own sheet, the next driver gets the
+	 * sheet as parsed. Until then the drivers share the parsed rules.
+	 */
+	@Test
+	public void testCachedStyleSheetsAreCopies() throws IOException {
+		String css = "p { color: red }";
+		CSSStyleSheet parsed = new CSSOMParser().parseStyleSheet(new InputSource(new StringReader(css)), null, null);
+		HeadlessProfile.SharedCache cache = new HeadlessProfile.SharedCache();
+		cache.cache(css, parsed);
+		parsed.insertRule("a { color: blue }", 0);
+
+		CSSStyleSheet first = cache.getCachedStyleSheet(css);
+		assertEquals(1, first.getCssRules().getLength());
+		assertSame(first.getCssRules().item(0), cache.getCachedStyleSheet(css).getCssRules().item(0));
+		first.deleteRule(0);
+		assertEquals(0, first.getCssRules().getLength());
+		CSSStyleSheet second = cache.getCachedStyleSheet(css);
+		assertEquals(1, second.getCssRules().getLength());
+		assertEquals("p { color: red }", second.getCssRules().item(0).getCssText());
+	}
+}
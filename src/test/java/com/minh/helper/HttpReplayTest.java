@@ -0,0 +1,72 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class HttpReplayTest {
+	static final String PAGE = "<html><head><title>recorded</title></head><body>page</body></html>";
+
+	LocalServer server = null;
+
+	AtomicInteger served = new AtomicInteger();
+
+	File archive = null;
+
+	String url = null;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new LocalServer(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				served.incrementAndGet();
+				LocalServer.respond(exchange, "text/html", PAGE);
+			}
+		});
+		url = server.getBaseUrl() + "/page.html";
+		archive = File.createTempFile("http-archive", ".bin");
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+		archive.delete();
+	}
+
+	@Test
+	public void testReplayWithoutNetwork() {
+		HttpReplay record = HttpReplay.forArchive(archive, HttpReplay.Mode.RECORD);
+		assertEquals("recorded", titleOf(url, record));
+		record.close();
+		assertEquals(1L, record.getRecorded());
+		server.stop();
+		int servedBefore = served.get();
+
+		HttpReplay replay = HttpReplay.forArchive(archive, HttpReplay.Mode.REPLAY);
+		assertEquals("recorded", titleOf(url, replay));
+		assertEquals(servedBefore, served.get());
+		assertEquals(1L, replay.getHits());
+
+		titleOf(url.replace("page.html", "other.html"), replay);
+		assertEquals(1L, replay.getMisses());
+	}
+
+	private static String titleOf(String url, HttpReplay replay) {
+		HeadlessDriver driver = new HeadlessDriver(new HeadlessProfile().setReplay(replay));
+		try {
+			driver.get(url);
+			return driver.getTitle();
+		} finally {
+			driver.quit();
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.minh.helper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A web server for tests on a free local port that answers every path with one handler.
+ */
+public class LocalServer {
+	private final HttpServer server;
+
+	public LocalServer(HttpHandler handler) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", handler);
+		server.start();
+	}
+
+	/**
+	 * @return The url of the server without a trailing slash, e.g. http://localhost:4711.
+	 */
+	public String getBaseUrl() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	public void stop() {
+		server.stop(0);
+	}
+
+	/**
+	 * Answers a request with 200 and the body, after any headers the handler added.
+	 */
+	public static void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().add("Content-Type", contentType);
+		exchange.sendResponseHeaders(200, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+}
@@ -0,0 +1,107 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.minh.metrics.Metrics;
+import com.minh.selector.Via;
+
+public class PageLoaderTest {
+	static final String FIRST = "<html><head><title>first</title></head><body></body></html>";
+
+	static final String LATE = "<html><head><title>late</title></head><body>"
+			+ "<script>setTimeout(function() {"
+			+ "var e = document.createElement('div'); e.id = 'late'; document.body.appendChild(e);"
+			+ "}, 300);</script></body></html>";
+
+	Browser browser = null;
+
+	File first = null;
+
+	File late = null;
+
+	@Before
+	public void setUp() throws Exception {
+		first = write("first", FIRST);
+		late = write("late", LATE);
+		browser = new Browser(Browser.HEADLESS);
+	}
+
+	@After
+	public void tearDown() {
+		browser.quit();
+		first.delete();
+		late.delete();
+	}
+
+	@Test
+	public void testLoadRecordsTheTimeToReady() {
+		long count = Metrics.histogram("page.ready.load").getCount();
+		browser.get(first.toURI().toString());
+		assertEquals("first", browser.getTitle());
+		assertEquals(count + 1, Metrics.histogram("page.ready.load").getCount());
+	}
+
+	@Test
+	public void testPresentWaitsForTheElement() {
+		browser.get(first.toURI().toString());
+		browser.get(late.toURI().toString(), Readiness.present(Via.id("late")));
+		assertEquals("late", browser.getTitle());
+		assertTrue(browser.isVisible(Via.id("late")));
+	}
+
+	@Test
+	public void testDomContentLoadedNavigatesFromThePage() {
+		browser.get(first.toURI().toString());
+		browser.get(late.toURI().toString(), Readiness.DOM_CONTENT_LOADED);
+		assertEquals("late", browser.getTitle());
+	}
+
+	/**
+	 * A page without a DOM can't run the readiness script, it is ready once the driver has loaded it.
+	 */
+	@Test
+	public void testPlainTextIsReady() throws IOException {
+		File text = write("plain", "Just text", ".txt");
+		try {
+			browser.get(text.toURI().toString());
+			browser.get(first.toURI().toString());
+			browser.get(text.toURI().toString(), Readiness.DOM_CONTENT_LOADED);
+			assertTrue(browser.getWebDriver().getPageSource().contains("Just text"));
+		} finally {
+			text.delete();
+		}
+	}
+
+	/**
+	 * Only the fragment changes, there is no new document to wait for.
+	 */
+	@Test
+	public void testFragmentNavigationIsReady() {
+		browser.get(first.toURI().toString());
+		long start = System.currentTimeMillis();
+		browser.get(first.toURI().toString() + "#section", Readiness.DOM_CONTENT_LOADED);
+		assertTrue(System.currentTimeMillis() - start < 5000L);
+		assertTrue(browser.getWebDriver().getCurrentUrl().endsWith("#section"));
+		assertEquals("first", browser.getTitle());
+	}
+
+	static File write(String name, String html) throws IOException {
+		return write(name, html, ".html");
+	}
+
+	static File write(String name, String content, String extension) throws IOException {
+		File file = File.createTempFile(name, extension);
+		FileWriter writer = new FileWriter(file);
+		writer.write(content);
+		writer.close();
+		return file;
+	}
+}
@@ -0,0 +1,60 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ProcessTreeTest {
+	/**
+	 * A process started from the JVM is one of its descendants while it runs.
+	 */
+	@Test
+	public void testChildProcessIsFound() throws Exception {
+		assumeTrue(ProcessTree.isSupported());
+		int self = ProcessTree.selfPid();
+		Set<Integer> before = ProcessTree.descendants(self);
+		Process process = new ProcessBuilder("sleep", "30").start();
+		try {
+			Set<Integer> after = ProcessTree.descendants(self);
+			after.removeAll(before);
+			assertEquals(1, after.size());
+			int pid = after.iterator().next();
+			assertTrue(ProcessTree.isAlive(pid));
+			assertTrue(ProcessTree.rssKilobytes(pid) > 0L);
+		} finally {
+			process.destroy();
+			process.waitFor();
+		}
+	}
+
+	/**
+	 * A process keeps its identity while it runs, a process that exited or has another identity is not unchanged.
+	 */
+	@Test
+	public void testIdentityTellsProcessesApart() throws Exception {
+		assumeTrue(ProcessTree.isSupported());
+		int self = ProcessTree.selfPid();
+		Set<Integer> before = ProcessTree.descendants(self);
+		Process process = new ProcessBuilder("sleep", "30").start();
+		Set<Integer> after = ProcessTree.descendants(self);
+		after.removeAll(before);
+		int pid = after.iterator().next();
+		Map<Integer, String> identities = ProcessTree.identities(after);
+		try {
+			assertNotNull(identities.get(pid));
+			assertEquals(identities.get(pid), ProcessTree.identity(pid));
+			assertEquals(after, ProcessTree.unchanged(identities));
+			assertTrue(ProcessTree.unchanged(Collections.singletonMap(pid, identities.get(pid) + "0")).isEmpty());
+		} finally {
+			process.destroy();
+			process.waitFor();
+		}
+		assertNull(ProcessTree.identity(pid));
+		assertTrue(ProcessTree.unchanged(identities).isEmpty());
+	}
+}
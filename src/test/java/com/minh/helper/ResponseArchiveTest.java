@@ -0,0 +1,60 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+public class ResponseArchiveTest {
+	File file = null;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("responses", ".bin");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * An archive cut off anywhere in its last response replays the responses before it.
+	 */
+	@Test
+	public void testTruncatedArchiveKeepsCompleteResponses() throws IOException {
+		List<NameValuePair> headers = Arrays.asList(new NameValuePair("Content-Type", "text/html"));
+		ResponseArchive archive = new ResponseArchive(file);
+		archive.append("GET first", new ResponseArchive.Entry(200, "OK", headers, "first".getBytes("UTF-8"), 1L));
+		archive.close();
+		long complete = file.length();
+		archive.append("GET first", new ResponseArchive.Entry(200, "OK", headers, "first".getBytes("UTF-8"), 1L));
+		archive.append("GET second", new ResponseArchive.Entry(404, "Not Found", headers, new byte[100], 2L));
+		archive.close();
+		long full = file.length();
+		byte[] content = new byte[(int) full];
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		in.readFully(content);
+		in.close();
+
+		for (long length = complete; length < full; length++) {
+			RandomAccessFile out = new RandomAccessFile(file, "rw");
+			out.setLength(0);
+			out.write(content, 0, (int) length);
+			out.close();
+			ResponseArchive truncated = new ResponseArchive(file);
+			assertEquals("Cut off at " + length, 1, truncated.size());
+			assertEquals("first", new String(truncated.get("GET first").body, "UTF-8"));
+			assertNull(truncated.get("GET second"));
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.util.concurrent.ListenableFutureTask;
+
+public class SerialExecutorTest {
+	/**
+	 * A task the other executor rejected does not keep the next tasks from running.
+	 */
+	@Test
+	public void testRejectedTaskDoesNotBlockTheNext() {
+		final List<String> ran = new ArrayList<String>();
+		SerialExecutor serial = new SerialExecutor(new Executor() {
+			private boolean rejected = false;
+
+			public void execute(Runnable task) {
+				if (!rejected) {
+					rejected = true;
+					throw new RejectedExecutionException("rejected once");
+				}
+				task.run();
+			}
+		});
+		try {
+			serial.execute(new Runnable() {
+				public void run() {
+					ran.add("first");
+				}
+			});
+			fail("The rejection should reach the caller");
+		} catch (RejectedExecutionException e) {
+			assertEquals("rejected once", e.getMessage());
+		}
+		serial.execute(new Runnable() {
+			public void run() {
+				ran.add("second");
+			}
+		});
+		assertEquals(1, ran.size());
+		assertEquals("second", ran.get(0));
+	}
+
+	/**
+	 * When the executor is shut down while a task runs, the tasks queued behind it fail instead of never finishing.
+	 */
+	@Test
+	public void testQueuedTasksFailWhenExecutorIsShutDown() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		SerialExecutor serial = new SerialExecutor(executor);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ListenableFutureTask<String> running = ListenableFutureTask.create(new Callable<String>() {
+			public String call() throws InterruptedException {
+				started.countDown();
+				release.await();
+				return "running";
+			}
+		});
+		List<ListenableFutureTask<String>> queued = new ArrayList<ListenableFutureTask<String>>();
+		serial.execute(running);
+		for (int i = 0; i < 2; i++) {
+			ListenableFutureTask<String> task = ListenableFutureTask.create(new Callable<String>() {
+				public String call() {
+					return "queued";
+				}
+			});
+			queued.add(task);
+			serial.execute(task);
+		}
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		executor.shutdown();
+		release.countDown();
+
+		assertEquals("running", running.get(5, TimeUnit.SECONDS));
+		for (ListenableFutureTask<String> task : queued) {
+			try {
+				task.get(5, TimeUnit.SECONDS);
+				fail("A task queued behind the shutdown should fail");
+			} catch (CancellationException e) {
+				assertTrue(task.isCancelled());
+			}
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.minh.helper.User.UserData;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class SessionCacheTest {
+	LocalServer server = null;
+
+	String baseUrl = null;
+
+	AtomicInteger logins = new AtomicInteger();
+
+	SessionCache.Login login = new SessionCache.Login() {
+		public void login(Browser browser, UserData user) {
+			browser.get(baseUrl + "/login?user=" + user.getUsername());
+		}
+
+		public boolean isLoggedIn(Browser browser, UserData user) {
+			return browser.getWebDriver().manage().getCookieNamed("session") != null;
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		server = new LocalServer(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				String title = "out";
+				if (exchange.getRequestURI().getPath().equals("/login")) {
+					exchange.getResponseHeaders().add("Set-Cookie",
+							"session=" + logins.incrementAndGet() + "; Path=/");
+					title = "logged in";
+				} else {
+					List<String> cookies = exchange.getRequestHeaders().get("Cookie");
+					if (cookies != null && cookies.toString().contains("session=")) {
+						title = "in";
+					}
+				}
+				LocalServer.respond(exchange, "text/html", "<html><head><title>" + title + "</title></head></html>");
+			}
+		});
+		baseUrl = server.getBaseUrl();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void testOneLoginForManyBrowsers() {
+		SessionCache sessions = new SessionCache(baseUrl + "/robots.txt", login, 60000L);
+		for (int i = 0; i < 3; i++) {
+			assertEquals("in", titleAfterSession(sessions));
+		}
+		assertEquals(1, logins.get());
+	}
+
+	@Test
+	public void testExpiredSessionLogsInAgain() {
+		SessionCache sessions = new SessionCache(baseUrl + "/robots.txt", login, 0L);
+		titleAfterSession(sessions);
+		titleAfterSession(sessions);
+		assertEquals(2, logins.get());
+	}
+
+	/**
+	 * A browser that puts a valid session into itself doesn't hold up another browser of the same user.
+	 */
+	@Test
+	public void testRestoreDoesNotWaitForOtherRestores() throws Exception {
+		final CountDownLatch checking = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		SessionCache.Login slowCheck = new SessionCache.Login() {
+			public void login(Browser browser, UserData user) {
+				SessionCacheTest.this.login.login(browser, user);
+			}
+
+			public boolean isLoggedIn(Browser browser, UserData user) {
+				if (Thread.currentThread().getName().equals("slow")) {
+					checking.countDown();
+					try {
+						release.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return SessionCacheTest.this.login.isLoggedIn(browser, user);
+			}
+		};
+		final SessionCache sessions = new SessionCache(baseUrl + "/robots.txt", slowCheck, 60000L);
+		titleAfterSession(sessions);
+		Thread slow = new Thread("slow") {
+			@Override
+			public void run() {
+				titleAfterSession(sessions);
+			}
+		};
+		slow.start();
+		try {
+			assertTrue(checking.await(10, TimeUnit.SECONDS));
+			long start = System.currentTimeMillis();
+			assertEquals("in", titleAfterSession(sessions));
+			assertTrue(System.currentTimeMillis() - start < 5000L);
+		} finally {
+			release.countDown();
+			slow.join();
+		}
+		assertEquals(1, logins.get());
+	}
+
+	private String titleAfterSession(SessionCache sessions) {
+		Browser browser = new Browser(Browser.HEADLESS);
+		try {
+			browser.useSession(sessions, User.JOB_TEST);
+			browser.get(baseUrl + "/account");
+			return browser.getTitle();
+		} finally {
+			browser.quit();
+		}
+	}
+}
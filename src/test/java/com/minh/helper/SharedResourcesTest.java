@@ -0,0 +1,143 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class SharedResourcesTest {
+	static final String PAGE = "<html><head><title>shared</title>"
+			+ "<script src=\"/lib.js\"></script><script>window.inline = window.lib + 1;</script>"
+			+ "</head><body></body></html>";
+
+	LocalServer server = null;
+
+	String baseUrl = null;
+
+	/* Whether the server sends the bodies gzipped */
+	volatile boolean gzip = false;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new LocalServer(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				/* Neither response may be cached, only the shared resources can avoid a second copy */
+				exchange.getResponseHeaders().add("Cache-Control", "no-store");
+				boolean script = exchange.getRequestURI().getPath().endsWith("lib.js");
+				String contentType = script ? "application/javascript" : "text/html";
+				String body = script ? "window.lib = 41;" : PAGE;
+				if (gzip) {
+					respondGzipped(exchange, contentType, body);
+				} else {
+					LocalServer.respond(exchange, contentType, body);
+				}
+			}
+		});
+		baseUrl = server.getBaseUrl();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void testScriptsAndBodiesAreShared() {
+		SharedResources.clear();
+		/* The library, the inline script and the script the test runs */
+		SharedResources.Account first = load(new HeadlessProfile());
+		assertEquals(3L, first.getScriptsCompiled());
+		assertEquals(0L, first.getSharedBytes());
+		/* Bodies are kept once their urls are loaded a second time */
+		assertEquals(0, SharedResources.getBodyCount());
+		SharedResources.Account second = load(new HeadlessProfile());
+		assertEquals(0L, second.getScriptsCompiled());
+		assertEquals(3L, second.getScriptsShared());
+		assertEquals(2, SharedResources.getBodyCount());
+		SharedResources.Account third = load(new HeadlessProfile());
+		assertEquals(0L, third.getOwnBytes());
+		assertTrue(third.getSharedBytes() >= first.getOwnBytes());
+		assertEquals(3, SharedResources.getScriptCount());
+		assertEquals(2, SharedResources.getBodyCount());
+	}
+
+	/**
+	 * A shared body is handed out decoded, so a gzipped response loads again without being decoded twice.
+	 */
+	@Test
+	public void testGzippedBodiesAreShared() {
+		SharedResources.clear();
+		gzip = true;
+		load(new HeadlessProfile());
+		SharedResources.Account second = load(new HeadlessProfile());
+		assertEquals(2, SharedResources.getBodyCount());
+		assertTrue(second.getOwnBytes() > 0L);
+		SharedResources.Account third = load(new HeadlessProfile());
+		assertEquals(0L, third.getOwnBytes());
+		assertTrue(third.getSharedBytes() > 0L);
+	}
+
+	/**
+	 * The least recently used bodies are dropped when the bodies together are too large.
+	 */
+	@Test
+	public void testBodiesAreBoundedByBytes() {
+		SharedResources.BodyMap bodies = new SharedResources.BodyMap(10, 100L);
+		bodies.put("a", new byte[40]);
+		bodies.put("b", new byte[40]);
+		bodies.get("a");
+		bodies.put("c", new byte[40]);
+		assertEquals(80L, bodies.getBytes());
+		assertTrue(bodies.containsKey("a"));
+		assertFalse(bodies.containsKey("b"));
+		bodies.put("d", new byte[100]);
+		assertEquals(100L, bodies.getBytes());
+		assertEquals(1, bodies.size());
+		bodies.clear();
+		assertEquals(0L, bodies.getBytes());
+	}
+
+	@Test
+	public void testUnsharedDriverHasNoAccount() {
+		HeadlessDriver driver = new HeadlessDriver(new HeadlessProfile().setShared(false));
+		try {
+			assertNull(driver.getAccount());
+		} finally {
+			driver.quit();
+		}
+	}
+
+	private static void respondGzipped(HttpExchange exchange, String contentType, String body) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream gzipped = new GZIPOutputStream(bytes);
+		gzipped.write(body.getBytes("UTF-8"));
+		gzipped.close();
+		exchange.getResponseHeaders().add("Content-Type", contentType);
+		exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+		exchange.sendResponseHeaders(200, bytes.size());
+		OutputStream out = exchange.getResponseBody();
+		bytes.writeTo(out);
+		out.close();
+	}
+
+	private SharedResources.Account load(HeadlessProfile profile) {
+		HeadlessDriver driver = new HeadlessDriver(profile);
+		try {
+			driver.setJavascriptEnabled(true);
+			driver.get(baseUrl + "/page.html");
+			assertEquals(42L, ((Number) driver.executeScript("return window.inline;")).longValue());
+			return driver.getAccount();
+		} finally {
+			driver.quit();
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.minh.helper;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.minh.helper.User.UserData;
+
+public class UserPoolTest {
+
+	@Test
+	public void testLoadCsvAndProperties() throws Exception {
+		File file = File.createTempFile("users", ".csv");
+		try {
+			FileUtils.writeStringToFile(file, "username,password,firstName,lastName\n"
+					+ "# comment\n\na@x.se,secret,Anna,Ek\nb@x.se=secret2,Bo\n", "UTF-8");
+			UserPool pool = new UserPool(0L);
+			assertEquals(2, pool.load(file));
+			UserData b = UserPool.parse("b@x.se=secret2,Bo");
+			assertEquals("secret2", b.getPassword());
+			assertEquals("Bo", b.getFirstName());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testLeasesAreExclusive() throws Exception {
+		final UserPool pool = new UserPool(0L);
+		for (int i = 0; i < 3; i++) {
+			pool.add(new UserData("user" + i, "pw", "", ""));
+		}
+		final Set<String> inUse = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final AtomicInteger clashes = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(6);
+		for (int i = 0; i < 60; i++) {
+			executor.submit(new Runnable() {
+				public void run() {
+					UserData user = pool.lease(10000L);
+					if (!inUse.add(user.getUsername())) {
+						clashes.incrementAndGet();
+					}
+					ElementWaiter.sleep(2L);
+					inUse.remove(user.getUsername());
+					pool.release(user);
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+		assertEquals(0, clashes.get());
+		assertEquals(3, pool.getMaxLeased());
+		assertTrue(pool.getContention() > 0);
+	}
+
+	@Test
+	public void testCooldown() {
+		UserPool pool = new UserPool(0L);
+		UserData user = new UserData("only", "pw", "", "");
+		pool.add(user);
+		pool.release(pool.lease(0L), 300L);
+		long start = System.currentTimeMillis();
+		assertSame(user, pool.lease(5000L));
+		assertTrue(System.currentTimeMillis() - start >= 250L);
+		try {
+			pool.lease(50L);
+			fail("The only account was leased twice.");
+		} catch (IllegalStateException expected) {
+		}
+	}
+
+	@Test
+	public void testDoubleReleaseIsIgnored() {
+		UserPool pool = new UserPool(0L);
+		pool.add(new UserData("one", "pw", "", ""));
+		pool.add(new UserData("two", "pw", "", ""));
+		UserData user = pool.lease(0L);
+		pool.release(user);
+		pool.release(user);
+		assertEquals(0, pool.getLeased());
+		UserData first = pool.lease(0L);
+		UserData second = pool.lease(0L);
+		assertNotSame(first, second);
+		assertEquals(2, pool.getLeased());
+		try {
+			pool.lease(50L);
+			fail("An account was leased twice.");
+		} catch (IllegalStateException expected) {
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.minh.metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testPercentilesAreWithinBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		for (long millis = 1; millis <= 100; millis++) {
+			histogram.record(millis * 1000000L);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(100000000L, histogram.getMax());
+		assertEquals(50.0, LatencyHistogram.millis(histogram.getPercentile(50)), 50.0 * 0.07);
+		assertEquals(90.0, LatencyHistogram.millis(histogram.getPercentile(90)), 90.0 * 0.07);
+		assertEquals(100.0, LatencyHistogram.millis(histogram.getPercentile(100)), 0.001);
+	}
+
+	@Test
+	public void testBucketsCoverAllValues() {
+		for (long value : new long[] { 0L, 1L, 31L, 32L, 47L, 48L, 1000L, 123456789L, Long.MAX_VALUE }) {
+			int index = LatencyHistogram.indexOf(value);
+			assertTrue(value <= LatencyHistogram.highestValueOf(index));
+			assertTrue(index == 0 || value > LatencyHistogram.highestValueOf(index - 1));
+		}
+	}
+}
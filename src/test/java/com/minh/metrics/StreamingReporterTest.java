@@ -0,0 +1,115 @@
+package com.minh.metrics;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+
+public class StreamingReporterTest {
+	private File file;
+
+	@Before
+	public void createFile() throws IOException {
+		file = File.createTempFile("tests", ".jsonl");
+	}
+
+	@After
+	public void deleteFile() {
+		file.delete();
+	}
+
+	/**
+	 * Every event is a line, the failure goes with the finished line of its test and the summary counts the outcomes.
+	 */
+	@Test
+	public void testEventsAreStreamed() throws IOException {
+		StreamingReporter reporter = new StreamingReporter(file, 60000L);
+		JUnitCore core = new JUnitCore();
+		core.addListener(reporter);
+		core.run(Outcomes.class);
+
+		List<String> lines = FileUtils.readLines(file, "UTF-8");
+		assertEquals(lines.toString(), 9, lines.size());
+		assertTrue(lines.get(0).startsWith("{\"event\": \"runStarted\""));
+		assertTrue(lines.get(8).startsWith("{\"event\": \"runFinished\""));
+		String failed = null;
+		for (String line : lines) {
+			if (line.contains("\"outcome\": \"failed\"")) {
+				failed = line;
+			}
+		}
+		assertNotNull(lines.toString(), failed);
+		assertTrue(failed, failed.contains("\"test\": \"fails(" + Outcomes.class.getName() + ")\""));
+		assertTrue(failed, failed.contains("\"commands\": 0"));
+		assertTrue(failed, failed.contains("\"commandsSaved\": 0"));
+		assertTrue(failed, failed.contains("\"failure\": \"java.lang.AssertionError: expected:<1> but was:<2>\\u000a"));
+
+		StreamingReporter.Summary summary = reporter.getSummary();
+		assertEquals(1, summary.getPassed());
+		assertEquals(1, summary.getFailed());
+		assertEquals(1, summary.getSkipped());
+		assertEquals(1, summary.getIgnored());
+		assertTrue(summary.getPercentileMillis(100) >= 50.0);
+		assertEquals(lines.subList(6, 9), reporter.tail(3));
+		assertTrue(reporter.getRunning().isEmpty());
+		assertSame(reporter, StreamingReporter.current());
+
+		StreamingReporter.Summary read = StreamingReporter.summarize(file);
+		assertEquals(summary.toString(), read.toString());
+	}
+
+	/**
+	 * Lines reach the file while the run is still going, and only the last ones are kept in memory.
+	 */
+	@Test
+	public void testLinesAreFlushedDuringTheRun() throws Exception {
+		StreamingReporter reporter = new StreamingReporter(file, 50L);
+		for (int i = 0; i < StreamingReporter.TAIL_LINES * 2; i++) {
+			reporter.testStarted(Description.createSuiteDescription("test" + i));
+		}
+		long deadline = System.currentTimeMillis() + 5000L;
+		while (FileUtils.readLines(file, "UTF-8").size() < StreamingReporter.TAIL_LINES * 2
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(20L);
+		}
+		assertEquals(StreamingReporter.TAIL_LINES * 2, FileUtils.readLines(file, "UTF-8").size());
+		List<String> tail = reporter.tail(Integer.MAX_VALUE);
+		assertEquals(StreamingReporter.TAIL_LINES, tail.size());
+		assertTrue(tail.get(tail.size() - 1).contains("\"test\": \"test199\""));
+		assertEquals(StreamingReporter.TAIL_LINES * 2, reporter.getRunning().size());
+		reporter.testRunFinished(new Result());
+	}
+
+	public static class Outcomes {
+		@Test
+		public void passes() throws InterruptedException {
+			Thread.sleep(50L);
+		}
+
+		@Test
+		public void fails() {
+			assertEquals(1, 2);
+		}
+
+		@Test
+		public void skipped() {
+			Assume.assumeTrue(false);
+		}
+
+		@Ignore
+		@Test
+		public void ignored() {
+		}
+	}
+}
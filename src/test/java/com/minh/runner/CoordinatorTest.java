@@ -0,0 +1,302 @@
+package com.minh.runner;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+
+public class CoordinatorTest {
+	static final List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+
+	private File file;
+
+	private DurationHistory history;
+
+	@Before
+	public void createHistory() throws Exception {
+		ran.clear();
+		file = File.createTempFile("durations", ".log");
+		history = new DurationHistory(file);
+	}
+
+	@After
+	public void deleteHistory() {
+		history.close();
+		file.delete();
+	}
+
+	/**
+	 * Two workers in this JVM run two classes. The failures, ignored tests and durations of both end up in one report
+	 * and reach the notifier.
+	 */
+	@Test
+	public void testResultsAreMerged() throws Exception {
+		final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+		RunNotifier notifier = new RunNotifier();
+		notifier.addListener(new RunListener() {
+			@Override
+			public void testFinished(Description description) {
+				events.add(description.getDisplayName());
+			}
+
+			@Override
+			public void testFailure(Failure failure) {
+				events.add("failed " + failure.getMessage());
+			}
+		});
+		Coordinator coordinator = new Coordinator(Arrays.asList(Passing.class.getName(), Mixed.class.getName()))
+				.setWorkers(0).setHistory(history).setNotifier(notifier);
+		coordinator.start();
+		join(coordinator, "one", 0);
+		join(coordinator, "two", 0);
+		MergedReport report = coordinator.await();
+
+		assertEquals(4, report.getRunCount());
+		assertEquals(1, report.getIgnoredCount());
+		assertEquals(1, report.getFailureCount());
+		MergedReport.TestFailure failure = report.getFailures().get(0);
+		assertEquals("fails(" + Mixed.class.getName() + ")", failure.getTest());
+		assertTrue(failure.getTrace(), failure.getTrace().contains("expected:<1> but was:<2>"));
+		assertTrue(failure.getTrace(), failure.getTrace().contains("CoordinatorTest"));
+		assertEquals(2, report.getTestsPerWorker().size());
+		assertTrue(events.contains("failed expected:<1> but was:<2>"));
+		assertTrue(events.contains("fails(" + Mixed.class.getName() + ")"));
+		assertEquals(DurationHistory.Outcome.FAILED, history.get(Mixed.class.getName() + "#fails").getLastOutcome());
+		assertEquals(1, history.get(Passing.class.getName() + "#first").getRuns());
+	}
+
+	/**
+	 * A worker that has nothing left to do takes over the tests another worker hasn't started yet.
+	 */
+	@Test
+	public void testIdleWorkerStealsTests() throws Exception {
+		Coordinator coordinator = new Coordinator(Arrays.asList(Slow.class.getName())).setWorkers(0).setHistory(
+				history);
+		coordinator.start();
+		join(coordinator, "one", 0);
+		Thread.sleep(100L);
+		join(coordinator, "two", 0);
+		MergedReport report = coordinator.await();
+
+		assertTrue(report.wasSuccessful());
+		assertEquals(6, report.getRunCount());
+		assertEquals(6, ran.size());
+		assertEquals(6, new java.util.HashSet<String>(ran).size());
+		assertTrue(report.toString(), report.getSteals() > 0);
+		assertTrue(report.toString(), report.getTestsPerWorker().get("two") > 0);
+	}
+
+	/**
+	 * A worker that drops the connection in the middle of a class leaves its tests to the others, and one that leaves
+	 * after a unit is replaced by a worker joining later.
+	 */
+	@Test
+	public void testWorkersLeaveAndJoin() throws Exception {
+		Coordinator coordinator = new Coordinator(Arrays.asList(Passing.class.getName(), Slow.class.getName()))
+				.setWorkers(0).setHistory(null);
+		coordinator.start();
+
+		Socket socket = new Socket("localhost", coordinator.getPort());
+		BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+		Writer out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+		out.write("HELLO\tcrashing\nNEXT\n");
+		out.flush();
+		String[] run = Protocol.parse(in.readLine());
+		assertEquals(Arrays.asList(Protocol.RUN, Passing.class.getName()), Arrays.asList(run));
+		out.write(Protocol.line(Protocol.TESTS, Passing.class.getName(), "first(" + Passing.class.getName() + ")",
+				"second(" + Passing.class.getName() + ")") + "\n");
+		out.write(Protocol.line(Protocol.CLAIM, "first(" + Passing.class.getName() + ")") + "\n");
+		out.flush();
+		assertEquals(Protocol.GO, in.readLine());
+		socket.close();
+
+		Thread leaving = join(coordinator, "leaving", 1);
+		leaving.join(10000L);
+		join(coordinator, "staying", 0);
+		MergedReport report = coordinator.await();
+
+		assertTrue(report.toString(), report.wasSuccessful());
+		assertEquals(1, report.getWorkersLost());
+		assertEquals(2, report.getRequeues());
+		assertEquals(8, report.getRunCount());
+		assertTrue(ran.containsAll(Arrays.asList("first", "second")));
+		assertEquals(Integer.valueOf(0), report.getTestsPerWorker().get("crashing"));
+	}
+
+	/**
+	 * A worker lost in the middle of a class it runs as a whole only leaves the tests it didn't finish to the others.
+	 */
+	@Test
+	public void testFinishedTestsOfLostUnitAreNotRunAgain() throws Exception {
+		Coordinator coordinator = new Coordinator(Arrays.asList(Passing.class.getName())).setWorkers(0)
+				.setHistory(null);
+		coordinator.start();
+
+		Socket socket = new Socket("localhost", coordinator.getPort());
+		BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+		Writer out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+		out.write("HELLO\tcrashing\nNEXT\n");
+		out.flush();
+		String[] run = Protocol.parse(in.readLine());
+		assertEquals(Arrays.asList(Protocol.RUN, Passing.class.getName()), Arrays.asList(run));
+		out.write(Protocol.line(Protocol.TESTS, Passing.class.getName()) + "\n");
+		out.write(Protocol.line(Protocol.STARTED, Passing.class.getName(), "first") + "\n");
+		out.write(Protocol.line(Protocol.FINISHED, Passing.class.getName(), "first", 1L) + "\n");
+		out.flush();
+		socket.close();
+
+		join(coordinator, "staying", 0);
+		MergedReport report = coordinator.await();
+
+		assertTrue(report.toString(), report.wasSuccessful());
+		assertEquals(1, report.getWorkersLost());
+		assertEquals(2, report.getRunCount());
+		assertEquals(Arrays.asList("second"), ran);
+	}
+
+	/**
+	 * When the lost worker finished all tests of the class, the class runs again without any test and without failing.
+	 */
+	@Test
+	public void testLostUnitWithAllTestsFinished() throws Exception {
+		Coordinator coordinator = new Coordinator(Arrays.asList(Passing.class.getName())).setWorkers(0)
+				.setHistory(null);
+		coordinator.start();
+
+		Socket socket = new Socket("localhost", coordinator.getPort());
+		BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+		Writer out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+		out.write("HELLO\tcrashing\nNEXT\n");
+		out.flush();
+		in.readLine();
+		out.write(Protocol.line(Protocol.TESTS, Passing.class.getName()) + "\n");
+		for (String method : Arrays.asList("first", "second")) {
+			out.write(Protocol.line(Protocol.STARTED, Passing.class.getName(), method) + "\n");
+			out.write(Protocol.line(Protocol.FINISHED, Passing.class.getName(), method, 1L) + "\n");
+		}
+		out.flush();
+		socket.close();
+
+		join(coordinator, "staying", 0);
+		MergedReport report = coordinator.await();
+
+		assertTrue(report.toString(), report.wasSuccessful());
+		assertEquals(2, report.getRunCount());
+		assertTrue(ran.isEmpty());
+	}
+
+	/**
+	 * Without any worker the remaining tests fail once the join timeout passed.
+	 */
+	@Test
+	public void testNoWorkers() throws Exception {
+		Coordinator coordinator = new Coordinator(Arrays.asList(Passing.class.getName())).setWorkers(0)
+				.setHistory(null).setJoinTimeoutMillis(300L);
+		coordinator.start();
+		MergedReport report = coordinator.await();
+		assertEquals(1, report.getFailureCount());
+		assertEquals(Passing.class.getName(), report.getFailures().get(0).getTest());
+	}
+
+	/**
+	 * The coordinator starts worker JVMs with the class path of the tests.
+	 */
+	@Test
+	public void testWorkerJvms() throws Exception {
+		MergedReport report = new Coordinator(Arrays.asList(Passing.class.getName(), Mixed.class.getName()))
+				.setWorkers(2).setHistory(null).run();
+		assertEquals(report.toString(), 4, report.getRunCount());
+		assertEquals(1, report.getFailureCount());
+		assertEquals(2, report.getTestsPerWorker().size());
+		assertTrue(report.getTestsPerWorker().containsKey("worker-1"));
+	}
+
+	private static Thread join(Coordinator coordinator, String name, int units) {
+		Thread thread = new Thread(new Worker("localhost", coordinator.getPort(), name).setMaxUnits(units), name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	public static class Passing {
+		@Test
+		public void first() {
+			ran.add("first");
+		}
+
+		@Test
+		public void second() {
+			ran.add("second");
+		}
+	}
+
+	public static class Mixed {
+		@Test
+		public void passes() {
+		}
+
+		@Test
+		public void fails() {
+			assertEquals(1, 2);
+		}
+
+		@Ignore
+		@Test
+		public void ignored() {
+		}
+	}
+
+	public static class Slow {
+		void slow(String name) throws InterruptedException {
+			ran.add(name);
+			Thread.sleep(200L);
+		}
+
+		@Test
+		public void a() throws InterruptedException {
+			slow("a");
+		}
+
+		@Test
+		public void b() throws InterruptedException {
+			slow("b");
+		}
+
+		@Test
+		public void c() throws InterruptedException {
+			slow("c");
+		}
+
+		@Test
+		public void d() throws InterruptedException {
+			slow("d");
+		}
+
+		@Test
+		public void e() throws InterruptedException {
+			slow("e");
+		}
+
+		@Test
+		public void f() throws InterruptedException {
+			slow("f");
+		}
+	}
+}
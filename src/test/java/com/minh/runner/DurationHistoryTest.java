@@ -0,0 +1,133 @@
+package com.minh.runner;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.minh.runner.DurationHistory.Outcome;
+
+public class DurationHistoryTest {
+	private File file;
+
+	@Before
+	public void createFile() throws IOException {
+		file = File.createTempFile("durations", ".log");
+		file.delete();
+	}
+
+	@After
+	public void deleteFile() {
+		file.delete();
+	}
+
+	/**
+	 * Runs recorded by one history are known to the next one reading the same file.
+	 */
+	@Test
+	public void testRunsAreKeptAcrossHistories() {
+		DurationHistory history = new DurationHistory(file);
+		history.record("a.B#slow", 4000L, 1500L, Outcome.PASSED);
+		history.record("a.B#fast", 100L, 20L, Outcome.FAILED);
+		history.close();
+
+		DurationHistory reread = new DurationHistory(file);
+		DurationHistory.Entry slow = reread.get("a.B#slow");
+		assertEquals(4000L, slow.getWallMillis());
+		assertEquals(1500L, slow.getSetupMillis());
+		assertEquals(Outcome.PASSED, slow.getLastOutcome());
+		assertEquals(Outcome.FAILED, reread.get("a.B#fast").getLastOutcome());
+		assertEquals(Arrays.asList("a.B#fast", "a.B#slow"), reread.testsOf("a.B"));
+		assertNull(reread.get("a.B#other"));
+	}
+
+	/**
+	 * One slow run moves the estimate only part of the way and skipped runs don't move it at all.
+	 */
+	@Test
+	public void testEstimateIsSmoothed() {
+		DurationHistory history = new DurationHistory(file);
+		history.record("a.B#test", 1000L, 0L, Outcome.PASSED);
+		history.record("a.B#test", 2000L, 0L, Outcome.PASSED);
+		assertEquals(1300L, history.estimate("a.B#test"));
+		history.record("a.B#test", 5L, 0L, Outcome.SKIPPED);
+		assertEquals(1300L, history.estimate("a.B#test"));
+		assertEquals(Outcome.SKIPPED, history.get("a.B#test").getLastOutcome());
+		assertEquals(2, history.get("a.B#test").getRuns());
+		history.close();
+	}
+
+	/**
+	 * A test that never ran is expected to take as long as the median test.
+	 */
+	@Test
+	public void testUnknownTestTakesTheMedian() {
+		DurationHistory history = new DurationHistory(file);
+		assertEquals(DurationHistory.DEFAULT_MILLIS, history.estimate("a.B#new"));
+		history.record("a.B#one", 100L, 0L, Outcome.PASSED);
+		history.record("a.B#two", 300L, 0L, Outcome.PASSED);
+		history.record("a.B#three", 9000L, 0L, Outcome.PASSED);
+		assertEquals(300L, history.estimate("a.B#new"));
+		history.close();
+	}
+
+	/**
+	 * The snapshot keeps the estimates the file had, the runs recorded since don't change it.
+	 */
+	@Test
+	public void testSnapshotIsFrozen() {
+		DurationHistory seeded = new DurationHistory(file);
+		seeded.record("a.B#one", 100L, 0L, Outcome.PASSED);
+		seeded.close();
+		DurationHistory history = new DurationHistory(file);
+		history.record("a.B#one", 2000L, 0L, Outcome.PASSED);
+		history.record("a.B#two", 5000L, 0L, Outcome.PASSED);
+		DurationHistory.Snapshot snapshot = history.getSnapshot();
+		assertEquals(100L, snapshot.estimate("a.B#one"));
+		assertFalse(snapshot.isKnown("a.B#two"));
+		assertEquals(100L, snapshot.estimate("a.B#two"));
+		assertEquals(670L, history.estimate("a.B#one"));
+		history.close();
+	}
+
+	/**
+	 * A torn or garbled line, e.g. from a killed run, is skipped.
+	 */
+	@Test
+	public void testMalformedLinesAreSkipped() throws IOException {
+		FileUtils.writeStringToFile(file, "a.B#test\t200\t10\tPASSED\nnonsense\na.B#other\tx\t1\tPASSED\na.B#torn\t20", "UTF-8");
+		DurationHistory history = new DurationHistory(file);
+		assertEquals(Arrays.asList("a.B#test"), history.tests());
+		history.record("a.B#test", 200L, 10L, Outcome.PASSED);
+		history.close();
+		assertEquals(200L, new DurationHistory(file).estimate("a.B#test"));
+	}
+
+	/**
+	 * A file with many runs of few tests is rewritten with one line per test and the same estimates.
+	 */
+	@Test
+	public void testLongFileIsCompacted() throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		for (int i = 0; i < 3000; i++) {
+			out.write(("a.B#test" + i % 3 + "\t" + (100 * (i % 3 + 1)) + "\t10\tPASSED\n").getBytes("UTF-8"));
+		}
+		out.write("a.B#skipped\t1\t0\tSKIPPED\n".getBytes("UTF-8"));
+		out.close();
+
+		DurationHistory history = new DurationHistory(file);
+		assertEquals(4, FileUtils.readLines(file, "UTF-8").size());
+		assertEquals(300L, history.estimate("a.B#test2"));
+		DurationHistory reread = new DurationHistory(file);
+		assertEquals(100L, reread.estimate("a.B#test0"));
+		assertEquals(10L, reread.get("a.B#test1").getSetupMillis());
+		assertEquals(0, reread.get("a.B#skipped").getRuns());
+	}
+}
@@ -0,0 +1,117 @@
+package com.minh.runner;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.minh.helper.Browser;
+import com.minh.helper.LocalServer;
+import com.minh.selector.Via;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class LoadRunnerTest {
+	static String baseUrl = null;
+
+	static final AtomicInteger requests = new AtomicInteger();
+
+	static final Set<String> propertyDuringRun = Collections.synchronizedSet(new HashSet<String>());
+
+	LocalServer server = null;
+
+	@Before
+	public void setUp() throws Exception {
+		requests.set(0);
+		propertyDuringRun.clear();
+		server = new LocalServer(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				LocalServer.respond(exchange, "text/html",
+						"<html><head><title>search</title></head><body><input id='q'/></body></html>");
+			}
+		});
+		baseUrl = server.getBaseUrl();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	/**
+	 * Three users running two iterations each fetch the page six times, the browser operations and the broken test
+	 * are reported with their errors.
+	 */
+	@Test
+	public void testIterations() {
+		LoadReport report = new LoadRunner(Script.class).setUsers(3).setRampUpMillis(150L).setThinkTimeMillis(10L)
+				.setIterations(2L).run();
+		assertEquals(6, report.getIterations());
+		assertEquals(6, report.getFailures());
+		assertEquals(6, requests.get());
+		LoadReport.Operation get = report.getOperation("browser.get");
+		assertEquals(6, get.getCount());
+		assertEquals(0, get.getErrors());
+		assertTrue(get.getThroughput() > 0.0);
+		assertTrue(get.getPercentile(99) >= get.getPercentile(50));
+		assertEquals(6, report.getOperation("browser.clickElement").getCount());
+		assertEquals(1.0, report.getOperation("browser.executeJavascript").getErrorRate(), 0.0);
+		assertEquals(6, report.getOperation("test.broken").getErrors());
+		assertEquals(0, report.getOperation("test.search").getErrors());
+		assertNull(System.getProperty(Browser.BROWSER_PROPERTY));
+		/* Only the virtual users' browsers are headless, the property stays as it was for everyone else */
+		assertEquals(Collections.singleton("unset"), propertyDuringRun);
+	}
+
+	/**
+	 * Without an iteration target the users keep going until the duration has passed.
+	 */
+	@Test
+	public void testDuration() {
+		long start = System.currentTimeMillis();
+		LoadReport report = new LoadRunner(Script.class).setUsers(2).setThinkTimeMillis(50L)
+				.setDurationMillis(1000L).run();
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue("Ran " + report.getIterations() + " iterations", report.getIterations() >= 2);
+		assertTrue("The run took " + elapsed + " ms", elapsed >= 1000L && elapsed < 30000L);
+		assertEquals(report.getIterations(), report.getOperation("browser.get").getCount());
+	}
+
+	/**
+	 * A test written for Firefox, run headless by the load runner.
+	 */
+	public static class Script {
+		Browser browser = null;
+
+		@Before
+		public void setUp() {
+			propertyDuringRun.add(System.getProperty(Browser.BROWSER_PROPERTY, "unset"));
+			browser = new Browser(Browser.FIREFOX);
+		}
+
+		@After
+		public void tearDown() {
+			browser.quit();
+		}
+
+		@Test
+		public void search() {
+			browser.get(baseUrl + "/search");
+			assertEquals("search", browser.getTitle());
+			browser.clickElement(Via.id("q"));
+		}
+
+		@Test
+		public void broken() {
+			browser.executeJavascript("this is not javascript");
+		}
+	}
+}
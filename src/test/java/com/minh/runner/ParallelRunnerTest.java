@@ -0,0 +1,290 @@
+package com.minh.runner;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+
+import com.minh.helper.Browser;
+import com.minh.helper.FailureCapture;
+
+public class ParallelRunnerTest {
+	static final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+
+	static final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+
+	/**
+	 * Four slow test methods on four workers finish in about the time of one.
+	 */
+	@Test
+	public void testMethodsRunInParallel() {
+		threads.clear();
+		long start = System.currentTimeMillis();
+		Result result = JUnitCore.runClasses(SlowMethods.class);
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue(result.wasSuccessful());
+		assertEquals(4, result.getRunCount());
+		assertEquals(4, threads.size());
+		assertTrue("The methods took " + elapsed + " ms", elapsed < 1500L);
+	}
+
+	/**
+	 * The system properties override the annotation.
+	 */
+	@Test
+	public void testWorkersProperty() {
+		assertEquals(3, ParallelRunner.workersFor(Browser.HEADLESS, 3));
+		System.setProperty(ParallelRunner.WORKERS_PROPERTY + "." + Browser.HEADLESS, "5");
+		try {
+			assertEquals(5, ParallelRunner.workersFor(Browser.HEADLESS, 3));
+		} finally {
+			System.clearProperty(ParallelRunner.WORKERS_PROPERTY + "." + Browser.HEADLESS);
+		}
+	}
+
+	/**
+	 * Methods missing in the history run first, then the longest. The wall and setup time of every method are
+	 * recorded.
+	 */
+	@Test
+	public void testLongestFirst() throws Exception {
+		File file = File.createTempFile("durations", ".log");
+		try {
+			DurationHistory seeded = new DurationHistory(file);
+			String prefix = KnownMethods.class.getName() + "#";
+			seeded.record(prefix + "quick", 100L, 0L, DurationHistory.Outcome.PASSED);
+			seeded.record(prefix + "medium", 2000L, 0L, DurationHistory.Outcome.PASSED);
+			seeded.record(prefix + "lengthy", 9000L, 0L, DurationHistory.Outcome.FAILED);
+			seeded.close();
+			DurationHistory history = new DurationHistory(file);
+			started.clear();
+			Result result = new JUnitCore().run(new ParallelRunner(KnownMethods.class, history, null));
+			assertTrue(result.wasSuccessful());
+			assertEquals(Arrays.asList("unknown", "lengthy", "medium", "quick"), started);
+			DurationHistory.Entry entry = history.get(prefix + "unknown");
+			assertEquals(1, entry.getRuns());
+			assertEquals(DurationHistory.Outcome.PASSED, entry.getLastOutcome());
+			assertTrue("setup " + entry.getSetupMillis(), entry.getSetupMillis() >= 50L);
+			assertTrue("wall " + entry.getWallMillis(), entry.getWallMillis() >= entry.getSetupMillis());
+			assertEquals(2, history.get(prefix + "lengthy").getRuns());
+			history.close();
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Two shards planned from the same history together run every method once.
+	 */
+	@Test
+	public void testShards() throws Exception {
+		File file = File.createTempFile("durations", ".log");
+		try {
+			String prefix = KnownMethods.class.getName() + "#";
+			DurationHistory seeded = new DurationHistory(file);
+			seeded.record(prefix + "lengthy", 9000L, 0L, DurationHistory.Outcome.PASSED);
+			seeded.record(prefix + "quick", 100L, 0L, DurationHistory.Outcome.PASSED);
+			seeded.close();
+			/* Each shard reads the file before any of them runs, as separate build agents would */
+			DurationHistory firstHistory = new DurationHistory(file);
+			DurationHistory secondHistory = new DurationHistory(file);
+			started.clear();
+			new JUnitCore().run(new ParallelRunner(KnownMethods.class, firstHistory, new ShardPlanner(2, 0)));
+			List<String> first = new ArrayList<String>(started);
+			started.clear();
+			new JUnitCore().run(new ParallelRunner(KnownMethods.class, secondHistory, new ShardPlanner(2, 1)));
+			Set<String> all = new HashSet<String>(first);
+			all.addAll(started);
+			assertEquals(4, first.size() + started.size());
+			assertEquals(4, all.size());
+			assertTrue(first.contains("lengthy") != started.contains("lengthy"));
+			firstHistory.close();
+			secondHistory.close();
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Each shard records only its own tests while it runs. Later classes are still planned alike in all shards, from
+	 * the estimates as the history file had them when the shards started.
+	 */
+	@Test
+	public void testShardsPlanLaterClassesAlike() throws Exception {
+		File file = File.createTempFile("durations", ".log");
+		try {
+			String prefix = KnownMethods.class.getName() + "#";
+			DurationHistory seeded = new DurationHistory(file);
+			seeded.record(prefix + "lengthy", 9000L, 0L, DurationHistory.Outcome.PASSED);
+			seeded.record(prefix + "medium", 2000L, 0L, DurationHistory.Outcome.PASSED);
+			seeded.record(prefix + "quick", 100L, 0L, DurationHistory.Outcome.PASSED);
+			seeded.close();
+			/* Each shard reads the file before any of them runs, as separate build agents would */
+			DurationHistory[] histories = { new DurationHistory(file), new DurationHistory(file) };
+			List<String> all = new ArrayList<String>();
+			for (int shard = 0; shard < 2; shard++) {
+				DurationHistory history = histories[shard];
+				ShardPlanner planner = new ShardPlanner(2, shard);
+				started.clear();
+				new JUnitCore().run(new ParallelRunner(KnownMethods.class, history, planner));
+				/* The unknown methods of this class take the median, which this shard's records just moved */
+				new JUnitCore().run(new ParallelRunner(OtherMethods.class, history, planner));
+				all.addAll(started);
+				history.close();
+			}
+			Collections.sort(all);
+			assertEquals(Arrays.asList("first", "fourth", "lengthy", "medium", "quick", "second", "third",
+					"unknown"), all);
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Without a history the shards still split the methods between them.
+	 */
+	@Test
+	public void testShardsWithoutHistory() throws Exception {
+		List<String> all = new ArrayList<String>();
+		for (int shard = 0; shard < 2; shard++) {
+			started.clear();
+			new JUnitCore().run(new ParallelRunner(KnownMethods.class, null, new ShardPlanner(2, shard)));
+			assertEquals(2, started.size());
+			all.addAll(started);
+		}
+		assertEquals(4, new HashSet<String>(all).size());
+	}
+
+	/**
+	 * A failed test method leaves the page its browser showed in the failure capture.
+	 */
+	@Test
+	public void testFailureIsCaptured() throws Exception {
+		FailureCapture capture = FailureCapture.getDefault();
+		Assume.assumeNotNull(capture);
+		File page = File.createTempFile("failing", ".html");
+		FileUtils.writeStringToFile(page, "<html><head><title>Failing page</title></head><body></body></html>");
+		try {
+			FailingPage.url = page.toURI().toString();
+			Result result = new JUnitCore().run(new ParallelRunner(FailingPage.class, null, null));
+			assertEquals(1, result.getFailureCount());
+			assertTrue(capture.flush(10000L));
+			String index = FileUtils.readFileToString(new File(capture.getDirectory(), FailureCapture.INDEX));
+			assertTrue(index.contains(FailingPage.class.getName() + "#fails\t" + FailingPage.url + "\tFailing page"));
+		} finally {
+			page.delete();
+		}
+	}
+
+	@Parallel(browser = Browser.HEADLESS, workers = 1)
+	public static class FailingPage {
+		static String url;
+
+		Browser browser = new Browser(Browser.HEADLESS);
+
+		@Test
+		public void fails() {
+			browser.get(url);
+			fail("The page is wrong");
+		}
+
+		@After
+		public void quit() {
+			browser.quit();
+		}
+	}
+
+	@Parallel(browser = Browser.HEADLESS, workers = 1)
+	public static class KnownMethods {
+		@Before
+		public void setUp() throws InterruptedException {
+			Thread.sleep(50L);
+		}
+
+		@Test
+		public void quick() {
+			started.add("quick");
+		}
+
+		@Test
+		public void medium() {
+			started.add("medium");
+		}
+
+		@Test
+		public void lengthy() {
+			started.add("lengthy");
+		}
+
+		@Test
+		public void unknown() {
+			started.add("unknown");
+		}
+	}
+
+	@Parallel(browser = Browser.HEADLESS, workers = 1)
+	public static class OtherMethods {
+		@Test
+		public void first() {
+			started.add("first");
+		}
+
+		@Test
+		public void second() {
+			started.add("second");
+		}
+
+		@Test
+		public void third() {
+			started.add("third");
+		}
+
+		@Test
+		public void fourth() {
+			started.add("fourth");
+		}
+	}
+
+	@RunWith(ParallelRunner.class)
+	@Parallel(browser = Browser.HEADLESS, workers = 4)
+	public static class SlowMethods {
+		void slow() throws InterruptedException {
+			threads.add(Thread.currentThread().getName());
+			Thread.sleep(500L);
+		}
+
+		@Test
+		public void one() throws InterruptedException {
+			slow();
+		}
+
+		@Test
+		public void two() throws InterruptedException {
+			slow();
+		}
+
+		@Test
+		public void three() throws InterruptedException {
+			slow();
+		}
+
+		@Test
+		public void four() throws InterruptedException {
+			slow();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.minh.runner;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ShardPlannerTest {
+	/**
+	 * Longest first on the least loaded shard splits 7+5+4+3+3+2 = 24 evenly in two.
+	 */
+	@Test
+	public void testShardsAreBalanced() {
+		ShardPlanner planner = new ShardPlanner(2, 0);
+		int[] shards = planner.assign(Arrays.asList(3L, 7L, 2L, 5L, 4L, 3L));
+		assertArrayEquals(new long[] { 12L, 12L }, planner.getLoads());
+		assertEquals(12L, planner.getMakespan());
+		assertEquals(6, shards.length);
+		assertEquals(0, shards[1]);
+		assertEquals(1, shards[3]);
+	}
+
+	/**
+	 * Every test falls to exactly one shard and later classes are planned on top of the earlier ones.
+	 */
+	@Test
+	public void testSelectSplitsTests() {
+		List<String> tests = Arrays.asList("a", "b", "c", "d");
+		List<Long> millis = Arrays.asList(10L, 40L, 30L, 20L);
+		List<String> first = new ShardPlanner(2, 0).select(tests, millis);
+		List<String> second = new ShardPlanner(2, 1).select(tests, millis);
+		assertEquals(Arrays.asList("a", "b"), first);
+		assertEquals(Arrays.asList("c", "d"), second);
+
+		ShardPlanner planner = new ShardPlanner(2, 1);
+		assertEquals(Arrays.<String> asList(), planner.select(Arrays.asList("x"), Arrays.asList(50L)));
+		/* The next class starts on the shard that is less loaded */
+		assertEquals(Arrays.asList("y"), planner.select(Arrays.asList("y"), Arrays.asList(5L)));
+	}
+
+	/**
+	 * A slow test queued last keeps every other worker waiting, queued first it runs alongside the rest.
+	 */
+	@Test
+	public void testSimulatedMakespan() {
+		List<Long> slowLast = Arrays.asList(1L, 1L, 1L, 1L, 1L, 1L, 4L);
+		List<Long> slowFirst = Arrays.asList(4L, 1L, 1L, 1L, 1L, 1L, 1L);
+		assertEquals(7L, ShardPlanner.simulate(slowLast, 2));
+		assertEquals(5L, ShardPlanner.simulate(slowFirst, 2));
+		assertEquals(5L, ShardPlanner.lowerBound(slowLast, 2));
+		assertEquals(10L, ShardPlanner.simulate(slowFirst, 1));
+		assertEquals(Arrays.asList(6, 0, 1, 2, 3, 4, 5), ShardPlanner.longestFirst(slowLast));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testShardOutOfRange() {
+		new ShardPlanner(2, 2);
+	}
+}
@@ -0,0 +1,27 @@
+package com.minh.selector;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SelectorCacheTest {
+
+    @Test
+    public void testFactoriesShareInstances() {
+        assertSame(Via.id("q"), Via.id("q"));
+        assertSame(Via.xpath("//div[2]"), Via.xpath("//div[2]"));
+        assertNotSame(Via.css("q"), Via.name("q"));
+        assertNotSame(Via.id("q"), Via.id("r"));
+    }
+
+    @Test
+    public void testOptimizedAndPlainAreKeptApart() {
+        Via.setOptimizing(true);
+        try {
+            assertTrue(Via.xpath("//*[@id='kept']") instanceof ViaId);
+        } finally {
+            Via.setOptimizing(false);
+        }
+        assertTrue(Via.xpath("//*[@id='kept']") instanceof ViaXpath);
+    }
+}
@@ -0,0 +1,89 @@
+package com.minh.selector;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+public class ViaOptimizerTest {
+
+    @After
+    public void tearDown() {
+        Via.setOptimizing(Boolean.getBoolean(Via.OPTIMIZE_PROPERTY));
+    }
+
+    @Test
+    public void testXpathRewrites() {
+        assertRewritten(ViaId.class, "q", ViaOptimizer.parseXpath("//*[@id='q']"));
+        assertRewritten(ViaName.class, "q", ViaOptimizer.parseXpath("//*[@name=\"q\"]"));
+        assertRewritten(ViaCss.class, "input#q", ViaOptimizer.parseXpath("//input[@id='q']"));
+        assertRewritten(ViaCss.class, "input[id=\"a b\"]", ViaOptimizer.parseXpath("//input[@id='a b']"));
+        assertRewritten(ViaCss.class, "a[href=\"/x\"]", ViaOptimizer.parseXpath("//a[@href='/x']"));
+        assertRewritten(ViaCss.class, "[type=\"text\"]", ViaOptimizer.parseXpath("//*[@type = 'text']"));
+        assertRewritten(ViaCss.class, "table", ViaOptimizer.parseXpath("//table"));
+    }
+
+    @Test
+    public void testCssRewrites() {
+        assertRewritten(ViaId.class, "q", ViaOptimizer.parseCss("#q"));
+        assertRewritten(ViaName.class, "q", ViaOptimizer.parseCss("[name='q']"));
+        assertRewritten(ViaId.class, "q", ViaOptimizer.parseCss("*[id=\"q\"]"));
+    }
+
+    @Test
+    public void testComplexExpressionsAreKept() {
+        assertNull(ViaOptimizer.parseXpath("//div[@id='a']//span"));
+        assertNull(ViaOptimizer.parseXpath("//*[contains(@class, 'x')]"));
+        assertNull(ViaOptimizer.parseXpath("(//input)[2]"));
+        assertNull(ViaOptimizer.parseCss("div #q"));
+        assertNull(ViaOptimizer.parseCss("#q.wide"));
+    }
+
+    @Test
+    public void testFactoriesKeepTheWrittenDescription() {
+        Via.setOptimizing(true);
+        Via via = Via.xpath("//*[@id='q']");
+        assertTrue(via instanceof ViaId);
+        assertEquals(new ViaXpath("//*[@id='q']").toString(), via.toString());
+        assertSame(via, Via.xpath("//*[@id='q']"));
+
+        Via.setOptimizing(false);
+        assertTrue(Via.xpath("//*[@id='q']") instanceof ViaXpath);
+    }
+
+    /**
+     * A rewritten xpath from the root finds the same elements when it is run on an element, the whole document.
+     */
+    @Test
+    public void testRewrittenXpathWithinElementSearchesDocument() throws Exception {
+        File page = File.createTempFile("via", ".html");
+        FileUtils.writeStringToFile(page, "<html><body><div id='inner'><p>in</p></div>"
+                + "<input id='q'/><p>out</p></body></html>", "UTF-8");
+        HtmlUnitDriver driver = new HtmlUnitDriver();
+        try {
+            driver.get(page.toURI().toString());
+            Via.setOptimizing(true);
+            WebElement inner = driver.findElement(Via.id("inner"));
+            Via id = Via.xpath("//*[@id='q']");
+            assertTrue(id instanceof ViaId);
+            assertEquals("q", inner.findElement(id).getAttribute("id"));
+            assertEquals(2, inner.findElements(Via.xpath("//p")).size());
+            assertEquals(2, driver.findElements(Via.xpath("//p")).size());
+            assertEquals(1, inner.findElements(Via.css("p")).size());
+        } finally {
+            driver.quit();
+            page.delete();
+        }
+    }
+
+    private static void assertRewritten(Class<? extends Via> type, String value, Via via) {
+        assertNotNull(via);
+        assertEquals(type, via.getClass());
+        assertEquals(value, via.getValue());
+    }
+}